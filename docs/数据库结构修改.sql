@@ -26,4 +26,105 @@ DESCRIBE simulation_runs;
   UPDATE simulation_runs SET state = 'RUNNING' WHERE state = 'RUNNING';
   UPDATE simulation_runs SET state = 'FINISHED' WHERE state = 'COMPLETED';
   UPDATE simulation_runs SET state = 'ERROR' WHERE state = 'FAILED';
-  UPDATE simulation_runs SET state = 'IDLE' WHERE state = 'CANCELLED';
\ No newline at end of file
+  UPDATE simulation_runs SET state = 'IDLE' WHERE state = 'CANCELLED';
+
+-- 轨迹降采样设置（入库时的航位推算过滤）
+-- 读取方据此判断该运行的 pedestrian_data 是否经过降采样，并按容差用线性插值还原位置
+ALTER TABLE simulation_runs
+ADD COLUMN downsample_enabled TINYINT(1) NULL COMMENT '是否开启轨迹降采样',
+ADD COLUMN downsample_distance_tolerance DOUBLE NULL COMMENT '与外推位置的最大偏差（坐标单位）',
+ADD COLUMN downsample_heading_tolerance DOUBLE NULL COMMENT '最大航向变化（度）',
+ADD COLUMN downsample_max_interval DOUBLE NULL COMMENT '两个保留点之间的最大仿真时间间隔（秒）';
+
+-- pedestrian_data / events_log 按 run_id 做 RANGE 分区
+-- 每个运行一个分区 p_run_{run_id}，由后端在运行开始时从 p_future 中拆出，删除运行时直接 DROP PARTITION
+-- 注意：
+-- 1. InnoDB 分区表不支持外键，删除运行不再依赖 ON DELETE CASCADE，改由后端按分区删除
+-- 2. 分区键必须包含在每个唯一键中，主键改为 (id, run_id)，id 仍为自增列
+-- 3. 下面的 p_legacy 边界需替换为执行迁移时 MAX(run_id) + 1，历史运行都落在 p_legacy 中，删除时按行删除
+-- 4. 单表最多 8192 个分区，长期运行需开启 simulation.retention 定期清理
+-- 5. 某个运行拆分分区失败时，它的数据会落入下一个运行的分区；后端只 DROP 没有其他运行数据、范围内也没有其他现存运行的分区，其余按行删除（前一个分区被 DROP 后范围会并入后一个分区，不影响判断）
+ALTER TABLE pedestrian_data DROP FOREIGN KEY pedestrian_data_ibfk_1;
+ALTER TABLE pedestrian_data DROP PRIMARY KEY, ADD PRIMARY KEY (id, run_id);
+ALTER TABLE pedestrian_data PARTITION BY RANGE (run_id) (
+    PARTITION p_legacy VALUES LESS THAN (102),
+    PARTITION p_future VALUES LESS THAN MAXVALUE
+);
+
+ALTER TABLE events_log DROP FOREIGN KEY events_log_ibfk_1;
+ALTER TABLE events_log DROP PRIMARY KEY, ADD PRIMARY KEY (event_id, run_id);
+ALTER TABLE events_log PARTITION BY RANGE (run_id) (
+    PARTITION p_legacy VALUES LESS THAN (102),
+    PARTITION p_future VALUES LESS THAN MAXVALUE
+);
+
+-- 查看分区
+-- SELECT PARTITION_NAME, PARTITION_DESCRIPTION, TABLE_ROWS FROM information_schema.PARTITIONS
+-- WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'pedestrian_data';
+
+-- 按行人读取轨迹的索引
+-- idx_run_time_ped 以 sim_time 开头，按 pedestrian_id 查询需要扫描整个运行
+CREATE INDEX idx_run_ped_time ON pedestrian_data (run_id, pedestrian_id, sim_time);
+
+-- 计数线（闸口）：场地坐标系中的线段 A(x1, y1) → B(x2, y2)，所有运行共用
+CREATE TABLE IF NOT EXISTS flow_gates (
+    gate_id INT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(100) NOT NULL,
+    x1 DOUBLE NOT NULL,
+    y1 DOUBLE NOT NULL,
+    x2 DOUBLE NOT NULL,
+    y2 DOUBLE NOT NULL,
+    created_at DATETIME NOT NULL
+) ENGINE=InnoDB;
+
+-- 区域占用时间序列：每个运行每个区域每个时间桶 [time_bucket * bucket_seconds, ...) 的统计，由后端维护
+-- pedestrian_count 为时间桶内出现过的行人数，max_count 为同一仿真时刻区域内人数的最大值
+-- 删除运行时由后端按 run_id 删除
+CREATE TABLE IF NOT EXISTS area_occupancy (
+    run_id INT NOT NULL,
+    area_name VARCHAR(100) NOT NULL,
+    time_bucket INT NOT NULL,
+    bucket_seconds DOUBLE NOT NULL,
+    pedestrian_count INT NOT NULL,
+    max_count INT NOT NULL,
+    mean_speed DOUBLE NULL,
+    sample_count BIGINT NOT NULL,
+    PRIMARY KEY (run_id, area_name, time_bucket)
+) ENGINE=InnoDB;
+
+-- 区域速度分位数草图：对数分桶直方图（相对误差 1%）的紧凑编码，可按时间桶、运行合并，由后端维护
+-- 添加前统计的行没有草图，如需补齐可删除该运行的 area_occupancy 行，首次查询时重新统计
+ALTER TABLE area_occupancy ADD COLUMN speed_sketch BLOB NULL;
+
+-- 运行汇总统计：运行结束、数据落库后由后端计算一次，area_peaks / event_type_counts 为 JSON 文本
+-- 删除运行时由后端按 run_id 删除
+CREATE TABLE IF NOT EXISTS simulation_run_summary (
+    run_id INT PRIMARY KEY,
+    pedestrian_count BIGINT NOT NULL,
+    sample_count BIGINT NOT NULL,
+    min_sim_time DOUBLE NULL,
+    max_sim_time DOUBLE NULL,
+    min_speed DOUBLE NULL,
+    mean_speed DOUBLE NULL,
+    max_speed DOUBLE NULL,
+    speed_stddev DOUBLE NULL,
+    event_count BIGINT NOT NULL,
+    area_peaks TEXT,
+    event_type_counts TEXT,
+    computed_at DATETIME NOT NULL
+) ENGINE=InnoDB;
+
+-- 区域停留时间、区域间行程时间分布：运行结束、数据落库后由后端计算一次，sketch 为分位数草图（相对误差 1%）
+-- kind 为 DWELL（停留时间，to_area 为空字符串）或 TRAVEL（离开 from_area 到进入 to_area 的时间）
+-- 删除运行时由后端按 run_id 删除
+CREATE TABLE IF NOT EXISTS area_dwell_stats (
+    run_id INT NOT NULL,
+    kind VARCHAR(16) NOT NULL,
+    from_area VARCHAR(100) NOT NULL,
+    to_area VARCHAR(100) NOT NULL,
+    interval_count BIGINT NOT NULL,
+    total_seconds DOUBLE NOT NULL,
+    max_seconds DOUBLE NOT NULL,
+    sketch BLOB NOT NULL,
+    PRIMARY KEY (run_id, kind, from_area, to_area)
+) ENGINE=InnoDB;
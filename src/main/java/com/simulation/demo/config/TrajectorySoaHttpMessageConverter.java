@@ -0,0 +1,104 @@
+package com.simulation.demo.config;
+
+import com.simulation.demo.controller.SimulationController;
+import com.simulation.demo.dto.KeysetPage;
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.dto.TrajectorySampleSoa;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把轨迹查询的 ApiResponse 输出为二进制列式格式（见 {@link TrajectorySampleSoa}）
+ *
+ * 请求头 Accept: application/x-trajectory-soa 时生效，未指定时仍输出 JSON。
+ * 支持的 data 类型：轨迹采样列表、分页结果、游标分页结果（带 nextCursor）、
+ * 空间查询结果（带 truncated）以及按行人分组的轨迹（按行人顺序拼接）；
+ * data 为空（如错误响应）时只输出头部。
+ */
+public class TrajectorySoaHttpMessageConverter extends AbstractHttpMessageConverter<SimulationController.ApiResponse> {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-trajectory-soa";
+    public static final MediaType MEDIA_TYPE = MediaType.valueOf(MEDIA_TYPE_VALUE);
+
+    public TrajectorySoaHttpMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return SimulationController.ApiResponse.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected SimulationController.ApiResponse readInternal(Class<? extends SimulationController.ApiResponse> clazz,
+                                                            HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("不支持读取 " + MEDIA_TYPE_VALUE, inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(SimulationController.ApiResponse response, HttpOutputMessage outputMessage)
+            throws IOException {
+        Object data = response.getData();
+        List<TrajectorySample> samples;
+        String nextCursor = null;
+        boolean truncated = false;
+        if (data == null) {
+            samples = List.of();
+        } else if (data instanceof Page<?> page) {
+            samples = toSamples(page.getContent());
+        } else if (data instanceof KeysetPage<?> page) {
+            samples = toSamples(page.getContent());
+            nextCursor = page.getNextCursor();
+        } else if (data instanceof Map<?, ?> map && map.get("content") instanceof Collection<?> content) {
+            // 空间查询结果
+            samples = toSamples(content);
+            truncated = Boolean.TRUE.equals(map.get("truncated"));
+        } else if (data instanceof Map<?, ?> map) {
+            // 按行人分组的轨迹
+            samples = new ArrayList<>();
+            for (Object trajectory : map.values()) {
+                if (!(trajectory instanceof Collection<?> collection)) {
+                    throw notWritable(data);
+                }
+                samples.addAll(toSamples(collection));
+            }
+        } else if (data instanceof Collection<?> collection) {
+            samples = toSamples(collection);
+        } else {
+            throw notWritable(data);
+        }
+        TrajectorySampleSoa.write(response.isSuccess(), response.getMessage(), nextCursor, truncated, samples,
+                                  outputMessage.getBody());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<TrajectorySample> toSamples(Collection<?> collection) {
+        for (Object element : collection) {
+            if (!(element instanceof TrajectorySample)) {
+                throw notWritable(collection);
+            }
+        }
+        return collection instanceof List<?> list
+            ? (List<TrajectorySample>) list : new ArrayList<>((Collection<TrajectorySample>) collection);
+    }
+
+    private static HttpMessageNotWritableException notWritable(Object data) {
+        return new HttpMessageNotWritableException("该接口的返回数据不支持 " + MEDIA_TYPE_VALUE + ": " + data.getClass().getSimpleName());
+    }
+}
@@ -0,0 +1,36 @@
+package com.simulation.demo.config;
+
+import com.simulation.demo.controller.FinishedRunCacheAdvice;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Spring MVC 配置
+ */
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private FinishedRunCacheAdvice finishedRunCacheAdvice;
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // 放在最后：未指定 Accept 或 Accept 为 */* 时仍优先输出 JSON
+        converters.add(new TrajectorySoaHttpMessageConverter());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(finishedRunCacheAdvice)
+            .addPathPatterns("/api/data/pedestrians/*/**", "/api/data/events/*/**", "/api/data/runs/*/**")
+            // 计数线可以增删，客流结果随之变化
+            .excludePathPatterns("/api/data/runs/*/gates/**")
+            // 实时跟踪在运行结束、写入队列落库前仍会返回新数据
+            .excludePathPatterns("/api/data/pedestrians/*/tail", "/api/data/pedestrians/*/tail/**");
+    }
+}
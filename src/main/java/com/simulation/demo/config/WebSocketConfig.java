@@ -0,0 +1,25 @@
+package com.simulation.demo.config;
+
+import com.simulation.demo.controller.PlaybackWebSocketHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * WebSocket 配置
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    @Autowired
+    private PlaybackWebSocketHandler playbackWebSocketHandler;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        // 与 REST 接口的 @CrossOrigin(origins = "*") 保持一致
+        registry.addHandler(playbackWebSocketHandler, "/ws/playback/*").setAllowedOrigins("*");
+    }
+}
@@ -1,17 +1,51 @@
 package com.simulation.demo.controller;
 
+import com.simulation.demo.dto.AreaDwellStats;
+import com.simulation.demo.dto.AreaOccupancy;
+import com.simulation.demo.dto.BatchQueryRequest;
+import com.simulation.demo.dto.KeysetPage;
+import com.simulation.demo.dto.TrajectorySample;
 import com.simulation.demo.entity.EventsLog;
-import com.simulation.demo.entity.PedestrianData;
+import com.simulation.demo.entity.FlowGate;
+import com.simulation.demo.entity.SimulationRunSummary;
 import com.simulation.demo.service.SimulationDataService;
+import com.simulation.demo.service.TrajectoryExportService;
+import com.simulation.demo.service.analytics.AreaDwellService;
+import com.simulation.demo.service.analytics.AreaOccupancyService;
+import com.simulation.demo.service.analytics.CrowdingService;
+import com.simulation.demo.service.analytics.GateFlowService;
+import com.simulation.demo.service.analytics.OdMatrixService;
+import com.simulation.demo.service.analytics.RunSummaryService;
+import com.simulation.demo.service.cache.CacheStats;
+import com.simulation.demo.service.cache.RunQueryCache;
+import com.simulation.demo.service.index.DensityGrid;
+import com.simulation.demo.service.index.DensityService;
+import com.simulation.demo.service.index.FrameIndex;
+import com.simulation.demo.service.index.FrameIndexService;
+import com.simulation.demo.service.index.LodPyramidService;
+import com.simulation.demo.service.index.SpatialIndexService;
+import com.simulation.demo.service.index.TrajectoryBatchService;
+import com.simulation.demo.service.ingest.TrajectoryIngestService;
+import com.simulation.demo.service.ingest.TrajectoryTailService;
+import com.simulation.demo.service.ingest.WriteBehindQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import com.simulation.demo.service.CoordinateConversionService;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import util.GeoUtil;
 @RestController
 @RequestMapping("/api/data")
@@ -20,25 +54,120 @@ public class DataController {
 
     private static final Logger logger = LoggerFactory.getLogger(DataController.class);
 
+    private static final int MAX_PAGE_SIZE = 10000;
+
+    private static final int MAX_SPATIAL_LIMIT = 100000;
+
+    private static final int MAX_TRAJECTORY_IDS = 1000;
+
+    private static final int MAX_BATCH_KEYS = 1000;
+
+    private static final int MAX_QUANTILES = 20;
+
+    private static final int MAX_MERGED_RUNS = 100;
+
+    // 细节层级查询一次最多返回的帧数和视口分辨率
+    private static final int MAX_LOD_FRAMES = 2000;
+
+    private static final int MAX_LOD_RESOLUTION = 4096;
+
+    // 实时跟踪长轮询最长等待时间（毫秒）
+    private static final long MAX_TAIL_WAIT_MS = 60000;
+
+    // OD 矩阵最多返回的区域序列个数
+    private static final int MAX_OD_CHAINS = 1000;
+
+    // 停留时间直方图最多的格数
+    private static final int MAX_HISTOGRAM_BINS = 1000;
+
+    // 拥挤统计一次最多返回的帧数
+    private static final int MAX_CROWDING_FRAMES = 10000;
+
     @Autowired
     private SimulationDataService simulationDataService;
 
     @Autowired
     private CoordinateConversionService coordinateConversionService;
+
+    @Autowired
+    private TrajectoryIngestService trajectoryIngestService;
+
+    @Autowired
+    private TrajectoryTailService trajectoryTailService;
+
+    @Autowired
+    private WriteBehindQueue writeBehindQueue;
+
+    @Autowired
+    private TrajectoryExportService trajectoryExportService;
+
+    @Autowired
+    private FrameIndexService frameIndexService;
+
+    @Autowired
+    private SpatialIndexService spatialIndexService;
+
+    @Autowired
+    private LodPyramidService lodPyramidService;
+
+    @Autowired
+    private TrajectoryBatchService trajectoryBatchService;
+
+    @Autowired
+    private DensityService densityService;
+
+    @Autowired
+    private GateFlowService gateFlowService;
+
+    @Autowired
+    private AreaOccupancyService areaOccupancyService;
+
+    @Autowired
+    private RunSummaryService runSummaryService;
+
+    @Autowired
+    private OdMatrixService odMatrixService;
+
+    @Autowired
+    private AreaDwellService areaDwellService;
+
+    @Autowired
+    private CrowdingService crowdingService;
+
+    @Autowired
+    private RunQueryCache runQueryCache;
+
     /**
      * 获取行人数据（分页）
+     *
+     * 带 cursor 参数时使用游标分页（首页传空字符串），否则使用页码分页
      */
     @GetMapping("/pedestrians/{runId}")
     public ResponseEntity<?> getPedestrianData(
             @PathVariable Integer runId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "100") int size) {
+            @RequestParam(defaultValue = "100") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
 
-        logger.info("获取行人数据，运行ID: {}, 页码: {}, 大小: {}", runId, page, size);
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "分页大小必须在 1 - " + MAX_PAGE_SIZE + " 之间", null));
+        }
 
         try {
-            Page<PedestrianData> pedestrianData = simulationDataService.getPedestrianDataByRunId(runId, page, size);
+            if (cursor != null) {
+                logger.info("获取行人数据，运行ID: {}, 游标分页, 大小: {}", runId, size);
+                KeysetPage<TrajectorySample> pedestrianData = simulationDataService.getPedestrianDataPage(runId, cursor, size, withTotal);
+                return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", pedestrianData));
+            }
+
+            logger.info("获取行人数据，运行ID: {}, 页码: {}, 大小: {}", runId, page, size);
+            Page<TrajectorySample> pedestrianData = simulationDataService.getPedestrianDataByRunId(runId, page, size);
             return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", pedestrianData));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "无效的分页游标", null));
         } catch (Exception e) {
             logger.error("获取行人数据失败，运行ID: {}", runId, e);
             return ResponseEntity.internalServerError()
@@ -47,7 +176,7 @@ public class DataController {
     }
 
     /**
-     * 获取特定行人的数据
+     * 获取特定行人的数据（已结束的运行从帧索引的行人目录读取）
      */
     @GetMapping("/pedestrians/{runId}/{pedestrianId}")
     public ResponseEntity<?> getPedestrianDataByPedestrianId(
@@ -57,7 +186,7 @@ public class DataController {
         logger.info("获取特定行人数据，运行ID: {}, 行人ID: {}", runId, pedestrianId);
 
         try {
-            List<PedestrianData> pedestrianData = simulationDataService.getPedestrianDataByRunIdAndPedestrianId(runId, pedestrianId);
+            List<TrajectorySample> pedestrianData = frameIndexService.getTrajectory(runId, pedestrianId);
             return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", pedestrianData));
         } catch (Exception e) {
             logger.error("获取特定行人数据失败，运行ID: {}, 行人ID: {}", runId, pedestrianId, e);
@@ -66,6 +195,71 @@ public class DataController {
         }
     }
 
+    /**
+     * 批量获取多个行人的轨迹，ids 为逗号分隔的行人ID
+     */
+    @GetMapping("/pedestrians/{runId}/trajectories")
+    public ResponseEntity<?> getTrajectories(
+            @PathVariable Integer runId,
+            @RequestParam List<Integer> ids) {
+
+        if (ids.isEmpty() || ids.size() > MAX_TRAJECTORY_IDS) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "行人ID数量必须在 1 - " + MAX_TRAJECTORY_IDS + " 之间", null));
+        }
+
+        logger.info("批量获取行人轨迹，运行ID: {}, 行人数: {}", runId, ids.size());
+
+        try {
+            Map<Integer, List<TrajectorySample>> trajectories = frameIndexService.getTrajectories(runId, new LinkedHashSet<>(ids));
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", trajectories));
+        } catch (Exception e) {
+            logger.error("批量获取行人轨迹失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 批量查询：一次读取多个帧、多个行人的轨迹和多个时间段，结果按类别和键分组
+     */
+    @PostMapping("/pedestrians/{runId}/batch")
+    public ResponseEntity<?> batchQuery(
+            @PathVariable Integer runId,
+            @RequestBody BatchQueryRequest request) {
+
+        int keyCount = request.keyCount();
+        if (keyCount == 0 || keyCount > MAX_BATCH_KEYS) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "查询键数量必须在 1 - " + MAX_BATCH_KEYS + " 之间", null));
+        }
+        if ((request.simTimes() != null && request.simTimes().contains(null))
+                || (request.pedestrianIds() != null && request.pedestrianIds().contains(null))) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "仿真时间和行人ID不能为空", null));
+        }
+        if (request.timeRanges() != null) {
+            for (BatchQueryRequest.TimeRange range : request.timeRanges()) {
+                if (range == null || range.startTime() == null || range.endTime() == null
+                        || range.startTime().compareTo(range.endTime()) > 0) {
+                    return ResponseEntity.badRequest()
+                        .body(new SimulationController.ApiResponse(false, "时间段必须包含 startTime 和 endTime，且 startTime 不大于 endTime", null));
+                }
+            }
+        }
+
+        logger.info("批量查询，运行ID: {}, 查询键数: {}", runId, keyCount);
+
+        try {
+            Map<String, Object> result = trajectoryBatchService.query(runId, request);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", result));
+        } catch (Exception e) {
+            logger.error("批量查询失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
     /**
      * 获取指定时间范围内的行人数据
      */
@@ -78,7 +272,7 @@ public class DataController {
         logger.info("获取时间范围内的行人数据，运行ID: {}, 时间范围: {} - {}", runId, startTime, endTime);
 
         try {
-            List<PedestrianData> pedestrianData = simulationDataService.getPedestrianDataByTimeRange(runId, startTime, endTime);
+            List<TrajectorySample> pedestrianData = simulationDataService.getPedestrianDataByTimeRange(runId, startTime, endTime);
             return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", pedestrianData));
         } catch (Exception e) {
             logger.error("获取时间范围内的行人数据失败", e);
@@ -98,7 +292,7 @@ public class DataController {
         logger.info("获取区域行人数据，运行ID: {}, 区域: {}", runId, areaName);
 
         try {
-            List<PedestrianData> pedestrianData = simulationDataService.getPedestrianDataByArea(runId, areaName);
+            List<TrajectorySample> pedestrianData = simulationDataService.getPedestrianDataByArea(runId, areaName);
             return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", pedestrianData));
         } catch (Exception e) {
             logger.error("获取区域行人数据失败", e);
@@ -107,17 +301,114 @@ public class DataController {
         }
     }
 
+    /**
+     * 流式导出指定时间范围内的行人数据（逐行读取并写出，适用于大运行）
+     */
+    @GetMapping("/pedestrians/{runId}/time-range/stream")
+    public ResponseEntity<StreamingResponseBody> streamPedestrianDataByTimeRange(
+            @PathVariable Integer runId,
+            @RequestParam BigDecimal startTime,
+            @RequestParam BigDecimal endTime) {
+
+        StreamingResponseBody body = out -> trajectoryExportService.writeTimeRange(runId, startTime, endTime, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * 流式导出指定区域的行人数据
+     */
+    @GetMapping("/pedestrians/{runId}/area/{areaName}/stream")
+    public ResponseEntity<StreamingResponseBody> streamPedestrianDataByArea(
+            @PathVariable Integer runId,
+            @PathVariable String areaName) {
+
+        StreamingResponseBody body = out -> trajectoryExportService.writeArea(runId, areaName, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * 实时跟踪：返回游标（上一批最后一行的 id）之后写入的采样
+     *
+     * waitMs 大于 0 时为长轮询：游标之后暂无数据时挂起，直到该运行写入下一批采样或超时
+     */
+    @GetMapping("/pedestrians/{runId}/tail")
+    public CompletableFuture<ResponseEntity<?>> tailPedestrianData(
+            @PathVariable Integer runId,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "1000") int limit,
+            @RequestParam(defaultValue = "0") long waitMs) {
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "limit 必须在 1 - " + MAX_PAGE_SIZE + " 之间", null)));
+        }
+        if (after < 0 || waitMs < 0 || waitMs > MAX_TAIL_WAIT_MS) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "after 不能小于 0，waitMs 必须在 0 - " + MAX_TAIL_WAIT_MS + " 之间", null)));
+        }
+
+        logger.debug("实时跟踪行人数据，运行ID: {}, 游标: {}, 等待: {} ms", runId, after, waitMs);
+
+        try {
+            return trajectoryTailService.poll(runId, after, limit, waitMs).handle((page, e) -> {
+                if (e != null) {
+                    logger.error("实时跟踪行人数据失败，运行ID: {}", runId, e);
+                    return ResponseEntity.internalServerError()
+                        .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+                }
+                return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", page));
+            });
+        } catch (IllegalStateException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new SimulationController.ApiResponse(false, e.getMessage(), null)));
+        } catch (Exception e) {
+            logger.error("实时跟踪行人数据失败，运行ID: {}", runId, e);
+            return CompletableFuture.completedFuture(ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null)));
+        }
+    }
+
+    /**
+     * 实时跟踪（SSE）：推送游标之后写入的采样，运行数据全部写入后推送 complete 事件并关闭
+     *
+     * 断线重连时浏览器自动带上 Last-Event-ID（即游标），优先于 after
+     */
+    @GetMapping(value = "/pedestrians/{runId}/tail/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamTailPedestrianData(
+            @PathVariable Integer runId,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "1000") int limit,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+
+        long cursor = lastEventId != null ? lastEventId : after;
+        if (limit < 1 || limit > MAX_PAGE_SIZE || cursor < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        logger.info("订阅行人数据实时跟踪，运行ID: {}, 游标: {}", runId, cursor);
+
+        try {
+            return ResponseEntity.ok(trajectoryTailService.subscribe(runId, cursor, limit));
+        } catch (IllegalStateException e) {
+            logger.warn("订阅行人数据实时跟踪失败，运行ID: {}: {}", runId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
     /**
      * 获取指定仿真时间的行人数据
+     *
+     * nearest=true 时返回时间最接近的一帧（用于拖动进度条等任意时间点）
      */
     @GetMapping("/pedestrians/{runId}/simtime/{sim_time}")
     public ResponseEntity<?> getPedestrianDataBySimTime(
             @PathVariable Integer runId,
-            @PathVariable("sim_time") String simTimeStr) {
-        logger.info("获取指定仿真时间的行人数据，运行ID: {}, 仿真时间: {}", runId, simTimeStr);
+            @PathVariable("sim_time") String simTimeStr,
+            @RequestParam(defaultValue = "false") boolean nearest) {
+        logger.info("获取指定仿真时间的行人数据，运行ID: {}, 仿真时间: {}, 就近: {}", runId, simTimeStr, nearest);
         try {
             BigDecimal simTime = new BigDecimal(simTimeStr);
-            List<PedestrianData> pedestrianData = simulationDataService.getPedestrianDataByRunIdAndSimTime(runId, simTime);
+            List<TrajectorySample> pedestrianData = frameIndexService.getFrame(runId, simTime, nearest);
             return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", pedestrianData));
         } catch (Exception e) {
             logger.error("获取指定仿真时间的行人数据失败，运行ID: {}, 仿真时间: {}", runId, simTimeStr, e);
@@ -126,6 +417,621 @@ public class DataController {
         }
     }
 
+    /**
+     * 获取运行的帧信息（帧数、起止时间），运行未结束时 indexed 为 false
+     */
+    @GetMapping("/pedestrians/{runId}/frames")
+    public ResponseEntity<?> getFrameInfo(@PathVariable Integer runId) {
+        try {
+            FrameIndex index = frameIndexService.getIndex(runId);
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("indexed", index != null);
+            if (index != null) {
+                info.put("frameCount", index.getFrameCount());
+                info.put("rowCount", index.getRowCount());
+                info.put("pedestrianCount", index.getPedestrianCount());
+                info.put("startTime", index.getStartTime());
+                info.put("endTime", index.getEndTime());
+            }
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", info));
+        } catch (Exception e) {
+            logger.error("获取帧信息失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 按时间跨度和视口获取一段时间内的帧（时间轴缩略、缩小查看整个运行）
+     *
+     * 按 maxFrames 选择细节层级：跨度较长时每 2^k 帧取一帧，较粗的层级在视口足够大时输出网格聚合点
+     *
+     * @param resolution 视口边长对应的显示单元数，聚合网格不超过一个显示单元时才聚合
+     */
+    @GetMapping("/pedestrians/{runId}/frames/lod")
+    public ResponseEntity<?> getLodFrames(
+            @PathVariable Integer runId,
+            @RequestParam(required = false) Double startTime,
+            @RequestParam(required = false) Double endTime,
+            @RequestParam(required = false) Double minX,
+            @RequestParam(required = false) Double minY,
+            @RequestParam(required = false) Double maxX,
+            @RequestParam(required = false) Double maxY,
+            @RequestParam(defaultValue = "200") int maxFrames,
+            @RequestParam(defaultValue = "256") int resolution) {
+
+        boolean hasViewport = minX != null || minY != null || maxX != null || maxY != null;
+        if (hasViewport && (minX == null || minY == null || maxX == null || maxY == null || minX > maxX || minY > maxY)) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "视口范围无效：需同时指定 minX、minY、maxX、maxY，且 min 不能大于 max", null));
+        }
+        if (maxFrames < 1 || maxFrames > MAX_LOD_FRAMES) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "maxFrames 必须在 1 - " + MAX_LOD_FRAMES + " 之间", null));
+        }
+        if (resolution < 1 || resolution > MAX_LOD_RESOLUTION) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "resolution 必须在 1 - " + MAX_LOD_RESOLUTION + " 之间", null));
+        }
+
+        logger.info("获取细节层级帧，运行ID: {}, 时间范围: {} - {}, 最多帧数: {}", runId, startTime, endTime, maxFrames);
+
+        try {
+            double[] viewport = hasViewport ? new double[] {minX, minY, maxX, maxY} : null;
+            Map<String, Object> result = lodPyramidService.getFrames(runId, startTime, endTime, viewport, maxFrames, resolution);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", result));
+        } catch (Exception e) {
+            logger.error("获取细节层级帧失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取矩形范围内、指定时间段的行人数据
+     */
+    @GetMapping("/pedestrians/{runId}/bbox")
+    public ResponseEntity<?> getPedestrianDataInBox(
+            @PathVariable Integer runId,
+            @RequestParam double minX,
+            @RequestParam double minY,
+            @RequestParam double maxX,
+            @RequestParam double maxY,
+            @RequestParam(required = false) BigDecimal startTime,
+            @RequestParam(required = false) BigDecimal endTime,
+            @RequestParam(defaultValue = "10000") int limit) {
+
+        if (minX > maxX || minY > maxY) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "矩形范围无效：min 不能大于 max", null));
+        }
+        if (limit < 1 || limit > MAX_SPATIAL_LIMIT) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "limit 必须在 1 - " + MAX_SPATIAL_LIMIT + " 之间", null));
+        }
+
+        logger.info("获取矩形范围内的行人数据，运行ID: {}, 范围: ({}, {}) - ({}, {}), 时间范围: {} - {}",
+                    runId, minX, minY, maxX, maxY, startTime, endTime);
+
+        try {
+            Map<String, Object> result = spatialIndexService.findInBox(runId, minX, minY, maxX, maxY, startTime, endTime, limit);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", result));
+        } catch (Exception e) {
+            logger.error("获取矩形范围内的行人数据失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取圆形范围内（如出口周围 r 米）、指定时间段的行人数据
+     */
+    @GetMapping("/pedestrians/{runId}/radius")
+    public ResponseEntity<?> getPedestrianDataInRadius(
+            @PathVariable Integer runId,
+            @RequestParam double x,
+            @RequestParam double y,
+            @RequestParam double r,
+            @RequestParam(required = false) BigDecimal startTime,
+            @RequestParam(required = false) BigDecimal endTime,
+            @RequestParam(defaultValue = "10000") int limit) {
+
+        if (!(r > 0)) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "半径必须大于 0", null));
+        }
+        if (limit < 1 || limit > MAX_SPATIAL_LIMIT) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "limit 必须在 1 - " + MAX_SPATIAL_LIMIT + " 之间", null));
+        }
+
+        logger.info("获取圆形范围内的行人数据，运行ID: {}, 圆心: ({}, {}), 半径: {}, 时间范围: {} - {}",
+                    runId, x, y, r, startTime, endTime);
+
+        try {
+            Map<String, Object> result = spatialIndexService.findInRadius(runId, x, y, r, startTime, endTime, limit);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", result));
+        } catch (Exception e) {
+            logger.error("获取圆形范围内的行人数据失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取运行汇总统计（运行结束后计算一次）
+     */
+    @GetMapping("/runs/{runId}/summary")
+    public ResponseEntity<?> getRunSummary(@PathVariable Integer runId) {
+        logger.info("获取运行汇总统计，运行ID: {}", runId);
+
+        try {
+            SimulationRunSummary summary = runSummaryService.getSummary(runId);
+            if (summary == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", summary));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, e.getMessage(), null));
+        } catch (Exception e) {
+            logger.error("获取运行汇总统计失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取密度热力图：每个时间桶内每个网格出现过的行人数
+     *
+     * @param cell   网格边长（坐标单位），场地过大时自动放大
+     * @param bucket 时间桶长度（仿真秒）
+     */
+    @GetMapping("/runs/{runId}/density")
+    public ResponseEntity<?> getDensity(
+            @PathVariable Integer runId,
+            @RequestParam(defaultValue = "5") double cell,
+            @RequestParam(defaultValue = "60") double bucket) {
+
+        if (!(cell > 0) || !(bucket > 0)) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "网格边长和时间桶长度必须大于 0", null));
+        }
+
+        logger.info("获取密度热力图，运行ID: {}, 网格边长: {}, 时间桶: {}", runId, cell, bucket);
+
+        try {
+            DensityGrid density = densityService.getDensity(runId, cell, bucket);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", density));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, e.getMessage(), null));
+        } catch (Exception e) {
+            logger.error("获取密度热力图失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取全部计数线
+     */
+    @GetMapping("/gates")
+    public ResponseEntity<?> getGates() {
+        try {
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", gateFlowService.getGates()));
+        } catch (Exception e) {
+            logger.error("获取计数线失败", e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 创建计数线（线段 A(x1, y1) → B(x2, y2)）
+     */
+    @PostMapping("/gates")
+    public ResponseEntity<?> createGate(@RequestBody FlowGate gate) {
+        if (gate.getName() == null || gate.getName().isBlank() || gate.getX1() == null || gate.getY1() == null
+                || gate.getX2() == null || gate.getY2() == null) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "计数线必须包含 name、x1、y1、x2、y2", null));
+        }
+        if (gate.getX1().equals(gate.getX2()) && gate.getY1().equals(gate.getY2())) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "计数线两个端点不能重合", null));
+        }
+
+        try {
+            gate.setGateId(null);
+            gate.setCreatedAt(null);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "创建成功", gateFlowService.createGate(gate)));
+        } catch (Exception e) {
+            logger.error("创建计数线失败", e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "创建失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 删除计数线
+     */
+    @DeleteMapping("/gates/{gateId}")
+    public ResponseEntity<?> deleteGate(@PathVariable Integer gateId) {
+        try {
+            if (!gateFlowService.deleteGate(gateId)) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "删除成功", null));
+        } catch (Exception e) {
+            logger.error("删除计数线失败，计数线ID: {}", gateId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "删除失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取计数线客流：每条计数线按方向、按时间桶统计的穿越人次
+     *
+     * @param ids    逗号分隔的计数线ID，为空时返回全部计数线
+     * @param bucket 时间桶长度（仿真秒）
+     */
+    @GetMapping("/runs/{runId}/gates/flow")
+    public ResponseEntity<?> getGateFlow(
+            @PathVariable Integer runId,
+            @RequestParam(required = false) List<Integer> ids,
+            @RequestParam(defaultValue = "60") double bucket) {
+
+        if (!(bucket > 0)) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "时间桶长度必须大于 0", null));
+        }
+
+        logger.info("获取计数线客流，运行ID: {}, 计数线: {}, 时间桶: {}", runId, ids, bucket);
+
+        try {
+            List<Map<String, Object>> flows = gateFlowService.getFlow(runId, ids, bucket);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", flows));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, e.getMessage(), null));
+        } catch (Exception e) {
+            logger.error("获取计数线客流失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取区域占用时间序列：每个区域每个时间桶的人数、平均速度和最大人数
+     *
+     * @param area 区域名称，为空时返回全部区域
+     */
+    @GetMapping("/runs/{runId}/areas/occupancy")
+    public ResponseEntity<?> getAreaOccupancy(
+            @PathVariable Integer runId,
+            @RequestParam(required = false) String area) {
+
+        logger.info("获取区域占用时间序列，运行ID: {}, 区域: {}", runId, area);
+
+        try {
+            List<AreaOccupancy> occupancy = areaOccupancyService.getOccupancy(runId, area);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", occupancy));
+        } catch (Exception e) {
+            logger.error("获取区域占用时间序列失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取区域速度分位数：合并时间窗口内各时间桶的速度草图
+     *
+     * @param q      逗号分隔的分位点（0 到 1）
+     * @param from   时间桶起点的下界（含）
+     * @param to     时间桶起点的上界（不含）
+     * @param window 时间窗口长度（仿真秒），为空时每个区域合并为一项
+     */
+    @GetMapping("/runs/{runId}/areas/speed-quantiles")
+    public ResponseEntity<?> getAreaSpeedQuantiles(
+            @PathVariable Integer runId,
+            @RequestParam(required = false) String area,
+            @RequestParam(defaultValue = "0.05,0.5,0.95") List<Double> q,
+            @RequestParam(required = false) Double from,
+            @RequestParam(required = false) Double to,
+            @RequestParam(required = false) Double window) {
+
+        String error = validateQuantiles(q);
+        if (error == null && window != null && !(window > 0)) {
+            error = "时间窗口长度必须大于 0";
+        }
+        if (error != null) {
+            return ResponseEntity.badRequest().body(new SimulationController.ApiResponse(false, error, null));
+        }
+
+        logger.info("获取区域速度分位数，运行ID: {}, 区域: {}, 分位点: {}, 时间: {} - {}, 窗口: {}", runId, area, q, from, to, window);
+
+        try {
+            List<Map<String, Object>> result = areaOccupancyService.getSpeedQuantiles(runId, area, from, to, window,
+                q.stream().mapToDouble(Double::doubleValue).toArray());
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", result));
+        } catch (Exception e) {
+            logger.error("获取区域速度分位数失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取多个运行合并后的区域速度分位数
+     */
+    @GetMapping("/areas/speed-quantiles")
+    public ResponseEntity<?> getMergedAreaSpeedQuantiles(
+            @RequestParam List<Integer> runIds,
+            @RequestParam(required = false) String area,
+            @RequestParam(defaultValue = "0.05,0.5,0.95") List<Double> q,
+            @RequestParam(required = false) Double from,
+            @RequestParam(required = false) Double to) {
+
+        String error = validateQuantiles(q);
+        if (error == null && (runIds.isEmpty() || runIds.size() > MAX_MERGED_RUNS)) {
+            error = "runIds 数量必须在 1 - " + MAX_MERGED_RUNS + " 之间";
+        }
+        if (error != null) {
+            return ResponseEntity.badRequest().body(new SimulationController.ApiResponse(false, error, null));
+        }
+
+        logger.info("获取合并的区域速度分位数，运行ID: {}, 区域: {}, 分位点: {}", runIds, area, q);
+
+        try {
+            List<Map<String, Object>> result = areaOccupancyService.getSpeedQuantiles(
+                new ArrayList<>(new LinkedHashSet<>(runIds)), area, from, to,
+                q.stream().mapToDouble(Double::doubleValue).toArray());
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", result));
+        } catch (Exception e) {
+            logger.error("获取合并的区域速度分位数失败，运行ID: {}", runIds, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取区域 OD 矩阵：按出发时间窗口统计从起点区域到终点区域的人数
+     *
+     * @param from        出发时间下界（含）
+     * @param to          出发时间上界（不含）
+     * @param window      时间窗口长度（仿真秒），为空时合并为一个窗口
+     * @param transitions 是否同时返回区域间转移矩阵
+     * @param chains      返回最常见的完整区域序列的个数，0 时不返回
+     */
+    @GetMapping("/runs/{runId}/od-matrix")
+    public ResponseEntity<?> getOdMatrix(
+            @PathVariable Integer runId,
+            @RequestParam(required = false) Double from,
+            @RequestParam(required = false) Double to,
+            @RequestParam(required = false) Double window,
+            @RequestParam(defaultValue = "false") boolean transitions,
+            @RequestParam(defaultValue = "0") int chains) {
+
+        if (window != null && !(window > 0)) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "时间窗口长度必须大于 0", null));
+        }
+        if (chains < 0 || chains > MAX_OD_CHAINS) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "chains 必须在 0 - " + MAX_OD_CHAINS + " 之间", null));
+        }
+
+        logger.info("获取 OD 矩阵，运行ID: {}, 时间: {} - {}, 窗口: {}, 转移矩阵: {}, 区域序列: {}", runId, from, to,
+                    window, transitions, chains);
+
+        try {
+            Map<String, Object> result = odMatrixService.getOdMatrix(runId, from, to, window, transitions, chains);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", result));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, e.getMessage(), null));
+        } catch (Exception e) {
+            logger.error("获取 OD 矩阵失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取区域停留时间或区域间行程时间分布：分位数和直方图
+     *
+     * @param kind 为 dwell（停留时间）或 travel（离开 area 到进入 to 的时间）
+     * @param area 区域名称（行程时间为出发区域），为空时返回全部区域
+     * @param to   行程时间的目标区域，为空时返回全部目标区域
+     * @param bin  直方图每格的时间长度（仿真秒）
+     * @param bins 直方图格数，最后一格包含更长的时间段
+     */
+    @GetMapping("/runs/{runId}/areas/dwell")
+    public ResponseEntity<?> getAreaDwell(
+            @PathVariable Integer runId,
+            @RequestParam(defaultValue = "dwell") String kind,
+            @RequestParam(required = false) String area,
+            @RequestParam(required = false) String to,
+            @RequestParam(defaultValue = "0.05,0.5,0.95") List<Double> q,
+            @RequestParam(defaultValue = "30") double bin,
+            @RequestParam(defaultValue = "20") int bins) {
+
+        String error = validateDwellQuery(kind, q, bin, bins);
+        if (error != null) {
+            return ResponseEntity.badRequest().body(new SimulationController.ApiResponse(false, error, null));
+        }
+
+        logger.info("获取区域停留时间分布，运行ID: {}, 类型: {}, 区域: {} → {}, 分位点: {}, 直方图: {} x {}", runId, kind,
+                    area, to, q, bins, bin);
+
+        try {
+            List<Map<String, Object>> result = areaDwellService.getDistributions(runId, kind.toUpperCase(), area, to,
+                q.stream().mapToDouble(Double::doubleValue).toArray(), bin, bins);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", result));
+        } catch (Exception e) {
+            logger.error("获取区域停留时间分布失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 对比多个运行的区域停留时间或区域间行程时间分布
+     */
+    @GetMapping("/areas/dwell")
+    public ResponseEntity<?> compareAreaDwell(
+            @RequestParam List<Integer> runIds,
+            @RequestParam(defaultValue = "dwell") String kind,
+            @RequestParam(required = false) String area,
+            @RequestParam(required = false) String to,
+            @RequestParam(defaultValue = "0.05,0.5,0.95") List<Double> q,
+            @RequestParam(defaultValue = "30") double bin,
+            @RequestParam(defaultValue = "20") int bins) {
+
+        String error = validateDwellQuery(kind, q, bin, bins);
+        if (error == null && (runIds.isEmpty() || runIds.size() > MAX_MERGED_RUNS)) {
+            error = "runIds 数量必须在 1 - " + MAX_MERGED_RUNS + " 之间";
+        }
+        if (error != null) {
+            return ResponseEntity.badRequest().body(new SimulationController.ApiResponse(false, error, null));
+        }
+
+        logger.info("对比区域停留时间分布，运行ID: {}, 类型: {}, 区域: {} → {}", runIds, kind, area, to);
+
+        try {
+            List<Map<String, Object>> result = areaDwellService.compareDistributions(
+                new ArrayList<>(new LinkedHashSet<>(runIds)), kind.toUpperCase(), area, to,
+                q.stream().mapToDouble(Double::doubleValue).toArray(), bin, bins);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", result));
+        } catch (Exception e) {
+            logger.error("对比区域停留时间分布失败，运行ID: {}", runIds, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取逐帧拥挤统计：距离过近的行人对数、峰值密度及其 Fruin 服务水平、达到触发等级的区块
+     *
+     * @param from      起始仿真时间（含），为空时从第一帧开始
+     * @param to        结束仿真时间（含），为空时到最后一帧
+     * @param maxFrames 最多返回的帧数
+     */
+    @GetMapping("/runs/{runId}/crowding")
+    public ResponseEntity<?> getCrowding(
+            @PathVariable Integer runId,
+            @RequestParam(required = false) Double from,
+            @RequestParam(required = false) Double to,
+            @RequestParam(defaultValue = "1000") int maxFrames) {
+
+        if (maxFrames < 1 || maxFrames > MAX_CROWDING_FRAMES) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, "maxFrames 必须在 1 - " + MAX_CROWDING_FRAMES + " 之间", null));
+        }
+
+        logger.info("获取拥挤统计，运行ID: {}, 时间: {} - {}, 最多帧数: {}", runId, from, to, maxFrames);
+
+        try {
+            Map<String, Object> result = crowdingService.getFrameStats(runId, from, to, maxFrames);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", result));
+        } catch (Exception e) {
+            logger.error("获取拥挤统计失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "获取数据失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 重新检测已结束运行的拥挤事件（替换已有的 CROWDING_START / CROWDING_END 事件）
+     */
+    @PostMapping("/runs/{runId}/crowding/detect")
+    public ResponseEntity<?> detectCrowding(@PathVariable Integer runId) {
+        logger.info("重新检测拥挤事件，运行ID: {}", runId);
+
+        try {
+            Integer episodes = crowdingService.detect(runId);
+            if (episodes == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true,
+                "运行ID " + runId + " 检测到 " + episodes + " 次拥挤", episodes));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                .body(new SimulationController.ApiResponse(false, e.getMessage(), null));
+        } catch (Exception e) {
+            logger.error("重新检测拥挤事件失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "检测失败: " + e.getMessage(), null));
+        }
+    }
+
+    private static String validateDwellQuery(String kind, List<Double> quantiles, double bin, int bins) {
+        if (!AreaDwellStats.DWELL.equalsIgnoreCase(kind) && !AreaDwellStats.TRAVEL.equalsIgnoreCase(kind)) {
+            return "kind 必须为 dwell 或 travel";
+        }
+        if (!(bin > 0)) {
+            return "直方图每格的时间长度必须大于 0";
+        }
+        if (bins < 1 || bins > MAX_HISTOGRAM_BINS) {
+            return "bins 必须在 1 - " + MAX_HISTOGRAM_BINS + " 之间";
+        }
+        return validateQuantiles(quantiles);
+    }
+
+    private static String validateQuantiles(List<Double> quantiles) {
+        if (quantiles.isEmpty() || quantiles.size() > MAX_QUANTILES) {
+            return "分位点数量必须在 1 - " + MAX_QUANTILES + " 之间";
+        }
+        for (Double value : quantiles) {
+            if (value == null || !(value >= 0 && value <= 1)) {
+                return "分位点必须在 0 到 1 之间: " + value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 写入一批行人轨迹采样（经过降采样过滤）
+     */
+    @PostMapping("/pedestrians/{runId}/ingest")
+    public ResponseEntity<?> ingestPedestrianData(
+            @PathVariable Integer runId,
+            @RequestBody List<TrajectorySample> pedestrianData) {
+
+        logger.debug("写入行人轨迹采样，运行ID: {}, 数量: {}", runId, pedestrianData.size());
+
+        try {
+            TrajectoryIngestService.IngestResult result = trajectoryIngestService.ingestPedestrianData(runId, pedestrianData);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "写入成功", result));
+        } catch (Exception e) {
+            logger.error("写入行人轨迹采样失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "写入失败: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 获取写入队列指标（积压、缓冲、落盘、回放速率）
+     */
+    @GetMapping("/ingest/metrics")
+    public ResponseEntity<?> getIngestMetrics() {
+        return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", writeBehindQueue.getMetrics()));
+    }
+
+    /**
+     * 获取缓存指标（查询缓存、帧索引、空间索引、细节层级、计数线客流的条目数、占用、命中率、淘汰数）
+     */
+    @GetMapping("/cache/metrics")
+    public ResponseEntity<?> getCacheMetrics() {
+        List<CacheStats> stats = new ArrayList<>(runQueryCache.getStats());
+        stats.add(frameIndexService.getCacheStats());
+        stats.add(spatialIndexService.getCacheStats());
+        stats.add(lodPyramidService.getCacheStats());
+        stats.add(gateFlowService.getCacheStats());
+        return ResponseEntity.ok(new SimulationController.ApiResponse(true, "获取成功", stats));
+    }
+
     /**
      * 统计行人数量
      */
@@ -160,6 +1066,26 @@ public class DataController {
         }
     }
 
+    /**
+     * 写入一批事件日志
+     */
+    @PostMapping("/events/{runId}/ingest")
+    public ResponseEntity<?> ingestEvents(
+            @PathVariable Integer runId,
+            @RequestBody List<EventsLog> events) {
+
+        logger.debug("写入事件日志，运行ID: {}, 数量: {}", runId, events.size());
+
+        try {
+            int accepted = trajectoryIngestService.ingestEvents(runId, events);
+            return ResponseEntity.ok(new SimulationController.ApiResponse(true, "写入成功", accepted));
+        } catch (Exception e) {
+            logger.error("写入事件日志失败，运行ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new SimulationController.ApiResponse(false, "写入失败: " + e.getMessage(), null));
+        }
+    }
+
     /**
      * 根据事件类型获取事件日志
      */
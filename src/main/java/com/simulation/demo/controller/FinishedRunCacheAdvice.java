@@ -0,0 +1,104 @@
+package com.simulation.demo.controller;
+
+import com.simulation.demo.config.TrajectorySoaHttpMessageConverter;
+import com.simulation.demo.dto.RunDataVersion;
+import com.simulation.demo.service.SimulationDataService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.util.Map;
+
+/**
+ * 已结束运行的查询结果缓存头
+ *
+ * GET 请求返回基于数据版本的 ETag，请求带 If-None-Match 且版本未变时直接返回 304，不执行查询。
+ * 运行状态为结束时写入队列可能尚未落库，模型直接写入的轨迹也要等定时任务补算经纬度，
+ * 所以只有数据已完整（见 RunDataVersion#immutable）时才返回 Cache-Control: immutable，
+ * 否则返回 no-cache，客户端每次带 ETag 重新验证，数据变化后能拿到新结果。
+ * 作为拦截器注册到 /api/data/pedestrians/{runId}/**、/api/data/events/{runId}/** 和
+ * /api/data/runs/{runId}/**（见 WebMvcConfig）；
+ * 失败响应（success 为 false）改为 no-store，避免错误结果被缓存。
+ *
+ * ETag 使用弱校验形式（W/），Tomcat 对带强 ETag 的响应不做压缩。
+ */
+@ControllerAdvice
+public class FinishedRunCacheAdvice implements HandlerInterceptor, ResponseBodyAdvice<Object> {
+
+    private static final String CACHE_CONTROL_IMMUTABLE = "public, max-age=31536000, immutable";
+
+    private static final String CACHE_CONTROL_REVALIDATE = "no-cache";
+
+    private static final String ETAG_ATTRIBUTE = FinishedRunCacheAdvice.class.getName() + ".etag";
+
+    @Autowired
+    private SimulationDataService simulationDataService;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())) {
+            return true;
+        }
+        Integer runId = getRunId(request);
+        RunDataVersion version = runId != null ? simulationDataService.getFinishedRunVersion(runId) : null;
+        if (version == null) {
+            return true;
+        }
+
+        // 同一地址有 JSON 和二进制两种表示
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        boolean binary = accept != null && accept.contains(TrajectorySoaHttpMessageConverter.MEDIA_TYPE_VALUE);
+        String etag = "W/\"" + version.version() + (binary ? "-soa" : "") + "\"";
+        request.setAttribute(ETAG_ATTRIBUTE, etag);
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, version.immutable() ? CACHE_CONTROL_IMMUTABLE : CACHE_CONTROL_REVALIDATE);
+        return !new ServletWebRequest(request, response).checkNotModified(etag);
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (body instanceof SimulationController.ApiResponse apiResponse && !apiResponse.isSuccess()
+                && request instanceof ServletServerHttpRequest servletRequest
+                && servletRequest.getServletRequest().getAttribute(ETAG_ATTRIBUTE) != null
+                && response instanceof ServletServerHttpResponse servletResponse) {
+            // 直接替换已写入 servlet 响应的缓存头，通过 response.getHeaders() 设置会与其合并成两个值
+            servletResponse.getServletResponse().setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        }
+        return body;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Integer getRunId(HttpServletRequest request) {
+        Map<String, String> variables =
+            (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String runId = variables != null ? variables.get("runId") : null;
+        if (runId == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(runId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
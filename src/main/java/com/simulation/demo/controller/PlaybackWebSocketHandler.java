@@ -0,0 +1,125 @@
+package com.simulation.demo.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.simulation.demo.service.playback.PlaybackService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.List;
+
+/**
+ * 轨迹回放 WebSocket 接口 - ws://host:port/ws/playback/{runId}?speed=1&fps=20&start=0&paused=false
+ *
+ * 服务端按帧率推送插值后的帧，客户端发送 JSON 控制消息：
+ * {"type":"play"}、{"type":"pause"}、{"type":"seek","time":120.5}、{"type":"speed","value":2}、{"type":"fps","value":30}
+ */
+@Component
+public class PlaybackWebSocketHandler extends TextWebSocketHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlaybackWebSocketHandler.class);
+
+    private static final double DEFAULT_SPEED = 1.0;
+    private static final int DEFAULT_FPS = 20;
+
+    @Autowired
+    private PlaybackService playbackService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        try {
+            UriComponents uri = UriComponentsBuilder.fromUri(session.getUri()).build();
+            List<String> segments = uri.getPathSegments();
+            Integer runId = Integer.valueOf(segments.get(segments.size() - 1));
+
+            MultiValueMap<String, String> params = uri.getQueryParams();
+            double speed = parseDouble(params.getFirst("speed"), DEFAULT_SPEED);
+            int fps = (int) parseDouble(params.getFirst("fps"), DEFAULT_FPS);
+            Double start = params.getFirst("start") != null ? Double.valueOf(params.getFirst("start")) : null;
+            boolean paused = Boolean.parseBoolean(params.getFirst("paused"));
+            validateSpeed(speed);
+            validateFps(fps);
+
+            logger.info("回放连接建立，运行ID: {}, 会话: {}", runId, session.getId());
+            playbackService.open(session, runId, start, speed, fps, paused);
+        } catch (IllegalArgumentException e) {
+            session.close(CloseStatus.BAD_DATA.withReason(e.getMessage()));
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        String type;
+        double value;
+        try {
+            JsonNode node = objectMapper.readTree(message.getPayload());
+            type = node.path("type").asText();
+            switch (type) {
+                case "play", "pause" -> value = 0;
+                case "seek" -> value = requireNumber(node, "time");
+                case "speed" -> {
+                    value = requireNumber(node, "value");
+                    validateSpeed(value);
+                }
+                case "fps" -> {
+                    value = requireNumber(node, "value");
+                    validateFps((int) value);
+                }
+                default -> throw new IllegalArgumentException("未知的控制消息: " + type);
+            }
+        } catch (Exception e) {
+            logger.debug("无效的回放控制消息: {}, 错误: {}", message.getPayload(), e.getMessage());
+            // 推送线程可能同时在发送，错误消息也经由回放会话发送
+            playbackService.sendError(session.getId(), "无效的控制消息: " + e.getMessage());
+            return;
+        }
+        playbackService.control(session.getId(), type, value);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        logger.info("回放连接关闭，会话: {}, 状态: {}", session.getId(), status);
+        playbackService.close(session.getId());
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        logger.debug("回放连接传输错误，会话: {}, 错误: {}", session.getId(), exception.getMessage());
+        playbackService.close(session.getId());
+    }
+
+    private static double parseDouble(String value, double defaultValue) {
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    private static double requireNumber(JsonNode node, String field) {
+        if (!node.path(field).isNumber()) {
+            throw new IllegalArgumentException("缺少数值字段 " + field);
+        }
+        return node.path(field).asDouble();
+    }
+
+    private static void validateSpeed(double speed) {
+        if (!(speed > 0 && speed <= PlaybackService.MAX_SPEED)) {
+            throw new IllegalArgumentException("播放倍速必须在 (0, " + PlaybackService.MAX_SPEED + "] 之间");
+        }
+    }
+
+    private static void validateFps(int fps) {
+        if (fps < 1 || fps > PlaybackService.MAX_FPS) {
+            throw new IllegalArgumentException("帧率必须在 1 到 " + PlaybackService.MAX_FPS + " 之间");
+        }
+    }
+}
@@ -292,6 +292,30 @@ public class SimulationController {
         }
     }
 
+    /**
+     * 删除模拟运行记录及其轨迹、事件数据
+     */
+    @DeleteMapping("/runs/{runId}")
+    public ResponseEntity<?> deleteSimulationRun(@PathVariable Integer runId) {
+        logger.info("删除模拟运行记录，ID: {}", runId);
+
+        try {
+            boolean deleted = simulationDataService.deleteSimulationRun(runId);
+            if (deleted) {
+                return ResponseEntity.ok(new ApiResponse(true, "删除成功", runId));
+            } else {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                .body(new ApiResponse(false, e.getMessage(), null));
+        } catch (Exception e) {
+            logger.error("删除模拟运行记录失败，ID: {}", runId, e);
+            return ResponseEntity.internalServerError()
+                .body(new ApiResponse(false, "删除失败: " + e.getMessage(), null));
+        }
+    }
+
     /**
      * 根据时间范围获取模拟运行记录
      */
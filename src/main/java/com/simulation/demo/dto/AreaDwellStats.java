@@ -0,0 +1,20 @@
+package com.simulation.demo.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * 一个运行中一个区域的停留时间分布，或一对区域之间的行程时间分布
+ *
+ * @param kind         DWELL（停留时间，toArea 为 null）或 TRAVEL（离开 fromArea 到进入 toArea 的时间）
+ * @param count        时间段个数
+ * @param totalSeconds 时间段总长（仿真秒），与 count 一起得到平均值
+ * @param maxSeconds   最长的时间段
+ * @param sketch       序列化的分位数草图（SpeedSketch），不输出
+ */
+public record AreaDwellStats(String kind, String fromArea, String toArea, long count, double totalSeconds,
+                             double maxSeconds, @JsonIgnore byte[] sketch) {
+
+    public static final String DWELL = "DWELL";
+
+    public static final String TRAVEL = "TRAVEL";
+}
@@ -0,0 +1,23 @@
+package com.simulation.demo.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * 区域占用时间序列的一行 - 一个区域在一个时间桶 [startTime, startTime + bucketSeconds) 内的统计
+ *
+ * @param pedestrianCount 时间桶内出现过的行人数（去重）
+ * @param maxCount        时间桶内同一仿真时刻区域内人数的最大值
+ * @param meanSpeed       时间桶内区域中采样的平均速度，没有速度数据时为 null
+ * @param sampleCount     参与统计的采样数
+ * @param speedSketch     序列化的速度分位数草图（SpeedSketch），只在需要时读取，不输出
+ */
+public record AreaOccupancy(String areaName, long timeBucket, double startTime, double bucketSeconds,
+                            int pedestrianCount, int maxCount, Double meanSpeed, long sampleCount,
+                            @JsonIgnore byte[] speedSketch) {
+
+    public static AreaOccupancy of(String areaName, long timeBucket, double bucketSeconds, int pedestrianCount,
+                                   int maxCount, Double meanSpeed, long sampleCount, byte[] speedSketch) {
+        return new AreaOccupancy(areaName, timeBucket, timeBucket * bucketSeconds, bucketSeconds,
+                                 pedestrianCount, maxCount, meanSpeed, sampleCount, speedSketch);
+    }
+}
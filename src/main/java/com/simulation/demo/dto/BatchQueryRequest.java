@@ -0,0 +1,30 @@
+package com.simulation.demo.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 批量轨迹查询请求，三类查询都可以为空
+ *
+ * @param simTimes      要读取的帧的仿真时间
+ * @param nearest       为 true 时每个时间返回最接近的一帧
+ * @param pedestrianIds 要读取完整轨迹的行人
+ * @param timeRanges    要读取的时间段
+ */
+public record BatchQueryRequest(
+        List<BigDecimal> simTimes,
+        boolean nearest,
+        List<Integer> pedestrianIds,
+        List<TimeRange> timeRanges) {
+
+    public record TimeRange(BigDecimal startTime, BigDecimal endTime) {
+    }
+
+    public int keyCount() {
+        return size(simTimes) + size(pedestrianIds) + size(timeRanges);
+    }
+
+    private static int size(List<?> list) {
+        return list != null ? list.size() : 0;
+    }
+}
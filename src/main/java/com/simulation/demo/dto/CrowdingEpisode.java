@@ -0,0 +1,24 @@
+package com.simulation.demo.dto;
+
+/**
+ * 一次拥挤过程，序列化为 CROWDING_START / CROWDING_END 事件的 event_details
+ *
+ * 开始事件中峰值即为开始时的值，endTime 等于 startTime；结束事件中为整个过程的值。
+ *
+ * @param x              峰值所在网格的中心（轨迹像素坐标）
+ * @param y              峰值所在网格的中心（轨迹像素坐标）
+ * @param startTime      第一次达到触发等级的时间
+ * @param endTime        最后一次达到触发等级的时间
+ * @param peakTime       密度最高的时间
+ * @param peakDensity    峰值密度（人/平方米）
+ * @param peakLevel      峰值密度的 Fruin 服务水平
+ * @param peakCount      峰值网格内人数
+ * @param maxClosePairs  区块内距离过近的行人对数的最大值
+ */
+public record CrowdingEpisode(double x, double y, double startTime, double endTime, double peakTime,
+                              double peakDensity, String peakLevel, int peakCount, long maxClosePairs) {
+
+    public static final String START = "CROWDING_START";
+
+    public static final String END = "CROWDING_END";
+}
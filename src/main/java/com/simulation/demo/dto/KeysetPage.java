@@ -0,0 +1,50 @@
+package com.simulation.demo.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ */
+public class KeysetPage<T> {
+
+    private final List<T> content;
+    private final int size;
+    private final String nextCursor;
+
+    // 仅在请求 withTotal=true 时返回
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Long totalElements;
+
+    public KeysetPage(List<T> content, int size, String nextCursor, Long totalElements) {
+        this.content = content;
+        this.size = size;
+        this.nextCursor = nextCursor;
+        this.totalElements = totalElements;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getNumberOfElements() {
+        return content.size();
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isHasNext() {
+        return nextCursor != null;
+    }
+
+    public Long getTotalElements() {
+        return totalElements;
+    }
+}
@@ -0,0 +1,10 @@
+package com.simulation.demo.dto;
+
+/**
+ * 已结束运行的数据版本，用作查询接口的 ETag
+ *
+ * @param version   由运行状态、轨迹行数、已有经纬度的行数和事件数组成
+ * @param immutable 数据已完整落库（收到数据写入完成事件）且所有轨迹都已有经纬度，之后不会再变化
+ */
+public record RunDataVersion(String version, boolean immutable) {
+}
@@ -0,0 +1,18 @@
+package com.simulation.demo.dto;
+
+import java.util.List;
+
+/**
+ * 实时跟踪结果 - 游标之后写入的一批采样
+ *
+ * @param content    按写入顺序（id）排列的采样
+ * @param nextCursor 下次请求的游标，即本批最后一行的 id；没有新数据时与请求的游标相同
+ * @param hasMore    达到 limit，游标之后还有已写入的数据，应立即再次请求
+ * @param complete   运行已结束且数据全部写入，游标之后不会再有新数据
+ */
+public record TailPage(List<TrajectorySample> content, long nextCursor, boolean hasMore, boolean complete) {
+
+    public static TailPage empty(long cursor) {
+        return new TailPage(List.of(), cursor, false, false);
+    }
+}
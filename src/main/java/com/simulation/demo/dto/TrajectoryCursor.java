@@ -0,0 +1,45 @@
+package com.simulation.demo.dto;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * 轨迹分页游标 - 上一页最后一行的排序键 (sim_time, pedestrian_id, id)
+ *
+ * 对外编码为 base64url 的不透明字符串，客户端原样回传即可。
+ */
+public record TrajectoryCursor(double simTime, int pedestrianId, long id) {
+
+    private static final int ENCODED_BYTES = Double.BYTES + Integer.BYTES + Long.BYTES;
+
+    public static TrajectoryCursor after(TrajectorySample sample) {
+        return new TrajectoryCursor(sample.simTime(), sample.pedestrianId(), sample.id());
+    }
+
+    /**
+     * sim_time 列为 DECIMAL(10,3)，按列精度还原，避免与浮点数比较导致不走索引
+     */
+    public BigDecimal simTimeDecimal() {
+        return BigDecimal.valueOf(simTime).setScale(3, RoundingMode.HALF_UP);
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_BYTES);
+        buffer.putDouble(simTime).putInt(pedestrianId).putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    public static TrajectoryCursor decode(String token) {
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        if (bytes.length != ENCODED_BYTES) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new TrajectoryCursor(buffer.getDouble(), buffer.getInt(), buffer.getLong());
+    }
+}
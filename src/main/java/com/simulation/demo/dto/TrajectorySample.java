@@ -0,0 +1,71 @@
+package com.simulation.demo.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.simulation.demo.entity.PedestrianData;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 轨迹采样 - pedestrian_data 一行的只读值对象
+ *
+ * 读写热路径（查询接口、入库、坐标转换）使用它代替 PedestrianData 实体：
+ * 全部为基本类型字段，一行只有一次对象分配，不经过 Hibernate 会话。
+ * 可为空的数值列用 NaN 表示空值，JSON 中输出为 null。
+ */
+@JsonSerialize(using = TrajectorySampleJson.Serializer.class)
+@JsonDeserialize(using = TrajectorySampleJson.Deserializer.class)
+public record TrajectorySample(
+        long id,
+        int runId,
+        double simTime,
+        LocalDateTime modelDate,
+        int pedestrianId,
+        double posX,
+        double posY,
+        float posZ,
+        float speed,
+        String areaName,
+        double lat,
+        double lon) {
+
+    public boolean hasPosition() {
+        return !Double.isNaN(posX) && !Double.isNaN(posY);
+    }
+
+    public boolean hasLatLon() {
+        return !Double.isNaN(lat) && !Double.isNaN(lon);
+    }
+
+    public TrajectorySample withRunId(int newRunId) {
+        return new TrajectorySample(id, newRunId, simTime, modelDate, pedestrianId, posX, posY, posZ, speed, areaName, lat, lon);
+    }
+
+    public TrajectorySample withLatLon(double newLat, double newLon) {
+        return new TrajectorySample(id, runId, simTime, modelDate, pedestrianId, posX, posY, posZ, speed, areaName, newLat, newLon);
+    }
+
+    /**
+     * 从实体转换（管理类接口与旧代码的兼容入口）
+     */
+    public static TrajectorySample of(PedestrianData data) {
+        return new TrajectorySample(
+            data.getId() != null ? data.getId() : 0L,
+            data.getRunId() != null ? data.getRunId() : 0,
+            toDouble(data.getSimTime()),
+            data.getModelDate(),
+            data.getPedestrianId() != null ? data.getPedestrianId() : 0,
+            toDouble(data.getPosX()),
+            toDouble(data.getPosY()),
+            (float) toDouble(data.getPosZ()),
+            (float) toDouble(data.getSpeed()),
+            data.getAreaName(),
+            data.getLat() != null ? data.getLat() : Double.NaN,
+            data.getLon() != null ? data.getLon() : Double.NaN);
+    }
+
+    private static double toDouble(BigDecimal value) {
+        return value != null ? value.doubleValue() : Double.NaN;
+    }
+}
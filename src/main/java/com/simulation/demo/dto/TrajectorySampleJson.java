@@ -0,0 +1,128 @@
+package com.simulation.demo.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * TrajectorySample 的 JSON 编解码
+ *
+ * 字段名与 PedestrianData 实体的 JSON 保持一致，直接写基本类型，不经过反射和 BigDecimal。
+ */
+public final class TrajectorySampleJson {
+
+    private TrajectorySampleJson() {
+    }
+
+    public static class Serializer extends StdSerializer<TrajectorySample> {
+
+        public Serializer() {
+            super(TrajectorySample.class);
+        }
+
+        @Override
+        public void serialize(TrajectorySample sample, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            write(sample, gen);
+        }
+
+        /**
+         * 直接写出一个采样对象（流式导出时不经过 ObjectMapper）
+         */
+        public static void write(TrajectorySample sample, JsonGenerator gen) throws IOException {
+            gen.writeStartObject();
+            gen.writeNumberField("id", sample.id());
+            gen.writeNumberField("runId", sample.runId());
+            writeNumber(gen, "simTime", sample.simTime());
+            if (sample.modelDate() != null) {
+                gen.writeStringField("modelDate", DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(sample.modelDate()));
+            } else {
+                gen.writeNullField("modelDate");
+            }
+            gen.writeNumberField("pedestrianId", sample.pedestrianId());
+            writeNumber(gen, "posX", sample.posX());
+            writeNumber(gen, "posY", sample.posY());
+            writeNumber(gen, "posZ", sample.posZ());
+            writeNumber(gen, "speed", sample.speed());
+            gen.writeStringField("areaName", sample.areaName());
+            writeNumber(gen, "lat", sample.lat());
+            writeNumber(gen, "lon", sample.lon());
+            gen.writeEndObject();
+        }
+
+        private static void writeNumber(JsonGenerator gen, String name, double value) throws IOException {
+            if (Double.isNaN(value)) {
+                gen.writeNullField(name);
+            } else {
+                gen.writeNumberField(name, value);
+            }
+        }
+
+        private static void writeNumber(JsonGenerator gen, String name, float value) throws IOException {
+            if (Float.isNaN(value)) {
+                gen.writeNullField(name);
+            } else {
+                gen.writeNumberField(name, value);
+            }
+        }
+    }
+
+    public static class Deserializer extends StdDeserializer<TrajectorySample> {
+
+        public Deserializer() {
+            super(TrajectorySample.class);
+        }
+
+        @Override
+        public TrajectorySample deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.currentToken() != JsonToken.START_OBJECT) {
+                return (TrajectorySample) ctxt.handleUnexpectedToken(TrajectorySample.class, p);
+            }
+
+            long id = 0;
+            int runId = 0;
+            int pedestrianId = 0;
+            double simTime = Double.NaN;
+            double posX = Double.NaN;
+            double posY = Double.NaN;
+            double posZ = Double.NaN;
+            double speed = Double.NaN;
+            double lat = Double.NaN;
+            double lon = Double.NaN;
+            LocalDateTime modelDate = null;
+            String areaName = null;
+
+            String field;
+            while ((field = p.nextFieldName()) != null) {
+                JsonToken token = p.nextToken();
+                if (token == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                switch (field) {
+                    case "id" -> id = p.getValueAsLong();
+                    case "runId" -> runId = p.getValueAsInt();
+                    case "pedestrianId" -> pedestrianId = p.getValueAsInt();
+                    case "simTime" -> simTime = p.getValueAsDouble();
+                    case "posX" -> posX = p.getValueAsDouble();
+                    case "posY" -> posY = p.getValueAsDouble();
+                    case "posZ" -> posZ = p.getValueAsDouble();
+                    case "speed" -> speed = p.getValueAsDouble();
+                    case "lat" -> lat = p.getValueAsDouble();
+                    case "lon" -> lon = p.getValueAsDouble();
+                    case "areaName" -> areaName = p.getValueAsString();
+                    case "modelDate" -> modelDate = LocalDateTime.parse(p.getValueAsString());
+                    default -> p.skipChildren();
+                }
+            }
+            return new TrajectorySample(id, runId, simTime, modelDate, pedestrianId,
+                posX, posY, (float) posZ, (float) speed, areaName, lat, lon);
+        }
+    }
+}
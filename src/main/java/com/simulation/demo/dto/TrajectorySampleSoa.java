@@ -0,0 +1,157 @@
+package com.simulation.demo.dto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 轨迹采样的二进制列式编码（application/x-trajectory-soa）
+ *
+ * 全部为小端序。头部之后按列连续存放，每列 rowCount 个值；头部补齐到 8 字节，
+ * 各列起始位置都按元素大小对齐，客户端可直接用 Float64Array/Float32Array 等视图读取。
+ *
+ * <pre>
+ * 头部
+ *   u32  magic        "TSOA"
+ *   u16  version      1
+ *   u16  flags        bit0 success, bit1 含经纬度列, bit2 结果被截断
+ *   u32  rowCount
+ *   u16  messageBytes
+ *   u16  cursorBytes
+ *   ...  message      UTF-8
+ *   ...  nextCursor   UTF-8，没有下一页时为空
+ *   u16  areaCount
+ *   ...  areaCount 个 (u16 字节数 + UTF-8) 区域名
+ *   ...  补 0 到 8 字节对齐
+ * 列
+ *   i64  id
+ *   f64  simTime
+ *   f64  lat, f64 lon    仅 bit1 置位时存在，缺失值为 NaN
+ *   f32  posX, posY, posZ, speed    缺失值为 NaN
+ *   i32  pedestrianId
+ *   i16  area            区域名序号，-1 表示没有区域
+ * </pre>
+ * 不包含 runId（请求路径中已有）和 modelDate。
+ */
+public final class TrajectorySampleSoa {
+
+    public static final int MAGIC = 0x414F5354; // "TSOA"
+    public static final int VERSION = 1;
+    public static final int FLAG_SUCCESS = 1;
+    public static final int FLAG_LAT_LON = 2;
+    public static final int FLAG_TRUNCATED = 4;
+
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private TrajectorySampleSoa() {
+    }
+
+    public static void write(boolean success, String message, String nextCursor, boolean truncated,
+                             List<TrajectorySample> samples, OutputStream out) throws IOException {
+        int rowCount = samples.size();
+        boolean latLon = false;
+        Map<String, Integer> areaIds = new HashMap<>();
+        List<byte[]> areaNames = new ArrayList<>();
+        short[] areas = new short[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            TrajectorySample sample = samples.get(i);
+            latLon |= sample.hasLatLon();
+            String areaName = sample.areaName();
+            if (areaName == null) {
+                areas[i] = -1;
+                continue;
+            }
+            Integer id = areaIds.get(areaName);
+            if (id == null) {
+                if (areaNames.size() > Short.MAX_VALUE) {
+                    throw new IllegalStateException("区域名数量超过 " + (Short.MAX_VALUE + 1));
+                }
+                id = areaNames.size();
+                areaIds.put(areaName, id);
+                areaNames.add(utf8(areaName));
+            }
+            areas[i] = id.shortValue();
+        }
+
+        byte[] messageBytes = utf8(message);
+        byte[] cursorBytes = utf8(nextCursor);
+        int headerBytes = 16 + messageBytes.length + cursorBytes.length + 2;
+        for (byte[] name : areaNames) {
+            headerBytes += 2 + name.length;
+        }
+        headerBytes = (headerBytes + 7) & ~7;
+        int rowBytes = 8 + 8 + (latLon ? 16 : 0) + 4 * 4 + 4 + 2;
+        long totalBytes = headerBytes + (long) rowCount * rowBytes;
+        if (totalBytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("结果过大，无法编码: " + rowCount + " 行");
+        }
+
+        int flags = (success ? FLAG_SUCCESS : 0) | (latLon ? FLAG_LAT_LON : 0) | (truncated ? FLAG_TRUNCATED : 0);
+        ByteBuffer buffer = ByteBuffer.allocate((int) totalBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putShort((short) VERSION).putShort((short) flags).putInt(rowCount);
+        buffer.putShort((short) messageBytes.length).putShort((short) cursorBytes.length);
+        buffer.put(messageBytes).put(cursorBytes);
+        buffer.putShort((short) areaNames.size());
+        for (byte[] name : areaNames) {
+            buffer.putShort((short) name.length).put(name);
+        }
+        buffer.position(headerBytes);
+
+        for (TrajectorySample sample : samples) {
+            buffer.putLong(sample.id());
+        }
+        for (TrajectorySample sample : samples) {
+            buffer.putDouble(sample.simTime());
+        }
+        if (latLon) {
+            for (TrajectorySample sample : samples) {
+                buffer.putDouble(sample.lat());
+            }
+            for (TrajectorySample sample : samples) {
+                buffer.putDouble(sample.lon());
+            }
+        }
+        for (TrajectorySample sample : samples) {
+            buffer.putFloat((float) sample.posX());
+        }
+        for (TrajectorySample sample : samples) {
+            buffer.putFloat((float) sample.posY());
+        }
+        for (TrajectorySample sample : samples) {
+            buffer.putFloat(sample.posZ());
+        }
+        for (TrajectorySample sample : samples) {
+            buffer.putFloat(sample.speed());
+        }
+        for (TrajectorySample sample : samples) {
+            buffer.putInt(sample.pedestrianId());
+        }
+        for (short area : areas) {
+            buffer.putShort(area);
+        }
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    private static byte[] utf8(String value) {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= MAX_STRING_BYTES) {
+            return bytes;
+        }
+        // 截断到不超过上限的完整字符
+        String truncated = value;
+        while (bytes.length > MAX_STRING_BYTES) {
+            truncated = truncated.substring(0, truncated.length() * MAX_STRING_BYTES / bytes.length);
+            bytes = truncated.getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+}
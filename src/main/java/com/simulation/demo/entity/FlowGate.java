@@ -0,0 +1,112 @@
+package com.simulation.demo.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 计数线（闸口）- 场地坐标系中的线段 A(x1, y1) → B(x2, y2)，统计行人穿过的次数
+ *
+ * 所有运行共用，创建后不可修改（修改几何需删除后重新创建）。
+ */
+@Entity
+@Table(name = "flow_gates")
+public class FlowGate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "gate_id")
+    private Integer gateId;
+
+    @Column(name = "name", nullable = false, length = 100)
+    private String name;
+
+    @Column(name = "x1", nullable = false)
+    private Double x1;
+
+    @Column(name = "y1", nullable = false)
+    private Double y1;
+
+    @Column(name = "x2", nullable = false)
+    private Double x2;
+
+    @Column(name = "y2", nullable = false)
+    private Double y2;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // 构造函数
+    public FlowGate() {}
+
+    public FlowGate(String name, double x1, double y1, double x2, double y2) {
+        this.name = name;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+
+    // Getter 和 Setter
+    public Integer getGateId() {
+        return gateId;
+    }
+
+    public void setGateId(Integer gateId) {
+        this.gateId = gateId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Double getX1() {
+        return x1;
+    }
+
+    public void setX1(Double x1) {
+        this.x1 = x1;
+    }
+
+    public Double getY1() {
+        return y1;
+    }
+
+    public void setY1(Double y1) {
+        this.y1 = y1;
+    }
+
+    public Double getX2() {
+        return x2;
+    }
+
+    public void setX2(Double x2) {
+        this.x2 = x2;
+    }
+
+    public Double getY2() {
+        return y2;
+    }
+
+    public void setY2(Double y2) {
+        this.y2 = y2;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
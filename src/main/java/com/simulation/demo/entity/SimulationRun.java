@@ -47,6 +47,19 @@ public class SimulationRun {
     @Column(name = "model_port")
     private Integer modelPort;
 
+    // 轨迹降采样设置（入库时的航位推算过滤），读取方据此用线性插值还原被丢弃的位置
+    @Column(name = "downsample_enabled")
+    private Boolean downsampleEnabled;
+
+    @Column(name = "downsample_distance_tolerance")
+    private Double downsampleDistanceTolerance;
+
+    @Column(name = "downsample_heading_tolerance")
+    private Double downsampleHeadingTolerance;
+
+    @Column(name = "downsample_max_interval")
+    private Double downsampleMaxInterval;
+
         // 修改关联关系，添加 @JsonIgnoreProperties
     @OneToMany(mappedBy = "simulationRun", fetch = FetchType.LAZY)
     @JsonIgnoreProperties({"hibernateLazyInitializer", "handler", "simulationRun"})
@@ -146,6 +159,38 @@ public class SimulationRun {
         this.modelPort = modelPort;
     }
 
+    public Boolean getDownsampleEnabled() {
+        return downsampleEnabled;
+    }
+
+    public void setDownsampleEnabled(Boolean downsampleEnabled) {
+        this.downsampleEnabled = downsampleEnabled;
+    }
+
+    public Double getDownsampleDistanceTolerance() {
+        return downsampleDistanceTolerance;
+    }
+
+    public void setDownsampleDistanceTolerance(Double downsampleDistanceTolerance) {
+        this.downsampleDistanceTolerance = downsampleDistanceTolerance;
+    }
+
+    public Double getDownsampleHeadingTolerance() {
+        return downsampleHeadingTolerance;
+    }
+
+    public void setDownsampleHeadingTolerance(Double downsampleHeadingTolerance) {
+        this.downsampleHeadingTolerance = downsampleHeadingTolerance;
+    }
+
+    public Double getDownsampleMaxInterval() {
+        return downsampleMaxInterval;
+    }
+
+    public void setDownsampleMaxInterval(Double downsampleMaxInterval) {
+        this.downsampleMaxInterval = downsampleMaxInterval;
+    }
+
     public List<PedestrianData> getPedestrianDataList() {
         return pedestrianDataList;
     }
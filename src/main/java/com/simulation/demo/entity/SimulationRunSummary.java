@@ -0,0 +1,174 @@
+package com.simulation.demo.entity;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 运行汇总统计 - 运行结束、数据全部落库后计算一次，之后只读
+ *
+ * areaPeaks、eventTypeCounts 以 JSON 文本保存，接口中原样输出为 JSON。
+ */
+@Entity
+@Table(name = "simulation_run_summary")
+public class SimulationRunSummary {
+
+    @Id
+    @Column(name = "run_id")
+    private Integer runId;
+
+    @Column(name = "pedestrian_count", nullable = false)
+    private Long pedestrianCount;
+
+    @Column(name = "sample_count", nullable = false)
+    private Long sampleCount;
+
+    @Column(name = "min_sim_time")
+    private Double minSimTime;
+
+    @Column(name = "max_sim_time")
+    private Double maxSimTime;
+
+    @Column(name = "min_speed")
+    private Double minSpeed;
+
+    @Column(name = "mean_speed")
+    private Double meanSpeed;
+
+    @Column(name = "max_speed")
+    private Double maxSpeed;
+
+    @Column(name = "speed_stddev")
+    private Double speedStddev;
+
+    @Column(name = "event_count", nullable = false)
+    private Long eventCount;
+
+    // [{"areaName": ..., "peakCount": ..., "peakTime": ..., "maxPedestrians": ...}]
+    @Column(name = "area_peaks", columnDefinition = "TEXT")
+    private String areaPeaks;
+
+    // [["事件类型", 数量], ...]，与事件类型统计接口的格式相同
+    @Column(name = "event_type_counts", columnDefinition = "TEXT")
+    private String eventTypeCounts;
+
+    @Column(name = "computed_at", nullable = false)
+    private LocalDateTime computedAt;
+
+    // 构造函数
+    public SimulationRunSummary() {}
+
+    @PrePersist
+    protected void onCreate() {
+        if (computedAt == null) {
+            computedAt = LocalDateTime.now();
+        }
+    }
+
+    // Getter 和 Setter
+    public Integer getRunId() {
+        return runId;
+    }
+
+    public void setRunId(Integer runId) {
+        this.runId = runId;
+    }
+
+    public Long getPedestrianCount() {
+        return pedestrianCount;
+    }
+
+    public void setPedestrianCount(Long pedestrianCount) {
+        this.pedestrianCount = pedestrianCount;
+    }
+
+    public Long getSampleCount() {
+        return sampleCount;
+    }
+
+    public void setSampleCount(Long sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    public Double getMinSimTime() {
+        return minSimTime;
+    }
+
+    public void setMinSimTime(Double minSimTime) {
+        this.minSimTime = minSimTime;
+    }
+
+    public Double getMaxSimTime() {
+        return maxSimTime;
+    }
+
+    public void setMaxSimTime(Double maxSimTime) {
+        this.maxSimTime = maxSimTime;
+    }
+
+    public Double getMinSpeed() {
+        return minSpeed;
+    }
+
+    public void setMinSpeed(Double minSpeed) {
+        this.minSpeed = minSpeed;
+    }
+
+    public Double getMeanSpeed() {
+        return meanSpeed;
+    }
+
+    public void setMeanSpeed(Double meanSpeed) {
+        this.meanSpeed = meanSpeed;
+    }
+
+    public Double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public void setMaxSpeed(Double maxSpeed) {
+        this.maxSpeed = maxSpeed;
+    }
+
+    public Double getSpeedStddev() {
+        return speedStddev;
+    }
+
+    public void setSpeedStddev(Double speedStddev) {
+        this.speedStddev = speedStddev;
+    }
+
+    public Long getEventCount() {
+        return eventCount;
+    }
+
+    public void setEventCount(Long eventCount) {
+        this.eventCount = eventCount;
+    }
+
+    @JsonRawValue
+    public String getAreaPeaks() {
+        return areaPeaks;
+    }
+
+    public void setAreaPeaks(String areaPeaks) {
+        this.areaPeaks = areaPeaks;
+    }
+
+    @JsonRawValue
+    public String getEventTypeCounts() {
+        return eventTypeCounts;
+    }
+
+    public void setEventTypeCounts(String eventTypeCounts) {
+        this.eventTypeCounts = eventTypeCounts;
+    }
+
+    public LocalDateTime getComputedAt() {
+        return computedAt;
+    }
+
+    public void setComputedAt(LocalDateTime computedAt) {
+        this.computedAt = computedAt;
+    }
+}
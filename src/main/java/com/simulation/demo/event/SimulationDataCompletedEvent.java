@@ -0,0 +1,21 @@
+package com.simulation.demo.event;
+
+/**
+ * 运行数据写入完成事件
+ *
+ * 运行终止、降采样器补写完最后的采样且写入队列已落库后由 TrajectoryIngestService 发布，
+ * 之后该运行的 pedestrian_data / events_log 不再变化，可以建立索引和汇总。
+ * 结束后的数据被改写（补算经纬度）且该运行已全部补算完时由 CoordinateConversionService 再次发布一次。
+ */
+public class SimulationDataCompletedEvent {
+
+    private final Integer runId;
+
+    public SimulationDataCompletedEvent(Integer runId) {
+        this.runId = runId;
+    }
+
+    public Integer getRunId() {
+        return runId;
+    }
+}
@@ -0,0 +1,20 @@
+package com.simulation.demo.event;
+
+/**
+ * 运行事件日志变化事件
+ *
+ * 已结束运行的 events_log 被改写（重新检测拥挤事件）且写入队列已落库后由 CrowdingService 发布。
+ * 轨迹数据不变，帧索引、空间索引等不需要重建；查询缓存和运行汇总中的事件统计随之更新。
+ */
+public class SimulationEventsChangedEvent {
+
+    private final Integer runId;
+
+    public SimulationEventsChangedEvent(Integer runId) {
+        this.runId = runId;
+    }
+
+    public Integer getRunId() {
+        return runId;
+    }
+}
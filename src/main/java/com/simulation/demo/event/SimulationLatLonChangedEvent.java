@@ -0,0 +1,20 @@
+package com.simulation.demo.event;
+
+/**
+ * 运行经纬度补算进度事件
+ *
+ * 已结束运行的部分行被兜底坐标转换补上经纬度、但仍有待转换的行时由 CoordinateConversionService 发布，
+ * 只需更新查询缓存和 ETag；全部补算完成后改为发布 {@link SimulationDataCompletedEvent}，帧索引等才重建。
+ */
+public class SimulationLatLonChangedEvent {
+
+    private final Integer runId;
+
+    public SimulationLatLonChangedEvent(Integer runId) {
+        this.runId = runId;
+    }
+
+    public Integer getRunId() {
+        return runId;
+    }
+}
@@ -0,0 +1,19 @@
+package com.simulation.demo.event;
+
+/**
+ * 仿真运行删除事件
+ *
+ * 运行记录及其轨迹、事件数据删除后发布，供内存中的按运行缓存/索引释放对应条目
+ */
+public class SimulationRunDeletedEvent {
+
+    private final Integer runId;
+
+    public SimulationRunDeletedEvent(Integer runId) {
+        this.runId = runId;
+    }
+
+    public Integer getRunId() {
+        return runId;
+    }
+}
@@ -0,0 +1,38 @@
+package com.simulation.demo.event;
+
+import com.anylogic.engine.Experiment;
+
+/**
+ * 仿真运行状态变更事件
+ *
+ * 由 AnyLogicModelService 在写入新状态后发布，供数据侧服务在运行结束时做收尾处理
+ */
+public class SimulationStateChangedEvent {
+
+    private final Integer runId;
+    private final Experiment.State state;
+
+    public SimulationStateChangedEvent(Integer runId, Experiment.State state) {
+        this.runId = runId;
+        this.state = state;
+    }
+
+    public Integer getRunId() {
+        return runId;
+    }
+
+    public Experiment.State getState() {
+        return state;
+    }
+
+    /**
+     * 运行是否已经终止（之后不会再有新的轨迹写入）
+     */
+    public boolean isTerminal() {
+        return isTerminal(state);
+    }
+
+    public static boolean isTerminal(Experiment.State state) {
+        return state == Experiment.State.FINISHED || state == Experiment.State.ERROR;
+    }
+}
@@ -0,0 +1,20 @@
+package com.simulation.demo.event;
+
+/**
+ * 轨迹采样写入事件
+ *
+ * 写入队列把一批 pedestrian_data 提交到数据库后，按批次中的每个运行由 WriteBehindQueue 发布，
+ * 用于通知等待新数据的实时跟踪请求。在写入线程中同步调用，监听方需尽快返回。
+ */
+public class TrajectorySamplesWrittenEvent {
+
+    private final Integer runId;
+
+    public TrajectorySamplesWrittenEvent(Integer runId) {
+        this.runId = runId;
+    }
+
+    public Integer getRunId() {
+        return runId;
+    }
+}
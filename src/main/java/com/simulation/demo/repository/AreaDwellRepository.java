@@ -0,0 +1,53 @@
+package com.simulation.demo.repository;
+
+import com.simulation.demo.dto.AreaDwellStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * area_dwell_stats 区域停留时间、区域间行程时间分布的 JDBC 访问
+ *
+ * 停留时间的 to_area 保存为空字符串（主键列不能为 NULL），读取时还原为 null。
+ */
+@Repository
+public class AreaDwellRepository {
+
+    private static final RowMapper<AreaDwellStats> ROW_MAPPER = (rs, rowNum) -> new AreaDwellStats(
+        rs.getString(1), rs.getString(2), rs.getString(3).isEmpty() ? null : rs.getString(3),
+        rs.getLong(4), rs.getDouble(5), rs.getDouble(6), rs.getBytes(7));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public List<AreaDwellStats> findByRunId(Integer runId) {
+        return jdbcTemplate.query("SELECT kind, from_area, to_area, interval_count, total_seconds, max_seconds, sketch "
+            + "FROM area_dwell_stats WHERE run_id = ? ORDER BY kind, from_area, to_area", ROW_MAPPER, runId);
+    }
+
+    public boolean existsByRunId(Integer runId) {
+        return !jdbcTemplate.queryForList("SELECT 1 FROM area_dwell_stats WHERE run_id = ? LIMIT 1", Integer.class, runId).isEmpty();
+    }
+
+    public void insert(Integer runId, List<AreaDwellStats> rows) {
+        jdbcTemplate.batchUpdate("INSERT INTO area_dwell_stats (run_id, kind, from_area, to_area, interval_count, "
+                + "total_seconds, max_seconds, sketch) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+            rows, rows.size(), (ps, row) -> {
+                ps.setInt(1, runId);
+                ps.setString(2, row.kind());
+                ps.setString(3, row.fromArea());
+                ps.setString(4, row.toArea() != null ? row.toArea() : "");
+                ps.setLong(5, row.count());
+                ps.setDouble(6, row.totalSeconds());
+                ps.setDouble(7, row.maxSeconds());
+                ps.setBytes(8, row.sketch());
+            });
+    }
+
+    public int deleteByRunId(Integer runId) {
+        return jdbcTemplate.update("DELETE FROM area_dwell_stats WHERE run_id = ?", runId);
+    }
+}
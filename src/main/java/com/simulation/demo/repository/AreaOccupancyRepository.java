@@ -0,0 +1,79 @@
+package com.simulation.demo.repository;
+
+import com.simulation.demo.dto.AreaOccupancy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * area_occupancy 区域占用时间序列的 JDBC 访问
+ *
+ * 每行由增量统计整体写入，速度分位数草图 speed_sketch 只在查询分位数时读取。
+ */
+@Repository
+public class AreaOccupancyRepository {
+
+    private static final String COLUMNS =
+        "area_name, time_bucket, bucket_seconds, pedestrian_count, max_count, mean_speed, sample_count";
+
+    private static final RowMapper<AreaOccupancy> ROW_MAPPER = (rs, rowNum) -> AreaOccupancy.of(
+        rs.getString(1), rs.getLong(2), rs.getDouble(3), rs.getInt(4), rs.getInt(5),
+        rs.getObject(6) != null ? rs.getDouble(6) : null, rs.getLong(7),
+        rs.getMetaData().getColumnCount() > 7 ? rs.getBytes(8) : null);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public List<AreaOccupancy> findByRunId(Integer runId, String areaName) {
+        return find(COLUMNS, runId, areaName);
+    }
+
+    /**
+     * 同 findByRunId，同时读取速度分位数草图
+     */
+    public List<AreaOccupancy> findWithSketchesByRunId(Integer runId, String areaName) {
+        return find(COLUMNS + ", speed_sketch", runId, areaName);
+    }
+
+    public boolean existsByRunId(Integer runId) {
+        return !jdbcTemplate.queryForList("SELECT 1 FROM area_occupancy WHERE run_id = ? LIMIT 1", Integer.class, runId).isEmpty();
+    }
+
+    /**
+     * 写入统计结果；同一时间桶已存在时整行覆盖（写入失败后重试不会重复累计）
+     */
+    public void upsert(Integer runId, List<AreaOccupancy> rows) {
+        jdbcTemplate.batchUpdate("INSERT INTO area_occupancy (run_id, " + COLUMNS + ", speed_sketch) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
+                + "bucket_seconds = VALUES(bucket_seconds), pedestrian_count = VALUES(pedestrian_count), "
+                + "max_count = VALUES(max_count), mean_speed = VALUES(mean_speed), "
+                + "sample_count = VALUES(sample_count), speed_sketch = VALUES(speed_sketch)",
+            rows, rows.size(), (ps, row) -> {
+                ps.setInt(1, runId);
+                ps.setString(2, row.areaName());
+                ps.setLong(3, row.timeBucket());
+                ps.setDouble(4, row.bucketSeconds());
+                ps.setInt(5, row.pedestrianCount());
+                ps.setInt(6, row.maxCount());
+                ps.setObject(7, row.meanSpeed());
+                ps.setLong(8, row.sampleCount());
+                ps.setBytes(9, row.speedSketch());
+            });
+    }
+
+    public int deleteByRunId(Integer runId) {
+        return jdbcTemplate.update("DELETE FROM area_occupancy WHERE run_id = ?", runId);
+    }
+
+    private List<AreaOccupancy> find(String columns, Integer runId, String areaName) {
+        if (areaName == null) {
+            return jdbcTemplate.query("SELECT " + columns + " FROM area_occupancy WHERE run_id = ? "
+                + "ORDER BY area_name, time_bucket", ROW_MAPPER, runId);
+        }
+        return jdbcTemplate.query("SELECT " + columns + " FROM area_occupancy WHERE run_id = ? AND area_name = ? "
+            + "ORDER BY time_bucket", ROW_MAPPER, runId, areaName);
+    }
+}
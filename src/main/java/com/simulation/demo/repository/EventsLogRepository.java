@@ -2,9 +2,11 @@ package com.simulation.demo.repository;
 
 import com.simulation.demo.entity.EventsLog;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -17,6 +19,11 @@ public interface EventsLogRepository extends JpaRepository<EventsLog, Long> {
      */
     List<EventsLog> findByRunId(Integer runId);
     
+    /**
+     * 统计指定运行的事件数量
+     */
+    long countByRunId(Integer runId);
+    
     /**
      * 根据运行ID和事件类型查找事件
      */
@@ -40,4 +47,17 @@ public interface EventsLogRepository extends JpaRepository<EventsLog, Long> {
      */
     @Query("SELECT el.eventType, COUNT(el) FROM EventsLog el WHERE el.runId = :runId GROUP BY el.eventType")
     List<Object[]> countEventTypesByRunId(@Param("runId") Integer runId);
+    
+    /**
+     * 运行中是否有指定类型的事件
+     */
+    boolean existsByRunIdAndEventType(Integer runId, String eventType);
+    
+    /**
+     * 删除运行中指定类型的事件
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM EventsLog el WHERE el.runId = :runId AND el.eventType IN :eventTypes")
+    int deleteByRunIdAndEventTypeIn(@Param("runId") Integer runId, @Param("eventTypes") List<String> eventTypes);
 }
@@ -0,0 +1,9 @@
+package com.simulation.demo.repository;
+
+import com.simulation.demo.entity.FlowGate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface FlowGateRepository extends JpaRepository<FlowGate, Integer> {
+}
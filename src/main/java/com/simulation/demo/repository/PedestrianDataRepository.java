@@ -52,9 +52,4 @@ public interface PedestrianDataRepository extends JpaRepository<PedestrianData,
      * 根据运行ID和仿真时间查询行人数据
      */
     List<PedestrianData> findByRunIdAndSimTime(Integer runId, BigDecimal simTime);
-
-    /**
-     * 查找没有经纬度信息的行人数据
-     */
-    List<PedestrianData> findByLatIsNullOrLonIsNull();
 }
@@ -8,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -29,4 +30,9 @@ public interface SimulationRunRepository extends JpaRepository<SimulationRun, In
     @Query("SELECT sr FROM SimulationRun sr WHERE sr.startDate >= :startDate AND sr.startDate <= :endDate")
     List<SimulationRun> findByDateRange(@Param("startDate") LocalDateTime startDate,
                                        @Param("endDate") LocalDateTime endDate);
+
+    /**
+     * 查找指定时间之前开始且处于指定状态的模拟运行（数据保留清理用）
+     */
+    List<SimulationRun> findByStartDateBeforeAndStateIn(LocalDateTime startDate, Collection<Experiment.State> states);
 }
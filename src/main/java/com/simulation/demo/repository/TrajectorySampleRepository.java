@@ -0,0 +1,424 @@
+package com.simulation.demo.repository;
+
+import com.simulation.demo.dto.TrajectoryCursor;
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.SimulationRunSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * pedestrian_data 的 JDBC 只读访问，直接映射为 TrajectorySample
+ *
+ * 查询接口、坐标转换等热路径使用；写入和管理类操作仍走 PedestrianDataRepository。
+ */
+@Repository
+public class TrajectorySampleRepository {
+
+    public static final String COLUMNS =
+        "id, run_id, sim_time, model_date, pedestrian_id, pos_x, pos_y, pos_z, speed, area_name, lat, lon";
+
+    /**
+     * 按 COLUMNS 的列顺序映射一行
+     */
+    public static final RowMapper<TrajectorySample> ROW_MAPPER = TrajectorySampleRepository::mapRow;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 分页查询指定运行的采样（按仿真时间排序）
+     */
+    public List<TrajectorySample> findByRunId(Integer runId, long offset, int limit) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? "
+            + "ORDER BY sim_time, pedestrian_id, id LIMIT ? OFFSET ?", ROW_MAPPER, runId, limit, offset);
+    }
+
+    /**
+     * 按 (sim_time, pedestrian_id, id) 游标取下一页，走 idx_run_time_ped 索引范围扫描，代价与页深度无关
+     *
+     * 行构造器比较 (a, b, c) > (?, ?, ?) 在 MySQL 中不能稳定地使用范围扫描，这里展开成等价条件，
+     * 并加上 sim_time >= ? 作为索引范围的下界。
+     */
+    public List<TrajectorySample> findByRunIdAfter(Integer runId, TrajectoryCursor cursor, int limit) {
+        if (cursor == null) {
+            return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? "
+                + "ORDER BY sim_time, pedestrian_id, id LIMIT ?", ROW_MAPPER, runId, limit);
+        }
+        BigDecimal simTime = cursor.simTimeDecimal();
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? AND sim_time >= ? "
+                + "AND (sim_time > ? OR (sim_time = ? AND (pedestrian_id > ? OR (pedestrian_id = ? AND id > ?)))) "
+                + "ORDER BY sim_time, pedestrian_id, id LIMIT ?", ROW_MAPPER,
+            runId, simTime, simTime, simTime, cursor.pedestrianId(), cursor.pedestrianId(), cursor.id(), limit);
+    }
+
+    /**
+     * 按写入顺序取 id 大于 afterId 的采样，用于跟踪进行中的运行
+     *
+     * 写入队列只有一个线程、按提交顺序写入，同一运行的自增 id 随写入单调递增，不会有更小的 id 之后才提交。
+     * 条件以主键 id 开头，走主键范围扫描（分区表只扫描该运行的分区），跟踪末尾时只读到最近写入的行。
+     */
+    public List<TrajectorySample> findByRunIdAfterId(Integer runId, long afterId, int limit) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE id > ? AND run_id = ? "
+            + "ORDER BY id LIMIT ?", ROW_MAPPER, afterId, runId, limit);
+    }
+
+    /**
+     * 游标之后是否已有该运行写入的采样，条件与 findByRunIdAfterId 相同，只读一行
+     */
+    public boolean existsByRunIdAfterId(Integer runId, long afterId) {
+        return !jdbcTemplate.queryForList("SELECT 1 FROM pedestrian_data WHERE id > ? AND run_id = ? LIMIT 1",
+            Integer.class, afterId, runId).isEmpty();
+    }
+
+    public boolean existsByRunId(Integer runId) {
+        return !jdbcTemplate.queryForList("SELECT 1 FROM pedestrian_data WHERE run_id = ? LIMIT 1", Integer.class, runId).isEmpty();
+    }
+
+    public long countByRunId(Integer runId) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pedestrian_data WHERE run_id = ?", Long.class, runId);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 统计运行的总行数和已有经纬度的行数
+     */
+    public long[] countRowsAndLatLon(Integer runId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*), COUNT(lat) FROM pedestrian_data WHERE run_id = ?",
+            (rs, rowNum) -> new long[] {rs.getLong(1), rs.getLong(2)}, runId);
+    }
+
+    /**
+     * 汇总统计运行的轨迹：行人数、行数、仿真时间范围和速度统计，只填充这些字段
+     */
+    public SimulationRunSummary summarize(Integer runId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT pedestrian_id), COUNT(*), MIN(sim_time), MAX(sim_time), "
+            + "MIN(speed), AVG(speed), MAX(speed), STDDEV_POP(speed) FROM pedestrian_data WHERE run_id = ?",
+            (rs, rowNum) -> {
+                SimulationRunSummary summary = new SimulationRunSummary();
+                summary.setRunId(runId);
+                summary.setPedestrianCount(rs.getLong(1));
+                summary.setSampleCount(rs.getLong(2));
+                summary.setMinSimTime(getNullableDouble(rs, 3));
+                summary.setMaxSimTime(getNullableDouble(rs, 4));
+                summary.setMinSpeed(getNullableDouble(rs, 5));
+                summary.setMeanSpeed(getNullableDouble(rs, 6));
+                summary.setMaxSpeed(getNullableDouble(rs, 7));
+                summary.setSpeedStddev(getNullableDouble(rs, 8));
+                return summary;
+            }, runId);
+    }
+
+    /**
+     * 读取一个行人的轨迹，走 idx_run_ped_time 索引
+     */
+    public List<TrajectorySample> findByRunIdAndPedestrianId(Integer runId, Integer pedestrianId) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? AND pedestrian_id = ? "
+            + "ORDER BY sim_time", ROW_MAPPER, runId, pedestrianId);
+    }
+
+    /**
+     * 批量读取多个行人的轨迹，按 (pedestrian_id, sim_time) 排序，走 idx_run_ped_time 索引
+     */
+    public List<TrajectorySample> findByRunIdAndPedestrianIds(Integer runId, Collection<Integer> pedestrianIds) {
+        if (pedestrianIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(pedestrianIds.size(), "?"));
+        List<Object> args = new ArrayList<>(pedestrianIds.size() + 1);
+        args.add(runId);
+        args.addAll(pedestrianIds);
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? AND pedestrian_id IN ("
+            + placeholders + ") ORDER BY pedestrian_id, sim_time", ROW_MAPPER, args.toArray());
+    }
+
+    /**
+     * 一次读取多个仿真时间的帧，按 (sim_time, pedestrian_id) 排序
+     */
+    public List<TrajectorySample> findByRunIdAndSimTimes(Integer runId, Collection<BigDecimal> simTimes) {
+        if (simTimes.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(simTimes.size(), "?"));
+        List<Object> args = new ArrayList<>(simTimes.size() + 1);
+        args.add(runId);
+        args.addAll(simTimes);
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? AND sim_time IN ("
+            + placeholders + ") ORDER BY sim_time, pedestrian_id", ROW_MAPPER, args.toArray());
+    }
+
+    /**
+     * 一次读取多个时间段 [start, end] 内的采样（时间段可以重叠，重叠部分只返回一次），按 (sim_time, pedestrian_id) 排序
+     *
+     * @param ranges 每个元素为 {startTime, endTime}
+     */
+    public List<TrajectorySample> findByRunIdAndTimeRanges(Integer runId, List<BigDecimal[]> ranges) {
+        if (ranges.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String conditions = String.join(" OR ", Collections.nCopies(ranges.size(), "sim_time BETWEEN ? AND ?"));
+        List<Object> args = new ArrayList<>(ranges.size() * 2 + 1);
+        args.add(runId);
+        for (BigDecimal[] range : ranges) {
+            args.add(range[0]);
+            args.add(range[1]);
+        }
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? AND (" + conditions
+            + ") ORDER BY sim_time, pedestrian_id", ROW_MAPPER, args.toArray());
+    }
+
+    public List<TrajectorySample> findByRunIdAndTimeRange(Integer runId, BigDecimal startTime, BigDecimal endTime) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? "
+            + "AND sim_time >= ? AND sim_time <= ? ORDER BY sim_time", ROW_MAPPER, runId, startTime, endTime);
+    }
+
+    /**
+     * 读取 (afterTime, untilTime] 区间内的采样，按 (sim_time, pedestrian_id) 排序，用于按时间窗口顺序回放
+     */
+    public List<TrajectorySample> findByRunIdAndTimeWindow(Integer runId, BigDecimal afterTime, BigDecimal untilTime) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? "
+            + "AND sim_time > ? AND sim_time <= ? ORDER BY sim_time, pedestrian_id", ROW_MAPPER, runId, afterTime, untilTime);
+    }
+
+    /**
+     * 查询矩形范围内的采样，按 (sim_time, pedestrian_id) 排序
+     *
+     * startTime、endTime 为 null 时不限制；radius 不为 null 时只返回以 (centerX, centerY) 为圆心的圆形范围内的采样
+     */
+    public List<TrajectorySample> findByRunIdInBox(Integer runId, double minX, double minY, double maxX, double maxY,
+                                                   BigDecimal startTime, BigDecimal endTime,
+                                                   Double centerX, Double centerY, Double radius, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? "
+            + "AND pos_x BETWEEN ? AND ? AND pos_y BETWEEN ? AND ?");
+        List<Object> args = new ArrayList<>(List.of(runId, minX, maxX, minY, maxY));
+        if (startTime != null) {
+            sql.append(" AND sim_time >= ?");
+            args.add(startTime);
+        }
+        if (endTime != null) {
+            sql.append(" AND sim_time <= ?");
+            args.add(endTime);
+        }
+        if (radius != null) {
+            sql.append(" AND (pos_x - ?) * (pos_x - ?) + (pos_y - ?) * (pos_y - ?) <= ?");
+            args.addAll(List.of(centerX, centerX, centerY, centerY, radius * radius));
+        }
+        sql.append(" ORDER BY sim_time, pedestrian_id LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), ROW_MAPPER, args.toArray());
+    }
+
+    /**
+     * 运行的最早和最晚仿真时间，没有数据时返回 null
+     */
+    public double[] findTimeSpan(Integer runId) {
+        return jdbcTemplate.queryForObject("SELECT MIN(sim_time), MAX(sim_time) FROM pedestrian_data WHERE run_id = ?",
+            (rs, rowNum) -> {
+                BigDecimal min = rs.getBigDecimal(1);
+                BigDecimal max = rs.getBigDecimal(2);
+                return min != null && max != null ? new double[] {min.doubleValue(), max.doubleValue()} : null;
+            }, runId);
+    }
+
+    /**
+     * 有坐标的采样的范围 {minTime, maxTime, minX, maxX, minY, maxY}，没有时返回 null
+     */
+    public double[] findPositionBounds(Integer runId) {
+        return jdbcTemplate.queryForObject("SELECT MIN(sim_time), MAX(sim_time), MIN(pos_x), MAX(pos_x), "
+            + "MIN(pos_y), MAX(pos_y) FROM pedestrian_data WHERE run_id = ? AND pos_x IS NOT NULL AND pos_y IS NOT NULL",
+            (rs, rowNum) -> {
+                if (rs.getBigDecimal(1) == null) {
+                    return null;
+                }
+                double[] bounds = new double[6];
+                for (int i = 0; i < bounds.length; i++) {
+                    bounds[i] = rs.getDouble(i + 1);
+                }
+                return bounds;
+            }, runId);
+    }
+
+    /**
+     * 按 (时间桶, 网格列, 网格行) 统计出现过的行人数，返回 {bucket, column, row, count}
+     */
+    public List<long[]> countPedestriansByCell(Integer runId, double startTime, double bucketSeconds,
+                                               double minX, double minY, double cellSize) {
+        return jdbcTemplate.query("SELECT FLOOR((sim_time - ?) / ?) AS bucket, FLOOR((pos_x - ?) / ?) AS cx, "
+            + "FLOOR((pos_y - ?) / ?) AS cy, COUNT(DISTINCT pedestrian_id) FROM pedestrian_data "
+            + "WHERE run_id = ? AND pos_x IS NOT NULL AND pos_y IS NOT NULL GROUP BY bucket, cx, cy",
+            (rs, rowNum) -> new long[] {rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)},
+            startTime, bucketSeconds, minX, cellSize, minY, cellSize, runId);
+    }
+
+    public List<TrajectorySample> findByRunIdAndAreaName(Integer runId, String areaName) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? AND area_name = ?",
+            ROW_MAPPER, runId, areaName);
+    }
+
+    public List<TrajectorySample> findByRunIdAndSimTime(Integer runId, BigDecimal simTime) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? AND sim_time = ?",
+            ROW_MAPPER, runId, simTime);
+    }
+
+    /**
+     * 流式读取时间范围内的采样：MySQL 逐行返回结果（fetchSize = Integer.MIN_VALUE），内存占用与结果行数无关
+     */
+    public void streamByRunIdAndTimeRange(Integer runId, BigDecimal startTime, BigDecimal endTime,
+                                          SampleHandler handler) {
+        stream("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? AND sim_time >= ? AND sim_time <= ? "
+            + "ORDER BY sim_time", handler, runId, startTime, endTime);
+    }
+
+    /**
+     * 流式读取指定区域的采样
+     */
+    public void streamByRunIdAndAreaName(Integer runId, String areaName, SampleHandler handler) {
+        stream("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? AND area_name = ?", handler, runId, areaName);
+    }
+
+    /**
+     * 流式读取整个运行的采样，按 (sim_time, pedestrian_id) 排序
+     */
+    public void streamByRunId(Integer runId, SampleHandler handler) {
+        stream("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? ORDER BY sim_time, pedestrian_id", handler, runId);
+    }
+
+    /**
+     * 与给定时间最接近的已有 sim_time，运行没有数据时返回 null
+     */
+    public BigDecimal findNearestSimTime(Integer runId, BigDecimal simTime) {
+        BigDecimal floor = jdbcTemplate.queryForObject(
+            "SELECT MAX(sim_time) FROM pedestrian_data WHERE run_id = ? AND sim_time <= ?", BigDecimal.class, runId, simTime);
+        BigDecimal ceiling = jdbcTemplate.queryForObject(
+            "SELECT MIN(sim_time) FROM pedestrian_data WHERE run_id = ? AND sim_time >= ?", BigDecimal.class, runId, simTime);
+        if (floor == null || ceiling == null) {
+            return floor != null ? floor : ceiling;
+        }
+        return simTime.subtract(floor).compareTo(ceiling.subtract(simTime)) <= 0 ? floor : ceiling;
+    }
+
+    /**
+     * 运行中各行人最后一个采样的 sim_time
+     */
+    public Map<Integer, Double> findLastSimTimes(Integer runId) {
+        Map<Integer, Double> lastTimes = new HashMap<>();
+        jdbcTemplate.query("SELECT pedestrian_id, MAX(sim_time) FROM pedestrian_data WHERE run_id = ? GROUP BY pedestrian_id",
+            (RowCallbackHandler) rs -> lastTimes.put(rs.getInt(1), rs.getDouble(2)), runId);
+        return lastTimes;
+    }
+
+    /**
+     * 覆盖 [minTime, maxTime] 的全部已有 sim_time（含 minTime 之前和 maxTime 之后最近的各一个），升序
+     *
+     * 用于一次确定多个请求时间的最近帧，代替逐个调用 findNearestSimTime。
+     */
+    public List<BigDecimal> findSimTimesAround(Integer runId, BigDecimal minTime, BigDecimal maxTime) {
+        return jdbcTemplate.queryForList(
+            "SELECT DISTINCT sim_time FROM pedestrian_data WHERE run_id = ? AND sim_time BETWEEN "
+                + "COALESCE((SELECT MAX(sim_time) FROM pedestrian_data WHERE run_id = ? AND sim_time <= ?), ?) AND "
+                + "COALESCE((SELECT MIN(sim_time) FROM pedestrian_data WHERE run_id = ? AND sim_time >= ?), ?) "
+                + "ORDER BY sim_time",
+            BigDecimal.class, runId, runId, minTime, minTime, runId, maxTime, maxTime);
+    }
+
+    private void stream(String sql, SampleHandler handler, Object... args) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            for (int i = 0; i < args.length; i++) {
+                ps.setObject(i + 1, args[i]);
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            try {
+                handler.handle(mapRow(rs, 0));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * 查找缺少经纬度的采样（按主键顺序，最多 limit 条）
+     */
+    public List<TrajectorySample> findWithoutLatLon(long afterId, int limit) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE id > ? AND (lat IS NULL OR lon IS NULL) "
+            + "ORDER BY id LIMIT ?", ROW_MAPPER, afterId, limit);
+    }
+
+    /**
+     * 运行中是否还有可以补算经纬度（有坐标、缺经纬度）的行
+     */
+    public boolean existsConvertibleWithoutLatLon(Integer runId) {
+        return !jdbcTemplate.queryForList("SELECT 1 FROM pedestrian_data WHERE run_id = ? AND (lat IS NULL OR lon IS NULL) "
+            + "AND pos_x IS NOT NULL AND pos_y IS NOT NULL LIMIT 1", Integer.class, runId).isEmpty();
+    }
+
+    public List<TrajectorySample> findByRunIdWithoutLatLon(Integer runId) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM pedestrian_data WHERE run_id = ? AND (lat IS NULL OR lon IS NULL)",
+            ROW_MAPPER, runId);
+    }
+
+    /**
+     * 批量回写经纬度
+     */
+    public void updateLatLon(List<TrajectorySample> samples) {
+        jdbcTemplate.batchUpdate("UPDATE pedestrian_data SET lat = ?, lon = ? WHERE id = ?", samples, samples.size(),
+            (ps, sample) -> {
+                ps.setDouble(1, sample.lat());
+                ps.setDouble(2, sample.lon());
+                ps.setLong(3, sample.id());
+            });
+    }
+
+    private static TrajectorySample mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Timestamp modelDate = rs.getTimestamp(4);
+        return new TrajectorySample(
+            rs.getLong(1),
+            rs.getInt(2),
+            getDouble(rs, 3),
+            modelDate != null ? modelDate.toLocalDateTime() : null,
+            rs.getInt(5),
+            getDouble(rs, 6),
+            getDouble(rs, 7),
+            (float) getDouble(rs, 8),
+            (float) getDouble(rs, 9),
+            rs.getString(10),
+            getDouble(rs, 11),
+            getDouble(rs, 12));
+    }
+
+    /**
+     * 流式读取的逐行回调；抛出 IOException（如客户端断开）时终止读取
+     */
+    @FunctionalInterface
+    public interface SampleHandler {
+        void handle(TrajectorySample sample) throws IOException;
+    }
+
+    private static double getDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? Double.NaN : value;
+    }
+
+    private static Double getNullableDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+}
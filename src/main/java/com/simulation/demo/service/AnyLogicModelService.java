@@ -7,11 +7,14 @@ import nanjingdong.Simulation;
 
 import com.simulation.demo.entity.SimulationRun;
 import com.anylogic.engine.Experiment;
+import com.simulation.demo.event.SimulationStateChangedEvent;
 import com.simulation.demo.repository.SimulationRunRepository;
+import com.simulation.demo.service.ingest.TrajectoryIngestService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -49,6 +52,15 @@ public class AnyLogicModelService {
     @Autowired
     private SimulationRunRepository simulationRunRepository;
 
+    @Autowired
+    private TrajectoryIngestService trajectoryIngestService;
+
+    @Autowired
+    private RunPartitionService runPartitionService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Value("${simulation.timeout.minutes:30}")
     private int simulationTimeoutMinutes;
 
@@ -271,7 +283,8 @@ public class AnyLogicModelService {
             simulationRun.setModelName("NanJingDong");
             simulationRun.setStartDate(LocalDateTime.now());
             simulationRun.setState(Experiment.State.RUNNING);
-            simulationRun = simulationRunRepository.save(simulationRun);
+            trajectoryIngestService.applyDownsampleSettings(simulationRun);
+            simulationRun = runPartitionService.createRun(simulationRun);
 
             Integer runId = simulationRun.getRunId();
             logger.info("成功创建仿真运行记录，获取 run_id = {}", runId);
@@ -359,7 +372,8 @@ public class AnyLogicModelService {
             simulationRun.setEngineParameters(engineParametersJson);
             simulationRun.setAgentParameters(agentParametersJson);
             simulationRun.setDescription(description);
-            simulationRun = simulationRunRepository.save(simulationRun);
+            trajectoryIngestService.applyDownsampleSettings(simulationRun);
+            simulationRun = runPartitionService.createRun(simulationRun);
 
             Integer runId = simulationRun.getRunId();
             logger.info("成功创建仿真运行记录，获取 run_id = {}", runId);
@@ -1228,6 +1242,7 @@ public class AnyLogicModelService {
                 }
                 simulationRunRepository.save(simulationRun);
                 logger.info("更新仿真状态: run_id={}, status={}", runId, state);
+                eventPublisher.publishEvent(new SimulationStateChangedEvent(runId, state));
             }
         } catch (Exception e) {
             logger.error("更新仿真状态失败 run_id={}: {}", runId, e.getMessage(), e);
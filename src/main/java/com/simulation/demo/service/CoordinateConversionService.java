@@ -1,14 +1,23 @@
 package com.simulation.demo.service;
 
-import com.simulation.demo.entity.PedestrianData;
+import com.anylogic.engine.Experiment;
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.SimulationLatLonChangedEvent;
+import com.simulation.demo.event.SimulationStateChangedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import util.GeoUtil;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * 坐标转换服务 - 将像素坐标转换为经纬度
@@ -21,6 +30,9 @@ public class CoordinateConversionService {
     @Autowired
     private SimulationDataService simulationDataService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     // 校准参数（根据你提供的数据）
     private static final double[] PX = {97, 250, 906, 1923, 1920};
     private static final double[] PY = {783, 1285, 1185, 403, 872};
@@ -28,12 +40,19 @@ public class CoordinateConversionService {
     private static final double[] LON = {121.473619, 121.475118, 121.481113, 121.490204, 121.490137};
     private static final double IMG_HEIGHT = 1521;
 
-    private boolean isCalibrated = false;
+    // 每批读取/回写的行数
+    private static final int BATCH_SIZE = 5000;
+
+    private volatile boolean isCalibrated = false;
+
+    // 兜底扫描的进度：该ID之前缺经纬度的行都已处理过（无坐标的行无法转换，会一直缺失）；
+    // 扫描到末尾后保持不变，新运行开始或手动触发全量转换时才回到开头
+    private volatile long fallbackWatermark = 0;
 
     /**
      * 初始化校准参数
      */
-    private void initializeCalibration() {
+    private synchronized void initializeCalibration() {
         if (!isCalibrated) {
             GeoUtil.calibrate(PX, PY, LAT, LON, IMG_HEIGHT);
             isCalibrated = true;
@@ -42,59 +61,107 @@ public class CoordinateConversionService {
     }
 
     /**
-     * 处理所有没有经纬度信息的行人数据
+     * 像素坐标每单位对应的米数，由校准的仿射系数换算：一个像素在经纬度上所占面积开方，
+     * 图像两个方向的比例不同时取几何平均
+     */
+    public double getMetresPerPixel() {
+        initializeCalibration();
+        double metresPerDegreeLat = 111_320.0;
+        double metresPerDegreeLon = 111_320.0 * Math.cos(Math.toRadians(GeoUtil.scr2geo(0, GeoUtil.imgH / 2)[0]));
+        double degreesSquared = Math.abs(GeoUtil.a1 * GeoUtil.b2 - GeoUtil.a2 * GeoUtil.b1);
+        return Math.sqrt(degreesSquared * metresPerDegreeLat * metresPerDegreeLon);
+    }
+
+    /**
+     * 入库前为采样计算经纬度（已有经纬度或缺少坐标的采样原样返回）
+     *
+     * 直接使用 GeoUtil 校准后的仿射系数，不为每个点分配中间数组。
+     */
+    public List<TrajectorySample> georeference(List<TrajectorySample> samples) {
+        initializeCalibration();
+
+        List<TrajectorySample> result = new ArrayList<>(samples.size());
+        for (TrajectorySample sample : samples) {
+            if (sample.hasLatLon() || !sample.hasPosition()) {
+                result.add(sample);
+                continue;
+            }
+            double x = sample.posX();
+            double y = GeoUtil.imgH - sample.posY();
+            result.add(sample.withLatLon(GeoUtil.a1 * x + GeoUtil.b1 * y + GeoUtil.c1,
+                                         GeoUtil.a2 * x + GeoUtil.b2 * y + GeoUtil.c2));
+        }
+        return result;
+    }
+
+    /**
+     * 处理所有没有经纬度信息的行人数据（按主键分批读取和回写）
      */
     public int processAllPedestrianDataWithoutLatLon() {
         logger.info("开始处理没有经纬度信息的行人数据...");
 
         // 初始化校准参数
         initializeCalibration();
+        // 全量扫描之后，兜底扫描也从头再确认一遍期间晚提交的行
+        fallbackWatermark = 0;
 
-        // 获取没有经纬度信息的数据
-        List<PedestrianData> dataList = simulationDataService.getPedestrianDataWithoutLatLon();
+        int processedCount = 0;
+        long lastId = 0;
+        Set<Integer> updatedRuns = new TreeSet<>();
+        List<TrajectorySample> dataList;
+        do {
+            dataList = simulationDataService.getPedestrianDataWithoutLatLon(lastId, BATCH_SIZE);
+            if (dataList.isEmpty()) {
+                break;
+            }
+            lastId = dataList.get(dataList.size() - 1).id();
+            processedCount += convertAndSave(dataList, updatedRuns);
+        } while (dataList.size() == BATCH_SIZE);
+        notifyFinishedRuns(updatedRuns);
 
-        if (dataList.isEmpty()) {
+        if (processedCount > 0) {
+            logger.info("成功处理并更新了 {} 条行人数据的经纬度信息", processedCount);
+        } else {
             logger.info("没有需要处理的数据");
-            return 0;
         }
+        return processedCount;
+    }
 
-        logger.info("找到 {} 条需要处理的数据", dataList.size());
+    /**
+     * 兜底转换：处理未经入库路径写入的行（历史数据、模型直接插入的行）
+     *
+     * 从上次扫描的位置继续，每次最多处理 maxRows 行。扫描到末尾后停在末尾，之后只查找新写入的行，
+     * 不再反复从头扫描无法转换（没有坐标）的行；新运行开始或手动触发全量转换时才回到开头，
+     * 补上期间晚于更大 id 提交的行。
+     */
+    public int processLegacyPedestrianDataWithoutLatLon(int maxRows) {
+        // 初始化校准参数
+        initializeCalibration();
 
-        // 批量转换坐标
         int processedCount = 0;
-        for (PedestrianData data : dataList) {
-            if (data.getPosX() != null && data.getPosY() != null) {
-                try {
-                    double posX = data.getPosX().doubleValue();
-                    double posY = data.getPosY().doubleValue();
-
-                    // 转换坐标
-                    double[] geo = GeoUtil.scr2geo(posX, posY);
-
-                    // 更新经纬度
-                    data.setLat(geo[0]);
-                    data.setLon(geo[1]);
-
-                    processedCount++;
-
-                    if (processedCount % 100 == 0) {
-                        logger.debug("已处理 {} 条数据", processedCount);
-                    }
-
-                } catch (Exception e) {
-                    logger.error("转换坐标失败，数据ID: {}, posX: {}, posY: {}",
-                               data.getId(), data.getPosX(), data.getPosY(), e);
-                }
+        int scanned = 0;
+        long lastId = fallbackWatermark;
+        Set<Integer> updatedRuns = new TreeSet<>();
+        while (scanned < maxRows) {
+            List<TrajectorySample> dataList =
+                simulationDataService.getPedestrianDataWithoutLatLon(lastId, Math.min(BATCH_SIZE, maxRows - scanned));
+            if (dataList.isEmpty()) {
+                break;
             }
+            scanned += dataList.size();
+            lastId = dataList.get(dataList.size() - 1).id();
+            processedCount += convertAndSave(dataList, updatedRuns);
         }
+        fallbackWatermark = lastId;
+        notifyFinishedRuns(updatedRuns);
+        return processedCount;
+    }
 
-        // 批量保存
-        if (processedCount > 0) {
-            simulationDataService.updatePedestrianDataLatLon(dataList);
-            logger.info("成功处理并更新了 {} 条行人数据的经纬度信息", processedCount);
+    @EventListener
+    public void onSimulationStateChanged(SimulationStateChangedEvent event) {
+        if (event.getState() == Experiment.State.RUNNING) {
+            fallbackWatermark = 0;
         }
-
-        return processedCount;
     }
 
     /**
@@ -106,41 +173,50 @@ public class CoordinateConversionService {
         // 初始化校准参数
         initializeCalibration();
 
-        // 获取指定运行的所有数据
-        List<PedestrianData> dataList = simulationDataService.getPedestrianDataByRunId(runId, 0, Integer.MAX_VALUE).getContent();
-
-        int processedCount = 0;
-        for (PedestrianData data : dataList) {
-            // 只处理没有经纬度信息的数据
-            if ((data.getLat() == null || data.getLon() == null) &&
-                data.getPosX() != null && data.getPosY() != null) {
-
-                try {
-                    double posX = data.getPosX().doubleValue();
-                    double posY = data.getPosY().doubleValue();
-
-                    // 转换坐标
-                    double[] geo = GeoUtil.scr2geo(posX, posY);
-
-                    // 更新经纬度
-                    data.setLat(geo[0]);
-                    data.setLon(geo[1]);
-
-                    processedCount++;
+        // 只取没有经纬度信息的数据
+        Set<Integer> updatedRuns = new TreeSet<>();
+        int processedCount = convertAndSave(simulationDataService.getPedestrianDataWithoutLatLon(runId), updatedRuns);
+        if (processedCount > 0) {
+            logger.info("成功处理并更新了运行ID {} 的 {} 条行人数据", runId, processedCount);
+        }
+        notifyFinishedRuns(updatedRuns);
+        return processedCount;
+    }
 
-                } catch (Exception e) {
-                    logger.error("转换坐标失败，数据ID: {}, posX: {}, posY: {}",
-                               data.getId(), data.getPosX(), data.getPosY(), e);
-                }
+    private int convertAndSave(List<TrajectorySample> dataList, Set<Integer> updatedRuns) {
+        List<TrajectorySample> converted = new ArrayList<>(dataList.size());
+        for (TrajectorySample data : georeference(dataList)) {
+            if (data.hasLatLon()) {
+                converted.add(data);
+                updatedRuns.add(data.runId());
             }
         }
 
         // 批量保存
-        if (processedCount > 0) {
-            simulationDataService.updatePedestrianDataLatLon(dataList);
-            logger.info("成功处理并更新了运行ID {} 的 {} 条行人数据", runId, processedCount);
+        if (!converted.isEmpty()) {
+            simulationDataService.updatePedestrianDataLatLon(converted);
         }
+        return converted.size();
+    }
 
-        return processedCount;
+    /**
+     * 已结束运行的数据被改写后通知下游：该运行已全部补算完时重新发布数据完成事件，帧索引等随之重建一次；
+     * 兜底转换分多次补算同一运行时，中间各次只发布经纬度变化事件，更新查询缓存和 ETag
+     */
+    private void notifyFinishedRuns(Set<Integer> updatedRuns) {
+        for (Integer runId : updatedRuns) {
+            boolean finished = simulationDataService.getSimulationRunById(runId)
+                .map(SimulationRun::getState)
+                .map(SimulationStateChangedEvent::isTerminal)
+                .orElse(false);
+            if (!finished) {
+                continue;
+            }
+            if (simulationDataService.hasPedestrianDataToConvert(runId)) {
+                eventPublisher.publishEvent(new SimulationLatLonChangedEvent(runId));
+            } else {
+                eventPublisher.publishEvent(new SimulationDataCompletedEvent(runId));
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,157 @@
+package com.simulation.demo.service;
+
+import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.repository.SimulationRunRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 运行分区管理服务 - pedestrian_data / events_log 按 run_id 做 RANGE 分区
+ *
+ * 每个运行一个分区 p_run_{runId}，末尾保留 p_future (VALUES LESS THAN MAXVALUE) 兜底：
+ * - 运行开始时从 p_future 中拆出本运行的分区（p_future 为空，拆分只是元数据操作）
+ * - 删除运行时直接 DROP PARTITION，不再走 ON DELETE CASCADE 逐行删除
+ * 分区 p_run_N 实际包含上一个分区上界到 N 之间的全部 run_id：分配 run_id 和创建分区在同一把锁内按顺序进行，
+ * 拆分失败的运行数据会落入后一个运行的分区，所以只有分区中没有其他运行的数据、范围内也没有其他现存运行时才 DROP。
+ * 表未分区、运行没有独立分区（迁移前的历史运行）或分区包含多个运行时退回分批 DELETE。
+ */
+@Service
+public class RunPartitionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunPartitionService.class);
+
+    private static final String[] PARTITIONED_TABLES = {"pedestrian_data", "events_log"};
+
+    private static final String FUTURE_PARTITION = "p_future";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SimulationRunRepository simulationRunRepository;
+
+    @Value("${simulation.partition.enabled:true}")
+    private boolean partitionEnabled;
+
+    @Value("${simulation.partition.delete-batch-size:10000}")
+    private int deleteBatchSize;
+
+    // 表是否已按 run_id 分区（迁移脚本执行前为 false）
+    private final Map<String, Boolean> partitionedTables = new ConcurrentHashMap<>();
+
+    /**
+     * 保存新运行并创建分区：run_id 的分配和分区拆分串行进行，保证分区按 run_id 顺序创建
+     */
+    public synchronized SimulationRun createRun(SimulationRun simulationRun) {
+        SimulationRun saved = simulationRunRepository.save(simulationRun);
+        createRunPartitions(saved.getRunId());
+        return saved;
+    }
+
+    /**
+     * 为新运行创建分区（运行开始写入数据之前调用）
+     */
+    public synchronized void createRunPartitions(Integer runId) {
+        if (!partitionEnabled) {
+            return;
+        }
+        for (String table : PARTITIONED_TABLES) {
+            try {
+                if (!isPartitioned(table) || hasPartition(table, partitionName(runId))) {
+                    continue;
+                }
+                jdbcTemplate.execute("ALTER TABLE " + table + " REORGANIZE PARTITION " + FUTURE_PARTITION + " INTO ("
+                    + "PARTITION " + partitionName(runId) + " VALUES LESS THAN (" + (runId + 1) + "), "
+                    + "PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN MAXVALUE)");
+                logger.info("创建运行分区: {}.{}", table, partitionName(runId));
+            } catch (Exception e) {
+                // 分区创建失败不影响运行，数据会落在 p_future 中，删除时按行删除
+                logger.warn("创建运行分区失败 {} run_id={}: {}", table, runId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 删除运行的轨迹和事件数据
+     *
+     * @return 删除的行数；通过 DROP PARTITION 删除的表不计行数
+     */
+    public synchronized long dropRunData(Integer runId) {
+        long deletedRows = 0;
+        for (String table : PARTITIONED_TABLES) {
+            if (partitionEnabled && isPartitioned(table) && isSingleRunPartition(table, runId)) {
+                jdbcTemplate.execute("ALTER TABLE " + table + " DROP PARTITION " + partitionName(runId));
+                logger.info("删除运行分区: {}.{}", table, partitionName(runId));
+            } else {
+                deletedRows += deleteInBatches(table, runId);
+            }
+        }
+        return deletedRows;
+    }
+
+    private long deleteInBatches(String table, Integer runId) {
+        long total = 0;
+        int deleted;
+        do {
+            // 分批删除，避免一次性大事务长时间持锁和 undo 膨胀
+            deleted = jdbcTemplate.update("DELETE FROM " + table + " WHERE run_id = ? LIMIT " + deleteBatchSize, runId);
+            total += deleted;
+        } while (deleted >= deleteBatchSize);
+        logger.info("按行删除运行数据: {} run_id={}, 行数: {}", table, runId, total);
+        return total;
+    }
+
+    private boolean isPartitioned(String table) {
+        return partitionedTables.computeIfAbsent(table, t -> {
+            boolean partitioned = hasPartition(t, FUTURE_PARTITION);
+            logger.info("表 {} {}按 run_id 分区", t, partitioned ? "已" : "未");
+            return partitioned;
+        });
+    }
+
+    /**
+     * 运行是否有只包含它自己的分区：p_run_N 中没有其他运行的数据，且分区范围内没有其他现存的运行会再写入。
+     * 前一个分区被 DROP 后 MySQL 会把它的范围并入本分区，所以不能按分区下界判断，只看实际数据和现存运行
+     */
+    private boolean isSingleRunPartition(String table, Integer runId) {
+        List<Map<String, Object>> partitions = jdbcTemplate.queryForList(
+            "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? ORDER BY PARTITION_ORDINAL_POSITION", table);
+        String name = partitionName(runId);
+        for (int i = 0; i < partitions.size(); i++) {
+            if (!name.equals(partitions.get(i).get("PARTITION_NAME"))) {
+                continue;
+            }
+            long lowerBound = i > 0 ? Long.parseLong(String.valueOf(partitions.get(i - 1).get("PARTITION_DESCRIPTION"))) : Long.MIN_VALUE;
+            boolean otherRows = !jdbcTemplate.queryForList("SELECT 1 FROM " + table + " PARTITION (" + name + ") "
+                + "WHERE run_id <> ? LIMIT 1", Integer.class, runId).isEmpty();
+            boolean otherRuns = !jdbcTemplate.queryForList("SELECT 1 FROM simulation_runs WHERE run_id >= ? AND run_id < ? "
+                + "LIMIT 1", Integer.class, lowerBound, runId).isEmpty();
+            if (otherRows || otherRuns) {
+                logger.warn("分区 {}.{} 包含其他运行，按行删除 run_id={}", table, name, runId);
+                return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private boolean hasPartition(String table, String partition) {
+        Integer count = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() "
+                + "AND TABLE_NAME = ? AND PARTITION_NAME = ?", Integer.class, table, partition);
+        return count != null && count > 0;
+    }
+
+    private static String partitionName(Integer runId) {
+        return "p_run_" + runId;
+    }
+}
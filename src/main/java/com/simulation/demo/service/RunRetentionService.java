@@ -0,0 +1,65 @@
+package com.simulation.demo.service;
+
+import com.anylogic.engine.Experiment;
+import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.repository.SimulationRunRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * 运行数据保留服务 - 定期删除超过保留期的已结束运行
+ *
+ * 删除走 SimulationDataService.deleteSimulationRun，轨迹和事件数据按分区整体删除
+ */
+@Service
+@ConditionalOnProperty(name = "simulation.retention.enabled", havingValue = "true", matchIfMissing = false)
+public class RunRetentionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunRetentionService.class);
+
+    @Autowired
+    private SimulationRunRepository simulationRunRepository;
+
+    @Autowired
+    private SimulationDataService simulationDataService;
+
+    @Value("${simulation.retention.days:30}")
+    private int retentionDays;
+
+    /**
+     * 每天凌晨清理过期运行
+     */
+    @Scheduled(cron = "${simulation.retention.cron:0 30 3 * * *}")
+    public void purgeExpiredRuns() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+        List<SimulationRun> expiredRuns = simulationRunRepository.findByStartDateBeforeAndStateIn(cutoff,
+            EnumSet.of(Experiment.State.FINISHED, Experiment.State.ERROR, Experiment.State.IDLE));
+
+        if (expiredRuns.isEmpty()) {
+            logger.debug("没有超过保留期的运行");
+            return;
+        }
+
+        logger.info("开始清理 {} 之前的运行，共 {} 个", cutoff, expiredRuns.size());
+        int deleted = 0;
+        for (SimulationRun run : expiredRuns) {
+            try {
+                if (simulationDataService.deleteSimulationRun(run.getRunId())) {
+                    deleted++;
+                }
+            } catch (Exception e) {
+                logger.error("清理运行失败 run_id={}: {}", run.getRunId(), e.getMessage(), e);
+            }
+        }
+        logger.info("运行数据清理完成，删除 {} 个运行", deleted);
+    }
+}
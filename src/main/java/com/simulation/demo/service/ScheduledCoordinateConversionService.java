@@ -3,12 +3,13 @@ package com.simulation.demo.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 /**
- * 定时坐标转换服务 - 自动处理没有经纬度信息的行人数据
+ * 定时坐标转换服务 - 兜底处理没有经纬度信息的行人数据
  */
 @Service
 @ConditionalOnProperty(name = "coordinate.conversion.scheduled.enabled", havingValue = "true", matchIfMissing = false)
@@ -19,43 +20,29 @@ public class ScheduledCoordinateConversionService {
     @Autowired
     private CoordinateConversionService coordinateConversionService;
 
+    @Value("${coordinate.conversion.scheduled.max-rows-per-run:50000}")
+    private int maxRowsPerRun;
+
     /**
-     * 每10秒检查一次是否有新的需要转换的数据
+     * 兜底转换：经入库接口写入的行已带经纬度，这里只处理历史数据和绕过入库接口直接插入的行。
+     * 模型目前仍直接插入 pedestrian_data，这些行要等这里补齐经纬度，所以默认间隔保持 10 秒。
+     * 每次最多处理 max-rows-per-run 行，从上次的位置继续，扫描到末尾后不再从头扫描（见 processLegacyPedestrianDataWithoutLatLon）。
      */
-    @Scheduled(fixedRate = 10000) // 10秒
+    @Scheduled(fixedDelayString = "${coordinate.conversion.scheduled.interval-ms:10000}")
     public void autoConvertCoordinates() {
         try {
-            logger.debug("开始自动检查需要转换坐标的行人数据...");
+            logger.debug("开始检查需要兜底转换坐标的行人数据...");
 
-            int processedCount = coordinateConversionService.processAllPedestrianDataWithoutLatLon();
+            int processedCount = coordinateConversionService.processLegacyPedestrianDataWithoutLatLon(maxRowsPerRun);
 
             if (processedCount > 0) {
-                logger.info("自动转换完成，处理了 {} 条行人数据", processedCount);
+                logger.info("兜底转换完成，处理了 {} 条行人数据", processedCount);
             } else {
                 logger.debug("没有需要转换的数据");
             }
 
         } catch (Exception e) {
-            logger.error("自动坐标转换失败", e);
-        }
-    }
-
-    /**
-     * 每5分钟执行一次更全面的检查（防止遗漏）
-     */
-    @Scheduled(fixedRate = 300000) // 5分钟
-    public void comprehensiveConvertCoordinates() {
-        try {
-            logger.info("开始全面检查需要转换坐标的行人数据...");
-
-            int processedCount = coordinateConversionService.processAllPedestrianDataWithoutLatLon();
-
-            if (processedCount > 0) {
-                logger.info("全面转换完成，处理了 {} 条行人数据", processedCount);
-            }
-
-        } catch (Exception e) {
-            logger.error("全面坐标转换失败", e);
+            logger.error("兜底坐标转换失败", e);
         }
     }
-}
\ No newline at end of file
+}
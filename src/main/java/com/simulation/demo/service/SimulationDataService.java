@@ -1,17 +1,28 @@
 package com.simulation.demo.service;
 
+import com.anylogic.engine.Experiment;
+import com.simulation.demo.dto.KeysetPage;
+import com.simulation.demo.dto.RunDataVersion;
+import com.simulation.demo.dto.TrajectoryCursor;
+import com.simulation.demo.dto.TrajectorySample;
 import com.simulation.demo.entity.EventsLog;
 import com.simulation.demo.entity.PedestrianData;
 import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.entity.SimulationRunSummary;
+import com.simulation.demo.event.SimulationRunDeletedEvent;
 import com.simulation.demo.repository.EventsLogRepository;
 import com.simulation.demo.repository.PedestrianDataRepository;
 import com.simulation.demo.repository.SimulationRunRepository;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.analytics.RunSummaryService;
+import com.simulation.demo.service.cache.RunQueryCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
@@ -31,9 +42,24 @@ public class SimulationDataService {
     @Autowired
     private PedestrianDataRepository pedestrianDataRepository;
 
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
     @Autowired
     private EventsLogRepository eventsLogRepository;
 
+    @Autowired
+    private RunPartitionService runPartitionService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private RunQueryCache runQueryCache;
+
+    @Autowired
+    private RunSummaryService runSummaryService;
+
     /**
      * 获取所有模拟运行记录
      */
@@ -58,45 +84,120 @@ public class SimulationDataService {
         return simulationRunRepository.findByDateRange(startDate, endDate);
     }
 
+    /**
+     * 删除模拟运行及其轨迹、事件数据
+     *
+     * 轨迹和事件优先按分区删除，运行中/暂停中的仿真不允许删除
+     */
+    public boolean deleteSimulationRun(Integer runId) {
+        logger.info("删除模拟运行记录，ID: {}", runId);
+        Optional<SimulationRun> run = simulationRunRepository.findById(runId);
+        if (run.isEmpty()) {
+            return false;
+        }
+        Experiment.State state = run.get().getState();
+        if (state == Experiment.State.RUNNING || state == Experiment.State.PAUSED) {
+            throw new IllegalStateException("仿真正在运行，不能删除: run_id=" + runId);
+        }
+
+        long deletedRows = runPartitionService.dropRunData(runId);
+        simulationRunRepository.deleteById(runId);
+        eventPublisher.publishEvent(new SimulationRunDeletedEvent(runId));
+        logger.info("模拟运行 {} 已删除，按行删除数据 {} 条", runId, deletedRows);
+        return true;
+    }
+
+    /**
+     * 已结束运行的数据版本，用作查询接口的 ETag；运行未结束时返回 null
+     *
+     * 由运行状态、轨迹行数、已有经纬度的行数和事件数组成，数据被改写（补算经纬度）后随之变化。
+     * 只有数据已完整落库且全部轨迹已有经纬度时才标记为不再变化（immutable）。
+     */
+    public RunDataVersion getFinishedRunVersion(Integer runId) {
+        if (!runQueryCache.isFinished(runId)) {
+            return null;
+        }
+        return runQueryCache.get(runId, "version", () -> {
+            Experiment.State state = simulationRunRepository.findById(runId).map(SimulationRun::getState).orElse(null);
+            if (state == null) {
+                return null;
+            }
+            long[] rows = trajectorySampleRepository.countRowsAndLatLon(runId);
+            String version = runId + "-" + state + "-" + rows[0] + "-" + rows[1] + "-" + eventsLogRepository.countByRunId(runId);
+            return new RunDataVersion(version, runQueryCache.isDataCompleted(runId) && rows[0] == rows[1]);
+        });
+    }
+
     /**
      * 获取指定运行的行人数据（分页）
      */
-    public Page<PedestrianData> getPedestrianDataByRunId(Integer runId, int page, int size) {
+    public Page<TrajectorySample> getPedestrianDataByRunId(Integer runId, int page, int size) {
         logger.info("获取行人数据，运行ID: {}, 页码: {}, 大小: {}", runId, page, size);
-        Pageable pageable = PageRequest.of(page, size, Sort.by("simTime"));
-        return pedestrianDataRepository.findByRunId(runId, pageable);
+        return runQueryCache.get(runId, "pedestrianPage", () -> {
+            List<TrajectorySample> content = trajectorySampleRepository.findByRunId(runId, (long) page * size, size);
+            return new PageImpl<>(content, PageRequest.of(page, size), trajectorySampleRepository.countByRunId(runId));
+        }, page, size);
+    }
+
+    /**
+     * 获取指定运行的行人数据（游标分页）
+     *
+     * @param cursor 上一页返回的 nextCursor，为空时从第一行开始
+     * @param withTotal 是否额外统计总行数（COUNT(*)，大运行代价较高）
+     */
+    public KeysetPage<TrajectorySample> getPedestrianDataPage(Integer runId, String cursor, int size, boolean withTotal) {
+        logger.info("获取行人数据（游标分页），运行ID: {}, 大小: {}", runId, size);
+        TrajectoryCursor after = cursor == null || cursor.isEmpty() ? null : TrajectoryCursor.decode(cursor);
+
+        return runQueryCache.get(runId, "pedestrianKeysetPage", () -> {
+            // 多取一行用于判断是否还有下一页
+            List<TrajectorySample> rows = trajectorySampleRepository.findByRunIdAfter(runId, after, size + 1);
+            String nextCursor = null;
+            if (rows.size() > size) {
+                rows = rows.subList(0, size);
+                nextCursor = TrajectoryCursor.after(rows.get(size - 1)).encode();
+            }
+            Long total = withTotal ? trajectorySampleRepository.countByRunId(runId) : null;
+            return new KeysetPage<>(rows, size, nextCursor, total);
+        }, after, size, withTotal);
     }
 
     /**
      * 获取指定运行和行人ID的数据
      */
-    public List<PedestrianData> getPedestrianDataByRunIdAndPedestrianId(Integer runId, Integer pedestrianId) {
+    public List<TrajectorySample> getPedestrianDataByRunIdAndPedestrianId(Integer runId, Integer pedestrianId) {
         logger.info("获取特定行人数据，运行ID: {}, 行人ID: {}", runId, pedestrianId);
-        return pedestrianDataRepository.findByRunIdAndPedestrianId(runId, pedestrianId);
+        return trajectorySampleRepository.findByRunIdAndPedestrianId(runId, pedestrianId);
     }
 
     /**
      * 获取指定时间范围内的行人数据
      */
-    public List<PedestrianData> getPedestrianDataByTimeRange(Integer runId, BigDecimal startTime, BigDecimal endTime) {
+    public List<TrajectorySample> getPedestrianDataByTimeRange(Integer runId, BigDecimal startTime, BigDecimal endTime) {
         logger.info("获取时间范围内的行人数据，运行ID: {}, 时间范围: {} - {}", runId, startTime, endTime);
-        return pedestrianDataRepository.findByRunIdAndTimeRange(runId, startTime, endTime);
+        return runQueryCache.get(runId, "pedestrianTimeRange",
+            () -> trajectorySampleRepository.findByRunIdAndTimeRange(runId, startTime, endTime), startTime, endTime);
     }
 
     /**
      * 获取指定区域的行人数据
      */
-    public List<PedestrianData> getPedestrianDataByArea(Integer runId, String areaName) {
+    public List<TrajectorySample> getPedestrianDataByArea(Integer runId, String areaName) {
         logger.info("获取区域行人数据，运行ID: {}, 区域: {}", runId, areaName);
-        return pedestrianDataRepository.findByRunIdAndAreaName(runId, areaName);
+        return runQueryCache.get(runId, "pedestrianArea",
+            () -> trajectorySampleRepository.findByRunIdAndAreaName(runId, areaName), areaName);
     }
 
     /**
-     * 统计指定运行中的行人数量
+     * 统计指定运行中的行人数量，已有运行汇总时直接读取
      */
     public Long countPedestriansByRunId(Integer runId) {
         logger.info("统计行人数量，运行ID: {}", runId);
-        return pedestrianDataRepository.countDistinctPedestriansByRunId(runId);
+        SimulationRunSummary summary = runSummaryService.findSummary(runId);
+        if (summary != null) {
+            return summary.getPedestrianCount();
+        }
+        return runQueryCache.get(runId, "pedestrianCount", () -> pedestrianDataRepository.countDistinctPedestriansByRunId(runId));
     }
 
     /**
@@ -104,7 +205,7 @@ public class SimulationDataService {
      */
     public List<EventsLog> getEventsLogByRunId(Integer runId) {
         logger.info("获取事件日志，运行ID: {}", runId);
-        return eventsLogRepository.findByRunId(runId);
+        return runQueryCache.get(runId, "events", () -> eventsLogRepository.findByRunId(runId));
     }
 
     /**
@@ -112,7 +213,7 @@ public class SimulationDataService {
      */
     public List<EventsLog> getEventsLogByEventType(Integer runId, String eventType) {
         logger.info("获取特定类型事件日志，运行ID: {}, 事件类型: {}", runId, eventType);
-        return eventsLogRepository.findByRunIdAndEventType(runId, eventType);
+        return runQueryCache.get(runId, "eventsByType", () -> eventsLogRepository.findByRunIdAndEventType(runId, eventType), eventType);
     }
 
     /**
@@ -120,7 +221,8 @@ public class SimulationDataService {
      */
     public List<EventsLog> getEventsLogByPedestrianId(Integer runId, Integer pedestrianId) {
         logger.info("获取特定行人事件日志，运行ID: {}, 行人ID: {}", runId, pedestrianId);
-        return eventsLogRepository.findByRunIdAndPedestrianId(runId, pedestrianId);
+        return runQueryCache.get(runId, "eventsByPedestrian",
+            () -> eventsLogRepository.findByRunIdAndPedestrianId(runId, pedestrianId), pedestrianId);
     }
 
     /**
@@ -128,15 +230,20 @@ public class SimulationDataService {
      */
     public List<EventsLog> getEventsLogByTimeRange(Integer runId, BigDecimal startTime, BigDecimal endTime) {
         logger.info("获取时间范围内的事件日志，运行ID: {}, 时间范围: {} - {}", runId, startTime, endTime);
-        return eventsLogRepository.findByRunIdAndTimeRange(runId, startTime, endTime);
+        return runQueryCache.get(runId, "eventsTimeRange",
+            () -> eventsLogRepository.findByRunIdAndTimeRange(runId, startTime, endTime), startTime, endTime);
     }
 
     /**
-     * 统计事件类型数量
+     * 统计事件类型数量，已有运行汇总时直接读取
      */
     public List<Object[]> getEventTypeStatistics(Integer runId) {
         logger.info("统计事件类型数量，运行ID: {}", runId);
-        return eventsLogRepository.countEventTypesByRunId(runId);
+        SimulationRunSummary summary = runSummaryService.findSummary(runId);
+        if (summary != null) {
+            return runSummaryService.getEventTypeStatistics(summary);
+        }
+        return runQueryCache.get(runId, "eventTypeStatistics", () -> eventsLogRepository.countEventTypesByRunId(runId));
     }
 
     /**
@@ -175,24 +282,40 @@ public class SimulationDataService {
     /**
      * 根据运行ID和仿真时间查询行人数据
      */
-    public List<PedestrianData> getPedestrianDataByRunIdAndSimTime(Integer runId, BigDecimal simTime) {
+    public List<TrajectorySample> getPedestrianDataByRunIdAndSimTime(Integer runId, BigDecimal simTime) {
         logger.info("获取指定仿真时间的行人数据，运行ID: {}, 仿真时间: {}", runId, simTime);
-        return pedestrianDataRepository.findByRunIdAndSimTime(runId, simTime);
+        return runQueryCache.get(runId, "pedestrianSimTime",
+            () -> trajectorySampleRepository.findByRunIdAndSimTime(runId, simTime), simTime);
+    }
+
+    /**
+     * 获取没有经纬度信息的行人数据（按主键顺序，从 afterId 之后最多 limit 条）
+     */
+    public List<TrajectorySample> getPedestrianDataWithoutLatLon(long afterId, int limit) {
+        logger.debug("获取没有经纬度信息的行人数据，起始ID: {}, 数量上限: {}", afterId, limit);
+        return trajectorySampleRepository.findWithoutLatLon(afterId, limit);
+    }
+
+    /**
+     * 获取指定运行中没有经纬度信息的行人数据
+     */
+    public List<TrajectorySample> getPedestrianDataWithoutLatLon(Integer runId) {
+        logger.info("获取没有经纬度信息的行人数据，运行ID: {}", runId);
+        return trajectorySampleRepository.findByRunIdWithoutLatLon(runId);
     }
 
     /**
-     * 获取没有经纬度信息的行人数据
+     * 指定运行中是否还有待补算经纬度的行人数据（没有坐标的行无法补算，不计入）
      */
-    public List<PedestrianData> getPedestrianDataWithoutLatLon() {
-        logger.info("获取没有经纬度信息的行人数据");
-        return pedestrianDataRepository.findByLatIsNullOrLonIsNull();
+    public boolean hasPedestrianDataToConvert(Integer runId) {
+        return trajectorySampleRepository.existsConvertibleWithoutLatLon(runId);
     }
 
     /**
      * 批量更新行人数据的经纬度信息
      */
-    public void updatePedestrianDataLatLon(List<PedestrianData> pedestrianDataList) {
-        logger.info("批量更新行人数据经纬度信息，数量: {}", pedestrianDataList.size());
-        pedestrianDataRepository.saveAll(pedestrianDataList);
+    public void updatePedestrianDataLatLon(List<TrajectorySample> samples) {
+        logger.info("批量更新行人数据经纬度信息，数量: {}", samples.size());
+        trajectorySampleRepository.updateLatLon(samples);
     }
 }
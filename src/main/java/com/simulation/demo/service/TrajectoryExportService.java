@@ -0,0 +1,86 @@
+package com.simulation.demo.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.simulation.demo.dto.TrajectorySampleJson;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.function.Consumer;
+
+/**
+ * 轨迹流式导出服务
+ *
+ * 逐行从数据库游标读取并直接写入响应流，不在内存中构造结果列表。
+ * 输出格式与普通接口的 ApiResponse 一致：{"success":true,"message":"获取成功","data":[...]}
+ */
+@Service
+public class TrajectoryExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrajectoryExportService.class);
+
+    // 每写出多少行刷新一次输出流
+    private static final int FLUSH_INTERVAL = 1000;
+
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * 导出时间范围内的行人数据
+     */
+    public long writeTimeRange(Integer runId, BigDecimal startTime, BigDecimal endTime, OutputStream out) throws IOException {
+        logger.info("流式导出时间范围内的行人数据，运行ID: {}, 时间范围: {} - {}", runId, startTime, endTime);
+        return write(out, handler -> trajectorySampleRepository.streamByRunIdAndTimeRange(runId, startTime, endTime, handler));
+    }
+
+    /**
+     * 导出指定区域的行人数据
+     */
+    public long writeArea(Integer runId, String areaName, OutputStream out) throws IOException {
+        logger.info("流式导出区域行人数据，运行ID: {}, 区域: {}", runId, areaName);
+        return write(out, handler -> trajectorySampleRepository.streamByRunIdAndAreaName(runId, areaName, handler));
+    }
+
+    private long write(OutputStream out, Consumer<TrajectorySampleRepository.SampleHandler> query) throws IOException {
+        long start = System.currentTimeMillis();
+        long[] rows = new long[1];
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            // 响应流由容器关闭
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // 出错时不自动补全数组和对象，截断的 JSON 无法解析，客户端不会把部分数据当作成功
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            gen.writeStartObject();
+            gen.writeBooleanField("success", true);
+            gen.writeStringField("message", "获取成功");
+            gen.writeArrayFieldStart("data");
+            // 先把响应头和数组开头发出去，客户端无需等待查询完成
+            gen.flush();
+
+            query.accept(sample -> {
+                TrajectorySampleJson.Serializer.write(sample, gen);
+                if (++rows[0] % FLUSH_INTERVAL == 0) {
+                    gen.flush();
+                }
+            });
+
+            gen.writeEndArray();
+            gen.writeEndObject();
+        } catch (IOException | RuntimeException e) {
+            // 继续抛出，由容器中止响应
+            logger.error("流式导出中断，已写出 {} 行: {}", rows[0], e.getMessage());
+            throw e;
+        }
+        logger.info("流式导出完成，行数: {}, 耗时: {} ms", rows[0], System.currentTimeMillis() - start);
+        return rows[0];
+    }
+}
@@ -0,0 +1,140 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.dto.AreaDwellStats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 区域停留时间、区域间行程时间统计 - 按时间顺序接收每个行人的采样，一遍得到全部时间段
+ *
+ * 行人在一个区域内的连续采样为一次停留，停留时间为第一个到最后一个采样的时间差；
+ * 离开区域（进入其他区域或区域外）时停留结束。从上一次停留的最后一个采样到进入下一个区域的第一个采样
+ * 为一次区域间行程，途经区域外的采样不影响，离开后回到同一区域也计为一次行程。
+ * 每种时间段按 (类型, 区域, 目标区域) 累计到分位数草图中，不保留单个时间段。
+ * 非线程安全，并行计算时每个线程使用自己的统计，最后用 merge 合并。
+ */
+public class AreaDwellAnalyzer {
+
+    private static final Comparator<Key> KEY_ORDER = Comparator.comparing(Key::kind)
+        .thenComparing(Key::fromArea)
+        .thenComparing(Key::toArea, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final Map<Integer, State> active = new HashMap<>();
+    private final Map<Key, Distribution> distributions = new HashMap<>();
+
+    record Key(String kind, String fromArea, String toArea) {
+    }
+
+    private static class Distribution {
+        final SpeedSketch sketch = new SpeedSketch();
+        long count;
+        double totalSeconds;
+        double maxSeconds;
+
+        void add(double seconds) {
+            sketch.add(seconds);
+            count++;
+            totalSeconds += seconds;
+            maxSeconds = Math.max(maxSeconds, seconds);
+        }
+
+        void merge(Distribution other) {
+            sketch.merge(other.sketch);
+            count += other.count;
+            totalSeconds += other.totalSeconds;
+            maxSeconds = Math.max(maxSeconds, other.maxSeconds);
+        }
+    }
+
+    /**
+     * 一个行人的当前状态；area 为 null 时不在区域内
+     */
+    private static class State {
+        double lastTime = Double.NEGATIVE_INFINITY;
+        String area;
+        double enterTime;
+        double lastAreaTime;
+        // 上一次停留的区域和最后一个采样的时间
+        String previousArea;
+        double previousTime;
+    }
+
+    public void accept(int pedestrianId, double time, String areaName) {
+        State state = active.computeIfAbsent(pedestrianId, id -> new State());
+        if (time < state.lastTime) {
+            // 乱序的采样
+            return;
+        }
+        state.lastTime = time;
+        if (areaName != null && areaName.equals(state.area)) {
+            state.lastAreaTime = time;
+            return;
+        }
+        if (state.area != null) {
+            endStay(state);
+        }
+        if (areaName != null) {
+            if (state.previousArea != null) {
+                add(new Key(AreaDwellStats.TRAVEL, state.previousArea, areaName), time - state.previousTime);
+            }
+            state.area = areaName;
+            state.enterTime = time;
+            state.lastAreaTime = time;
+        }
+    }
+
+    /**
+     * 行人的采样已全部接收，结束最后一次停留；按行人顺序读取时调用以减少内存占用
+     */
+    public void finish(int pedestrianId) {
+        State state = active.remove(pedestrianId);
+        if (state != null && state.area != null) {
+            endStay(state);
+        }
+    }
+
+    /**
+     * 合并另一个统计的结果，两者的行人不能重叠
+     */
+    public void merge(AreaDwellAnalyzer other) {
+        for (Integer pedestrianId : new ArrayList<>(other.active.keySet())) {
+            other.finish(pedestrianId);
+        }
+        for (Map.Entry<Key, Distribution> entry : other.distributions.entrySet()) {
+            distributions.computeIfAbsent(entry.getKey(), k -> new Distribution()).merge(entry.getValue());
+        }
+    }
+
+    /**
+     * 结束全部行人的最后一次停留，按类型、区域、目标区域排序输出
+     */
+    public List<AreaDwellStats> build() {
+        for (Integer pedestrianId : new ArrayList<>(active.keySet())) {
+            finish(pedestrianId);
+        }
+        List<Key> keys = new ArrayList<>(distributions.keySet());
+        keys.sort(KEY_ORDER);
+        List<AreaDwellStats> result = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+            Distribution distribution = distributions.get(key);
+            result.add(new AreaDwellStats(key.kind(), key.fromArea(), key.toArea(), distribution.count,
+                distribution.totalSeconds, distribution.maxSeconds, distribution.sketch.toBytes()));
+        }
+        return result;
+    }
+
+    private void endStay(State state) {
+        add(new Key(AreaDwellStats.DWELL, state.area, null), state.lastAreaTime - state.enterTime);
+        state.previousArea = state.area;
+        state.previousTime = state.lastAreaTime;
+        state.area = null;
+    }
+
+    private void add(Key key, double seconds) {
+        distributions.computeIfAbsent(key, k -> new Distribution()).add(seconds);
+    }
+}
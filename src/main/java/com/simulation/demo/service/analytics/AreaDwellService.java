@@ -0,0 +1,251 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.dto.AreaDwellStats;
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.SimulationRunDeletedEvent;
+import com.simulation.demo.repository.AreaDwellRepository;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.cache.RunQueryCache;
+import com.simulation.demo.service.index.FrameIndex;
+import com.simulation.demo.service.index.FrameIndexService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 区域停留时间、区域间行程时间分布 - 每个运行按行人读取一遍轨迹（{@link AreaDwellAnalyzer}），
+ * 结果以分位数草图保存到 area_dwell_stats
+ *
+ * 运行结束、数据落库后在后台计算并保存，之后只读；服务重启前结束的运行在首次查询时计算。
+ * 运行中则从已入库的轨迹计算，不保存。已建立帧索引的运行按行人分段并行计算，其余运行从数据库按时间顺序读取一遍。
+ * 分位数和直方图都由草图得到，多个运行可以直接对比。
+ */
+@Service
+public class AreaDwellService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AreaDwellService.class);
+
+    @Autowired
+    private AreaDwellRepository areaDwellRepository;
+
+    @Autowired
+    private FrameIndexService frameIndexService;
+
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
+    @Autowired
+    private RunQueryCache runQueryCache;
+
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "AreaDwellBuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        buildExecutor.shutdownNow();
+    }
+
+    /**
+     * 运行的全部时间分布，按类型、区域、目标区域排序
+     */
+    public List<AreaDwellStats> getStats(Integer runId) {
+        return runQueryCache.get(runId, "areaDwell", () -> load(runId));
+    }
+
+    /**
+     * 查询一个运行的时间分布
+     *
+     * @param kind       DWELL 或 TRAVEL
+     * @param fromArea   区域（行程时间为出发区域），为 null 时不限制
+     * @param toArea     行程时间的目标区域，为 null 时不限制
+     * @param quantiles  0 到 1 之间的分位点
+     * @param binSeconds 直方图每格的时间长度，最后一格包含更长的时间段
+     * @param bins       直方图格数
+     */
+    public List<Map<String, Object>> getDistributions(Integer runId, String kind, String fromArea, String toArea,
+                                                      double[] quantiles, double binSeconds, int bins) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (AreaDwellStats stats : getStats(runId)) {
+            if (matches(stats, kind, fromArea, toArea)) {
+                Map<String, Object> item = key(stats);
+                item.putAll(describe(stats, quantiles, binSeconds, bins));
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 多个运行对比：每个 (区域, 目标区域) 一项，runs 中按 runIds 的顺序列出各运行的分布，没有该项的运行不列出
+     */
+    public List<Map<String, Object>> compareDistributions(List<Integer> runIds, String kind, String fromArea,
+                                                          String toArea, double[] quantiles, double binSeconds,
+                                                          int bins) {
+        Map<List<String>, Map<String, Object>> items = new LinkedHashMap<>();
+        for (Integer runId : runIds) {
+            for (AreaDwellStats stats : getStats(runId)) {
+                if (!matches(stats, kind, fromArea, toArea)) {
+                    continue;
+                }
+                Map<String, Object> item = items.computeIfAbsent(
+                    Arrays.asList(stats.fromArea(), stats.toArea()), k -> {
+                        Map<String, Object> created = key(stats);
+                        created.put("runs", new ArrayList<Map<String, Object>>());
+                        return created;
+                    });
+                Map<String, Object> run = new LinkedHashMap<>();
+                run.put("runId", runId);
+                run.putAll(describe(stats, quantiles, binSeconds, bins));
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> runs = (List<Map<String, Object>>) item.get("runs");
+                runs.add(run);
+            }
+        }
+        List<Map<String, Object>> result = new ArrayList<>(items.values());
+        result.sort((a, b) -> {
+            int c = Objects.toString(a.get("fromArea"), "").compareTo(Objects.toString(b.get("fromArea"), ""));
+            return c != 0 ? c : Objects.toString(a.get("toArea"), "").compareTo(Objects.toString(b.get("toArea"), ""));
+        });
+        return result;
+    }
+
+    @EventListener
+    public void onSimulationDataCompleted(SimulationDataCompletedEvent event) {
+        Integer runId = event.getRunId();
+        buildExecutor.execute(() -> {
+            try {
+                // 坐标转换后重新发布的完成事件不影响时间分布，已保存时跳过
+                if (runQueryCache.isFinished(runId)) {
+                    computeIfAbsent(runId);
+                }
+            } catch (Exception e) {
+                logger.error("运行 {} 停留时间统计失败: {}", runId, e.getMessage(), e);
+            }
+        });
+    }
+
+    @EventListener
+    public void onSimulationRunDeleted(SimulationRunDeletedEvent event) {
+        try {
+            areaDwellRepository.deleteByRunId(event.getRunId());
+        } catch (Exception e) {
+            logger.warn("删除运行 {} 的停留时间统计失败: {}", event.getRunId(), e.getMessage());
+        }
+    }
+
+    private List<AreaDwellStats> load(Integer runId) {
+        if (!runQueryCache.isFinished(runId)) {
+            // 运行中从已入库的轨迹计算，不保存
+            return compute(runId);
+        }
+        return computeIfAbsent(runId);
+    }
+
+    private synchronized List<AreaDwellStats> computeIfAbsent(Integer runId) {
+        // 后台任务和首次请求可能同时触发，只计算一次
+        if (areaDwellRepository.existsByRunId(runId)) {
+            return areaDwellRepository.findByRunId(runId);
+        }
+        List<AreaDwellStats> rows = compute(runId);
+        areaDwellRepository.insert(runId, rows);
+        return rows;
+    }
+
+    private List<AreaDwellStats> compute(Integer runId) {
+        long start = System.currentTimeMillis();
+        AreaDwellAnalyzer analyzer;
+        FrameIndex index = frameIndexService.getIndex(runId);
+        if (index != null) {
+            // 按行人分段并行，每段只读取段内行人的采样
+            int pedestrians = index.getPedestrianCount();
+            int chunk = Math.max(256, pedestrians / (ForkJoinPool.getCommonPoolParallelism() * 4) + 1);
+            int chunks = (pedestrians + chunk - 1) / chunk;
+            analyzer = IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> {
+                    AreaDwellAnalyzer part = new AreaDwellAnalyzer();
+                    int[] current = {Integer.MIN_VALUE};
+                    index.forEachPedestrianRow(c * chunk, Math.min(pedestrians, (c + 1) * chunk),
+                        (pedestrianId, simTime, posX, posY, speed, areaName) -> {
+                            if (pedestrianId != current[0]) {
+                                part.finish(current[0]);
+                                current[0] = pedestrianId;
+                            }
+                            part.accept(pedestrianId, simTime, areaName);
+                        });
+                    return part;
+                })
+                .reduce((a, b) -> {
+                    a.merge(b);
+                    return a;
+                })
+                .orElseGet(AreaDwellAnalyzer::new);
+        } else {
+            AreaDwellAnalyzer whole = new AreaDwellAnalyzer();
+            trajectorySampleRepository.streamByRunId(runId,
+                sample -> whole.accept(sample.pedestrianId(), sample.simTime(), sample.areaName()));
+            analyzer = whole;
+        }
+        List<AreaDwellStats> rows = analyzer.build();
+        logger.info("运行 {} 停留时间统计完成: {} 项, 帧索引: {}, 耗时 {} ms", runId, rows.size(), index != null,
+                    System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    private static boolean matches(AreaDwellStats stats, String kind, String fromArea, String toArea) {
+        return stats.kind().equals(kind) && (fromArea == null || fromArea.equals(stats.fromArea()))
+            && (toArea == null || toArea.equals(stats.toArea()));
+    }
+
+    private static Map<String, Object> key(AreaDwellStats stats) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("kind", stats.kind());
+        item.put("fromArea", stats.fromArea());
+        if (stats.toArea() != null) {
+            item.put("toArea", stats.toArea());
+        }
+        return item;
+    }
+
+    /**
+     * 时间段个数、平均值、最大值、分位数和直方图；histogram[b] 为 (b * binSeconds, (b + 1) * binSeconds] 内的个数，
+     * 第一格包含 0，最后一格包含更长的时间段
+     */
+    private static Map<String, Object> describe(AreaDwellStats stats, double[] quantiles, double binSeconds, int bins) {
+        SpeedSketch sketch = SpeedSketch.fromBytes(stats.sketch());
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("count", stats.count());
+        item.put("meanSeconds", stats.count() > 0 ? stats.totalSeconds() / stats.count() : null);
+        item.put("maxSeconds", stats.maxSeconds());
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (double q : quantiles) {
+            values.put(String.valueOf(q), sketch.quantile(q));
+        }
+        item.put("quantiles", values);
+        long[] histogram = new long[bins];
+        long previous = 0;
+        for (int b = 0; b < bins; b++) {
+            long atMost = b == bins - 1 ? sketch.getCount() : sketch.countAtMost((b + 1) * binSeconds);
+            histogram[b] = atMost - previous;
+            previous = atMost;
+        }
+        item.put("histogram", histogram);
+        return item;
+    }
+}
@@ -0,0 +1,231 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.dto.AreaOccupancy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 区域占用增量统计 - 按 (区域, 时间桶) 累计出现过的行人、平均速度、速度分位数草图和同一时刻的最大人数
+ *
+ * 采样需按仿真时间顺序到达（同一时刻的采样可以分散在多批中），每个区域记录当前时刻的人数，
+ * 时刻变化时计入所在时间桶的最大人数。时间桶从仿真时间 0 开始。
+ * 已取出的时间桶不再累计，之后到达的属于这些时间桶的采样只计数（getLateSamples）。非线程安全。
+ *
+ * 统计降采样后入库的轨迹时使用保持模式（holdSeconds > 0）：行人在两个保留点之间的各个时刻没有采样，
+ * 按最近一个保留点的区域和速度补入之后出现的每个时刻，直到下一个保留点、最后一个采样（lastSampleTimes）
+ * 或超过 holdSeconds（降采样的最大间隔），使同一时刻的人数、平均速度和速度草图与按原始采样增量统计一致。
+ * 区域在两个保留点之间发生变化时，按下一个保留点的时刻切换。
+ */
+public class AreaOccupancyAccumulator {
+
+    private final double bucketSeconds;
+    private final Map<String, AreaState> areas = new HashMap<>();
+    private long latestBucket = Long.MIN_VALUE;
+    private long drainedBefore = Long.MIN_VALUE;
+    private long lateSamples;
+
+    // 保持模式：行人最近一个采样，以及当前时刻已有采样的行人
+    private final double holdSeconds;
+    private final Map<Integer, Double> lastSampleTimes;
+    private final Map<Integer, Held> held = new HashMap<>();
+    private final Set<Integer> frameSeen = new HashSet<>();
+    private double heldFrameTime = Double.NaN;
+
+    private record Held(String areaName, float speed, double simTime) {
+    }
+
+    private static class AreaState {
+        final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+        double frameTime = Double.NaN;
+        int frameCount;
+    }
+
+    private static class Bucket {
+        final Set<Integer> pedestrians = new HashSet<>();
+        long samples;
+        double speedSum;
+        long speedSamples;
+        int maxCount;
+        SpeedSketch speeds;
+    }
+
+    public AreaOccupancyAccumulator(double bucketSeconds) {
+        this(bucketSeconds, 0, Map.of());
+    }
+
+    /**
+     * @param holdSeconds     行人保持在最近一个采样的最长时间，0 为不保持
+     * @param lastSampleTimes 各行人最后一个采样的时间，之后不再保持；没有的行人只按 holdSeconds 限制
+     */
+    public AreaOccupancyAccumulator(double bucketSeconds, double holdSeconds, Map<Integer, Double> lastSampleTimes) {
+        this.bucketSeconds = bucketSeconds;
+        this.holdSeconds = holdSeconds;
+        this.lastSampleTimes = lastSampleTimes;
+    }
+
+    public void accept(int pedestrianId, double simTime, float speed, String areaName) {
+        if (Double.isNaN(simTime)) {
+            return;
+        }
+        if (holdSeconds > 0) {
+            if (simTime != heldFrameTime) {
+                fillHeld();
+                heldFrameTime = simTime;
+            }
+            frameSeen.add(pedestrianId);
+            held.put(pedestrianId, new Held(areaName, speed, simTime));
+        }
+        record(pedestrianId, simTime, speed, areaName);
+    }
+
+    /**
+     * 把当前时刻没有采样的行人按最近一个采样补入当前时刻
+     */
+    private void fillHeld() {
+        if (Double.isNaN(heldFrameTime)) {
+            frameSeen.clear();
+            return;
+        }
+        Iterator<Map.Entry<Integer, Held>> it = held.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Held> entry = it.next();
+            Held last = entry.getValue();
+            Double departure = lastSampleTimes.get(entry.getKey());
+            if (heldFrameTime - last.simTime() > holdSeconds || (departure != null && heldFrameTime > departure)) {
+                it.remove();
+            } else if (!frameSeen.contains(entry.getKey())) {
+                record(entry.getKey(), heldFrameTime, last.speed(), last.areaName());
+            }
+        }
+        frameSeen.clear();
+    }
+
+    private void record(int pedestrianId, double simTime, float speed, String areaName) {
+        long bucketIndex = bucketOf(simTime);
+        if (bucketIndex < drainedBefore) {
+            lateSamples++;
+            return;
+        }
+        latestBucket = Math.max(latestBucket, bucketIndex);
+        if (areaName == null) {
+            return;
+        }
+        AreaState area = areas.computeIfAbsent(areaName, name -> new AreaState());
+        if (simTime != area.frameTime) {
+            closeFrame(area);
+            area.frameTime = simTime;
+            area.frameCount = 0;
+        }
+        area.frameCount++;
+
+        Bucket bucket = area.buckets.computeIfAbsent(bucketIndex, b -> new Bucket());
+        bucket.pedestrians.add(pedestrianId);
+        bucket.samples++;
+        if (!Float.isNaN(speed)) {
+            bucket.speedSum += speed;
+            bucket.speedSamples++;
+            if (bucket.speeds == null) {
+                bucket.speeds = new SpeedSketch();
+            }
+            bucket.speeds.add(speed);
+        }
+    }
+
+    /**
+     * 取出并移除时间桶序号小于 bucket 的统计结果
+     */
+    public List<AreaOccupancy> drainBefore(long bucket) {
+        if (!Double.isNaN(heldFrameTime) && bucketOf(heldFrameTime) < bucket) {
+            // 当前时刻所在的时间桶也要取出，先补入该时刻
+            fillHeld();
+            heldFrameTime = Double.NaN;
+        }
+        drainedBefore = Math.max(drainedBefore, bucket);
+        List<AreaOccupancy> rows = new ArrayList<>();
+        for (Map.Entry<String, AreaState> entry : areas.entrySet()) {
+            AreaState area = entry.getValue();
+            if (!Double.isNaN(area.frameTime) && bucketOf(area.frameTime) < bucket) {
+                closeFrame(area);
+                area.frameTime = Double.NaN;
+            }
+            Iterator<Map.Entry<Long, Bucket>> it = area.buckets.headMap(bucket).entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Bucket> b = it.next();
+                rows.add(toRow(entry.getKey(), b.getKey(), b.getValue(), 0));
+                it.remove();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 取出并移除全部统计结果（运行结束时调用）
+     */
+    public List<AreaOccupancy> drainAll() {
+        return drainBefore(Long.MAX_VALUE);
+    }
+
+    /**
+     * 尚未取出的统计结果（不移除），当前时刻的人数也计入最大人数
+     *
+     * @param areaName 为 null 时返回全部区域
+     */
+    public List<AreaOccupancy> snapshot(String areaName) {
+        List<AreaOccupancy> rows = new ArrayList<>();
+        for (Map.Entry<String, AreaState> entry : areas.entrySet()) {
+            if (areaName != null && !areaName.equals(entry.getKey())) {
+                continue;
+            }
+            AreaState area = entry.getValue();
+            long frameBucket = Double.isNaN(area.frameTime) ? Long.MIN_VALUE : bucketOf(area.frameTime);
+            for (Map.Entry<Long, Bucket> b : area.buckets.entrySet()) {
+                rows.add(toRow(entry.getKey(), b.getKey(), b.getValue(), b.getKey() == frameBucket ? area.frameCount : 0));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 已收到的最新采样所在的时间桶，没有采样时为 Long.MIN_VALUE
+     */
+    public long getLatestBucket() {
+        return latestBucket;
+    }
+
+    public double getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    /**
+     * 所属时间桶已取出、未参与统计的采样数
+     */
+    public long getLateSamples() {
+        return lateSamples;
+    }
+
+    private long bucketOf(double simTime) {
+        return (long) Math.floor(simTime / bucketSeconds);
+    }
+
+    private void closeFrame(AreaState area) {
+        if (Double.isNaN(area.frameTime)) {
+            return;
+        }
+        Bucket bucket = area.buckets.computeIfAbsent(bucketOf(area.frameTime), b -> new Bucket());
+        bucket.maxCount = Math.max(bucket.maxCount, area.frameCount);
+    }
+
+    private AreaOccupancy toRow(String areaName, long timeBucket, Bucket bucket, int openFrameCount) {
+        Double meanSpeed = bucket.speedSamples > 0 ? bucket.speedSum / bucket.speedSamples : null;
+        return AreaOccupancy.of(areaName, timeBucket, bucketSeconds, bucket.pedestrians.size(),
+                                Math.max(bucket.maxCount, openFrameCount), meanSpeed, bucket.samples,
+                                bucket.speeds != null ? bucket.speeds.toBytes() : null);
+    }
+}
@@ -0,0 +1,337 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.dto.AreaOccupancy;
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.SimulationRunDeletedEvent;
+import com.simulation.demo.repository.AreaOccupancyRepository;
+import com.simulation.demo.repository.SimulationRunRepository;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.cache.RunQueryCache;
+import com.simulation.demo.service.ingest.TrajectoryIngestListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 区域占用时间序列 - 按 (运行, 区域, 时间桶) 物化到 area_occupancy 表，每行附带速度分位数草图
+ *
+ * 运行中：入库的原始采样（降采样之前）逐批累计，已结束的时间桶定期写入数据库，
+ * 查询时再合并尚未写入的时间桶；运行结束数据落库后写入剩余结果。
+ * 服务重启前开始的运行、迁移前的历史运行等没有完整增量结果的情况，
+ * 结束后按仿真时间顺序读取一遍 pedestrian_data 统计后写入；运行中则同样统计，不写入。
+ * 降采样的运行入库后每个时刻只有部分行人，统计时按保持模式把行人补入两个保留点之间的各个时刻（见 AreaOccupancyAccumulator），
+ * 与增量统计的结果一致到降采样容差以内。
+ * 速度分位数由时间桶的草图合并得到，可以按任意时间窗口、跨运行合并。
+ */
+@Service
+public class AreaOccupancyService implements TrajectoryIngestListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(AreaOccupancyService.class);
+
+    @Autowired
+    private AreaOccupancyRepository areaOccupancyRepository;
+
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
+    @Autowired
+    private SimulationRunRepository simulationRunRepository;
+
+    @Autowired
+    private RunQueryCache runQueryCache;
+
+    @Value("${simulation.area-occupancy.bucket-seconds:60}")
+    private double bucketSeconds;
+
+    private final Map<Integer, LiveRun> liveRuns = new ConcurrentHashMap<>();
+
+    /**
+     * 运行中的增量统计；complete 为 false 时（运行已有数据后才开始统计）结果不完整，不使用
+     */
+    private static class LiveRun {
+        final AreaOccupancyAccumulator accumulator;
+        final boolean complete;
+        // 写入失败的结果，下次写入时重试
+        final List<AreaOccupancy> unwritten = new ArrayList<>();
+
+        LiveRun(AreaOccupancyAccumulator accumulator, boolean complete) {
+            this.accumulator = accumulator;
+            this.complete = complete;
+        }
+    }
+
+    @Override
+    public void onSamples(Integer runId, List<TrajectorySample> samples) {
+        LiveRun live = liveRuns.computeIfAbsent(runId, id ->
+            new LiveRun(new AreaOccupancyAccumulator(bucketSeconds), !trajectorySampleRepository.existsByRunId(id)));
+        if (!live.complete) {
+            return;
+        }
+        synchronized (live) {
+            for (TrajectorySample sample : samples) {
+                live.accumulator.accept(sample.pedestrianId(), sample.simTime(), sample.speed(), sample.areaName());
+            }
+        }
+    }
+
+    /**
+     * 查询区域占用时间序列，按区域名、时间桶排序
+     *
+     * @param areaName 为 null 时返回全部区域
+     */
+    public List<AreaOccupancy> getOccupancy(Integer runId, String areaName) {
+        return runQueryCache.get(runId, "areaOccupancy", () -> load(runId, areaName, false), areaName);
+    }
+
+    /**
+     * 查询速度分位数：合并时间窗口内各时间桶的速度草图，不读取原始采样
+     *
+     * @param areaName  为 null 时返回全部区域
+     * @param from      时间桶起点的下界（含），为 null 时不限制
+     * @param to        时间桶起点的上界（不含），为 null 时不限制
+     * @param window    时间窗口长度（仿真秒，从仿真时间 0 开始对齐），为 null 时每个区域合并为一项
+     * @param quantiles 0 到 1 之间的分位点
+     */
+    public List<Map<String, Object>> getSpeedQuantiles(Integer runId, String areaName, Double from, Double to,
+                                                       Double window, double[] quantiles) {
+        return summarize(getSketches(runId, areaName), from, to, window, quantiles);
+    }
+
+    /**
+     * 多个运行合并后的速度分位数，每个区域合并为一项
+     */
+    public List<Map<String, Object>> getSpeedQuantiles(List<Integer> runIds, String areaName, Double from, Double to,
+                                                       double[] quantiles) {
+        List<AreaOccupancy> rows = new ArrayList<>();
+        for (Integer runId : runIds) {
+            rows.addAll(getSketches(runId, areaName));
+        }
+        return summarize(rows, from, to, null, quantiles);
+    }
+
+    /**
+     * 定期把运行中已结束的时间桶写入数据库；保留最近一个完整时间桶，容纳稍晚到达的采样
+     *
+     * 取出和写入在同一把锁内完成，查询看到的已写入和未写入部分不会重叠或遗漏。
+     */
+    @Scheduled(fixedDelayString = "${simulation.area-occupancy.flush-interval-ms:10000}")
+    public void flushLiveRuns() {
+        for (Map.Entry<Integer, LiveRun> entry : liveRuns.entrySet()) {
+            LiveRun live = entry.getValue();
+            if (!live.complete) {
+                continue;
+            }
+            synchronized (live) {
+                long latest = live.accumulator.getLatestBucket();
+                if (latest != Long.MIN_VALUE) {
+                    write(entry.getKey(), live, live.accumulator.drainBefore(latest - 1));
+                }
+            }
+        }
+    }
+
+    private List<AreaOccupancy> getSketches(Integer runId, String areaName) {
+        return runQueryCache.get(runId, "speedSketches", () -> load(runId, areaName, true), areaName);
+    }
+
+    /**
+     * 先于查询缓存处理，查询缓存标记运行结束时结果已全部写入；
+     * 写入完成后才移除增量统计，期间的查询仍按运行中处理
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onSimulationDataCompleted(SimulationDataCompletedEvent event) {
+        Integer runId = event.getRunId();
+        LiveRun live = liveRuns.get(runId);
+        if (live == null) {
+            // 坐标转换后重新发布的完成事件，区域占用不受影响
+            return;
+        }
+        try {
+            if (live.complete) {
+                synchronized (live) {
+                    List<AreaOccupancy> rows = live.accumulator.drainAll();
+                    rows.addAll(live.unwritten);
+                    areaOccupancyRepository.upsert(runId, rows);
+                    live.unwritten.clear();
+                    logger.debug("运行 {} 区域占用增量统计结果已写入: {} 行", runId, rows.size());
+                    if (live.accumulator.getLateSamples() > 0) {
+                        logger.warn("运行 {} 有 {} 条采样晚于所属时间桶写入，未计入区域占用", runId,
+                                    live.accumulator.getLateSamples());
+                    }
+                }
+            } else {
+                rebuild(runId);
+            }
+        } catch (Exception e) {
+            logger.error("运行 {} 区域占用写入失败: {}", runId, e.getMessage(), e);
+        } finally {
+            liveRuns.remove(runId, live);
+        }
+    }
+
+    @EventListener
+    public void onSimulationRunDeleted(SimulationRunDeletedEvent event) {
+        liveRuns.remove(event.getRunId());
+        try {
+            areaOccupancyRepository.deleteByRunId(event.getRunId());
+        } catch (Exception e) {
+            logger.warn("删除运行 {} 的区域占用数据失败: {}", event.getRunId(), e.getMessage());
+        }
+    }
+
+    private List<AreaOccupancy> load(Integer runId, String areaName, boolean withSketches) {
+        LiveRun live = liveRuns.get(runId);
+        if (live != null && live.complete) {
+            synchronized (live) {
+                List<AreaOccupancy> rows = withSketches
+                    ? areaOccupancyRepository.findWithSketchesByRunId(runId, areaName)
+                    : areaOccupancyRepository.findByRunId(runId, areaName);
+                rows = new ArrayList<>(rows);
+                rows.addAll(live.accumulator.snapshot(areaName));
+                rows.addAll(filter(live.unwritten, areaName));
+                rows.sort(Comparator.comparing(AreaOccupancy::areaName).thenComparingLong(AreaOccupancy::timeBucket));
+                return rows;
+            }
+        }
+        if (live == null && runQueryCache.isFinished(runId)) {
+            synchronized (this) {
+                // 并发请求只统计一次
+                if (!areaOccupancyRepository.existsByRunId(runId)) {
+                    rebuild(runId);
+                }
+            }
+            return withSketches
+                ? areaOccupancyRepository.findWithSketchesByRunId(runId, areaName)
+                : areaOccupancyRepository.findByRunId(runId, areaName);
+        }
+        // 运行中但没有完整的增量结果：从已入库的采样统计，不写入
+        List<AreaOccupancy> rows = filter(compute(runId), areaName);
+        rows.sort(Comparator.comparing(AreaOccupancy::areaName).thenComparingLong(AreaOccupancy::timeBucket));
+        return rows;
+    }
+
+    private void rebuild(Integer runId) {
+        long start = System.currentTimeMillis();
+        List<AreaOccupancy> rows = compute(runId);
+        areaOccupancyRepository.deleteByRunId(runId);
+        areaOccupancyRepository.upsert(runId, rows);
+        logger.info("运行 {} 区域占用统计完成: {} 行, 耗时 {} ms", runId, rows.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 按仿真时间顺序读取一遍已入库的采样统计，已结束的时间桶及时取出，内存占用与运行长度无关
+     */
+    private List<AreaOccupancy> compute(Integer runId) {
+        SimulationRun run = simulationRunRepository.findById(runId).orElse(null);
+        AreaOccupancyAccumulator accumulator;
+        if (run != null && Boolean.TRUE.equals(run.getDownsampleEnabled()) && run.getDownsampleMaxInterval() != null) {
+            // 入库的是降采样后的轨迹，行人保持到下一个保留点，最长为降采样的最大间隔
+            accumulator = new AreaOccupancyAccumulator(bucketSeconds, run.getDownsampleMaxInterval(),
+                                                       trajectorySampleRepository.findLastSimTimes(runId));
+        } else {
+            accumulator = new AreaOccupancyAccumulator(bucketSeconds);
+        }
+        List<AreaOccupancy> rows = new ArrayList<>();
+        long[] drained = {Long.MIN_VALUE};
+        trajectorySampleRepository.streamByRunId(runId, sample -> {
+            accumulator.accept(sample.pedestrianId(), sample.simTime(), sample.speed(), sample.areaName());
+            long latest = accumulator.getLatestBucket();
+            if (latest > drained[0]) {
+                rows.addAll(accumulator.drainBefore(latest));
+                drained[0] = latest;
+            }
+        });
+        rows.addAll(accumulator.drainAll());
+        return rows;
+    }
+
+    private void write(Integer runId, LiveRun live, List<AreaOccupancy> rows) {
+        rows.addAll(live.unwritten);
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            areaOccupancyRepository.upsert(runId, rows);
+            live.unwritten.clear();
+        } catch (Exception e) {
+            logger.warn("运行 {} 区域占用写入失败，稍后重试: {}", runId, e.getMessage());
+            live.unwritten.clear();
+            live.unwritten.addAll(rows);
+        }
+    }
+
+    private static List<AreaOccupancy> filter(List<AreaOccupancy> rows, String areaName) {
+        if (areaName == null) {
+            return rows;
+        }
+        List<AreaOccupancy> result = new ArrayList<>();
+        for (AreaOccupancy row : rows) {
+            if (areaName.equals(row.areaName())) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 合并起点在 [from, to) 内的时间桶的速度草图，按 (区域, 时间窗口) 计算分位数
+     */
+    private static List<Map<String, Object>> summarize(List<AreaOccupancy> rows, Double from, Double to,
+                                                       Double window, double[] quantiles) {
+        Map<String, TreeMap<Long, WindowSketch>> areas = new TreeMap<>();
+        for (AreaOccupancy row : rows) {
+            if (row.speedSketch() == null || (from != null && row.startTime() < from)
+                    || (to != null && row.startTime() >= to)) {
+                continue;
+            }
+            long windowIndex = window != null ? (long) Math.floor(row.startTime() / window) : 0;
+            WindowSketch target = areas.computeIfAbsent(row.areaName(), a -> new TreeMap<>())
+                .computeIfAbsent(windowIndex, w -> new WindowSketch());
+            target.sketch.merge(SpeedSketch.fromBytes(row.speedSketch()));
+            target.startTime = Math.min(target.startTime, row.startTime());
+            target.endTime = Math.max(target.endTime, row.startTime() + row.bucketSeconds());
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map.Entry<String, TreeMap<Long, WindowSketch>> area : areas.entrySet()) {
+            for (Map.Entry<Long, WindowSketch> entry : area.getValue().entrySet()) {
+                WindowSketch target = entry.getValue();
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("areaName", area.getKey());
+                item.put("startTime", window != null ? entry.getKey() * window : target.startTime);
+                item.put("endTime", window != null ? (entry.getKey() + 1) * window : target.endTime);
+                item.put("count", target.sketch.getCount());
+                Map<String, Double> values = new LinkedHashMap<>();
+                for (double q : quantiles) {
+                    values.put(String.valueOf(q), target.sketch.quantile(q));
+                }
+                item.put("quantiles", values);
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    private static class WindowSketch {
+        final SpeedSketch sketch = new SpeedSketch();
+        double startTime = Double.POSITIVE_INFINITY;
+        double endTime = Double.NEGATIVE_INFINITY;
+    }
+}
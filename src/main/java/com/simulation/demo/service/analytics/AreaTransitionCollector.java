@@ -0,0 +1,127 @@
+package com.simulation.demo.service.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 区域序列收集 - 按时间顺序接收每个行人的采样，记录行人依次经过的区域（camera2AreaDict 中的 area_name）
+ *
+ * 不在任何区域内（area_name 为空）的采样跳过，不打断序列；连续位于同一区域的采样合并为一段。
+ * 非线程安全，并行计算时每个线程使用自己的收集器，最后用 merge 合并。
+ */
+public class AreaTransitionCollector {
+
+    // 进行中的行人，按 pedestrian_id
+    private final Map<Integer, Chain> active = new HashMap<>();
+    private final List<Chain> finished = new ArrayList<>();
+
+    /**
+     * 一个行人的区域序列：areas[i] 为第 i 段的区域，times[i] 为进入该区域的时间
+     */
+    static class Chain {
+        String[] areas = new String[4];
+        double[] times = new double[4];
+        int size;
+        // 最后一个采样的时间，lastAreaTime 为最后一个位于区域内的采样的时间
+        double lastTime = Double.NEGATIVE_INFINITY;
+        double lastAreaTime = Double.NaN;
+
+        void accept(double time, String areaName) {
+            if (time < lastTime) {
+                // 乱序的采样
+                return;
+            }
+            lastTime = time;
+            if (areaName == null) {
+                return;
+            }
+            lastAreaTime = time;
+            if (size > 0 && areaName.equals(areas[size - 1])) {
+                return;
+            }
+            if (size == areas.length) {
+                areas = Arrays.copyOf(areas, size * 2);
+                times = Arrays.copyOf(times, size * 2);
+            }
+            areas[size] = areaName;
+            times[size] = time;
+            size++;
+        }
+    }
+
+    public void accept(int pedestrianId, double time, String areaName) {
+        active.computeIfAbsent(pedestrianId, id -> new Chain()).accept(time, areaName);
+    }
+
+    /**
+     * 行人的采样已全部接收，不再保留按 pedestrian_id 查找的状态；按行人顺序读取时调用以减少内存占用
+     */
+    public void finish(int pedestrianId) {
+        Chain chain = active.remove(pedestrianId);
+        if (chain != null) {
+            finished.add(chain);
+        }
+    }
+
+    /**
+     * 合并另一个收集器的结果，两者的行人不能重叠
+     */
+    public void merge(AreaTransitionCollector other) {
+        finished.addAll(other.finished);
+        finished.addAll(other.active.values());
+    }
+
+    public int getPedestrianCount() {
+        return active.size() + finished.size();
+    }
+
+    /**
+     * 整理为紧凑的行程数据，从未进入任何区域的行人不产生行程
+     */
+    public AreaTrips build() {
+        List<Chain> chains = new ArrayList<>(finished);
+        chains.addAll(active.values());
+
+        TreeSet<String> names = new TreeSet<>();
+        int tripCount = 0;
+        int segmentCount = 0;
+        for (Chain chain : chains) {
+            if (chain.size > 0) {
+                tripCount++;
+                segmentCount += chain.size;
+                names.addAll(Arrays.asList(chain.areas).subList(0, chain.size));
+            }
+        }
+        String[] areas = names.toArray(new String[0]);
+        Map<String, Integer> areaIds = new HashMap<>();
+        for (int i = 0; i < areas.length; i++) {
+            areaIds.put(areas[i], i);
+        }
+
+        int[] chainStarts = new int[tripCount + 1];
+        int[] chainAreas = new int[segmentCount];
+        double[] entryTimes = new double[segmentCount];
+        double[] endTimes = new double[tripCount];
+        int trip = 0;
+        int position = 0;
+        for (Chain chain : chains) {
+            if (chain.size == 0) {
+                continue;
+            }
+            chainStarts[trip] = position;
+            for (int i = 0; i < chain.size; i++) {
+                chainAreas[position] = areaIds.get(chain.areas[i]);
+                entryTimes[position] = chain.times[i];
+                position++;
+            }
+            endTimes[trip] = chain.lastAreaTime;
+            trip++;
+        }
+        chainStarts[tripCount] = position;
+        return new AreaTrips(areas, chains.size(), chainStarts, chainAreas, entryTimes, endTimes);
+    }
+}
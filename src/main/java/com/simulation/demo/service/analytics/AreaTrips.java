@@ -0,0 +1,212 @@
+package com.simulation.demo.service.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一个运行中每个行人的区域序列（行程），由 {@link AreaTransitionCollector} 生成，只读
+ *
+ * 第 t 个行程依次经过的区域为 chainAreas[chainStarts[t] .. chainStarts[t + 1])（区域编号为 getAreas 中的下标），
+ * 起点为第一个区域，终点为最后一个区域。按时间窗口统计 OD 矩阵、区域间转移矩阵时只扫描这些数组，不读取采样。
+ */
+public class AreaTrips {
+
+    private final String[] areas;
+    private final int pedestrianCount;
+    private final int[] chainStarts;
+    private final int[] chainAreas;
+    // 进入序列中每个区域的时间
+    private final double[] entryTimes;
+    // 每个行程最后一个位于区域内的采样的时间
+    private final double[] endTimes;
+
+    /**
+     * 一个时间窗口的矩阵，matrix[i][j] 为从区域 i 到区域 j 的人数
+     */
+    public record Window(double startTime, double endTime, int count, int[][] matrix) {
+    }
+
+    /**
+     * 一种完整的区域序列及经过该序列的行人数
+     */
+    public record Chain(List<String> areas, int count) {
+    }
+
+    AreaTrips(String[] areas, int pedestrianCount, int[] chainStarts, int[] chainAreas,
+              double[] entryTimes, double[] endTimes) {
+        this.areas = areas;
+        this.pedestrianCount = pedestrianCount;
+        this.chainStarts = chainStarts;
+        this.chainAreas = chainAreas;
+        this.entryTimes = entryTimes;
+        this.endTimes = endTimes;
+    }
+
+    /**
+     * 按名称排序的区域
+     */
+    public List<String> getAreas() {
+        return List.of(areas);
+    }
+
+    /**
+     * 运行中的行人数，包括从未进入任何区域的行人
+     */
+    public int getPedestrianCount() {
+        return pedestrianCount;
+    }
+
+    public int getTripCount() {
+        return chainStarts.length - 1;
+    }
+
+    public int getOrigin(int trip) {
+        return chainAreas[chainStarts[trip]];
+    }
+
+    public int getDestination(int trip) {
+        return chainAreas[chainStarts[trip + 1] - 1];
+    }
+
+    /**
+     * 进入起点区域的时间
+     */
+    public double getDepartureTime(int trip) {
+        return entryTimes[chainStarts[trip]];
+    }
+
+    public double getEndTime(int trip) {
+        return endTimes[trip];
+    }
+
+    /**
+     * OD 矩阵：每个行程按进入起点区域的时间计入一个时间窗口，从起点计到终点；
+     * 始终位于同一区域的行人计入对角线
+     *
+     * @param from          出发时间下界（含），为 null 时不限制
+     * @param to            出发时间上界（不含），为 null 时不限制
+     * @param windowSeconds 时间窗口长度（仿真秒，从仿真时间 0 开始对齐），为 null 时合并为一个窗口
+     * @throws IllegalArgumentException 有行程的时间窗口超过 maxWindows 个
+     */
+    public List<Window> odMatrix(Double from, Double to, Double windowSeconds, int maxWindows) {
+        Windows windows = new Windows(windowSeconds, maxWindows);
+        for (int trip = 0; trip < getTripCount(); trip++) {
+            double time = getDepartureTime(trip);
+            if (inRange(time, from, to)) {
+                windows.add(time, getOrigin(trip), getDestination(trip));
+            }
+        }
+        return windows.toList();
+    }
+
+    /**
+     * 区域间转移矩阵：行程中每次从一个区域进入另一个区域按进入的时间计入时间窗口
+     *
+     * @see #odMatrix
+     */
+    public List<Window> transitionMatrix(Double from, Double to, Double windowSeconds, int maxWindows) {
+        Windows windows = new Windows(windowSeconds, maxWindows);
+        for (int trip = 0; trip < getTripCount(); trip++) {
+            for (int i = chainStarts[trip] + 1; i < chainStarts[trip + 1]; i++) {
+                if (inRange(entryTimes[i], from, to)) {
+                    windows.add(entryTimes[i], chainAreas[i - 1], chainAreas[i]);
+                }
+            }
+        }
+        return windows.toList();
+    }
+
+    /**
+     * 出发时间在 [from, to) 内的行程中最常见的完整区域序列，按人数从多到少排序
+     */
+    public List<Chain> topChains(Double from, Double to, int limit) {
+        Map<String, int[]> counts = new HashMap<>();
+        for (int trip = 0; trip < getTripCount(); trip++) {
+            if (!inRange(getDepartureTime(trip), from, to)) {
+                continue;
+            }
+            String key = Arrays.toString(Arrays.copyOfRange(chainAreas, chainStarts[trip], chainStarts[trip + 1]));
+            int first = trip;
+            // {人数, 第一个行程}
+            counts.computeIfAbsent(key, k -> new int[] {0, first})[0]++;
+        }
+        List<int[]> sorted = new ArrayList<>(counts.values());
+        sorted.sort(Comparator.<int[]>comparingInt(entry -> -entry[0]).thenComparingInt(entry -> entry[1]));
+
+        List<Chain> chains = new ArrayList<>(Math.min(limit, sorted.size()));
+        for (int[] entry : sorted.subList(0, Math.min(limit, sorted.size()))) {
+            int trip = entry[1];
+            List<String> names = new ArrayList<>(chainStarts[trip + 1] - chainStarts[trip]);
+            for (int i = chainStarts[trip]; i < chainStarts[trip + 1]; i++) {
+                names.add(areas[chainAreas[i]]);
+            }
+            chains.add(new Chain(names, entry[0]));
+        }
+        return chains;
+    }
+
+    public long sizeInBytes() {
+        long bytes = 64 + (long) chainStarts.length * Integer.BYTES + (long) chainAreas.length * Integer.BYTES
+            + (long) entryTimes.length * Double.BYTES + (long) endTimes.length * Double.BYTES;
+        for (String area : areas) {
+            bytes += 48 + area.length() * 2L;
+        }
+        return bytes;
+    }
+
+    private static boolean inRange(double time, Double from, Double to) {
+        return (from == null || time >= from) && (to == null || time < to);
+    }
+
+    /**
+     * 按时间窗口累计的矩阵，只为有数据的时间窗口分配矩阵
+     */
+    private class Windows {
+        final Double windowSeconds;
+        final int maxWindows;
+        final TreeMap<Long, int[][]> matrices = new TreeMap<>();
+        final Map<Long, int[]> counts = new HashMap<>();
+        double minTime = Double.POSITIVE_INFINITY;
+        double maxTime = Double.NEGATIVE_INFINITY;
+
+        Windows(Double windowSeconds, int maxWindows) {
+            this.windowSeconds = windowSeconds;
+            this.maxWindows = maxWindows;
+        }
+
+        void add(double time, int fromArea, int toArea) {
+            long window = windowSeconds != null ? (long) Math.floor(time / windowSeconds) : 0;
+            int[][] matrix = matrices.get(window);
+            if (matrix == null) {
+                if (matrices.size() == maxWindows) {
+                    throw new IllegalArgumentException("时间窗口数超过 " + maxWindows + "，需增大时间窗口长度");
+                }
+                matrix = new int[areas.length][areas.length];
+                matrices.put(window, matrix);
+            }
+            matrix[fromArea][toArea]++;
+            counts.computeIfAbsent(window, w -> new int[1])[0]++;
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+        }
+
+        List<Window> toList() {
+            List<Window> result = new ArrayList<>(matrices.size());
+            for (Map.Entry<Long, int[][]> entry : matrices.entrySet()) {
+                long window = entry.getKey();
+                int count = counts.get(window)[0];
+                if (windowSeconds != null) {
+                    result.add(new Window(window * windowSeconds, (window + 1) * windowSeconds, count, entry.getValue()));
+                } else {
+                    result.add(new Window(minTime, maxTime, count, entry.getValue()));
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.simulation.demo.service.analytics;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 拥挤检测 - 统计一帧中距离小于 distance 的行人对数和局部密度
+ *
+ * 行人对：按边长 distance 的网格做空间哈希，每个行人只与本格和相邻格中的行人比较，不做全部两两比较。
+ * 局部密度：边长 cellSize 的网格内人数 / 面积（人/平方米），按 Fruin 人行通道服务水平分级。
+ * 达到 triggerLevel 的网格按边长 regionSize 的区块汇总，每个区块输出密度最高的网格，用于跟踪拥挤的开始和结束。
+ * distance、cellSize、regionSize 以米为单位；输入坐标（轨迹的像素坐标）先乘以 metresPerUnit 换算成米再做哈希，
+ * 输出的网格中心换算回输入坐标。
+ * 各帧互相独立，可以并行分析；构建后只读，线程安全。
+ */
+public class CrowdingDetector {
+
+    // 行人对网格右侧和上方的相邻网格
+    private static final int[][] NEIGHBORS = {{1, -1}, {1, 0}, {1, 1}, {0, 1}};
+
+    /**
+     * Fruin 人行通道服务水平，按密度（人/平方米）的上限划分
+     */
+    public enum Level {
+        A(0.31), B(0.43), C(0.72), D(1.08), E(2.17), F(Double.POSITIVE_INFINITY);
+
+        private final double maxDensity;
+
+        Level(double maxDensity) {
+            this.maxDensity = maxDensity;
+        }
+
+        public static Level of(double density) {
+            for (Level level : values()) {
+                if (density <= level.maxDensity) {
+                    return level;
+                }
+            }
+            return F;
+        }
+    }
+
+    /**
+     * 一个区块中密度最高的网格
+     *
+     * @param key        区块键
+     * @param x          网格中心（输入坐标）
+     * @param y          网格中心（输入坐标）
+     * @param count      网格内人数
+     * @param closePairs 区块内距离小于 distance 的行人对数
+     */
+    public record Region(@JsonIgnore long key, double x, double y, int count, double density, Level level,
+                         long closePairs) {
+    }
+
+    /**
+     * 一帧的统计
+     *
+     * @param closePairs  距离小于 distance 的行人对数
+     * @param peakDensity 密度最高的网格的密度
+     * @param crowded     达到 triggerLevel 的区块，按区块键排序
+     */
+    public record FrameStats(double time, int pedestrianCount, long closePairs, double peakDensity, Level level,
+                             List<Region> crowded) {
+    }
+
+    private final double distance;
+    private final double cellSize;
+    private final double regionSize;
+    private final Level triggerLevel;
+    private final double metresPerUnit;
+
+    /**
+     * 输入坐标以米为单位
+     */
+    public CrowdingDetector(double distance, double cellSize, double regionSize, Level triggerLevel) {
+        this(distance, cellSize, regionSize, triggerLevel, 1.0);
+    }
+
+    /**
+     * @param metresPerUnit 输入坐标每单位对应的米数
+     */
+    public CrowdingDetector(double distance, double cellSize, double regionSize, Level triggerLevel,
+                            double metresPerUnit) {
+        if (!(distance > 0) || !(cellSize > 0) || !(regionSize > 0)) {
+            throw new IllegalArgumentException("拥挤检测的距离、网格边长和区块边长必须大于 0");
+        }
+        if (!(metresPerUnit > 0) || Double.isInfinite(metresPerUnit)) {
+            throw new IllegalArgumentException("拥挤检测的坐标比例必须大于 0: " + metresPerUnit);
+        }
+        this.distance = distance;
+        this.cellSize = cellSize;
+        this.regionSize = regionSize;
+        this.triggerLevel = triggerLevel;
+        this.metresPerUnit = metresPerUnit;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public double getMetresPerUnit() {
+        return metresPerUnit;
+    }
+
+    public Level getTriggerLevel() {
+        return triggerLevel;
+    }
+
+    /**
+     * 分析一帧，xs/ys 的前 n 个为各行人的位置（输入坐标），坐标为 NaN 的行人跳过
+     */
+    public FrameStats analyze(double time, double[] xs, double[] ys, int n) {
+        if (metresPerUnit != 1.0) {
+            xs = toMetres(xs, n);
+            ys = toMetres(ys, n);
+        }
+        int valid = 0;
+        // 行人对网格
+        Map<Long, int[]> pairCells = new HashMap<>();
+        // 密度网格: {人数}
+        Map<Long, int[]> densityCells = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            if (Double.isNaN(xs[i]) || Double.isNaN(ys[i])) {
+                continue;
+            }
+            valid++;
+            append(pairCells, cellKey(xs[i], ys[i], distance), i);
+            densityCells.computeIfAbsent(cellKey(xs[i], ys[i], cellSize), k -> new int[1])[0]++;
+        }
+
+        // 每个网格只与右侧和上方的 4 个相邻网格比较，每对只计一次
+        Map<Long, long[]> regionPairs = new HashMap<>();
+        double limit = distance * distance;
+        long closePairs = 0;
+        for (Map.Entry<Long, int[]> entry : pairCells.entrySet()) {
+            int cx = (int) (entry.getKey() >> 32);
+            int cy = entry.getKey().intValue();
+            int[] cell = entry.getValue();
+            for (int a = 1; a <= cell[0]; a++) {
+                int i = cell[a];
+                for (int b = a + 1; b <= cell[0]; b++) {
+                    closePairs += countPair(i, cell[b], xs, ys, limit, regionPairs);
+                }
+                for (int[] offset : NEIGHBORS) {
+                    int[] other = pairCells.get(pack(cx + offset[0], cy + offset[1]));
+                    if (other != null) {
+                        for (int b = 1; b <= other[0]; b++) {
+                            closePairs += countPair(i, other[b], xs, ys, limit, regionPairs);
+                        }
+                    }
+                }
+            }
+        }
+
+        double peakDensity = 0;
+        Map<Long, Region> regions = new HashMap<>();
+        double area = cellSize * cellSize;
+        for (Map.Entry<Long, int[]> entry : densityCells.entrySet()) {
+            int count = entry.getValue()[0];
+            double density = count / area;
+            peakDensity = Math.max(peakDensity, density);
+            Level level = Level.of(density);
+            if (level.compareTo(triggerLevel) < 0) {
+                continue;
+            }
+            double x = ((int) (entry.getKey() >> 32) + 0.5) * cellSize;
+            double y = (entry.getKey().intValue() + 0.5) * cellSize;
+            long regionKey = cellKey(x, y, regionSize);
+            Region current = regions.get(regionKey);
+            if (current == null || count > current.count()) {
+                long[] pairs = regionPairs.get(regionKey);
+                regions.put(regionKey, new Region(regionKey, x / metresPerUnit, y / metresPerUnit, count, density, level,
+                                                  pairs != null ? pairs[0] : 0));
+            }
+        }
+        List<Region> crowded = new ArrayList<>(regions.values());
+        crowded.sort((a, b) -> Long.compare(a.key(), b.key()));
+        return new FrameStats(time, valid, closePairs, peakDensity, Level.of(peakDensity), crowded);
+    }
+
+    private int countPair(int i, int j, double[] xs, double[] ys, double limit, Map<Long, long[]> regionPairs) {
+        double dx = xs[i] - xs[j];
+        double dy = ys[i] - ys[j];
+        if (dx * dx + dy * dy >= limit) {
+            return 0;
+        }
+        // 行人对计入第一个行人所在的区块
+        regionPairs.computeIfAbsent(cellKey(xs[i], ys[i], regionSize), k -> new long[1])[0]++;
+        return 1;
+    }
+
+    private double[] toMetres(double[] values, int n) {
+        double[] metres = new double[n];
+        for (int i = 0; i < n; i++) {
+            metres[i] = values[i] * metresPerUnit;
+        }
+        return metres;
+    }
+
+    private static long cellKey(double x, double y, double size) {
+        return pack((int) Math.floor(x / size), (int) Math.floor(y / size));
+    }
+
+    private static long pack(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 网格内行人列表：cell[0] 为人数，之后为行人下标
+     */
+    private static void append(Map<Long, int[]> cells, long key, int i) {
+        int[] cell = cells.get(key);
+        if (cell == null) {
+            cell = new int[4];
+            cells.put(key, cell);
+        } else if (cell[0] + 1 == cell.length) {
+            cell = Arrays.copyOf(cell, cell.length * 2);
+            cells.put(key, cell);
+        }
+        cell[++cell[0]] = i;
+    }
+}
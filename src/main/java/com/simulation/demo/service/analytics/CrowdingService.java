@@ -0,0 +1,496 @@
+package com.simulation.demo.service.analytics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.simulation.demo.dto.CrowdingEpisode;
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.EventsLog;
+import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.SimulationEventsChangedEvent;
+import com.simulation.demo.event.SimulationRunDeletedEvent;
+import com.simulation.demo.event.SimulationStateChangedEvent;
+import com.simulation.demo.repository.EventsLogRepository;
+import com.simulation.demo.repository.SimulationRunRepository;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.CoordinateConversionService;
+import com.simulation.demo.service.index.FrameIndex;
+import com.simulation.demo.service.index.FrameIndexService;
+import com.simulation.demo.service.ingest.TrajectoryIngestListener;
+import com.simulation.demo.service.ingest.WriteBehindQueue;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+/**
+ * 拥挤事件检测 - 逐帧统计距离过近的行人对和局部密度（{@link CrowdingDetector}），
+ * 把拥挤的开始和结束作为 CROWDING_START / CROWDING_END 事件写入 events_log，event_details 为 {@link CrowdingEpisode}
+ *
+ * 运行中：入库的原始采样（降采样之前）按 sim_time 组成帧，收到更晚的采样后分析之前的帧，
+ * 事件经写入队列与轨迹一起落库；运行结束时分析剩余的帧并结束进行中的拥挤过程。
+ * 服务重启前开始的运行等没有完整增量结果的情况，结束后从帧索引（没有帧索引时从数据库按时间顺序）补检测一次，
+ * 也可以手动重新检测。各帧并行分析，按时间顺序跟踪拥挤过程。
+ * 降采样入库的运行每帧只存了部分行人，结束后的检测和逐帧统计按行人前后两个保留点线性插值补齐各帧。
+ */
+@Service
+public class CrowdingService implements TrajectoryIngestListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrowdingService.class);
+
+    // 补检测时每次并行分析的帧数
+    private static final int FRAME_BATCH = 1024;
+
+    // 插值时允许的时间误差（sim_time 为 DECIMAL(10,3)）
+    private static final double TIME_EPSILON = 1e-6;
+
+    @Autowired
+    private WriteBehindQueue writeBehindQueue;
+
+    @Autowired
+    private FrameIndexService frameIndexService;
+
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
+    @Autowired
+    private EventsLogRepository eventsLogRepository;
+
+    @Autowired
+    private SimulationRunRepository simulationRunRepository;
+
+    @Autowired
+    private CoordinateConversionService coordinateConversionService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${simulation.crowding.enabled:true}")
+    private boolean enabled;
+
+    @Value("${simulation.crowding.distance:1.0}")
+    private double distance;
+
+    @Value("${simulation.crowding.cell-size:2.0}")
+    private double cellSize;
+
+    @Value("${simulation.crowding.region-size:10.0}")
+    private double regionSize;
+
+    @Value("${simulation.crowding.metres-per-unit:0}")
+    private double metresPerUnit;
+
+    @Value("${simulation.crowding.trigger-level:E}")
+    private String triggerLevel;
+
+    @Value("${simulation.crowding.end-delay-seconds:10}")
+    private double endDelaySeconds;
+
+    @Value("${simulation.ingest.write-behind.drain-timeout-ms:120000}")
+    private long drainTimeoutMs;
+
+    private CrowdingDetector detector;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<Integer, LiveRun> liveRuns = new ConcurrentHashMap<>();
+
+    // 已完整检测过的运行，之后的数据完成事件（如坐标转换后重新发布）不再补检测
+    private final Set<Integer> detectedRuns = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService detectExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "CrowdingDetector");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 运行中的增量检测；complete 为 false 时（运行已有数据后才开始检测）结果不完整，不使用
+     *
+     * 结束后检测已入库的降采样轨迹时 maxGap 为降采样的最大间隔：行人相邻两个保留点间隔不超过 maxGap 时，
+     * 之间各帧中该行人的位置按两点线性插值补上。采样须按时间顺序加入。
+     */
+    private static class LiveRun {
+        final CrowdingTracker tracker;
+        final boolean complete;
+        final double maxGap;
+        // 尚未分析的帧，按 sim_time
+        final TreeMap<Double, Frame> pending = new TreeMap<>();
+        // 插值用：每个行人上一个保留点 {sim_time, x, y}
+        final Map<Integer, double[]> lastPositions = new HashMap<>();
+        double processedTime = Double.NEGATIVE_INFINITY;
+        long lateSamples;
+
+        LiveRun(CrowdingTracker tracker, boolean complete) {
+            this(tracker, complete, 0);
+        }
+
+        LiveRun(CrowdingTracker tracker, boolean complete, double maxGap) {
+            this.tracker = tracker;
+            this.complete = complete;
+            this.maxGap = maxGap;
+        }
+
+        void add(double simTime, int pedestrianId, double x, double y) {
+            pending.computeIfAbsent(simTime, t -> new Frame()).add(x, y);
+            if (maxGap <= 0) {
+                return;
+            }
+            double[] previous = lastPositions.put(pedestrianId, new double[]{simTime, x, y});
+            if (previous == null || !(simTime > previous[0]) || simTime - previous[0] > maxGap + TIME_EPSILON) {
+                return;
+            }
+            double dt = simTime - previous[0];
+            for (Map.Entry<Double, Frame> entry : pending.subMap(previous[0], false, simTime, false).entrySet()) {
+                double f = (entry.getKey() - previous[0]) / dt;
+                entry.getValue().add(previous[1] + (x - previous[1]) * f, previous[2] + (y - previous[2]) * f);
+            }
+        }
+
+        /**
+         * 之后加入的采样（时间不早于 currentTime）不会再插值到其中的帧
+         */
+        NavigableMap<Double, Frame> ready(double currentTime) {
+            return pending.headMap(maxGap > 0 ? currentTime - maxGap - TIME_EPSILON : currentTime, false);
+        }
+    }
+
+    private static class Frame {
+        double[] xs = new double[16];
+        double[] ys = new double[16];
+        int size;
+
+        void add(double x, double y) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // 轨迹坐标为底图像素，未配置比例时按坐标转换的校准点换算
+        double scale = metresPerUnit > 0 ? metresPerUnit : coordinateConversionService.getMetresPerPixel();
+        detector = new CrowdingDetector(distance, cellSize, regionSize,
+                                        CrowdingDetector.Level.valueOf(triggerLevel.trim().toUpperCase()), scale);
+        logger.info("拥挤检测坐标比例: {} 米/像素", scale);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        detectExecutor.shutdownNow();
+    }
+
+    @Override
+    public void onSamples(Integer runId, List<TrajectorySample> samples) {
+        if (!enabled) {
+            return;
+        }
+        LiveRun live = liveRuns.computeIfAbsent(runId, id ->
+            new LiveRun(new CrowdingTracker(endDelaySeconds), !trajectorySampleRepository.existsByRunId(id)));
+        if (!live.complete) {
+            return;
+        }
+        List<CrowdingTracker.Event> events;
+        synchronized (live) {
+            for (TrajectorySample sample : samples) {
+                if (sample.simTime() <= live.processedTime) {
+                    live.lateSamples++;
+                    continue;
+                }
+                live.pending.computeIfAbsent(sample.simTime(), t -> new Frame()).add(sample.posX(), sample.posY());
+            }
+            if (live.pending.isEmpty()) {
+                return;
+            }
+            // 最新一帧可能还有后续批次的采样，只分析更早的帧
+            events = process(live, live.pending.headMap(live.pending.lastKey(), false));
+        }
+        write(runId, events);
+    }
+
+    /**
+     * 统计 [fromTime, toTime] 内每帧距离过近的行人对数、峰值密度和达到触发等级的区块，最多 maxFrames 帧
+     *
+     * @return 运行未建立帧索引时 indexed 为 false
+     */
+    public Map<String, Object> getFrameStats(Integer runId, Double fromTime, Double toTime, int maxFrames) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        FrameIndex index = frameIndexService.getIndex(runId);
+        result.put("indexed", index != null);
+        if (index == null) {
+            return result;
+        }
+        int first = 0;
+        if (fromTime != null) {
+            first = index.floorFrame(fromTime);
+            if (first < 0 || index.getFrameTime(first) < fromTime) {
+                first++;
+            }
+        }
+        int last = toTime != null ? index.floorFrame(toTime) : index.getFrameCount() - 1;
+        int total = Math.max(0, last - first + 1);
+        int start = first;
+        int count = Math.min(total, maxFrames);
+        double maxGap = getMaxGap(runId);
+        List<CrowdingDetector.FrameStats> frames;
+        if (maxGap > 0 && count > 0) {
+            // 前后各多读 maxGap 内的帧，用于插值区间两端的帧
+            double startTime = index.getFrameTime(start);
+            double endTime = index.getFrameTime(start + count - 1);
+            LiveRun window = new LiveRun(null, true, maxGap);
+            int from = Math.max(0, index.floorFrame(startTime - maxGap - TIME_EPSILON));
+            for (int frame = from; frame < index.getFrameCount(); frame++) {
+                double time = index.getFrameTime(frame);
+                if (time > endTime + maxGap + TIME_EPSILON) {
+                    break;
+                }
+                index.forEachInFrame(frame, (pedestrianId, posX, posY, posZ, speed) -> window.add(time, pedestrianId, posX, posY));
+            }
+            frames = window.pending.subMap(startTime, true, endTime, true).entrySet().parallelStream()
+                .map(entry -> analyze(entry.getKey(), entry.getValue()))
+                .toList();
+        } else {
+            frames = IntStream.range(start, start + count).parallel()
+                .mapToObj(frame -> analyzeFrame(index, frame))
+                .toList();
+        }
+
+        result.put("distance", distance);
+        result.put("cellSize", cellSize);
+        result.put("regionSize", regionSize);
+        result.put("metresPerUnit", detector.getMetresPerUnit());
+        result.put("triggerLevel", detector.getTriggerLevel());
+        result.put("total", total);
+        result.put("truncated", total > frames.size());
+        result.put("frames", frames);
+        return result;
+    }
+
+    /**
+     * 重新检测已结束运行的拥挤事件：删除已有的拥挤事件，从帧索引（或数据库）检测后写入
+     *
+     * @return 检测到的拥挤过程数，运行不存在时返回 null
+     * @throws IllegalStateException 运行尚未结束
+     */
+    public synchronized Integer detect(Integer runId) {
+        SimulationRun run = simulationRunRepository.findById(runId).orElse(null);
+        if (run == null) {
+            return null;
+        }
+        if (!SimulationStateChangedEvent.isTerminal(run.getState())) {
+            throw new IllegalStateException("运行尚未结束，不能重新检测拥挤事件: run_id=" + runId);
+        }
+        long start = System.currentTimeMillis();
+        int deleted = eventsLogRepository.deleteByRunIdAndEventTypeIn(runId,
+            List.of(CrowdingEpisode.START, CrowdingEpisode.END));
+        List<CrowdingTracker.Event> events = detectAll(runId);
+        write(runId, events);
+        detectedRuns.add(runId);
+
+        int episodes = (int) events.stream().filter(e -> CrowdingEpisode.END.equals(e.type())).count();
+        logger.info("运行 {} 拥挤检测完成: {} 次拥挤, 删除旧事件 {} 条, 耗时 {} ms", runId, episodes, deleted,
+                    System.currentTimeMillis() - start);
+        if (deleted > 0 || !events.isEmpty()) {
+            try {
+                if (!writeBehindQueue.awaitDrained(drainTimeoutMs)) {
+                    logger.warn("运行 {} 拥挤事件 {} ms 内未全部写入", runId, drainTimeoutMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // 已结束运行的事件被改写，查询缓存、ETag 和运行汇总的事件统计随之更新
+            eventPublisher.publishEvent(new SimulationEventsChangedEvent(runId));
+        }
+        return episodes;
+    }
+
+    /**
+     * 先于写入队列收尾处理，剩余的事件在数据完成事件之前提交
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onSimulationStateChanged(SimulationStateChangedEvent event) {
+        if (!event.isTerminal()) {
+            return;
+        }
+        Integer runId = event.getRunId();
+        LiveRun live = liveRuns.remove(runId);
+        if (live == null || !live.complete) {
+            return;
+        }
+        List<CrowdingTracker.Event> events;
+        synchronized (live) {
+            events = process(live, live.pending);
+            events.addAll(live.tracker.finish());
+            if (live.lateSamples > 0) {
+                logger.warn("运行 {} 有 {} 条采样晚于所属帧到达，未计入拥挤检测", runId, live.lateSamples);
+            }
+        }
+        try {
+            write(runId, events);
+            detectedRuns.add(runId);
+        } catch (Exception e) {
+            logger.error("运行 {} 拥挤事件写入失败: {}", runId, e.getMessage(), e);
+        }
+    }
+
+    @EventListener
+    public void onSimulationDataCompleted(SimulationDataCompletedEvent event) {
+        Integer runId = event.getRunId();
+        if (!enabled || detectedRuns.contains(runId)) {
+            return;
+        }
+        detectExecutor.execute(() -> {
+            try {
+                if (!eventsLogRepository.existsByRunIdAndEventType(runId, CrowdingEpisode.START)) {
+                    detect(runId);
+                } else {
+                    detectedRuns.add(runId);
+                }
+            } catch (IllegalStateException e) {
+                logger.debug("运行 {} 尚未结束，跳过拥挤检测", runId);
+            } catch (Exception e) {
+                logger.error("运行 {} 拥挤检测失败: {}", runId, e.getMessage(), e);
+            }
+        });
+    }
+
+    @EventListener
+    public void onSimulationRunDeleted(SimulationRunDeletedEvent event) {
+        liveRuns.remove(event.getRunId());
+        detectedRuns.remove(event.getRunId());
+    }
+
+    /**
+     * 并行分析一组帧后按时间顺序交给跟踪器，分析过的帧从 frames 中移除
+     */
+    private List<CrowdingTracker.Event> process(LiveRun live, Map<Double, Frame> frames) {
+        List<Map.Entry<Double, Frame>> entries = new ArrayList<>(frames.entrySet());
+        frames.clear();
+        List<CrowdingTracker.Event> events = new ArrayList<>();
+        if (entries.isEmpty()) {
+            return events;
+        }
+        List<CrowdingDetector.FrameStats> stats = entries.parallelStream()
+            .map(entry -> analyze(entry.getKey(), entry.getValue()))
+            .toList();
+        for (CrowdingDetector.FrameStats frame : stats) {
+            events.addAll(live.tracker.accept(frame));
+        }
+        live.processedTime = entries.get(entries.size() - 1).getKey();
+        return events;
+    }
+
+    private List<CrowdingTracker.Event> detectAll(Integer runId) {
+        CrowdingTracker tracker = new CrowdingTracker(endDelaySeconds);
+        List<CrowdingTracker.Event> events = new ArrayList<>();
+        LiveRun batch = new LiveRun(tracker, true, getMaxGap(runId));
+        FrameIndex index = frameIndexService.getIndex(runId);
+        if (index != null) {
+            for (int frame = 0; frame < index.getFrameCount(); frame++) {
+                double time = index.getFrameTime(frame);
+                events.addAll(processReady(batch, time));
+                index.forEachInFrame(frame, (pedestrianId, posX, posY, posZ, speed) -> batch.add(time, pedestrianId, posX, posY));
+            }
+        } else {
+            // 数据库按 (sim_time, pedestrian_id) 顺序读取
+            trajectorySampleRepository.streamByRunId(runId, sample -> {
+                if (!batch.pending.isEmpty() && sample.simTime() > batch.pending.lastKey()) {
+                    events.addAll(processReady(batch, sample.simTime()));
+                }
+                batch.add(sample.simTime(), sample.pedestrianId(), sample.posX(), sample.posY());
+            });
+        }
+        events.addAll(process(batch, batch.pending));
+        events.addAll(tracker.finish());
+        return events;
+    }
+
+    /**
+     * 攒够一批帧后并行分析其中不会再插值补点的帧
+     */
+    private List<CrowdingTracker.Event> processReady(LiveRun batch, double currentTime) {
+        if (batch.pending.size() < FRAME_BATCH) {
+            return List.of();
+        }
+        return process(batch, batch.ready(currentTime));
+    }
+
+    /**
+     * 降采样入库的运行返回降采样的最大间隔，其余返回 0（每帧已有全部行人）
+     */
+    private double getMaxGap(Integer runId) {
+        SimulationRun run = simulationRunRepository.findById(runId).orElse(null);
+        if (run != null && Boolean.TRUE.equals(run.getDownsampleEnabled()) && run.getDownsampleMaxInterval() != null) {
+            return run.getDownsampleMaxInterval();
+        }
+        return 0;
+    }
+
+    private CrowdingDetector.FrameStats analyze(double time, Frame frame) {
+        return detector.analyze(time, frame.xs, frame.ys, frame.size);
+    }
+
+    private CrowdingDetector.FrameStats analyzeFrame(FrameIndex index, int frame) {
+        int size = index.getFrameSize(frame);
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        int[] n = {0};
+        index.forEachInFrame(frame, (pedestrianId, posX, posY, posZ, speed) -> {
+            xs[n[0]] = posX;
+            ys[n[0]] = posY;
+            n[0]++;
+        });
+        return detector.analyze(index.getFrameTime(frame), xs, ys, n[0]);
+    }
+
+    private void write(Integer runId, List<CrowdingTracker.Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<EventsLog> logs = new ArrayList<>(events.size());
+        for (CrowdingTracker.Event event : events) {
+            EventsLog log = new EventsLog(runId, event.type());
+            log.setSimTime(BigDecimal.valueOf(event.simTime()).setScale(3, RoundingMode.HALF_UP));
+            log.setEventDetails(toJson(event.episode()));
+            logs.add(log);
+        }
+        writeBehindQueue.submitEvents(logs);
+    }
+
+    private String toJson(CrowdingEpisode episode) {
+        try {
+            return objectMapper.writeValueAsString(episode);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("拥挤事件序列化失败", e);
+        }
+    }
+}
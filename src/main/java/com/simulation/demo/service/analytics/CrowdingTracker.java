@@ -0,0 +1,113 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.dto.CrowdingEpisode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 拥挤过程跟踪 - 按时间顺序接收各帧的统计（{@link CrowdingDetector.FrameStats}），每个区块独立跟踪
+ *
+ * 区块第一次达到触发等级时开始一次拥挤过程，连续 endDelaySeconds 没有达到时结束，结束时间为最后一次达到的时间。
+ * 非线程安全，同一运行的帧必须按顺序交给同一个跟踪器。
+ */
+public class CrowdingTracker {
+
+    private final double endDelaySeconds;
+
+    // 进行中的拥挤过程，按区块键
+    private final Map<Long, Episode> active = new LinkedHashMap<>();
+
+    private double lastTime = Double.NEGATIVE_INFINITY;
+
+    /**
+     * 跟踪器输出的事件
+     *
+     * @param type CrowdingEpisode.START 或 CrowdingEpisode.END
+     */
+    public record Event(String type, double simTime, CrowdingEpisode episode) {
+    }
+
+    private static class Episode {
+        final double startTime;
+        double lastTime;
+        CrowdingDetector.Region peak;
+        double peakTime;
+        long maxClosePairs;
+
+        Episode(double time, CrowdingDetector.Region region) {
+            startTime = time;
+            lastTime = time;
+            peak = region;
+            peakTime = time;
+            maxClosePairs = region.closePairs();
+        }
+
+        void update(double time, CrowdingDetector.Region region) {
+            lastTime = time;
+            if (region.count() > peak.count()) {
+                peak = region;
+                peakTime = time;
+            }
+            maxClosePairs = Math.max(maxClosePairs, region.closePairs());
+        }
+
+        CrowdingEpisode toEpisode() {
+            return new CrowdingEpisode(peak.x(), peak.y(), startTime, lastTime, peakTime, peak.density(),
+                                       peak.level().name(), peak.count(), maxClosePairs);
+        }
+    }
+
+    public CrowdingTracker(double endDelaySeconds) {
+        this.endDelaySeconds = endDelaySeconds;
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * 接收一帧，返回这一帧产生的事件；早于上一帧的统计忽略
+     */
+    public List<Event> accept(CrowdingDetector.FrameStats stats) {
+        List<Event> events = new ArrayList<>();
+        if (stats.time() <= lastTime) {
+            return events;
+        }
+        lastTime = stats.time();
+        for (CrowdingDetector.Region region : stats.crowded()) {
+            Episode episode = active.get(region.key());
+            if (episode == null) {
+                episode = new Episode(stats.time(), region);
+                active.put(region.key(), episode);
+                events.add(new Event(CrowdingEpisode.START, stats.time(), episode.toEpisode()));
+            } else {
+                episode.update(stats.time(), region);
+            }
+        }
+        Iterator<Episode> it = active.values().iterator();
+        while (it.hasNext()) {
+            Episode episode = it.next();
+            if (episode.lastTime < stats.time() && stats.time() - episode.lastTime >= endDelaySeconds) {
+                events.add(new Event(CrowdingEpisode.END, episode.lastTime, episode.toEpisode()));
+                it.remove();
+            }
+        }
+        return events;
+    }
+
+    /**
+     * 数据结束，结束全部进行中的拥挤过程
+     */
+    public List<Event> finish() {
+        List<Event> events = new ArrayList<>(active.size());
+        for (Episode episode : active.values()) {
+            events.add(new Event(CrowdingEpisode.END, episode.lastTime, episode.toEpisode()));
+        }
+        active.clear();
+        return events;
+    }
+}
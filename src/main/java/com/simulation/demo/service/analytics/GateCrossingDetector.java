@@ -0,0 +1,115 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.entity.FlowGate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 计数线穿越检测 - 按时间顺序接收每个行人的位置，检查相邻两个位置之间的线段与各计数线是否相交
+ *
+ * 位置恰好在计数线上时算作右侧，沿计数线移动不计穿越；穿越时间按线段与计数线的交点线性插值。
+ * 非线程安全，并行计算时每个线程使用自己的检测器，最后用 merge 合并。
+ */
+public class GateCrossingDetector {
+
+    private final int[] gateIds;
+    private final double[] ax;
+    private final double[] ay;
+    private final double[] bx;
+    private final double[] by;
+    private final GateCrossings[] crossings;
+
+    // 每个行人上一个位置 {time, x, y}
+    private final Map<Integer, double[]> lastPositions = new HashMap<>();
+
+    public GateCrossingDetector(List<FlowGate> gates) {
+        int count = gates.size();
+        gateIds = new int[count];
+        ax = new double[count];
+        ay = new double[count];
+        bx = new double[count];
+        by = new double[count];
+        crossings = new GateCrossings[count];
+        for (int i = 0; i < count; i++) {
+            FlowGate gate = gates.get(i);
+            gateIds[i] = gate.getGateId();
+            ax[i] = gate.getX1();
+            ay[i] = gate.getY1();
+            bx[i] = gate.getX2();
+            by[i] = gate.getY2();
+            crossings[i] = new GateCrossings();
+        }
+    }
+
+    public void accept(int pedestrianId, double time, double x, double y) {
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            return;
+        }
+        double[] last = lastPositions.get(pedestrianId);
+        if (last == null) {
+            lastPositions.put(pedestrianId, new double[] {time, x, y});
+            return;
+        }
+        if (time <= last[0]) {
+            // 重复或乱序的采样
+            return;
+        }
+        for (int gate = 0; gate < gateIds.length; gate++) {
+            checkCrossing(gate, last[0], last[1], last[2], time, x, y);
+        }
+        last[0] = time;
+        last[1] = x;
+        last[2] = y;
+    }
+
+    /**
+     * 不再接收该行人的位置（按行人遍历时释放状态）
+     */
+    public void forget(int pedestrianId) {
+        lastPositions.remove(pedestrianId);
+    }
+
+    public void merge(GateCrossingDetector other) {
+        for (int gate = 0; gate < gateIds.length; gate++) {
+            crossings[gate].addAll(other.crossings[gate]);
+        }
+    }
+
+    public int getGateCount() {
+        return gateIds.length;
+    }
+
+    public int getGateId(int gate) {
+        return gateIds[gate];
+    }
+
+    /**
+     * 第 gate 条计数线的穿越记录（按时间排序的副本）
+     */
+    public GateCrossings getCrossings(int gate) {
+        return crossings[gate].sortedCopy();
+    }
+
+    private void checkCrossing(int gate, double t1, double x1, double y1, double t2, double x2, double y2) {
+        double dx = bx[gate] - ax[gate];
+        double dy = by[gate] - ay[gate];
+        // 叉积大于 0 表示在 A→B 的左侧
+        double side1 = dx * (y1 - ay[gate]) - dy * (x1 - ax[gate]);
+        double side2 = dx * (y2 - ay[gate]) - dy * (x2 - ax[gate]);
+        if ((side1 > 0) == (side2 > 0)) {
+            return;
+        }
+        // A、B 需在移动线段的两侧（或在其上）
+        double ex = x2 - x1;
+        double ey = y2 - y1;
+        double endA = ex * (ay[gate] - y1) - ey * (ax[gate] - x1);
+        double endB = ex * (by[gate] - y1) - ey * (bx[gate] - x1);
+        if ((endA > 0 && endB > 0) || (endA < 0 && endB < 0)) {
+            return;
+        }
+        double fraction = side1 / (side1 - side2);
+        crossings[gate].add(t1 + (t2 - t1) * fraction, side2 > 0);
+    }
+}
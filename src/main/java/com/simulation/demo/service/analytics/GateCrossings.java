@@ -0,0 +1,95 @@
+package com.simulation.demo.service.analytics;
+
+import java.util.Arrays;
+
+/**
+ * 一条计数线上的穿越时刻，按方向分别保存
+ *
+ * forward 为从 A→B 的右侧穿到左侧，backward 相反。非线程安全。
+ */
+public class GateCrossings {
+
+    private double[] forward = new double[16];
+    private int forwardCount;
+    private double[] backward = new double[16];
+    private int backwardCount;
+
+    void add(double time, boolean isForward) {
+        if (isForward) {
+            if (forwardCount == forward.length) {
+                forward = Arrays.copyOf(forward, forwardCount * 2);
+            }
+            forward[forwardCount++] = time;
+        } else {
+            if (backwardCount == backward.length) {
+                backward = Arrays.copyOf(backward, backwardCount * 2);
+            }
+            backward[backwardCount++] = time;
+        }
+    }
+
+    void addAll(GateCrossings other) {
+        for (int i = 0; i < other.forwardCount; i++) {
+            add(other.forward[i], true);
+        }
+        for (int i = 0; i < other.backwardCount; i++) {
+            add(other.backward[i], false);
+        }
+    }
+
+    /**
+     * 复制一份按时间排序的结果
+     */
+    GateCrossings sortedCopy() {
+        GateCrossings copy = new GateCrossings();
+        copy.forward = Arrays.copyOf(forward, forwardCount);
+        copy.forwardCount = forwardCount;
+        copy.backward = Arrays.copyOf(backward, backwardCount);
+        copy.backwardCount = backwardCount;
+        Arrays.sort(copy.forward);
+        Arrays.sort(copy.backward);
+        return copy;
+    }
+
+    public int getForwardCount() {
+        return forwardCount;
+    }
+
+    public int getBackwardCount() {
+        return backwardCount;
+    }
+
+    /**
+     * 最后一次穿越的时间，没有穿越时返回 NaN
+     */
+    public double getLastTime() {
+        double last = Double.NaN;
+        for (int i = 0; i < forwardCount; i++) {
+            last = Double.isNaN(last) ? forward[i] : Math.max(last, forward[i]);
+        }
+        for (int i = 0; i < backwardCount; i++) {
+            last = Double.isNaN(last) ? backward[i] : Math.max(last, backward[i]);
+        }
+        return last;
+    }
+
+    /**
+     * 按 [b * bucketSeconds, (b + 1) * bucketSeconds) 统计每个时间桶的穿越次数
+     */
+    public int[] histogram(boolean isForward, double bucketSeconds, int bucketCount) {
+        double[] times = isForward ? forward : backward;
+        int count = isForward ? forwardCount : backwardCount;
+        int[] histogram = new int[bucketCount];
+        for (int i = 0; i < count; i++) {
+            int bucket = (int) Math.floor(times[i] / bucketSeconds);
+            if (bucket >= 0 && bucket < bucketCount) {
+                histogram[bucket]++;
+            }
+        }
+        return histogram;
+    }
+
+    public long sizeInBytes() {
+        return 48 + ((long) forward.length + backward.length) * Double.BYTES;
+    }
+}
@@ -0,0 +1,296 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.FlowGate;
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.SimulationRunDeletedEvent;
+import com.simulation.demo.repository.FlowGateRepository;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.cache.CacheStats;
+import com.simulation.demo.service.cache.RunQueryCache;
+import com.simulation.demo.service.cache.WeightedLruCache;
+import com.simulation.demo.service.index.FrameIndex;
+import com.simulation.demo.service.index.FrameIndexService;
+import com.simulation.demo.service.ingest.TrajectoryIngestListener;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 计数线客流统计 - 每条计数线按方向、按时间桶统计穿越人次
+ *
+ * 运行中：入库的原始采样（降采样之前）逐批交给检测器增量统计，查询时直接读取当前结果；
+ * 运行结束数据落库后，这些结果转入缓存，结束后立即可查。
+ * 运行开始后才创建的计数线、服务重启前开始的运行等没有完整增量结果的情况，
+ * 从帧索引按行人分段并行计算（没有帧索引时从数据库按时间顺序读取一遍）。
+ * 补算使用降采样后的轨迹，与增量统计的结果可能不同：同一运行先得到的结果保留在缓存中，不会被之后的计算替换，
+ * 返回结果中的 source 标明来源；服务重启或缓存淘汰后只能按已入库的轨迹补算。
+ */
+@Service
+public class GateFlowService implements TrajectoryIngestListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(GateFlowService.class);
+
+    @Autowired
+    private FlowGateRepository flowGateRepository;
+
+    @Autowired
+    private FrameIndexService frameIndexService;
+
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
+    @Autowired
+    private RunQueryCache runQueryCache;
+
+    @Value("${simulation.gates.max-bytes:67108864}")
+    private long maxBytes;
+
+    // 计数线列表，首次使用时加载，增删后重新加载
+    private volatile List<FlowGate> gates;
+
+    private final Map<Integer, LiveRun> liveRuns = new ConcurrentHashMap<>();
+
+    // 结果来源：入库时的原始采样 / 已入库（降采样后）的轨迹
+    static final String SOURCE_INGEST = "ingest";
+    static final String SOURCE_STORED = "stored";
+
+    private WeightedLruCache<Key, Flow> cache;
+
+    record Key(Integer runId, Integer gateId) {
+    }
+
+    record Flow(GateCrossings crossings, String source) {
+    }
+
+    /**
+     * 运行中的增量统计；complete 为 false 时（运行已有数据后才开始统计）结果不完整，不使用
+     */
+    private static class LiveRun {
+        final GateCrossingDetector detector;
+        final boolean complete;
+
+        LiveRun(GateCrossingDetector detector, boolean complete) {
+            this.detector = detector;
+            this.complete = complete;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        cache = new WeightedLruCache<>("gateFlow", maxBytes, flow -> flow.crossings().sizeInBytes());
+    }
+
+    public List<FlowGate> getGates() {
+        List<FlowGate> current = gates;
+        if (current == null) {
+            current = List.copyOf(flowGateRepository.findAll(Sort.by("gateId")));
+            gates = current;
+        }
+        return current;
+    }
+
+    public FlowGate createGate(FlowGate gate) {
+        FlowGate saved = flowGateRepository.save(gate);
+        gates = null;
+        logger.info("创建计数线 {}: {} ({}, {}) → ({}, {})", saved.getGateId(), saved.getName(),
+                    saved.getX1(), saved.getY1(), saved.getX2(), saved.getY2());
+        return saved;
+    }
+
+    public boolean deleteGate(Integer gateId) {
+        if (!flowGateRepository.existsById(gateId)) {
+            return false;
+        }
+        flowGateRepository.deleteById(gateId);
+        gates = null;
+        cache.removeIf(key -> key.gateId().equals(gateId));
+        logger.info("删除计数线 {}", gateId);
+        return true;
+    }
+
+    @Override
+    public void onSamples(Integer runId, List<TrajectorySample> samples) {
+        LiveRun live = liveRuns.computeIfAbsent(runId, id ->
+            new LiveRun(new GateCrossingDetector(getGates()), !trajectorySampleRepository.existsByRunId(id)));
+        if (!live.complete || live.detector.getGateCount() == 0) {
+            return;
+        }
+        synchronized (live) {
+            for (TrajectorySample sample : samples) {
+                live.detector.accept(sample.pedestrianId(), sample.simTime(), sample.posX(), sample.posY());
+            }
+        }
+    }
+
+    /**
+     * 查询计数线客流
+     *
+     * @param gateIds       为 null 时返回全部计数线
+     * @param bucketSeconds 时间桶长度（仿真秒），时间桶从仿真时间 0 开始
+     * @throws IllegalArgumentException 计数线不存在
+     */
+    public List<Map<String, Object>> getFlow(Integer runId, List<Integer> gateIds, double bucketSeconds) {
+        List<FlowGate> selected = selectGates(gateIds);
+        Map<Integer, Flow> crossings = new HashMap<>();
+        List<FlowGate> missing = new ArrayList<>();
+
+        LiveRun live = liveRuns.get(runId);
+        for (FlowGate gate : selected) {
+            GateCrossings liveResult = live != null ? getLive(live, gate.getGateId()) : null;
+            Flow result = liveResult != null ? new Flow(liveResult, SOURCE_INGEST) : cache.get(new Key(runId, gate.getGateId()));
+            if (result != null) {
+                crossings.put(gate.getGateId(), result);
+            } else {
+                missing.add(gate);
+            }
+        }
+        if (!missing.isEmpty()) {
+            GateCrossingDetector detector = compute(runId, missing);
+            boolean finished = runQueryCache.isFinished(runId);
+            for (int i = 0; i < detector.getGateCount(); i++) {
+                Flow result = new Flow(detector.getCrossings(i), SOURCE_STORED);
+                if (finished) {
+                    // 计算期间增量结果可能已转入缓存，保留先得到的结果
+                    result = cache.putIfAbsent(new Key(runId, detector.getGateId(i)), result);
+                }
+                crossings.put(detector.getGateId(i), result);
+            }
+        }
+
+        int bucketCount = 0;
+        for (Flow flow : crossings.values()) {
+            double last = flow.crossings().getLastTime();
+            if (!Double.isNaN(last)) {
+                bucketCount = Math.max(bucketCount, (int) Math.floor(last / bucketSeconds) + 1);
+            }
+        }
+        List<Map<String, Object>> flows = new ArrayList<>(selected.size());
+        for (FlowGate gate : selected) {
+            GateCrossings result = crossings.get(gate.getGateId()).crossings();
+            Map<String, Object> flow = new LinkedHashMap<>();
+            flow.put("gateId", gate.getGateId());
+            flow.put("name", gate.getName());
+            flow.put("totalForward", result.getForwardCount());
+            flow.put("totalBackward", result.getBackwardCount());
+            flow.put("bucketSeconds", bucketSeconds);
+            flow.put("forward", result.histogram(true, bucketSeconds, bucketCount));
+            flow.put("backward", result.histogram(false, bucketSeconds, bucketCount));
+            flow.put("source", crossings.get(gate.getGateId()).source());
+            flows.add(flow);
+        }
+        return flows;
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    @EventListener
+    public void onSimulationDataCompleted(SimulationDataCompletedEvent event) {
+        LiveRun live = liveRuns.remove(event.getRunId());
+        if (live == null || !live.complete) {
+            return;
+        }
+        synchronized (live) {
+            for (int i = 0; i < live.detector.getGateCount(); i++) {
+                cache.putIfAbsent(new Key(event.getRunId(), live.detector.getGateId(i)),
+                                  new Flow(live.detector.getCrossings(i), SOURCE_INGEST));
+            }
+        }
+        logger.debug("运行 {} 计数线增量统计结果已转入缓存", event.getRunId());
+    }
+
+    @EventListener
+    public void onSimulationRunDeleted(SimulationRunDeletedEvent event) {
+        liveRuns.remove(event.getRunId());
+        cache.removeIf(key -> key.runId().equals(event.getRunId()));
+    }
+
+    private List<FlowGate> selectGates(List<Integer> gateIds) {
+        List<FlowGate> all = getGates();
+        if (gateIds == null) {
+            return all;
+        }
+        Map<Integer, FlowGate> byId = new HashMap<>();
+        for (FlowGate gate : all) {
+            byId.put(gate.getGateId(), gate);
+        }
+        List<FlowGate> selected = new ArrayList<>(gateIds.size());
+        for (Integer gateId : gateIds) {
+            FlowGate gate = byId.get(gateId);
+            if (gate == null) {
+                throw new IllegalArgumentException("计数线不存在: " + gateId);
+            }
+            selected.add(gate);
+        }
+        return selected;
+    }
+
+    private GateCrossings getLive(LiveRun live, Integer gateId) {
+        if (!live.complete) {
+            return null;
+        }
+        synchronized (live) {
+            for (int i = 0; i < live.detector.getGateCount(); i++) {
+                if (live.detector.getGateId(i) == gateId) {
+                    return live.detector.getCrossings(i);
+                }
+            }
+        }
+        return null;
+    }
+
+    private GateCrossingDetector compute(Integer runId, List<FlowGate> gates) {
+        long start = System.currentTimeMillis();
+        GateCrossingDetector result;
+        FrameIndex index = frameIndexService.getIndex(runId);
+        if (index != null) {
+            // 按行人分段并行，每段只读取段内行人的采样
+            int pedestrians = index.getPedestrianCount();
+            int chunk = Math.max(256, pedestrians / (ForkJoinPool.getCommonPoolParallelism() * 4) + 1);
+            int chunks = (pedestrians + chunk - 1) / chunk;
+            result = IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> {
+                    GateCrossingDetector detector = new GateCrossingDetector(gates);
+                    int[] current = {Integer.MIN_VALUE};
+                    index.forEachPedestrianRow(c * chunk, Math.min(pedestrians, (c + 1) * chunk),
+                        (pedestrianId, simTime, posX, posY, speed, areaName) -> {
+                            if (pedestrianId != current[0]) {
+                                detector.forget(current[0]);
+                                current[0] = pedestrianId;
+                            }
+                            detector.accept(pedestrianId, simTime, posX, posY);
+                        });
+                    return detector;
+                })
+                .reduce((a, b) -> {
+                    a.merge(b);
+                    return a;
+                })
+                .orElseGet(() -> new GateCrossingDetector(gates));
+        } else {
+            GateCrossingDetector detector = new GateCrossingDetector(gates);
+            trajectorySampleRepository.streamByRunId(runId,
+                sample -> detector.accept(sample.pedestrianId(), sample.simTime(), sample.posX(), sample.posY()));
+            result = detector;
+        }
+        logger.info("运行 {} 计数线客流计算完成: {} 条计数线, 帧索引: {}, 耗时 {} ms", runId, gates.size(),
+                    index != null, System.currentTimeMillis() - start);
+        return result;
+    }
+}
@@ -0,0 +1,114 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.cache.RunQueryCache;
+import com.simulation.demo.service.index.FrameIndex;
+import com.simulation.demo.service.index.FrameIndexService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 区域 OD 矩阵 - 由每个行人依次经过的区域（area_name）得到起点、终点和区域间转移
+ *
+ * 每个运行的区域序列只计算一次（{@link AreaTrips}），缓存在查询缓存中，之后按时间窗口统计矩阵只扫描序列数组。
+ * 已建立帧索引的运行按行人分段并行计算，其余运行从数据库按时间顺序读取一遍。
+ */
+@Service
+public class OdMatrixService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OdMatrixService.class);
+
+    @Autowired
+    private FrameIndexService frameIndexService;
+
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
+    @Autowired
+    private RunQueryCache runQueryCache;
+
+    @Value("${simulation.od-matrix.max-windows:1000}")
+    private int maxWindows;
+
+    public AreaTrips getTrips(Integer runId) {
+        return runQueryCache.get(runId, "areaTrips", () -> compute(runId));
+    }
+
+    /**
+     * 查询 OD 矩阵
+     *
+     * @param from          出发时间下界（含），为 null 时不限制
+     * @param to            出发时间上界（不含），为 null 时不限制
+     * @param windowSeconds 时间窗口长度（仿真秒），为 null 时合并为一个窗口
+     * @param transitions   是否同时返回区域间转移矩阵
+     * @param chains        返回最常见的区域序列的个数，0 时不返回
+     * @throws IllegalArgumentException 时间窗口数超过 max-windows
+     */
+    public Map<String, Object> getOdMatrix(Integer runId, Double from, Double to, Double windowSeconds,
+                                           boolean transitions, int chains) {
+        AreaTrips trips = getTrips(runId);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("areas", trips.getAreas());
+        result.put("pedestrianCount", trips.getPedestrianCount());
+        result.put("tripCount", trips.getTripCount());
+        result.put("windowSeconds", windowSeconds);
+        result.put("windows", trips.odMatrix(from, to, windowSeconds, maxWindows));
+        if (transitions) {
+            result.put("transitions", trips.transitionMatrix(from, to, windowSeconds, maxWindows));
+        }
+        if (chains > 0) {
+            result.put("chains", trips.topChains(from, to, chains));
+        }
+        return result;
+    }
+
+    private AreaTrips compute(Integer runId) {
+        long start = System.currentTimeMillis();
+        AreaTransitionCollector collector;
+        FrameIndex index = frameIndexService.getIndex(runId);
+        if (index != null) {
+            // 按行人分段并行，每段只读取段内行人的采样
+            int pedestrians = index.getPedestrianCount();
+            int chunk = Math.max(256, pedestrians / (ForkJoinPool.getCommonPoolParallelism() * 4) + 1);
+            int chunks = (pedestrians + chunk - 1) / chunk;
+            collector = IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> {
+                    AreaTransitionCollector part = new AreaTransitionCollector();
+                    int[] current = {Integer.MIN_VALUE};
+                    index.forEachPedestrianRow(c * chunk, Math.min(pedestrians, (c + 1) * chunk),
+                        (pedestrianId, simTime, posX, posY, speed, areaName) -> {
+                            if (pedestrianId != current[0]) {
+                                part.finish(current[0]);
+                                current[0] = pedestrianId;
+                            }
+                            part.accept(pedestrianId, simTime, areaName);
+                        });
+                    part.finish(current[0]);
+                    return part;
+                })
+                .reduce((a, b) -> {
+                    a.merge(b);
+                    return a;
+                })
+                .orElseGet(AreaTransitionCollector::new);
+        } else {
+            AreaTransitionCollector whole = new AreaTransitionCollector();
+            trajectorySampleRepository.streamByRunId(runId,
+                sample -> whole.accept(sample.pedestrianId(), sample.simTime(), sample.areaName()));
+            collector = whole;
+        }
+        AreaTrips trips = collector.build();
+        logger.info("运行 {} 区域序列计算完成: 行人 {}, 行程 {}, 区域 {}, 帧索引: {}, 耗时 {} ms", runId,
+                    trips.getPedestrianCount(), trips.getTripCount(), trips.getAreas().size(), index != null,
+                    System.currentTimeMillis() - start);
+        return trips;
+    }
+}
@@ -0,0 +1,236 @@
+package com.simulation.demo.service.analytics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.simulation.demo.dto.AreaOccupancy;
+import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.entity.SimulationRunSummary;
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.SimulationEventsChangedEvent;
+import com.simulation.demo.event.SimulationRunDeletedEvent;
+import com.simulation.demo.event.SimulationStateChangedEvent;
+import com.simulation.demo.repository.EventsLogRepository;
+import com.simulation.demo.repository.SimulationRunRepository;
+import com.simulation.demo.repository.SimulationRunSummaryRepository;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.cache.RunQueryCache;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 运行汇总统计 - 运行结束、写入队列落库完成后在后台计算一次，保存到 simulation_run_summary
+ *
+ * 行人数、事件类型统计等接口在汇总存在时直接读取，不再扫描 pedestrian_data / events_log；
+ * 服务重启前结束、尚未汇总的运行在首次请求汇总时计算。
+ */
+@Service
+public class RunSummaryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunSummaryService.class);
+
+    private static final TypeReference<List<Object[]>> EVENT_TYPE_COUNTS = new TypeReference<>() {
+    };
+
+    @Autowired
+    private SimulationRunSummaryRepository simulationRunSummaryRepository;
+
+    @Autowired
+    private SimulationRunRepository simulationRunRepository;
+
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
+    @Autowired
+    private EventsLogRepository eventsLogRepository;
+
+    @Autowired
+    private AreaOccupancyService areaOccupancyService;
+
+    @Autowired
+    private RunQueryCache runQueryCache;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ExecutorService summaryExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "RunSummaryBuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        summaryExecutor.shutdownNow();
+    }
+
+    /**
+     * 已计算的汇总；运行未结束或尚未汇总时返回 null
+     */
+    public SimulationRunSummary findSummary(Integer runId) {
+        if (!runQueryCache.isFinished(runId)) {
+            return null;
+        }
+        return runQueryCache.get(runId, "summary", () -> simulationRunSummaryRepository.findById(runId).orElse(null));
+    }
+
+    /**
+     * 获取汇总，运行已结束但尚未汇总时立即计算
+     *
+     * @return 运行不存在时返回 null
+     * @throws IllegalStateException 运行尚未结束
+     */
+    public SimulationRunSummary getSummary(Integer runId) {
+        SimulationRun run = simulationRunRepository.findById(runId).orElse(null);
+        if (run == null) {
+            return null;
+        }
+        if (!SimulationStateChangedEvent.isTerminal(run.getState())) {
+            throw new IllegalStateException("运行尚未结束，没有汇总统计: run_id=" + runId);
+        }
+        SimulationRunSummary summary = findSummary(runId);
+        return summary != null ? summary : compute(runId);
+    }
+
+    /**
+     * 汇总中的事件类型统计，格式与 EventsLogRepository.countEventTypesByRunId 相同
+     */
+    public List<Object[]> getEventTypeStatistics(SimulationRunSummary summary) {
+        try {
+            return objectMapper.readValue(summary.getEventTypeCounts(), EVENT_TYPE_COUNTS);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("运行汇总的事件类型统计格式错误: run_id=" + summary.getRunId(), e);
+        }
+    }
+
+    @EventListener
+    public void onSimulationDataCompleted(SimulationDataCompletedEvent event) {
+        Integer runId = event.getRunId();
+        summaryExecutor.execute(() -> {
+            try {
+                boolean terminal = simulationRunRepository.findById(runId)
+                    .map(run -> SimulationStateChangedEvent.isTerminal(run.getState()))
+                    .orElse(false);
+                // 坐标转换后重新发布的完成事件不影响汇总，已有汇总时跳过；事件被改写时见 onSimulationEventsChanged
+                if (terminal && !simulationRunSummaryRepository.existsById(runId)) {
+                    compute(runId);
+                }
+            } catch (Exception e) {
+                logger.error("运行 {} 汇总统计失败: {}", runId, e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * 先于查询缓存清除处理，之后的请求读到的是更新后的汇总
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onSimulationEventsChanged(SimulationEventsChangedEvent event) {
+        try {
+            refreshEventCounts(event.getRunId());
+        } catch (Exception e) {
+            logger.error("运行 {} 汇总事件统计更新失败: {}", event.getRunId(), e.getMessage(), e);
+        }
+    }
+
+    @EventListener
+    public void onSimulationRunDeleted(SimulationRunDeletedEvent event) {
+        try {
+            if (simulationRunSummaryRepository.existsById(event.getRunId())) {
+                simulationRunSummaryRepository.deleteById(event.getRunId());
+            }
+        } catch (Exception e) {
+            logger.warn("删除运行 {} 的汇总统计失败: {}", event.getRunId(), e.getMessage());
+        }
+    }
+
+    private synchronized SimulationRunSummary compute(Integer runId) {
+        // 后台任务和首次请求可能同时触发，只计算一次
+        SimulationRunSummary existing = simulationRunSummaryRepository.findById(runId).orElse(null);
+        if (existing != null) {
+            return existing;
+        }
+        long start = System.currentTimeMillis();
+        SimulationRunSummary summary = trajectorySampleRepository.summarize(runId);
+        countEvents(summary);
+        summary.setAreaPeaks(toJson(areaPeaks(areaOccupancyService.getOccupancy(runId, null))));
+
+        SimulationRunSummary saved = simulationRunSummaryRepository.save(summary);
+        logger.info("运行 {} 汇总统计完成: 行人 {}, 采样 {}, 事件 {}, 耗时 {} ms", runId, saved.getPedestrianCount(),
+                    saved.getSampleCount(), saved.getEventCount(), System.currentTimeMillis() - start);
+        return saved;
+    }
+
+    /**
+     * 重新统计已有汇总中的事件数；尚未汇总时不处理，之后计算汇总时读取的已是改写后的事件。
+     * 与 compute 互斥，计算中途改写的事件不会被旧的统计覆盖
+     */
+    private synchronized void refreshEventCounts(Integer runId) {
+        SimulationRunSummary summary = simulationRunSummaryRepository.findById(runId).orElse(null);
+        if (summary == null) {
+            return;
+        }
+        countEvents(summary);
+        simulationRunSummaryRepository.save(summary);
+        logger.info("运行 {} 汇总事件统计已更新: 事件 {}", runId, summary.getEventCount());
+    }
+
+    private void countEvents(SimulationRunSummary summary) {
+        List<Object[]> eventTypes = new ArrayList<>(eventsLogRepository.countEventTypesByRunId(summary.getRunId()));
+        eventTypes.sort(Comparator.comparing(row -> Objects.toString(row[0], "")));
+        long eventCount = 0;
+        for (Object[] row : eventTypes) {
+            eventCount += ((Number) row[1]).longValue();
+        }
+        summary.setEventCount(eventCount);
+        summary.setEventTypeCounts(toJson(eventTypes));
+    }
+
+    /**
+     * 每个区域同一时刻人数的峰值及其所在时间桶的起点，以及单个时间桶内出现过的最多行人数
+     */
+    private static List<Map<String, Object>> areaPeaks(List<AreaOccupancy> occupancy) {
+        Map<String, Map<String, Object>> peaks = new LinkedHashMap<>();
+        for (AreaOccupancy row : occupancy) {
+            Map<String, Object> peak = peaks.get(row.areaName());
+            if (peak == null) {
+                peak = new LinkedHashMap<>();
+                peak.put("areaName", row.areaName());
+                peak.put("peakCount", row.maxCount());
+                peak.put("peakTime", row.startTime());
+                peak.put("maxPedestrians", row.pedestrianCount());
+                peaks.put(row.areaName(), peak);
+                continue;
+            }
+            if (row.maxCount() > (Integer) peak.get("peakCount")) {
+                peak.put("peakCount", row.maxCount());
+                peak.put("peakTime", row.startTime());
+            }
+            peak.put("maxPedestrians", Math.max((Integer) peak.get("maxPedestrians"), row.pedestrianCount()));
+        }
+        return new ArrayList<>(peaks.values());
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("汇总统计序列化失败", e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.simulation.demo.service.analytics;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 速度分位数草图 - 对数分桶直方图，相对误差不超过 RELATIVE_ACCURACY
+ *
+ * 值 v 落入第 ceil(log(v) / log(gamma)) 个桶，gamma = (1 + a) / (1 - a)，桶内取值按桶中点估计，
+ * 因此任意分位数的估计值与真实的样本值相对误差不超过 a。不超过 MIN_VALUE 的值单独计数，估计为 0。
+ * 两个草图合并只需按桶相加，结果与直接统计全部样本完全相同，可以按时间桶、运行任意组合。
+ * 序列化只保存非空桶（变长整数编码），行人速度通常一两百字节。非线程安全。
+ */
+public class SpeedSketch {
+
+    public static final double RELATIVE_ACCURACY = 0.01;
+
+    static final double MIN_VALUE = 1e-3;
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    // counts[i] 为第 offset + i 个桶的计数
+    private long[] counts = new long[0];
+    private int offset;
+    private long zeroCount;
+    private long count;
+
+    public void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        count++;
+        if (value <= MIN_VALUE) {
+            zeroCount++;
+            return;
+        }
+        increment((int) Math.ceil(Math.log(value) / LOG_GAMMA), 1);
+    }
+
+    public void merge(SpeedSketch other) {
+        count += other.count;
+        zeroCount += other.zeroCount;
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) {
+                increment(other.offset + i, other.counts[i]);
+            }
+        }
+    }
+
+    public SpeedSketch copy() {
+        SpeedSketch copy = new SpeedSketch();
+        copy.counts = counts.clone();
+        copy.offset = offset;
+        copy.zeroCount = zeroCount;
+        copy.count = count;
+        return copy;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * 分位数估计（最近秩），没有样本时为 NaN
+     *
+     * @param q 0 到 1 之间
+     */
+    public double quantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(Math.max(0, Math.min(1, q)) * (count - 1));
+        if (rank < zeroCount) {
+            return 0;
+        }
+        long seen = zeroCount;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return 2 * Math.pow(GAMMA, offset + i) / (GAMMA + 1);
+            }
+        }
+        return 2 * Math.pow(GAMMA, offset + counts.length - 1) / (GAMMA + 1);
+    }
+
+    /**
+     * 不超过 value 的样本数估计：value 所在桶整体计入，按值计的误差与分位数相同；用于按任意边界输出直方图
+     */
+    public long countAtMost(double value) {
+        if (Double.isNaN(value) || value < 0) {
+            return 0;
+        }
+        if (value <= MIN_VALUE) {
+            return zeroCount;
+        }
+        long last = value == Double.POSITIVE_INFINITY ? Long.MAX_VALUE : (long) Math.ceil(Math.log(value) / LOG_GAMMA);
+        long result = zeroCount;
+        for (int i = 0; i < counts.length && offset + i <= last; i++) {
+            result += counts[i];
+        }
+        return result;
+    }
+
+    public long sizeInBytes() {
+        return 48 + (long) counts.length * Long.BYTES;
+    }
+
+    /**
+     * 序列化：版本、零值计数、非空桶数，之后每个非空桶为 (与上一个桶序号的差, 计数)，均为变长整数
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + counts.length * 2);
+        out.write(FORMAT_VERSION);
+        writeVarLong(out, zeroCount);
+        int nonEmpty = 0;
+        for (long c : counts) {
+            if (c != 0) {
+                nonEmpty++;
+            }
+        }
+        writeVarLong(out, nonEmpty);
+        int previous = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                int index = offset + i;
+                // 桶序号可能为负，差值按 zigzag 编码
+                int delta = index - previous;
+                writeVarLong(out, Integer.toUnsignedLong((delta << 1) ^ (delta >> 31)));
+                writeVarLong(out, counts[i]);
+                previous = index;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException 数据格式不正确
+     */
+    public static SpeedSketch fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            if (buffer.get() != FORMAT_VERSION) {
+                throw new IllegalArgumentException("不支持的速度草图格式版本: " + bytes[0]);
+            }
+            SpeedSketch sketch = new SpeedSketch();
+            sketch.zeroCount = readVarLong(buffer);
+            sketch.count = sketch.zeroCount;
+            long nonEmpty = readVarLong(buffer);
+            int index = 0;
+            for (long i = 0; i < nonEmpty; i++) {
+                int zigzag = (int) readVarLong(buffer);
+                index += (zigzag >>> 1) ^ -(zigzag & 1);
+                long c = readVarLong(buffer);
+                sketch.increment(index, c);
+                sketch.count += c;
+            }
+            return sketch;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("速度草图数据不完整", e);
+        }
+    }
+
+    private void increment(int index, long amount) {
+        if (counts.length == 0) {
+            counts = new long[8];
+            offset = index;
+        } else if (index < offset) {
+            int grow = Math.max(offset - index, 8);
+            long[] grown = new long[counts.length + grow];
+            System.arraycopy(counts, 0, grown, grow, counts.length);
+            counts = grown;
+            offset -= grow;
+        } else if (index >= offset + counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index - offset + 1, counts.length + 8));
+        }
+        counts[index - offset] += amount;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("速度草图变长整数过长");
+    }
+}
@@ -0,0 +1,13 @@
+package com.simulation.demo.service.cache;
+
+/**
+ * 缓存统计快照
+ */
+public record CacheStats(String name, int entries, long weight, long maxWeight,
+                         long hits, long misses, long evictions) {
+
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+}
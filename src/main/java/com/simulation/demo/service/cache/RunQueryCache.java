@@ -0,0 +1,220 @@
+package com.simulation.demo.service.cache;
+
+import com.simulation.demo.dto.AreaDwellStats;
+import com.simulation.demo.dto.AreaOccupancy;
+import com.simulation.demo.dto.KeysetPage;
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.EventsLog;
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.SimulationEventsChangedEvent;
+import com.simulation.demo.event.SimulationLatLonChangedEvent;
+import com.simulation.demo.event.SimulationRunDeletedEvent;
+import com.simulation.demo.event.SimulationStateChangedEvent;
+import com.simulation.demo.repository.SimulationRunRepository;
+import com.simulation.demo.service.analytics.AreaTrips;
+import com.simulation.demo.service.index.DensityGrid;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 按运行缓存查询结果
+ *
+ * 键为 (运行ID, 查询名, 查询参数)，按估算的字节数限制容量，LRU 淘汰。
+ * 已结束运行的数据不再变化，结果一直缓存到被淘汰或运行被删除；
+ * 进行中的运行放在单独的短时缓存中，过期后重新查询。
+ * 运行结束后写入队列落库完成（SimulationDataCompletedEvent）时清除该运行的全部条目。
+ */
+@Component
+public class RunQueryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunQueryCache.class);
+
+    // 估算的单条结果大小（字节），与写入队列的估算一致
+    private static final long SAMPLE_BYTES = 96;
+    private static final long EVENT_BYTES = 160;
+    private static final long OBJECT_BYTES = 32;
+
+    // 运行状态本身也缓存在短时缓存中
+    private static final String STATE_QUERY = "state";
+
+    @Autowired
+    private SimulationRunRepository simulationRunRepository;
+
+    @Value("${simulation.query-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${simulation.query-cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${simulation.query-cache.live-max-bytes:33554432}")
+    private long liveMaxBytes;
+
+    @Value("${simulation.query-cache.live-ttl-ms:2000}")
+    private long liveTtlMillis;
+
+    private WeightedLruCache<Key, Object> finishedCache;
+    private WeightedLruCache<Key, Object> liveCache;
+
+    // 已确认结束且数据完整的运行
+    private final Set<Integer> finishedRuns = ConcurrentHashMap.newKeySet();
+
+    // 本次启动以来收到过数据写入完成事件的运行
+    private final Set<Integer> completedRuns = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 缓存键；params 需实现 equals/hashCode，可以包含 null
+     */
+    record Key(Integer runId, String query, List<Object> params) {
+    }
+
+    @PostConstruct
+    public void init() {
+        finishedCache = new WeightedLruCache<>("runQuery", maxBytes, RunQueryCache::estimateBytes);
+        liveCache = new WeightedLruCache<>("liveRunQuery", liveMaxBytes, liveTtlMillis, RunQueryCache::estimateBytes);
+    }
+
+    /**
+     * 读取缓存，未命中时执行 loader 并缓存结果（null 不缓存）
+     *
+     * @param query  查询名，同一运行内区分不同查询
+     * @param params 查询参数
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Integer runId, String query, Supplier<T> loader, Object... params) {
+        if (!enabled) {
+            return loader.get();
+        }
+        WeightedLruCache<Key, Object> cache = isFinished(runId) ? finishedCache : liveCache;
+        Key key = new Key(runId, query, Arrays.asList(params));
+        Object value = cache.get(key);
+        if (value != null) {
+            return (T) value;
+        }
+        T result = loader.get();
+        if (result != null) {
+            cache.put(key, result instanceof List<?> list ? (T) Collections.unmodifiableList(list) : result);
+        }
+        return result;
+    }
+
+    public List<CacheStats> getStats() {
+        return List.of(finishedCache.getStats(), liveCache.getStats());
+    }
+
+    @EventListener
+    public void onSimulationDataCompleted(SimulationDataCompletedEvent event) {
+        // 运行结束前缓存的结果可能不完整
+        evict(event.getRunId());
+        finishedRuns.add(event.getRunId());
+        completedRuns.add(event.getRunId());
+    }
+
+    @EventListener
+    public void onSimulationEventsChanged(SimulationEventsChangedEvent event) {
+        // 事件查询、事件类型统计、汇总和数据版本都可能变化；轨迹数据不变，仍视为已写完
+        evict(event.getRunId());
+    }
+
+    @EventListener
+    public void onSimulationLatLonChanged(SimulationLatLonChangedEvent event) {
+        // 补算中途的经纬度变化：只清除查询结果和数据版本，帧索引等在全部补算完后重建
+        evict(event.getRunId());
+    }
+
+    @EventListener
+    public void onSimulationRunDeleted(SimulationRunDeletedEvent event) {
+        finishedRuns.remove(event.getRunId());
+        completedRuns.remove(event.getRunId());
+        evict(event.getRunId());
+    }
+
+    private void evict(Integer runId) {
+        int removed = finishedCache.removeIf(key -> key.runId().equals(runId)) + liveCache.removeIf(key -> key.runId().equals(runId));
+        logger.debug("清除运行 {} 的查询缓存 {} 条", runId, removed);
+    }
+
+    /**
+     * 运行是否已结束（结束后轨迹和事件数据不再变化）
+     */
+    public boolean isFinished(Integer runId) {
+        if (finishedRuns.contains(runId)) {
+            return true;
+        }
+        Key key = new Key(runId, STATE_QUERY, List.of());
+        Boolean terminal = (Boolean) liveCache.get(key);
+        if (terminal == null) {
+            terminal = simulationRunRepository.findById(runId)
+                .map(run -> SimulationStateChangedEvent.isTerminal(run.getState()))
+                .orElse(false);
+            liveCache.put(key, terminal);
+        }
+        if (terminal) {
+            // 服务重启前结束的运行不会再收到数据完成事件，状态为结束即视为不再变化
+            finishedRuns.add(runId);
+        }
+        return terminal;
+    }
+
+    /**
+     * 是否收到过运行的数据写入完成事件（写入队列已落库）；服务重启前结束的运行不会收到，返回 false
+     */
+    public boolean isDataCompleted(Integer runId) {
+        return completedRuns.contains(runId);
+    }
+
+    static long estimateBytes(Object value) {
+        if (value instanceof Page<?> page) {
+            return OBJECT_BYTES + estimateBytes(page.getContent());
+        }
+        if (value instanceof KeysetPage<?> page) {
+            return OBJECT_BYTES + estimateBytes(page.getContent());
+        }
+        if (value instanceof DensityGrid grid) {
+            return grid.sizeInBytes();
+        }
+        if (value instanceof AreaTrips trips) {
+            return trips.sizeInBytes();
+        }
+        if (value instanceof Collection<?> collection) {
+            long bytes = OBJECT_BYTES;
+            for (Object element : collection) {
+                bytes += estimateElementBytes(element);
+            }
+            return bytes;
+        }
+        return OBJECT_BYTES;
+    }
+
+    private static long estimateElementBytes(Object element) {
+        if (element instanceof TrajectorySample) {
+            return SAMPLE_BYTES;
+        }
+        if (element instanceof EventsLog event) {
+            return EVENT_BYTES + (event.getEventDetails() != null ? event.getEventDetails().length() * 2L : 0);
+        }
+        if (element instanceof AreaOccupancy row) {
+            return OBJECT_BYTES * 3 + (row.speedSketch() != null ? row.speedSketch().length : 0);
+        }
+        if (element instanceof AreaDwellStats row) {
+            return OBJECT_BYTES * 3 + row.sketch().length;
+        }
+        if (element instanceof Object[] row) {
+            return OBJECT_BYTES * (row.length + 1);
+        }
+        return OBJECT_BYTES;
+    }
+}
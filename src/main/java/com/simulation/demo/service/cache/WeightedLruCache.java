@@ -0,0 +1,134 @@
+package com.simulation.demo.service.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * 按权重（通常是字节数）限制容量的 LRU 缓存，线程安全
+ *
+ * 总权重超过上限时按最近最少使用顺序淘汰；单个超过上限的条目不缓存。
+ * 可选的存活时间（ttlMillis > 0）用于缓存仍在变化的数据。
+ */
+public class WeightedLruCache<K, V> {
+
+    private final String name;
+    private final long maxWeight;
+    private final long ttlMillis;
+    private final ToLongFunction<V> weigher;
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public WeightedLruCache(String name, long maxWeight, ToLongFunction<V> weigher) {
+        this(name, maxWeight, 0, weigher);
+    }
+
+    public WeightedLruCache(String name, long maxWeight, long ttlMillis, ToLongFunction<V> weigher) {
+        this.name = name;
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+        this.weigher = weigher;
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && !entry.isExpired(ttlMillis)) {
+            hits++;
+            return entry.value;
+        }
+        if (entry != null) {
+            remove(key);
+        }
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(K key, V value) {
+        long weight = weigher.applyAsLong(value);
+        remove(key);
+        if (weight > maxWeight) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, weight));
+        totalWeight += weight;
+
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (totalWeight > maxWeight && iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            totalWeight -= eldest.getValue().weight;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * 键不存在（或已过期）时写入；返回缓存中的值，即已有的值或新写入的值
+     */
+    public synchronized V putIfAbsent(K key, V value) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && !entry.isExpired(ttlMillis)) {
+            return entry.value;
+        }
+        put(key, value);
+        return value;
+    }
+
+    public synchronized V remove(K key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        totalWeight -= entry.weight;
+        return entry.value;
+    }
+
+    /**
+     * 移除所有满足条件的键（例如某个运行的全部条目）
+     */
+    public synchronized int removeIf(Predicate<K> predicate) {
+        List<K> keys = new ArrayList<>();
+        for (K key : entries.keySet()) {
+            if (predicate.test(key)) {
+                keys.add(key);
+            }
+        }
+        keys.forEach(this::remove);
+        return keys.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(name, entries.size(), totalWeight, maxWeight, hits, misses, evictions);
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long weight;
+        final long createdAt = System.currentTimeMillis();
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+
+        boolean isExpired(long ttlMillis) {
+            return ttlMillis > 0 && System.currentTimeMillis() - createdAt > ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.simulation.demo.service.index;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 运行的密度热力图 - 按时间桶统计每个正方形网格内出现过的行人数
+ *
+ * 同一行人在一个时间桶内多次出现在同一网格只计一次（采样经过降采样，不能按采样行数计数）。
+ * 降采样运行中相邻两个保留点间隔不超过降采样最大间隔时按直线插值，行人途经的时间桶和网格同样计入。
+ * counts[bucket] 为按行优先排列的 rows x columns 矩阵，第 r 行第 c 列对应
+ * x 在 [minX + c * cellSize, minX + (c + 1) * cellSize)、y 在 [minY + r * cellSize, ...) 的网格。
+ */
+public class DensityGrid {
+
+    private static final double TIME_EPSILON = 1e-6;
+
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final double startTime;
+    private final double bucketSeconds;
+    private final int[][] counts;
+    private int maxCount;
+
+    /**
+     * 按数据范围确定网格
+     *
+     * @param cellSize        期望的网格边长，范围过大时自动放大，使每个方向不超过 maxCellsPerAxis 格
+     * @param maxEntries      bucketCount x rows x columns 的上限
+     * @throws IllegalArgumentException 矩阵超过 maxEntries
+     */
+    DensityGrid(double minX, double maxX, double minY, double maxY, double startTime, double endTime,
+                double cellSize, double bucketSeconds, int maxCellsPerAxis, long maxEntries) {
+        double size = Math.max(cellSize, Math.max(maxX - minX, maxY - minY) / maxCellsPerAxis);
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = size;
+        this.columns = (int) ((maxX - minX) / size) + 1;
+        this.rows = (int) ((maxY - minY) / size) + 1;
+        this.startTime = startTime;
+        this.bucketSeconds = bucketSeconds;
+        long bucketCount = endTime >= startTime ? (long) ((endTime - startTime) / bucketSeconds) + 1 : 0;
+        if (bucketCount * columns * rows > maxEntries) {
+            throw new IllegalArgumentException("热力图过大（" + bucketCount + " 个时间桶 x " + rows + " x " + columns
+                + " 格），请增大网格边长或时间桶长度");
+        }
+        this.counts = new int[(int) bucketCount][columns * rows];
+    }
+
+    /**
+     * 用帧索引计算热力图：按行人分段并行，每段得到有序的 (键, 人数) 数组，再两两归并
+     *
+     * @param maxGap 降采样的最大间隔，相邻保留点间隔不超过它时插值补上途经的时间桶和网格；0 表示不插值
+     */
+    public static DensityGrid build(FrameIndex index, double cellSize, double bucketSeconds, double maxGap,
+                                    int maxCellsPerAxis, long maxEntries) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int row = 0; row < index.getRowCount(); row++) {
+            double x = index.getPosX(row);
+            double y = index.getPosY(row);
+            if (Double.isNaN(x) || Double.isNaN(y)) {
+                continue;
+            }
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        if (minX > maxX || index.getFrameCount() == 0) {
+            return new DensityGrid(0, 0, 0, 0, 0, -1, cellSize, bucketSeconds, maxCellsPerAxis, maxEntries);
+        }
+
+        DensityGrid grid = new DensityGrid(minX, maxX, minY, maxY, index.getStartTime(), index.getEndTime(),
+                                           cellSize, bucketSeconds, maxCellsPerAxis, maxEntries);
+        int pedestrians = index.getPedestrianCount();
+        int threshold = Math.max(64, pedestrians / (ForkJoinPool.getCommonPoolParallelism() * 4));
+        KeyCounts total = ForkJoinPool.commonPool().invoke(new CountTask(grid, index, maxGap, 0, pedestrians, threshold));
+        for (int i = 0; i < total.size; i++) {
+            grid.add(total.keys[i] / grid.getCellCount(), total.keys[i] % grid.getCellCount(), total.counts[i]);
+        }
+        return grid;
+    }
+
+    /**
+     * 累加一个网格的人数，下标超出范围时归到边界（数据库按浮点计算的下标可能差一格）
+     */
+    void add(long bucket, long column, long row, int count) {
+        add((int) Math.max(0, Math.min(counts.length - 1, bucket)),
+            (int) Math.max(0, Math.min(rows - 1, row)) * columns + (int) Math.max(0, Math.min(columns - 1, column)),
+            count);
+    }
+
+    private void add(int bucket, int cell, int count) {
+        counts[bucket][cell] += count;
+        maxCount = Math.max(maxCount, counts[bucket][cell]);
+    }
+
+    int bucketOf(double time) {
+        return Math.max(0, Math.min(counts.length - 1, (int) ((time - startTime) / bucketSeconds)));
+    }
+
+    int cellOf(double x, double y) {
+        return clamp((int) ((y - minY) / cellSize), rows) * columns + clamp((int) ((x - minX) / cellSize), columns);
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public double getStartTime() {
+        return startTime;
+    }
+
+    public double getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public int[][] getCounts() {
+        return counts;
+    }
+
+    public long sizeInBytes() {
+        return (long) counts.length * columns * rows * Integer.BYTES + 64;
+    }
+
+    private int getCellCount() {
+        return columns * rows;
+    }
+
+    private static int clamp(int value, int count) {
+        return Math.max(0, Math.min(count - 1, value));
+    }
+
+    /**
+     * 按键排序的 (键, 人数) 数组，键为 bucket * cellCount + cell
+     */
+    private record KeyCounts(int[] keys, int[] counts, int size) {
+
+        static KeyCounts merge(KeyCounts a, KeyCounts b) {
+            int[] keys = new int[a.size + b.size];
+            int[] counts = new int[a.size + b.size];
+            int i = 0, j = 0, size = 0;
+            while (i < a.size || j < b.size) {
+                if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                    keys[size] = a.keys[i];
+                    counts[size++] = a.counts[i++];
+                } else if (i == a.size || b.keys[j] < a.keys[i]) {
+                    keys[size] = b.keys[j];
+                    counts[size++] = b.counts[j++];
+                } else {
+                    keys[size] = a.keys[i];
+                    counts[size++] = a.counts[i++] + b.counts[j++];
+                }
+            }
+            return new KeyCounts(keys, counts, size);
+        }
+    }
+
+    /**
+     * 一段行人经过的键，轨迹按时间排序，连续停留在同一网格的键直接跳过
+     */
+    private static class KeyList {
+
+        private final int cellCount;
+        private int[] keys = new int[256];
+        private int size;
+        private int last = -1;
+
+        KeyList(int cellCount) {
+            this.cellCount = cellCount;
+        }
+
+        void add(int bucket, int cell) {
+            int key = bucket * cellCount + cell;
+            if (key == last) {
+                return;
+            }
+            last = key;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+    }
+
+    private static class CountTask extends RecursiveTask<KeyCounts> {
+
+        private final DensityGrid grid;
+        private final FrameIndex index;
+        private final double maxGap;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        CountTask(DensityGrid grid, FrameIndex index, double maxGap, int from, int to, int threshold) {
+            this.grid = grid;
+            this.index = index;
+            this.maxGap = maxGap;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected KeyCounts compute() {
+            if (to - from > threshold) {
+                int middle = (from + to) >>> 1;
+                CountTask left = new CountTask(grid, index, maxGap, from, middle, threshold);
+                left.fork();
+                KeyCounts right = new CountTask(grid, index, maxGap, middle, to, threshold).compute();
+                return KeyCounts.merge(left.join(), right);
+            }
+
+            // 每个行人经过的键去重后追加，最后排序并合并相同的键
+            KeyList list = new KeyList(grid.getCellCount());
+            for (int pedestrian = from; pedestrian < to; pedestrian++) {
+                int start = list.size;
+                list.last = -1;
+                double previousTime = Double.NaN, previousX = 0, previousY = 0;
+                int end = index.getPedestrianRowStart(pedestrian + 1);
+                for (int i = index.getPedestrianRowStart(pedestrian); i < end; i++) {
+                    int row = index.getPedestrianRow(i);
+                    double x = index.getPosX(row);
+                    double y = index.getPosY(row);
+                    if (Double.isNaN(x) || Double.isNaN(y)) {
+                        continue;
+                    }
+                    double time = index.getFrameTime(index.frameOfRow(row));
+                    double gap = time - previousTime;
+                    if (maxGap > 0 && gap > 0 && gap <= maxGap + TIME_EPSILON) {
+                        interpolate(list, previousTime, previousX, previousY, time, x, y);
+                    }
+                    list.add(grid.bucketOf(time), grid.cellOf(x, y));
+                    previousTime = time;
+                    previousX = x;
+                    previousY = y;
+                }
+                Arrays.sort(list.keys, start, list.size);
+                list.size = start + dedupe(list.keys, start, list.size);
+            }
+            int[] keys = list.keys;
+            int size = list.size;
+
+            Arrays.sort(keys, 0, size);
+            int[] uniqueKeys = new int[size];
+            int[] counts = new int[size];
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique > 0 && uniqueKeys[unique - 1] == keys[i]) {
+                    counts[unique - 1]++;
+                } else {
+                    uniqueKeys[unique] = keys[i];
+                    counts[unique++] = 1;
+                }
+            }
+            return new KeyCounts(uniqueKeys, counts, unique);
+        }
+
+        /**
+         * 两个保留点之间按直线取点：步长不超过一个时间桶和半个网格，途经的时间桶都会取到，网格只可能漏掉擦角而过的
+         */
+        private void interpolate(KeyList list, double t0, double x0, double y0, double t1, double x1, double y1) {
+            double distance = Math.hypot(x1 - x0, y1 - y0);
+            int steps = (int) Math.max(Math.ceil((t1 - t0) / grid.bucketSeconds), Math.ceil(distance / (grid.cellSize / 2)));
+            for (int k = 1; k < steps; k++) {
+                double f = (double) k / steps;
+                list.add(grid.bucketOf(t0 + (t1 - t0) * f), grid.cellOf(x0 + (x1 - x0) * f, y0 + (y1 - y0) * f));
+            }
+        }
+
+        private static int dedupe(int[] keys, int from, int to) {
+            int size = 0;
+            for (int i = from; i < to; i++) {
+                if (size == 0 || keys[from + size - 1] != keys[i]) {
+                    keys[from + size++] = keys[i];
+                }
+            }
+            return size;
+        }
+    }
+}
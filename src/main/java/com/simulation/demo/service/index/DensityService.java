@@ -0,0 +1,95 @@
+package com.simulation.demo.service.index;
+
+import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.repository.SimulationRunRepository;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.cache.RunQueryCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 密度热力图服务
+ *
+ * 已建立帧索引的运行在内存中并行计算（{@link DensityGrid#build}），降采样运行在相邻保留点之间插值；
+ * 其余运行由数据库分组统计，只能统计入库的采样，降采样运行的时间桶不能短于降采样最大间隔。
+ * 结果按 (网格边长, 时间桶长度) 缓存在查询缓存中。
+ */
+@Service
+public class DensityService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DensityService.class);
+
+    @Autowired
+    private FrameIndexService frameIndexService;
+
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
+    @Autowired
+    private SimulationRunRepository simulationRunRepository;
+
+    @Autowired
+    private RunQueryCache runQueryCache;
+
+    @Value("${simulation.density.max-cells-per-axis:256}")
+    private int maxCellsPerAxis;
+
+    @Value("${simulation.density.max-entries:4000000}")
+    private long maxEntries;
+
+    /**
+     * @param cellSize      期望的网格边长（坐标单位）
+     * @param bucketSeconds 时间桶长度（仿真秒）
+     * @throws IllegalArgumentException 热力图矩阵超过 max-entries，或未建立帧索引的降采样运行时间桶短于降采样最大间隔
+     */
+    public DensityGrid getDensity(Integer runId, double cellSize, double bucketSeconds) {
+        return runQueryCache.get(runId, "density", () -> compute(runId, cellSize, bucketSeconds), cellSize, bucketSeconds);
+    }
+
+    private DensityGrid compute(Integer runId, double cellSize, double bucketSeconds) {
+        long start = System.currentTimeMillis();
+        DensityGrid grid;
+        FrameIndex index = frameIndexService.getIndex(runId);
+        double maxGap = getMaxGap(runId);
+        if (index != null) {
+            grid = DensityGrid.build(index, cellSize, bucketSeconds, maxGap, maxCellsPerAxis, maxEntries);
+        } else {
+            // 数据库分组只统计入库的采样，时间桶短于保留点间隔时途经的行人会漏计
+            if (bucketSeconds < maxGap) {
+                throw new IllegalArgumentException("运行已降采样且尚未建立帧索引，时间桶长度不能小于降采样最大间隔 "
+                    + maxGap + " 秒");
+            }
+            double[] bounds = trajectorySampleRepository.findPositionBounds(runId);
+            if (bounds == null) {
+                return new DensityGrid(0, 0, 0, 0, 0, -1, cellSize, bucketSeconds, maxCellsPerAxis, maxEntries);
+            }
+            grid = new DensityGrid(bounds[2], bounds[3], bounds[4], bounds[5], bounds[0], bounds[1],
+                                   cellSize, bucketSeconds, maxCellsPerAxis, maxEntries);
+            List<long[]> cells = trajectorySampleRepository.countPedestriansByCell(runId, grid.getStartTime(),
+                bucketSeconds, grid.getMinX(), grid.getMinY(), grid.getCellSize());
+            for (long[] cell : cells) {
+                grid.add(cell[0], cell[1], cell[2], (int) cell[3]);
+            }
+        }
+        logger.info("运行 {} 热力图计算完成: 网格边长 {}, {} x {} 格 x {} 个时间桶, 帧索引: {}, 耗时 {} ms", runId,
+                    grid.getCellSize(), grid.getColumns(), grid.getRows(), grid.getBucketCount(), index != null,
+                    System.currentTimeMillis() - start);
+        return grid;
+    }
+
+    /**
+     * 降采样运行相邻保留点的最大间隔，未降采样时为 0
+     */
+    private double getMaxGap(Integer runId) {
+        SimulationRun run = simulationRunRepository.findById(runId).orElse(null);
+        if (run != null && Boolean.TRUE.equals(run.getDownsampleEnabled()) && run.getDownsampleMaxInterval() != null) {
+            return run.getDownsampleMaxInterval();
+        }
+        return 0;
+    }
+}
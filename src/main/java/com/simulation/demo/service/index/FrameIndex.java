@@ -0,0 +1,435 @@
+package com.simulation.demo.service.index;
+
+import com.simulation.demo.dto.TrajectorySample;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 运行的帧索引 - 每个不同的 sim_time 对应一段连续存放的采样
+ *
+ * 采样按 (sim_time, pedestrian_id) 顺序以定长记录存放在堆外 ByteBuffer 中，
+ * 帧目录（帧时间、起始行号）为堆内数组，按时间二分查找定位帧。
+ * 另有行人目录：按 pedestrian_id 排序的行人列表，以及每个行人按时间排序的行号，
+ * 读取单个行人的轨迹只访问该行人的行。
+ * 构建完成后只读，可被多个线程同时访问。
+ */
+public class FrameIndex {
+
+    // 记录布局: id(8) posX(8) posY(8) lat(8) lon(8) pedestrianId(4) posZ(4) speed(4) area(4)
+    static final int ROW_BYTES = 56;
+    private static final int OFF_ID = 0;
+    private static final int OFF_POS_X = 8;
+    private static final int OFF_POS_Y = 16;
+    private static final int OFF_LAT = 24;
+    private static final int OFF_LON = 32;
+    private static final int OFF_PEDESTRIAN_ID = 40;
+    private static final int OFF_POS_Z = 44;
+    private static final int OFF_SPEED = 48;
+    private static final int OFF_AREA = 52;
+
+    // 精确查找时允许的时间误差（sim_time 为 DECIMAL(10,3)）
+    private static final double TIME_EPSILON = 1e-6;
+
+    private static final long NO_MODEL_DATE = Long.MIN_VALUE;
+
+    private final int runId;
+    private final int frameCount;
+    private final double[] frameTimes;
+    private final int[] frameStarts;
+    private final long[] frameModelDates;
+    private final ByteBuffer rows;
+    private final int rowCount;
+    private final String[] areaNames;
+
+    // 行人目录：pedestrianRows[pedestrianStarts[i] .. pedestrianStarts[i + 1]) 为 pedestrianIds[i] 的行号
+    private final int[] pedestrianIds;
+    private final int[] pedestrianStarts;
+    private final int[] pedestrianRows;
+
+    private FrameIndex(int runId, int frameCount, double[] frameTimes, int[] frameStarts, long[] frameModelDates,
+                       ByteBuffer rows, int rowCount, String[] areaNames) {
+        this.runId = runId;
+        this.frameCount = frameCount;
+        this.frameTimes = frameTimes;
+        this.frameStarts = frameStarts;
+        this.frameModelDates = frameModelDates;
+        this.rows = rows;
+        this.rowCount = rowCount;
+        this.areaNames = areaNames;
+
+        int[] rowPedestrians = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            rowPedestrians[row] = rows.getInt(row * ROW_BYTES + OFF_PEDESTRIAN_ID);
+        }
+        this.pedestrianIds = Arrays.stream(rowPedestrians).sorted().distinct().toArray();
+        this.pedestrianStarts = new int[pedestrianIds.length + 1];
+        this.pedestrianRows = new int[rowCount];
+        for (int pedestrianId : rowPedestrians) {
+            pedestrianStarts[Arrays.binarySearch(pedestrianIds, pedestrianId) + 1]++;
+        }
+        for (int i = 0; i < pedestrianIds.length; i++) {
+            pedestrianStarts[i + 1] += pedestrianStarts[i];
+        }
+        // 按行号顺序填充，每个行人的行号即按时间排序
+        int[] next = Arrays.copyOf(pedestrianStarts, pedestrianIds.length);
+        for (int row = 0; row < rowCount; row++) {
+            pedestrianRows[next[Arrays.binarySearch(pedestrianIds, rowPedestrians[row])]++] = row;
+        }
+    }
+
+    /**
+     * 按行数估算索引占用的字节数（不含帧表和行人目录，为下限）
+     */
+    public static long estimateBytes(long rows) {
+        return rows * ROW_BYTES;
+    }
+
+    public static Builder builder(int runId, long expectedRows) {
+        return new Builder(runId, expectedRows);
+    }
+
+    public int getRunId() {
+        return runId;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public double getStartTime() {
+        return frameCount > 0 ? frameTimes[0] : Double.NaN;
+    }
+
+    public double getEndTime() {
+        return frameCount > 0 ? frameTimes[frameCount - 1] : Double.NaN;
+    }
+
+    public double getFrameTime(int frame) {
+        return frameTimes[frame];
+    }
+
+    public int getFrameSize(int frame) {
+        return frameStarts[frame + 1] - frameStarts[frame];
+    }
+
+    public int getPedestrianCount() {
+        return pedestrianIds.length;
+    }
+
+    /**
+     * 占用的内存（堆外数据 + 帧目录 + 行人目录）
+     */
+    public long sizeInBytes() {
+        return (long) rows.capacity() + (long) frameCount * (Double.BYTES + Integer.BYTES + Long.BYTES)
+            + ((long) pedestrianIds.length * 2 + pedestrianRows.length) * Integer.BYTES;
+    }
+
+    /**
+     * 查找帧
+     *
+     * @param nearest 为 true 时返回时间最接近的帧，否则只返回时间相等的帧
+     * @return 帧序号，找不到时返回 -1
+     */
+    public int findFrame(double simTime, boolean nearest) {
+        if (frameCount == 0) {
+            return -1;
+        }
+        int pos = Arrays.binarySearch(frameTimes, 0, frameCount, simTime);
+        if (pos >= 0) {
+            return pos;
+        }
+        int after = -pos - 1;
+        int before = after - 1;
+        int closest;
+        if (before < 0) {
+            closest = after;
+        } else if (after >= frameCount) {
+            closest = before;
+        } else {
+            closest = simTime - frameTimes[before] <= frameTimes[after] - simTime ? before : after;
+        }
+        if (nearest || Math.abs(frameTimes[closest] - simTime) <= TIME_EPSILON) {
+            return closest;
+        }
+        return -1;
+    }
+
+    /**
+     * 时间不晚于 simTime 的最后一帧，没有时返回 -1
+     */
+    public int floorFrame(double simTime) {
+        int pos = Arrays.binarySearch(frameTimes, 0, frameCount, simTime + TIME_EPSILON);
+        return pos >= 0 ? pos : -pos - 2;
+    }
+
+    /**
+     * 读取一帧的全部采样
+     */
+    public List<TrajectorySample> getFrame(int frame) {
+        int start = frameStarts[frame];
+        int end = frameStarts[frame + 1];
+        double simTime = frameTimes[frame];
+        LocalDateTime modelDate = toModelDate(frameModelDates[frame]);
+
+        List<TrajectorySample> samples = new ArrayList<>(end - start);
+        for (int row = start; row < end; row++) {
+            samples.add(readRow(row, simTime, modelDate));
+        }
+        return samples;
+    }
+
+    /**
+     * 读取时间在 (afterTime, untilTime] 区间内的所有帧，按 (sim_time, pedestrian_id) 顺序返回
+     */
+    public List<TrajectorySample> getFrames(double afterTime, double untilTime) {
+        List<TrajectorySample> samples = new ArrayList<>();
+        for (int frame = floorFrame(afterTime) + 1; frame < frameCount && frameTimes[frame] <= untilTime + TIME_EPSILON; frame++) {
+            samples.addAll(getFrame(frame));
+        }
+        return samples;
+    }
+
+    /**
+     * 读取时间在 [fromTime, toTime] 区间内的所有帧
+     */
+    public List<TrajectorySample> getFramesBetween(double fromTime, double toTime) {
+        return getFrames(fromTime - 2 * TIME_EPSILON, toTime);
+    }
+
+    /**
+     * 逐行访问一帧，不创建采样对象
+     */
+    public void forEachInFrame(int frame, RowVisitor visitor) {
+        for (int row = frameStarts[frame]; row < frameStarts[frame + 1]; row++) {
+            int base = row * ROW_BYTES;
+            visitor.visit(rows.getInt(base + OFF_PEDESTRIAN_ID), rows.getDouble(base + OFF_POS_X),
+                          rows.getDouble(base + OFF_POS_Y), rows.getFloat(base + OFF_POS_Z), rows.getFloat(base + OFF_SPEED));
+        }
+    }
+
+    /**
+     * 按行人目录顺序逐行访问第 [fromPedestrian, toPedestrian) 个行人（按 pedestrian_id 排序）的采样，
+     * 每个行人的采样按时间排序，不创建采样对象；不同的行人范围可以并行访问
+     */
+    public void forEachPedestrianRow(int fromPedestrian, int toPedestrian, PedestrianRowVisitor visitor) {
+        for (int pedestrian = fromPedestrian; pedestrian < toPedestrian; pedestrian++) {
+            for (int i = pedestrianStarts[pedestrian]; i < pedestrianStarts[pedestrian + 1]; i++) {
+                int row = pedestrianRows[i];
+                int base = row * ROW_BYTES;
+                int area = rows.getInt(base + OFF_AREA);
+                visitor.visit(pedestrianIds[pedestrian], frameTimes[frameOfRow(row)], rows.getDouble(base + OFF_POS_X),
+                              rows.getDouble(base + OFF_POS_Y), rows.getFloat(base + OFF_SPEED),
+                              area >= 0 ? areaNames[area] : null);
+            }
+        }
+    }
+
+    /**
+     * 读取一个行人的全部采样，按 sim_time 排序；运行中没有该行人时返回空列表
+     */
+    public List<TrajectorySample> getTrajectory(int pedestrianId) {
+        int pos = Arrays.binarySearch(pedestrianIds, pedestrianId);
+        if (pos < 0) {
+            return new ArrayList<>();
+        }
+        List<TrajectorySample> samples = new ArrayList<>(pedestrianStarts[pos + 1] - pedestrianStarts[pos]);
+        for (int i = pedestrianStarts[pos]; i < pedestrianStarts[pos + 1]; i++) {
+            samples.add(getSample(pedestrianRows[i]));
+        }
+        return samples;
+    }
+
+    /**
+     * 按行号读取一条采样，行号按 (sim_time, pedestrian_id) 顺序从 0 开始
+     */
+    public TrajectorySample getSample(int row) {
+        int frame = frameOfRow(row);
+        return readRow(row, frameTimes[frame], toModelDate(frameModelDates[frame]));
+    }
+
+    int getFrameStart(int frame) {
+        return frameStarts[frame];
+    }
+
+    int frameOfRow(int row) {
+        // 每帧至少有一行，frameStarts 严格递增，命中时即为该帧的第一行
+        int pos = Arrays.binarySearch(frameStarts, 0, frameCount + 1, row);
+        return pos >= 0 ? pos : -pos - 2;
+    }
+
+    /**
+     * 行人目录中第 pedestrian 个行人（按 pedestrian_id 排序）的行号在 getPedestrianRow 中的起始位置，
+     * pedestrian 为行人数时返回总行数
+     */
+    int getPedestrianRowStart(int pedestrian) {
+        return pedestrianStarts[pedestrian];
+    }
+
+    int getPedestrianRow(int position) {
+        return pedestrianRows[position];
+    }
+
+    double getPosX(int row) {
+        return rows.getDouble(row * ROW_BYTES + OFF_POS_X);
+    }
+
+    double getPosY(int row) {
+        return rows.getDouble(row * ROW_BYTES + OFF_POS_Y);
+    }
+
+    @FunctionalInterface
+    public interface RowVisitor {
+        void visit(int pedestrianId, double posX, double posY, float posZ, float speed);
+    }
+
+    @FunctionalInterface
+    public interface PedestrianRowVisitor {
+        void visit(int pedestrianId, double simTime, double posX, double posY, float speed, String areaName);
+    }
+
+    private TrajectorySample readRow(int row, double simTime, LocalDateTime modelDate) {
+        int base = row * ROW_BYTES;
+        int area = rows.getInt(base + OFF_AREA);
+        return new TrajectorySample(
+            rows.getLong(base + OFF_ID),
+            runId,
+            simTime,
+            modelDate,
+            rows.getInt(base + OFF_PEDESTRIAN_ID),
+            rows.getDouble(base + OFF_POS_X),
+            rows.getDouble(base + OFF_POS_Y),
+            rows.getFloat(base + OFF_POS_Z),
+            rows.getFloat(base + OFF_SPEED),
+            area >= 0 ? areaNames[area] : null,
+            rows.getDouble(base + OFF_LAT),
+            rows.getDouble(base + OFF_LON));
+    }
+
+    private static LocalDateTime toModelDate(long epochMillis) {
+        if (epochMillis == NO_MODEL_DATE) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000),
+            (int) Math.floorMod(epochMillis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * 按 (sim_time, pedestrian_id) 顺序逐行追加构建
+     */
+    public static class Builder {
+        private final int runId;
+        private ByteBuffer rows;
+        private int rowCount;
+
+        private double[] frameTimes = new double[1024];
+        private int[] frameStarts = new int[1025];
+        private long[] frameModelDates = new long[1024];
+        private int frameCount;
+
+        private final Map<String, Integer> areaIds = new HashMap<>();
+        private final List<String> areaNames = new ArrayList<>();
+
+        Builder(int runId, long expectedRows) {
+            this.runId = runId;
+            this.rows = allocate(Math.max(1, expectedRows));
+        }
+
+        public void add(TrajectorySample sample) {
+            if (Double.isNaN(sample.simTime())) {
+                return;
+            }
+            if (frameCount == 0 || sample.simTime() != frameTimes[frameCount - 1]) {
+                if (frameCount > 0 && sample.simTime() < frameTimes[frameCount - 1]) {
+                    throw new IllegalStateException("采样未按 sim_time 排序");
+                }
+                startFrame(sample);
+            }
+            if ((long) (rowCount + 1) * ROW_BYTES > rows.capacity()) {
+                grow();
+            }
+
+            int base = rowCount * ROW_BYTES;
+            rows.putLong(base + OFF_ID, sample.id());
+            rows.putDouble(base + OFF_POS_X, sample.posX());
+            rows.putDouble(base + OFF_POS_Y, sample.posY());
+            rows.putDouble(base + OFF_LAT, sample.lat());
+            rows.putDouble(base + OFF_LON, sample.lon());
+            rows.putInt(base + OFF_PEDESTRIAN_ID, sample.pedestrianId());
+            rows.putFloat(base + OFF_POS_Z, sample.posZ());
+            rows.putFloat(base + OFF_SPEED, sample.speed());
+            rows.putInt(base + OFF_AREA, areaId(sample.areaName()));
+            rowCount++;
+            frameStarts[frameCount] = rowCount;
+        }
+
+        public FrameIndex build() {
+            ByteBuffer data = rows;
+            if ((long) rowCount * ROW_BYTES < rows.capacity()) {
+                // 预估行数偏大时收缩到实际大小
+                data = allocate(rowCount);
+                ByteBuffer source = rows.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+                source.limit(rowCount * ROW_BYTES);
+                data.put(source).clear();
+            }
+            return new FrameIndex(runId, frameCount,
+                Arrays.copyOf(frameTimes, frameCount),
+                Arrays.copyOf(frameStarts, frameCount + 1),
+                Arrays.copyOf(frameModelDates, frameCount),
+                data.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN), rowCount,
+                areaNames.toArray(new String[0]));
+        }
+
+        private void startFrame(TrajectorySample sample) {
+            if (frameCount == frameTimes.length) {
+                frameTimes = Arrays.copyOf(frameTimes, frameCount * 2);
+                frameStarts = Arrays.copyOf(frameStarts, frameCount * 2 + 1);
+                frameModelDates = Arrays.copyOf(frameModelDates, frameCount * 2);
+            }
+            frameTimes[frameCount] = sample.simTime();
+            frameModelDates[frameCount] = sample.modelDate() != null
+                ? sample.modelDate().toInstant(ZoneOffset.UTC).toEpochMilli() : NO_MODEL_DATE;
+            frameStarts[frameCount] = rowCount;
+            frameCount++;
+            frameStarts[frameCount] = rowCount;
+        }
+
+        private int areaId(String areaName) {
+            if (areaName == null) {
+                return -1;
+            }
+            return areaIds.computeIfAbsent(areaName, name -> {
+                areaNames.add(name);
+                return areaNames.size() - 1;
+            });
+        }
+
+        private void grow() {
+            long capacityRows = Math.max(1024, (long) rowCount * 2);
+            ByteBuffer larger = allocate(capacityRows);
+            ByteBuffer source = rows.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            source.limit(rowCount * ROW_BYTES);
+            larger.put(source).clear();
+            rows = larger;
+        }
+
+        private static ByteBuffer allocate(long rowCapacity) {
+            long bytes = rowCapacity * ROW_BYTES;
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IllegalStateException("运行数据过大，无法建立帧索引: " + rowCapacity + " 行");
+            }
+            return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
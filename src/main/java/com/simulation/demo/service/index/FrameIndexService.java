@@ -0,0 +1,316 @@
+package com.simulation.demo.service.index;
+
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.SimulationRunDeletedEvent;
+import com.simulation.demo.event.SimulationStateChangedEvent;
+import com.simulation.demo.repository.SimulationRunRepository;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.cache.CacheStats;
+import com.simulation.demo.service.cache.WeightedLruCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 帧索引服务 - 按仿真时间读取一帧内所有行人的位置，或按行人读取完整轨迹
+ *
+ * 已结束的运行在数据写入完成后建立帧索引（或在首次查询时建立），放入按字节限制的 LRU 缓存，
+ * 之后的按时间查询、就近查询和单个行人的轨迹查询都在内存中完成。进行中的运行直接查询数据库。
+ * 行数超出缓存上限的运行放不进缓存，不建立索引，同样直接查询数据库，避免每次查询都完整扫描一遍。
+ */
+@Service
+public class FrameIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FrameIndexService.class);
+
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
+    @Autowired
+    private SimulationRunRepository simulationRunRepository;
+
+    @Value("${simulation.frame-index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${simulation.frame-index.max-bytes:1073741824}")
+    private long maxBytes;
+
+    private WeightedLruCache<Integer, FrameIndex> cache;
+
+    // 正在构建的索引，同一运行的并发请求共用一次构建
+    private final Map<Integer, CompletableFuture<FrameIndex>> building = new ConcurrentHashMap<>();
+
+    // 数据量超出缓存上限、不建立索引的运行
+    private final Set<Integer> oversizedRuns = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "FrameIndexBuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        cache = new WeightedLruCache<>("frameIndex", maxBytes, FrameIndex::sizeInBytes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        buildExecutor.shutdownNow();
+        cache.clear();
+    }
+
+    /**
+     * 读取指定仿真时间的一帧
+     *
+     * @param nearest 为 true 时返回时间最接近的一帧，否则只返回时间完全相等的帧
+     */
+    public List<TrajectorySample> getFrame(Integer runId, BigDecimal simTime, boolean nearest) {
+        FrameIndex index = getIndex(runId);
+        if (index != null) {
+            int frame = index.findFrame(simTime.doubleValue(), nearest);
+            return frame >= 0 ? index.getFrame(frame) : Collections.emptyList();
+        }
+
+        BigDecimal frameTime = nearest ? trajectorySampleRepository.findNearestSimTime(runId, simTime) : simTime;
+        if (frameTime == null) {
+            return Collections.emptyList();
+        }
+        return trajectorySampleRepository.findByRunIdAndSimTime(runId, frameTime);
+    }
+
+    /**
+     * 读取一个行人的完整轨迹，按 sim_time 排序
+     */
+    public List<TrajectorySample> getTrajectory(Integer runId, Integer pedestrianId) {
+        FrameIndex index = getIndex(runId);
+        if (index != null) {
+            return index.getTrajectory(pedestrianId);
+        }
+        return trajectorySampleRepository.findByRunIdAndPedestrianId(runId, pedestrianId);
+    }
+
+    /**
+     * 批量读取多个行人的轨迹，按请求中的行人顺序返回；没有数据的行人对应空列表
+     */
+    public Map<Integer, List<TrajectorySample>> getTrajectories(Integer runId, Collection<Integer> pedestrianIds) {
+        Map<Integer, List<TrajectorySample>> trajectories = new LinkedHashMap<>();
+        FrameIndex index = getIndex(runId);
+        if (index != null) {
+            for (Integer pedestrianId : pedestrianIds) {
+                trajectories.put(pedestrianId, index.getTrajectory(pedestrianId));
+            }
+            return trajectories;
+        }
+
+        for (Integer pedestrianId : pedestrianIds) {
+            trajectories.put(pedestrianId, new ArrayList<>());
+        }
+        for (TrajectorySample sample : trajectorySampleRepository.findByRunIdAndPedestrianIds(runId, pedestrianIds)) {
+            trajectories.get(sample.pedestrianId()).add(sample);
+        }
+        return trajectories;
+    }
+
+    /**
+     * 批量读取多个仿真时间的帧，按请求顺序返回；找不到的时间对应空列表
+     *
+     * 没有帧索引时先用一次查询读取请求时间范围内的全部 sim_time，在内存中二分确定各帧的实际时间，再用一次查询读取全部帧。
+     *
+     * @param nearest 为 true 时返回时间最接近的帧
+     */
+    public Map<BigDecimal, List<TrajectorySample>> getFrames(Integer runId, Collection<BigDecimal> simTimes, boolean nearest) {
+        Map<BigDecimal, List<TrajectorySample>> frames = new LinkedHashMap<>();
+        FrameIndex index = getIndex(runId);
+        if (index != null) {
+            for (BigDecimal simTime : simTimes) {
+                int frame = index.findFrame(simTime.doubleValue(), nearest);
+                frames.put(simTime, frame >= 0 ? index.getFrame(frame) : new ArrayList<>());
+            }
+            return frames;
+        }
+
+        Map<BigDecimal, BigDecimal> frameTimes = new LinkedHashMap<>();
+        List<BigDecimal> existing = nearest && !simTimes.isEmpty()
+            ? trajectorySampleRepository.findSimTimesAround(runId, Collections.min(simTimes), Collections.max(simTimes))
+            : null;
+        for (BigDecimal simTime : simTimes) {
+            BigDecimal frameTime = nearest ? nearestTime(existing, simTime) : simTime;
+            if (frameTime != null) {
+                frameTimes.put(simTime, frameTime);
+            }
+        }
+        Map<Double, List<TrajectorySample>> byTime = new HashMap<>();
+        List<TrajectorySample> samples =
+            trajectorySampleRepository.findByRunIdAndSimTimes(runId, new LinkedHashSet<>(frameTimes.values()));
+        for (TrajectorySample sample : samples) {
+            byTime.computeIfAbsent(sample.simTime(), time -> new ArrayList<>()).add(sample);
+        }
+        for (BigDecimal simTime : simTimes) {
+            BigDecimal frameTime = frameTimes.get(simTime);
+            List<TrajectorySample> frame = frameTime != null ? byTime.get(frameTime.doubleValue()) : null;
+            frames.put(simTime, frame != null ? frame : new ArrayList<>());
+        }
+        return frames;
+    }
+
+    /**
+     * 批量读取多个时间段 [start, end] 内的采样，按请求顺序返回，每段按 (sim_time, pedestrian_id) 排序
+     *
+     * 没有帧索引时用一次查询读取所有时间段，再按时间段拆分。
+     *
+     * @param ranges 每个元素为 {startTime, endTime}
+     */
+    public List<List<TrajectorySample>> getTimeRanges(Integer runId, List<BigDecimal[]> ranges) {
+        List<List<TrajectorySample>> result = new ArrayList<>(ranges.size());
+        FrameIndex index = getIndex(runId);
+        if (index != null) {
+            for (BigDecimal[] range : ranges) {
+                result.add(index.getFramesBetween(range[0].doubleValue(), range[1].doubleValue()));
+            }
+            return result;
+        }
+
+        for (int i = 0; i < ranges.size(); i++) {
+            result.add(new ArrayList<>());
+        }
+        for (TrajectorySample sample : trajectorySampleRepository.findByRunIdAndTimeRanges(runId, ranges)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                BigDecimal[] range = ranges.get(i);
+                if (sample.simTime() >= range[0].doubleValue() && sample.simTime() <= range[1].doubleValue()) {
+                    result.get(i).add(sample);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取运行的帧索引；运行未结束、未开启索引或数据量超出缓存上限时返回 null
+     */
+    public FrameIndex getIndex(Integer runId) {
+        if (!enabled || oversizedRuns.contains(runId)) {
+            return null;
+        }
+        FrameIndex index = cache.get(runId);
+        if (index != null) {
+            return index;
+        }
+
+        SimulationRun run = simulationRunRepository.findById(runId).orElse(null);
+        if (run == null || !SimulationStateChangedEvent.isTerminal(run.getState())) {
+            return null;
+        }
+        try {
+            return scheduleBuild(runId).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            logger.error("运行 {} 帧索引构建失败: {}", runId, e.getCause().getMessage(), e.getCause());
+            return null;
+        }
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    @EventListener
+    public void onSimulationDataCompleted(SimulationDataCompletedEvent event) {
+        if (enabled) {
+            // 运行刚结束时数据可能与已缓存的索引不一致，重新构建
+            cache.remove(event.getRunId());
+            oversizedRuns.remove(event.getRunId());
+            scheduleBuild(event.getRunId());
+        }
+    }
+
+    @EventListener
+    public void onSimulationRunDeleted(SimulationRunDeletedEvent event) {
+        cache.remove(event.getRunId());
+        oversizedRuns.remove(event.getRunId());
+    }
+
+    /**
+     * 在升序的时间列表中二分查找最接近的时间，距离相等时取较早的一个；列表为空时返回 null
+     */
+    static BigDecimal nearestTime(List<BigDecimal> times, BigDecimal simTime) {
+        if (times.isEmpty()) {
+            return null;
+        }
+        int position = Collections.binarySearch(times, simTime);
+        if (position >= 0) {
+            return times.get(position);
+        }
+        int ceiling = -position - 1;
+        if (ceiling == 0) {
+            return times.get(0);
+        }
+        if (ceiling == times.size()) {
+            return times.get(ceiling - 1);
+        }
+        BigDecimal floor = times.get(ceiling - 1);
+        BigDecimal after = times.get(ceiling);
+        return simTime.subtract(floor).compareTo(after.subtract(simTime)) <= 0 ? floor : after;
+    }
+
+    private CompletableFuture<FrameIndex> scheduleBuild(Integer runId) {
+        CompletableFuture<FrameIndex> future = building.computeIfAbsent(runId, id -> CompletableFuture.supplyAsync(() -> {
+            FrameIndex index = build(id);
+            if (index != null) {
+                cache.put(id, index);
+            }
+            return index;
+        }, buildExecutor));
+        future.whenComplete((index, error) -> building.remove(runId, future));
+        return future;
+    }
+
+    private FrameIndex build(Integer runId) {
+        long start = System.currentTimeMillis();
+        long rows = trajectorySampleRepository.countByRunId(runId);
+        long estimated = FrameIndex.estimateBytes(rows);
+        if (estimated > maxBytes || estimated > Integer.MAX_VALUE) {
+            // 建好也放不进缓存，每次查询都会重新完整扫描
+            oversizedRuns.add(runId);
+            logger.warn("运行 {} 数据量 {} 行（约 {} 字节）超出帧索引缓存上限 {} 字节，不建立索引，直接查询数据库",
+                        runId, rows, estimated, maxBytes);
+            return null;
+        }
+        FrameIndex.Builder builder = FrameIndex.builder(runId, rows);
+        trajectorySampleRepository.streamByRunId(runId, builder::add);
+        FrameIndex index = builder.build();
+        if (index.sizeInBytes() > maxBytes) {
+            oversizedRuns.add(runId);
+            logger.warn("运行 {} 帧索引 {} 字节超出缓存上限 {} 字节，不缓存，直接查询数据库", runId, index.sizeInBytes(), maxBytes);
+            return null;
+        }
+        logger.info("运行 {} 帧索引构建完成: {} 帧, {} 行, {} 字节, 耗时 {} ms", runId, index.getFrameCount(),
+                    index.getRowCount(), index.sizeInBytes(), System.currentTimeMillis() - start);
+        return index;
+    }
+}
@@ -0,0 +1,451 @@
+package com.simulation.demo.service.index;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.simulation.demo.dto.TrajectorySample;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * 运行的多分辨率细节层级（LOD）金字塔 - 在帧索引之上按 2^k 帧一组降低时间分辨率
+ *
+ * 第 0 层即帧索引本身。第 k 层把帧按序号每 2^k 帧分为一组，每个行人在每组中只保留第一个采样
+ * （轨迹的最后一个采样替换同组中先保留的采样，行人显示到轨迹结束），只保存帧索引中的行号；
+ * 入库降采样后每帧只有部分行人，按组保留不会丢失行人。
+ * 从 clusterLevel 层起，每组再把保留的采样按网格聚合为（网格内质心, 人数），网格边长逐层加倍，
+ * 缩小到整个运行的时间轴时只需读取少量聚合点。
+ * 各层、各组互不依赖，构建时并行处理。构建完成后只读。
+ */
+public class LodPyramid {
+
+    // 按时间范围查找帧时允许的误差，与帧索引一致
+    private static final double TIME_EPSILON = 1e-6;
+
+    private final WeakReference<FrameIndex> source;
+    private final int clusterLevel;
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    // levels[k - 1] 为第 k 层
+    private final Level[] levels;
+
+    /**
+     * 一层的数据
+     */
+    private static final class Level {
+        // 保留的行号，按行号（即 sim_time, pedestrian_id）排序
+        final int[] rows;
+        // rows[groupStarts[g] .. groupStarts[g + 1]) 为第 g 组（帧序号 g * 2^k 起）保留的行
+        final int[] groupStarts;
+        // 同一行人相邻两个保留采样之间、中间有采样被跳过时的最大时间间隔
+        final double maxGap;
+        // 聚合层的网格边长，非聚合层为 NaN
+        final double cellSize;
+        // clusterX/Y/Counts[clusterStarts[g] .. clusterStarts[g + 1]) 为第 g 组的聚合点
+        int[] clusterStarts;
+        float[] clusterX;
+        float[] clusterY;
+        int[] clusterCounts;
+
+        Level(int[] rows, int[] groupStarts, double maxGap, double cellSize) {
+            this.rows = rows;
+            this.groupStarts = groupStarts;
+            this.maxGap = maxGap;
+            this.cellSize = cellSize;
+        }
+
+        int groupCount() {
+            return groupStarts.length - 1;
+        }
+
+        boolean isClustered() {
+            return clusterStarts != null;
+        }
+    }
+
+    /**
+     * 一帧的输出：行人层给出 pedestrianIds，聚合层给出每个聚合点的人数 counts，坐标按列存放
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Frame(double time, int[] pedestrianIds, int[] counts, double[] x, double[] y) {
+    }
+
+    private LodPyramid(FrameIndex index, int clusterLevel, double[] bounds, Level[] levels) {
+        this.source = new WeakReference<>(index);
+        this.clusterLevel = clusterLevel;
+        this.minX = bounds[0];
+        this.minY = bounds[1];
+        this.maxX = bounds[2];
+        this.maxY = bounds[3];
+        this.levels = levels;
+    }
+
+    /**
+     * 为帧索引建立金字塔
+     *
+     * @param maxLevels    最多的层数（不含第 0 层），组数不足 2 时不再向上建层
+     * @param clusterLevel 从该层起按网格聚合
+     * @param cellSize     第 clusterLevel 层的网格边长（坐标单位），每上一层加倍
+     */
+    public static LodPyramid build(FrameIndex index, int maxLevels, int clusterLevel, double cellSize) {
+        int levelCount = 0;
+        while (levelCount < maxLevels && (index.getFrameCount() - 1) >> (levelCount + 1) > 0) {
+            levelCount++;
+        }
+        Level[] levels = IntStream.rangeClosed(1, levelCount).parallel()
+            .mapToObj(level -> buildLevel(index, level,
+                level >= clusterLevel ? cellSize * Math.pow(2, level - clusterLevel) : Double.NaN))
+            .toArray(Level[]::new);
+        return new LodPyramid(index, clusterLevel, bounds(index), levels);
+    }
+
+    /**
+     * 是否由该帧索引构建（帧索引重建后行号会变化，需要重建金字塔）
+     */
+    public boolean isBuiltFrom(FrameIndex index) {
+        return source.get() == index;
+    }
+
+    /**
+     * 层数，含第 0 层（帧索引本身）
+     */
+    public int getLevelCount() {
+        return levels.length + 1;
+    }
+
+    public int getClusterLevel() {
+        return clusterLevel;
+    }
+
+    public boolean isClustered(int level) {
+        return level > 0 && levels[level - 1].isClustered();
+    }
+
+    /**
+     * 聚合层的网格边长，非聚合层返回 NaN
+     */
+    public double getCellSize(int level) {
+        return level > 0 ? levels[level - 1].cellSize : Double.NaN;
+    }
+
+    /**
+     * 第 level 层同一行人相邻两个采样之间因跳过采样增加的最大间隔（仿真秒），第 0 层为 0
+     */
+    public double getMaxGap(int level) {
+        return level > 0 ? levels[level - 1].maxGap : 0;
+    }
+
+    /**
+     * 运行中有坐标的采样的范围 [minX, minY, maxX, maxY]
+     */
+    public double[] getBounds() {
+        return new double[] {minX, minY, maxX, maxY};
+    }
+
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (Level level : levels) {
+            bytes += ((long) level.rows.length + level.groupStarts.length) * Integer.BYTES;
+            if (level.isClustered()) {
+                bytes += (long) level.clusterStarts.length * Integer.BYTES
+                    + (long) level.clusterCounts.length * (Integer.BYTES + 2 * Float.BYTES);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 回放时每帧推进 secondsPerFrame 仿真秒：选择组长不超过该时长的最高层，帧间隔按运行的平均帧间隔估算
+     */
+    public int levelForFrameInterval(FrameIndex index, double secondsPerFrame) {
+        if (index.getFrameCount() < 2 || !(secondsPerFrame > 0)) {
+            return 0;
+        }
+        double frameSeconds = (index.getEndTime() - index.getStartTime()) / (index.getFrameCount() - 1);
+        int level = 0;
+        while (level + 1 < getLevelCount() && frameSeconds * (1 << (level + 1)) <= secondsPerFrame) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 在 [fromTime, toTime] 内最多输出 maxFrames 帧的最低层；最高层仍超出时返回最高层
+     */
+    public int levelForTimeSpan(FrameIndex index, double fromTime, double toTime, int maxFrames) {
+        int fromFrame = firstFrame(index, fromTime);
+        int toFrame = index.floorFrame(toTime);
+        int level = 0;
+        while (level + 1 < getLevelCount() && groupCount(fromFrame, toFrame, level) > maxFrames) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 读取第 level 层时间在 (afterTime, untilTime] 区间内各组保留的采样，按 (sim_time, pedestrian_id) 排序
+     */
+    public List<TrajectorySample> read(FrameIndex index, int level, double afterTime, double untilTime) {
+        if (level == 0) {
+            return index.getFrames(afterTime, untilTime);
+        }
+        int[] rows = levels[level - 1].rows;
+        int fromFrame = index.floorFrame(afterTime) + 1;
+        int toFrame = index.floorFrame(untilTime);
+        if (fromFrame > toFrame) {
+            return new ArrayList<>();
+        }
+        int from = lowerBound(rows, index.getFrameStart(fromFrame));
+        int to = lowerBound(rows, index.getFrameStart(toFrame + 1));
+        List<TrajectorySample> samples = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            samples.add(index.getSample(rows[i]));
+        }
+        return samples;
+    }
+
+    /**
+     * 读取第 level 层时间在 [fromTime, toTime] 内的组，每组输出为一帧，帧时间为组内第一帧的时间；
+     * 只输出落在 [x1, x2] x [y1, y2] 内的点
+     *
+     * @param clustered 输出聚合点（仅聚合层有效），否则输出各行人保留的采样
+     * @param maxFrames 最多输出的帧数
+     */
+    public List<Frame> getFrames(FrameIndex index, int level, double fromTime, double toTime, boolean clustered,
+                                 double x1, double y1, double x2, double y2, int maxFrames) {
+        int fromFrame = firstFrame(index, fromTime);
+        int toFrame = index.floorFrame(toTime);
+        int firstGroup = (fromFrame + (1 << level) - 1) >> level;
+        int lastGroup = toFrame >> level;
+        List<Frame> frames = new ArrayList<>();
+        for (int group = firstGroup; group <= lastGroup && frames.size() < maxFrames; group++) {
+            double time = index.getFrameTime(group << level);
+            if (level == 0) {
+                frames.add(rawFrame(index, group, time, x1, y1, x2, y2));
+            } else if (clustered && levels[level - 1].isClustered()) {
+                frames.add(clusterFrame(levels[level - 1], group, time, x1, y1, x2, y2));
+            } else {
+                frames.add(pointFrame(index, levels[level - 1], group, time, x1, y1, x2, y2));
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * [fromTime, toTime] 内第 level 层的组数
+     */
+    public int countFrames(FrameIndex index, int level, double fromTime, double toTime) {
+        return groupCount(firstFrame(index, fromTime), index.floorFrame(toTime), level);
+    }
+
+    private static Level buildLevel(FrameIndex index, int level, double cellSize) {
+        BitSet keep = new BitSet(index.getRowCount());
+        double maxGap = 0;
+        for (int pedestrian = 0; pedestrian < index.getPedestrianCount(); pedestrian++) {
+            int start = index.getPedestrianRowStart(pedestrian);
+            int end = index.getPedestrianRowStart(pedestrian + 1);
+            int keptPos = -1;
+            int previousKeptPos = -1;
+            int keptGroup = -1;
+            for (int i = start; i < end; i++) {
+                int row = index.getPedestrianRow(i);
+                int group = index.frameOfRow(row) >> level;
+                if (group == keptGroup) {
+                    if (i < end - 1) {
+                        continue;
+                    }
+                    // 轨迹的最后一个采样替换同组中先保留的采样
+                    keep.clear(index.getPedestrianRow(keptPos));
+                    keptPos = previousKeptPos;
+                }
+                if (keptPos >= 0 && i - keptPos > 1) {
+                    maxGap = Math.max(maxGap, timeOfRow(index, row) - timeOfRow(index, index.getPedestrianRow(keptPos)));
+                }
+                keep.set(row);
+                previousKeptPos = keptPos;
+                keptPos = i;
+                keptGroup = group;
+            }
+        }
+
+        int[] rows = keep.stream().toArray();
+        int groupCount = ((index.getFrameCount() - 1) >> level) + 1;
+        int[] groupStarts = new int[groupCount + 1];
+        for (int row : rows) {
+            groupStarts[(index.frameOfRow(row) >> level) + 1]++;
+        }
+        for (int group = 0; group < groupCount; group++) {
+            groupStarts[group + 1] += groupStarts[group];
+        }
+
+        Level result = new Level(rows, groupStarts, maxGap, cellSize);
+        if (!Double.isNaN(cellSize)) {
+            cluster(index, result);
+        }
+        return result;
+    }
+
+    /**
+     * 每组内按网格聚合：网格以坐标原点对齐，相邻层的网格逐级嵌套
+     */
+    private static void cluster(FrameIndex index, Level level) {
+        int groupCount = level.groupCount();
+        float[][] groupX = new float[groupCount][];
+        float[][] groupY = new float[groupCount][];
+        int[][] groupCounts = new int[groupCount][];
+        IntStream.range(0, groupCount).parallel().forEach(group -> {
+            Map<Long, double[]> cells = new HashMap<>();
+            for (int i = level.groupStarts[group]; i < level.groupStarts[group + 1]; i++) {
+                double x = index.getPosX(level.rows[i]);
+                double y = index.getPosY(level.rows[i]);
+                if (Double.isNaN(x) || Double.isNaN(y)) {
+                    continue;
+                }
+                long cell = ((long) Math.floor(x / level.cellSize) << 32) ^ ((long) Math.floor(y / level.cellSize) & 0xFFFFFFFFL);
+                double[] sum = cells.computeIfAbsent(cell, key -> new double[3]);
+                sum[0] += x;
+                sum[1] += y;
+                sum[2]++;
+            }
+            Long[] keys = cells.keySet().toArray(new Long[0]);
+            Arrays.sort(keys);
+            float[] xs = new float[keys.length];
+            float[] ys = new float[keys.length];
+            int[] counts = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                double[] sum = cells.get(keys[i]);
+                xs[i] = (float) (sum[0] / sum[2]);
+                ys[i] = (float) (sum[1] / sum[2]);
+                counts[i] = (int) sum[2];
+            }
+            groupX[group] = xs;
+            groupY[group] = ys;
+            groupCounts[group] = counts;
+        });
+
+        int[] clusterStarts = new int[groupCount + 1];
+        for (int group = 0; group < groupCount; group++) {
+            clusterStarts[group + 1] = clusterStarts[group] + groupCounts[group].length;
+        }
+        int total = clusterStarts[groupCount];
+        level.clusterX = new float[total];
+        level.clusterY = new float[total];
+        level.clusterCounts = new int[total];
+        for (int group = 0; group < groupCount; group++) {
+            System.arraycopy(groupX[group], 0, level.clusterX, clusterStarts[group], groupX[group].length);
+            System.arraycopy(groupY[group], 0, level.clusterY, clusterStarts[group], groupY[group].length);
+            System.arraycopy(groupCounts[group], 0, level.clusterCounts, clusterStarts[group], groupCounts[group].length);
+        }
+        level.clusterStarts = clusterStarts;
+    }
+
+    private static Frame rawFrame(FrameIndex index, int frame, double time, double x1, double y1, double x2, double y2) {
+        int size = index.getFrameSize(frame);
+        int[] ids = new int[size];
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        int[] count = new int[1];
+        index.forEachInFrame(frame, (pedestrianId, posX, posY, posZ, speed) -> {
+            if (inBox(posX, posY, x1, y1, x2, y2)) {
+                ids[count[0]] = pedestrianId;
+                xs[count[0]] = posX;
+                ys[count[0]] = posY;
+                count[0]++;
+            }
+        });
+        return new Frame(time, Arrays.copyOf(ids, count[0]), null, Arrays.copyOf(xs, count[0]), Arrays.copyOf(ys, count[0]));
+    }
+
+    private static Frame pointFrame(FrameIndex index, Level level, int group, double time,
+                                    double x1, double y1, double x2, double y2) {
+        int size = level.groupStarts[group + 1] - level.groupStarts[group];
+        int[] ids = new int[size];
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        int count = 0;
+        for (int i = level.groupStarts[group]; i < level.groupStarts[group + 1]; i++) {
+            TrajectorySample sample = index.getSample(level.rows[i]);
+            if (inBox(sample.posX(), sample.posY(), x1, y1, x2, y2)) {
+                ids[count] = sample.pedestrianId();
+                xs[count] = sample.posX();
+                ys[count] = sample.posY();
+                count++;
+            }
+        }
+        return new Frame(time, Arrays.copyOf(ids, count), null, Arrays.copyOf(xs, count), Arrays.copyOf(ys, count));
+    }
+
+    private static Frame clusterFrame(Level level, int group, double time, double x1, double y1, double x2, double y2) {
+        int size = level.clusterStarts[group + 1] - level.clusterStarts[group];
+        int[] counts = new int[size];
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        int count = 0;
+        for (int i = level.clusterStarts[group]; i < level.clusterStarts[group + 1]; i++) {
+            if (inBox(level.clusterX[i], level.clusterY[i], x1, y1, x2, y2)) {
+                counts[count] = level.clusterCounts[i];
+                xs[count] = level.clusterX[i];
+                ys[count] = level.clusterY[i];
+                count++;
+            }
+        }
+        return new Frame(time, null, Arrays.copyOf(counts, count), Arrays.copyOf(xs, count), Arrays.copyOf(ys, count));
+    }
+
+    private static boolean inBox(double x, double y, double x1, double y1, double x2, double y2) {
+        return x >= x1 && x <= x2 && y >= y1 && y <= y2;
+    }
+
+    private static double[] bounds(FrameIndex index) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int row = 0; row < index.getRowCount(); row++) {
+            double x = index.getPosX(row);
+            double y = index.getPosY(row);
+            if (Double.isNaN(x) || Double.isNaN(y)) {
+                continue;
+            }
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        if (minX > maxX) {
+            return new double[4];
+        }
+        return new double[] {minX, minY, maxX, maxY};
+    }
+
+    private static double timeOfRow(FrameIndex index, int row) {
+        return index.getFrameTime(index.frameOfRow(row));
+    }
+
+    /**
+     * 时间不早于 fromTime 的第一帧
+     */
+    private static int firstFrame(FrameIndex index, double fromTime) {
+        return index.floorFrame(fromTime - 2 * TIME_EPSILON) + 1;
+    }
+
+    private static int groupCount(int fromFrame, int toFrame, int level) {
+        if (fromFrame > toFrame) {
+            return 0;
+        }
+        return Math.max(0, (toFrame >> level) - ((fromFrame + (1 << level) - 1) >> level) + 1);
+    }
+
+    /**
+     * 第一个不小于 row 的位置
+     */
+    private static int lowerBound(int[] rows, int row) {
+        int pos = Arrays.binarySearch(rows, row);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+}
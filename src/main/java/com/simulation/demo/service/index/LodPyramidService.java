@@ -0,0 +1,168 @@
+package com.simulation.demo.service.index;
+
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.SimulationRunDeletedEvent;
+import com.simulation.demo.service.cache.CacheStats;
+import com.simulation.demo.service.cache.WeightedLruCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 细节层级服务 - 为已建立帧索引的运行建立 LOD 金字塔（{@link LodPyramid}），按查询的时间跨度和视口选择层级
+ *
+ * 运行结束后在后台构建；缩小到较长时间跨度时读取隔帧保留的采样或网格聚合点，放大后仍读取完整的帧。
+ */
+@Service
+public class LodPyramidService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LodPyramidService.class);
+
+    @Autowired
+    private FrameIndexService frameIndexService;
+
+    @Value("${simulation.lod.enabled:true}")
+    private boolean enabled;
+
+    @Value("${simulation.lod.max-levels:8}")
+    private int maxLevels;
+
+    @Value("${simulation.lod.cluster-level:3}")
+    private int clusterLevel;
+
+    @Value("${simulation.lod.cell-size:2}")
+    private double cellSize;
+
+    @Value("${simulation.lod.max-bytes:268435456}")
+    private long maxBytes;
+
+    private WeightedLruCache<Integer, LodPyramid> cache;
+
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "LodPyramidBuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        cache = new WeightedLruCache<>("lodPyramid", maxBytes, LodPyramid::sizeInBytes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        buildExecutor.shutdownNow();
+        cache.clear();
+    }
+
+    /**
+     * 运行的金字塔，没有帧索引或未启用时返回 null；尚未构建时立即构建
+     */
+    public LodPyramid getPyramid(Integer runId, FrameIndex index) {
+        if (!enabled || index == null) {
+            return null;
+        }
+        LodPyramid pyramid = cache.get(runId);
+        if (pyramid != null && pyramid.isBuiltFrom(index)) {
+            return pyramid;
+        }
+        synchronized (this) {
+            // 并发请求只构建一次
+            pyramid = cache.get(runId);
+            if (pyramid != null && pyramid.isBuiltFrom(index)) {
+                return pyramid;
+            }
+            return buildPyramid(runId, index);
+        }
+    }
+
+    /**
+     * 读取 [fromTime, toTime] 内的帧：按时间跨度选择输出不超过 maxFrames 帧的层级，
+     * 该层网格边长不超过视口边长 / resolution 时输出聚合点，否则输出各行人的采样
+     *
+     * @param fromTime  为 null 时从第一帧开始
+     * @param toTime    为 null 时到最后一帧
+     * @param viewport  [minX, minY, maxX, maxY]，为 null 时为整个场地
+     * @return 运行未建立帧索引时 indexed 为 false
+     */
+    public Map<String, Object> getFrames(Integer runId, Double fromTime, Double toTime, double[] viewport,
+                                         int maxFrames, int resolution) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        FrameIndex index = frameIndexService.getIndex(runId);
+        LodPyramid pyramid = getPyramid(runId, index);
+        result.put("indexed", pyramid != null);
+        if (pyramid == null || index.getFrameCount() == 0) {
+            return result;
+        }
+
+        double from = fromTime != null ? fromTime : index.getStartTime();
+        double to = toTime != null ? toTime : index.getEndTime();
+        double[] box = viewport != null ? viewport : pyramid.getBounds();
+        double viewportSize = Math.max(box[2] - box[0], box[3] - box[1]);
+
+        int level = pyramid.levelForTimeSpan(index, from, to, maxFrames);
+        // 聚合网格不超过视口中一个显示单元时才聚合，放大查看时输出各行人的采样
+        boolean clustered = pyramid.isClustered(level) && pyramid.getCellSize(level) <= viewportSize / resolution;
+        int frameCount = pyramid.countFrames(index, level, from, to);
+        List<LodPyramid.Frame> frames = pyramid.getFrames(index, level, from, to, clustered,
+            box[0], box[1], box[2], box[3], maxFrames);
+
+        result.put("level", level);
+        result.put("levelCount", pyramid.getLevelCount());
+        result.put("frameStride", 1 << level);
+        result.put("clustered", clustered);
+        if (clustered) {
+            result.put("cellSize", pyramid.getCellSize(level));
+        }
+        result.put("total", frameCount);
+        result.put("truncated", frameCount > frames.size());
+        result.put("frames", frames);
+        return result;
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    @EventListener
+    public void onSimulationDataCompleted(SimulationDataCompletedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Integer runId = event.getRunId();
+        cache.remove(runId);
+        // 运行结束后提前建立金字塔，帧索引正在构建时等待其完成
+        buildExecutor.execute(() -> {
+            try {
+                getPyramid(runId, frameIndexService.getIndex(runId));
+            } catch (Exception e) {
+                logger.error("运行 {} 细节层级构建失败: {}", runId, e.getMessage(), e);
+            }
+        });
+    }
+
+    @EventListener
+    public void onSimulationRunDeleted(SimulationRunDeletedEvent event) {
+        cache.remove(event.getRunId());
+    }
+
+    private LodPyramid buildPyramid(Integer runId, FrameIndex index) {
+        long start = System.currentTimeMillis();
+        LodPyramid pyramid = LodPyramid.build(index, maxLevels, clusterLevel, cellSize);
+        cache.put(runId, pyramid);
+        logger.info("运行 {} 细节层级构建完成: {} 层, {} 字节, 耗时 {} ms", runId, pyramid.getLevelCount(),
+                    pyramid.sizeInBytes(), System.currentTimeMillis() - start);
+        return pyramid;
+    }
+}
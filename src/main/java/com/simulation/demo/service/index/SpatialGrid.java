@@ -0,0 +1,226 @@
+package com.simulation.demo.service.index;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * 运行的时空网格索引 - 按时间窗口分桶，每个桶内把 pos_x/pos_y 划分为均匀的正方形网格
+ *
+ * 只保存帧索引中的行号（每行 4 字节），按 (桶, 网格行, 网格列) 顺序连续存放，
+ * 同一网格行中相邻的若干列对应一段连续的行号，查询时只读取与矩形相交的网格。
+ * 各时间桶互不重叠，构建时并行处理。构建完成后只读。
+ */
+public class SpatialGrid {
+
+    private final WeakReference<FrameIndex> source;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int gridRows;
+    private final double startTime;
+    private final double bucketSeconds;
+    private final int bucketCount;
+
+    // cellStarts[bucket * cellCount + cell] 为该网格第一个行号在 rowIds 中的位置
+    private final int[] cellStarts;
+    // 每个桶最后一个网格的结束位置（没有坐标的行不入网格，桶之间可能有空隙）
+    private final int[] bucketEnds;
+    private final int[] rowIds;
+
+    private SpatialGrid(FrameIndex index, double minX, double minY, double cellSize, int columns, int gridRows,
+                        double bucketSeconds, int bucketCount) {
+        this.source = new WeakReference<>(index);
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        this.columns = columns;
+        this.gridRows = gridRows;
+        this.startTime = index.getStartTime();
+        this.bucketSeconds = bucketSeconds;
+        this.bucketCount = bucketCount;
+        this.cellStarts = new int[bucketCount * columns * gridRows];
+        this.bucketEnds = new int[bucketCount];
+        this.rowIds = new int[index.getRowCount()];
+    }
+
+    /**
+     * 为帧索引建立网格
+     *
+     * @param cellSize        期望的网格边长（坐标单位），范围过大时自动放大，使每个方向不超过 maxCellsPerAxis 格
+     * @param bucketSeconds   时间桶长度（仿真秒）
+     */
+    public static SpatialGrid build(FrameIndex index, double cellSize, double bucketSeconds, int maxCellsPerAxis) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int row = 0; row < index.getRowCount(); row++) {
+            double x = index.getPosX(row);
+            double y = index.getPosY(row);
+            if (Double.isNaN(x) || Double.isNaN(y)) {
+                continue;
+            }
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        if (minX > maxX) {
+            minX = minY = maxX = maxY = 0;
+        }
+
+        double size = Math.max(cellSize, Math.max(maxX - minX, maxY - minY) / maxCellsPerAxis);
+        int columns = (int) ((maxX - minX) / size) + 1;
+        int gridRows = (int) ((maxY - minY) / size) + 1;
+        int bucketCount = index.getFrameCount() > 0
+            ? (int) ((index.getEndTime() - index.getStartTime()) / bucketSeconds) + 1 : 0;
+
+        SpatialGrid grid = new SpatialGrid(index, minX, minY, size, columns, gridRows, bucketSeconds, bucketCount);
+        int[] bucketFrames = grid.bucketFrameStarts(index);
+        IntStream.range(0, bucketCount).parallel().forEach(bucket -> grid.fillBucket(index, bucketFrames, bucket));
+        return grid;
+    }
+
+    /**
+     * 是否由该帧索引构建（帧索引重建后行号会变化，需要重建网格）
+     */
+    public boolean isBuiltFrom(FrameIndex index) {
+        return source.get() == index;
+    }
+
+    public long sizeInBytes() {
+        return ((long) cellStarts.length + bucketEnds.length + rowIds.length) * Integer.BYTES;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int getCellCount() {
+        return columns * gridRows;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * 查询矩形内、时间在 [fromTime, toTime] 之间的采样行号，按行号（即 sim_time, pedestrian_id）排序
+     *
+     * @param filter 对候选点的附加过滤（如圆形范围），可为 null
+     */
+    public int[] query(FrameIndex index, double x1, double y1, double x2, double y2,
+                       double fromTime, double toTime, PointFilter filter) {
+        if (bucketCount == 0 || x2 < minX || y2 < minY) {
+            return new int[0];
+        }
+        int col1 = clamp((int) Math.floor((x1 - minX) / cellSize), columns);
+        int col2 = clamp((int) Math.floor((x2 - minX) / cellSize), columns);
+        int row1 = clamp((int) Math.floor((y1 - minY) / cellSize), gridRows);
+        int row2 = clamp((int) Math.floor((y2 - minY) / cellSize), gridRows);
+        int bucket1 = Math.max(0, (int) Math.floor((fromTime - startTime) / bucketSeconds));
+        int bucket2 = Math.min(bucketCount - 1, (int) Math.floor((toTime - startTime) / bucketSeconds));
+        int cellCount = columns * gridRows;
+
+        int[] result = new int[64];
+        int size = 0;
+        for (int bucket = bucket1; bucket <= bucket2; bucket++) {
+            // 只有首尾两个桶可能包含时间范围以外的行
+            boolean checkTime = bucket == bucket1 || bucket == bucket2;
+            for (int gridRow = row1; gridRow <= row2; gridRow++) {
+                int cell = bucket * cellCount + gridRow * columns;
+                int start = cellStarts[cell + col1];
+                int end = col2 + 1 < columns || gridRow + 1 < gridRows
+                    ? cellStarts[cell + col2 + 1] : bucketEnds[bucket];
+                for (int i = start; i < end; i++) {
+                    int row = rowIds[i];
+                    double x = index.getPosX(row);
+                    double y = index.getPosY(row);
+                    if (x < x1 || x > x2 || y < y1 || y > y2 || (filter != null && !filter.test(x, y))) {
+                        continue;
+                    }
+                    if (checkTime) {
+                        double time = index.getFrameTime(index.frameOfRow(row));
+                        if (time < fromTime || time > toTime) {
+                            continue;
+                        }
+                    }
+                    if (size == result.length) {
+                        result = Arrays.copyOf(result, size * 2);
+                    }
+                    result[size++] = row;
+                }
+            }
+        }
+        int[] rows = Arrays.copyOf(result, size);
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    @FunctionalInterface
+    public interface PointFilter {
+        boolean test(double x, double y);
+    }
+
+    private int[] bucketFrameStarts(FrameIndex index) {
+        // bucketFrames[b] 为第 b 个桶的第一帧，bucketFrames[bucketCount] 为帧数
+        int[] bucketFrames = new int[bucketCount + 1];
+        int bucket = 0;
+        for (int frame = 0; frame < index.getFrameCount(); frame++) {
+            int frameBucket = Math.min(bucketCount - 1, (int) ((index.getFrameTime(frame) - startTime) / bucketSeconds));
+            while (bucket < frameBucket) {
+                bucketFrames[++bucket] = frame;
+            }
+        }
+        while (bucket < bucketCount) {
+            bucketFrames[++bucket] = index.getFrameCount();
+        }
+        return bucketFrames;
+    }
+
+    private void fillBucket(FrameIndex index, int[] bucketFrames, int bucket) {
+        int firstRow = index.getFrameStart(bucketFrames[bucket]);
+        int lastRow = index.getFrameStart(bucketFrames[bucket + 1]);
+        int cellCount = columns * gridRows;
+        int base = bucket * cellCount;
+
+        int[] cells = new int[lastRow - firstRow];
+        int[] counts = new int[cellCount];
+        for (int row = firstRow; row < lastRow; row++) {
+            int cell = cellOf(index.getPosX(row), index.getPosY(row));
+            cells[row - firstRow] = cell;
+            if (cell >= 0) {
+                counts[cell]++;
+            }
+        }
+
+        int position = firstRow;
+        for (int cell = 0; cell < cellCount; cell++) {
+            cellStarts[base + cell] = position;
+            position += counts[cell];
+        }
+        bucketEnds[bucket] = position;
+
+        // counts 复用为每个网格的写入位置
+        for (int cell = 0; cell < cellCount; cell++) {
+            counts[cell] = cellStarts[base + cell];
+        }
+        for (int row = firstRow; row < lastRow; row++) {
+            int cell = cells[row - firstRow];
+            if (cell >= 0) {
+                rowIds[counts[cell]++] = row;
+            }
+        }
+    }
+
+    private int cellOf(double x, double y) {
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            return -1;
+        }
+        return clamp((int) ((y - minY) / cellSize), gridRows) * columns + clamp((int) ((x - minX) / cellSize), columns);
+    }
+
+    private static int clamp(int value, int count) {
+        return Math.max(0, Math.min(count - 1, value));
+    }
+}
@@ -0,0 +1,198 @@
+package com.simulation.demo.service.index;
+
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.SimulationRunDeletedEvent;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.cache.CacheStats;
+import com.simulation.demo.service.cache.WeightedLruCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 空间查询服务 - 查询矩形或圆形范围内、指定时间段的行人采样
+ *
+ * 已建立帧索引的运行在帧索引之上再建立时空网格（{@link SpatialGrid}），只读取与查询范围相交的网格；
+ * 其余运行按 pos_x/pos_y 条件查询数据库。
+ */
+@Service
+public class SpatialIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpatialIndexService.class);
+
+    @Autowired
+    private FrameIndexService frameIndexService;
+
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
+    @Value("${simulation.spatial-index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${simulation.spatial-index.cell-size:5}")
+    private double cellSize;
+
+    @Value("${simulation.spatial-index.bucket-seconds:60}")
+    private double bucketSeconds;
+
+    @Value("${simulation.spatial-index.max-cells-per-axis:256}")
+    private int maxCellsPerAxis;
+
+    @Value("${simulation.spatial-index.max-bytes:268435456}")
+    private long maxBytes;
+
+    private WeightedLruCache<Integer, SpatialGrid> cache;
+
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "SpatialIndexBuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        cache = new WeightedLruCache<>("spatialIndex", maxBytes, SpatialGrid::sizeInBytes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        buildExecutor.shutdownNow();
+        cache.clear();
+    }
+
+    /**
+     * 查询矩形范围内的采样
+     *
+     * @param startTime 为 null 时不限制开始时间
+     * @param endTime   为 null 时不限制结束时间
+     * @param limit     最多返回的行数，超出时 truncated 为 true
+     */
+    public Map<String, Object> findInBox(Integer runId, double minX, double minY, double maxX, double maxY,
+                                         BigDecimal startTime, BigDecimal endTime, int limit) {
+        FrameIndex index = frameIndexService.getIndex(runId);
+        if (enabled && index != null) {
+            int[] rows = getGrid(runId, index).query(index, minX, minY, maxX, maxY,
+                from(startTime), to(endTime), null);
+            return toResult(index, rows, limit);
+        }
+        List<TrajectorySample> samples = trajectorySampleRepository.findByRunIdInBox(runId, minX, minY, maxX, maxY,
+            startTime, endTime, null, null, null, limit + 1);
+        return toResult(samples, limit);
+    }
+
+    /**
+     * 查询以 (x, y) 为圆心、radius 为半径的圆形范围内的采样
+     */
+    public Map<String, Object> findInRadius(Integer runId, double x, double y, double radius,
+                                            BigDecimal startTime, BigDecimal endTime, int limit) {
+        double radiusSquared = radius * radius;
+        FrameIndex index = frameIndexService.getIndex(runId);
+        if (enabled && index != null) {
+            int[] rows = getGrid(runId, index).query(index, x - radius, y - radius, x + radius, y + radius,
+                from(startTime), to(endTime), (px, py) -> (px - x) * (px - x) + (py - y) * (py - y) <= radiusSquared);
+            return toResult(index, rows, limit);
+        }
+        List<TrajectorySample> samples = trajectorySampleRepository.findByRunIdInBox(runId, x - radius, y - radius,
+            x + radius, y + radius, startTime, endTime, x, y, radius, limit + 1);
+        return toResult(samples, limit);
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    @EventListener
+    public void onSimulationDataCompleted(SimulationDataCompletedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Integer runId = event.getRunId();
+        cache.remove(runId);
+        // 运行结束后提前建立网格，帧索引正在构建时等待其完成
+        buildExecutor.execute(() -> {
+            try {
+                FrameIndex index = frameIndexService.getIndex(runId);
+                if (index != null) {
+                    getGrid(runId, index);
+                }
+            } catch (Exception e) {
+                logger.error("运行 {} 空间索引构建失败: {}", runId, e.getMessage(), e);
+            }
+        });
+    }
+
+    @EventListener
+    public void onSimulationRunDeleted(SimulationRunDeletedEvent event) {
+        cache.remove(event.getRunId());
+    }
+
+    private SpatialGrid getGrid(Integer runId, FrameIndex index) {
+        SpatialGrid grid = cache.get(runId);
+        if (grid != null && grid.isBuiltFrom(index)) {
+            return grid;
+        }
+        synchronized (this) {
+            // 并发请求只构建一次
+            grid = cache.get(runId);
+            if (grid != null && grid.isBuiltFrom(index)) {
+                return grid;
+            }
+            return buildGrid(runId, index);
+        }
+    }
+
+    private SpatialGrid buildGrid(Integer runId, FrameIndex index) {
+        long start = System.currentTimeMillis();
+        SpatialGrid grid = SpatialGrid.build(index, cellSize, bucketSeconds, maxCellsPerAxis);
+        cache.put(runId, grid);
+        logger.info("运行 {} 空间索引构建完成: 网格边长 {}, {} 格 x {} 个时间桶, {} 字节, 耗时 {} ms", runId,
+                    grid.getCellSize(), grid.getCellCount(), grid.getBucketCount(), grid.sizeInBytes(),
+                    System.currentTimeMillis() - start);
+        return grid;
+    }
+
+    private static double from(BigDecimal startTime) {
+        return startTime != null ? startTime.doubleValue() : Double.NEGATIVE_INFINITY;
+    }
+
+    private static double to(BigDecimal endTime) {
+        return endTime != null ? endTime.doubleValue() : Double.POSITIVE_INFINITY;
+    }
+
+    private static Map<String, Object> toResult(FrameIndex index, int[] rows, int limit) {
+        int count = Math.min(rows.length, limit);
+        List<TrajectorySample> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            samples.add(index.getSample(rows[i]));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("indexed", true);
+        result.put("total", rows.length);
+        result.put("truncated", rows.length > limit);
+        result.put("content", samples);
+        return result;
+    }
+
+    private static Map<String, Object> toResult(List<TrajectorySample> samples, int limit) {
+        boolean truncated = samples.size() > limit;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("indexed", false);
+        result.put("truncated", truncated);
+        result.put("content", truncated ? samples.subList(0, limit) : samples);
+        return result;
+    }
+}
@@ -0,0 +1,124 @@
+package com.simulation.demo.service.index;
+
+import com.simulation.demo.dto.BatchQueryRequest;
+import com.simulation.demo.dto.TrajectorySample;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量轨迹查询 - 一个请求内读取多个帧、多个行人的轨迹和多个时间段
+ *
+ * 每类查询合并为一次读取（帧索引或一条数据库查询），三类查询互不依赖，并行执行。
+ */
+@Service
+public class TrajectoryBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrajectoryBatchService.class);
+
+    @Autowired
+    private FrameIndexService frameIndexService;
+
+    @Value("${simulation.batch-query.threads:4}")
+    private int threads;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "TrajectoryBatchQuery-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 执行批量查询，结果按类别分组：frames 以请求的仿真时间为键，pedestrians 以行人ID为键，
+     * timeRanges 按请求顺序返回；请求中没有的类别不出现在结果中
+     */
+    public Map<String, Object> query(Integer runId, BatchQueryRequest request) {
+        long start = System.currentTimeMillis();
+
+        CompletableFuture<Map<BigDecimal, List<TrajectorySample>>> frames = null;
+        if (request.simTimes() != null && !request.simTimes().isEmpty()) {
+            List<BigDecimal> simTimes = new ArrayList<>(new LinkedHashSet<>(request.simTimes()));
+            frames = CompletableFuture.supplyAsync(
+                () -> frameIndexService.getFrames(runId, simTimes, request.nearest()), executor);
+        }
+
+        CompletableFuture<Map<Integer, List<TrajectorySample>>> pedestrians = null;
+        if (request.pedestrianIds() != null && !request.pedestrianIds().isEmpty()) {
+            LinkedHashSet<Integer> pedestrianIds = new LinkedHashSet<>(request.pedestrianIds());
+            pedestrians = CompletableFuture.supplyAsync(
+                () -> frameIndexService.getTrajectories(runId, pedestrianIds), executor);
+        }
+
+        CompletableFuture<List<Map<String, Object>>> timeRanges = null;
+        if (request.timeRanges() != null && !request.timeRanges().isEmpty()) {
+            List<BatchQueryRequest.TimeRange> requested = request.timeRanges();
+            timeRanges = CompletableFuture.supplyAsync(() -> getTimeRanges(runId, requested), executor);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        try {
+            if (frames != null) {
+                result.put("frames", frames.join());
+            }
+            if (pedestrians != null) {
+                result.put("pedestrians", pedestrians.join());
+            }
+            if (timeRanges != null) {
+                result.put("timeRanges", timeRanges.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        logger.debug("运行 {} 批量查询完成: {} 个键, 耗时 {} ms", runId, request.keyCount(),
+                     System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private List<Map<String, Object>> getTimeRanges(Integer runId, List<BatchQueryRequest.TimeRange> requested) {
+        List<BigDecimal[]> ranges = new ArrayList<>(requested.size());
+        for (BatchQueryRequest.TimeRange range : requested) {
+            ranges.add(new BigDecimal[] {range.startTime(), range.endTime()});
+        }
+        List<List<TrajectorySample>> contents = frameIndexService.getTimeRanges(runId, ranges);
+
+        List<Map<String, Object>> result = new ArrayList<>(requested.size());
+        for (int i = 0; i < requested.size(); i++) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("startTime", requested.get(i).startTime());
+            entry.put("endTime", requested.get(i).endTime());
+            entry.put("content", contents.get(i));
+            result.add(entry);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,190 @@
+package com.simulation.demo.service.ingest;
+
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.EventsLog;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 写入队列中的一批待入库数据（轨迹或事件），同时负责落盘时的二进制编解码
+ */
+public class IngestBatch {
+
+    public enum Type {
+        PEDESTRIAN_DATA, EVENTS_LOG
+    }
+
+    // 内存占用估算：TrajectorySample 对象 + 列表引用；EventsLog 实体 + 若干包装类型
+    private static final int PEDESTRIAN_ROW_BYTES = 96;
+    private static final int EVENT_ROW_BYTES = 160;
+
+    private final Type type;
+    private final long enqueuedAt;
+    private final List<TrajectorySample> samples;
+    private final List<EventsLog> events;
+
+    private IngestBatch(Type type, long enqueuedAt, List<TrajectorySample> samples, List<EventsLog> events) {
+        this.type = type;
+        this.enqueuedAt = enqueuedAt;
+        this.samples = samples;
+        this.events = events;
+    }
+
+    public static IngestBatch ofSamples(List<TrajectorySample> samples) {
+        return new IngestBatch(Type.PEDESTRIAN_DATA, System.currentTimeMillis(), samples, null);
+    }
+
+    public static IngestBatch ofEvents(List<EventsLog> events) {
+        return new IngestBatch(Type.EVENTS_LOG, System.currentTimeMillis(), null, events);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    public List<TrajectorySample> getSamples() {
+        return samples;
+    }
+
+    public List<EventsLog> getEvents() {
+        return events;
+    }
+
+    public int size() {
+        return type == Type.PEDESTRIAN_DATA ? samples.size() : events.size();
+    }
+
+    /**
+     * 估算在内存中占用的字节数
+     */
+    public long estimateBytes() {
+        if (type == Type.PEDESTRIAN_DATA) {
+            return (long) samples.size() * PEDESTRIAN_ROW_BYTES;
+        }
+        long bytes = 0;
+        for (EventsLog event : events) {
+            bytes += EVENT_ROW_BYTES + (event.getEventDetails() != null ? event.getEventDetails().length() * 2L : 0);
+        }
+        return bytes;
+    }
+
+    /**
+     * 写出为落盘格式
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(type.ordinal());
+        out.writeLong(enqueuedAt);
+        out.writeInt(size());
+        if (type == Type.PEDESTRIAN_DATA) {
+            for (TrajectorySample sample : samples) {
+                out.writeInt(sample.runId());
+                out.writeDouble(sample.simTime());
+                out.writeLong(sample.modelDate() != null ? sample.modelDate().toInstant(ZoneOffset.UTC).toEpochMilli() : Long.MIN_VALUE);
+                out.writeInt(sample.pedestrianId());
+                out.writeDouble(sample.posX());
+                out.writeDouble(sample.posY());
+                out.writeFloat(sample.posZ());
+                out.writeFloat(sample.speed());
+                writeString(out, sample.areaName());
+                out.writeDouble(sample.lat());
+                out.writeDouble(sample.lon());
+            }
+        } else {
+            for (EventsLog event : events) {
+                out.writeInt(event.getRunId());
+                writeDecimal(out, event.getSimTime());
+                out.writeInt(event.getPedestrianId() != null ? event.getPedestrianId() : Integer.MIN_VALUE);
+                writeString(out, event.getEventType());
+                writeString(out, event.getEventDetails());
+            }
+        }
+    }
+
+    /**
+     * 从落盘格式读回
+     */
+    public static IngestBatch readFrom(DataInputStream in) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= Type.values().length) {
+            throw new IOException("未知的批次类型: " + ordinal);
+        }
+        Type type = Type.values()[ordinal];
+        long enqueuedAt = in.readLong();
+        int count = in.readInt();
+        // 每行至少占 1 个字节，行数超过剩余字节数说明记录已损坏
+        if (count < 0 || count > in.available()) {
+            throw new IOException("批次行数非法: " + count);
+        }
+        if (type == Type.PEDESTRIAN_DATA) {
+            List<TrajectorySample> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int runId = in.readInt();
+                double simTime = in.readDouble();
+                long modelDate = in.readLong();
+                rows.add(new TrajectorySample(0L, runId, simTime,
+                    modelDate != Long.MIN_VALUE ? LocalDateTime.ofEpochSecond(Math.floorDiv(modelDate, 1000),
+                        (int) Math.floorMod(modelDate, 1000) * 1_000_000, ZoneOffset.UTC) : null,
+                    in.readInt(), in.readDouble(), in.readDouble(), in.readFloat(), in.readFloat(),
+                    readString(in), in.readDouble(), in.readDouble()));
+            }
+            return new IngestBatch(type, enqueuedAt, rows, null);
+        }
+
+        List<EventsLog> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            EventsLog event = new EventsLog();
+            event.setRunId(in.readInt());
+            event.setSimTime(readDecimal(in));
+            int pedestrianId = in.readInt();
+            event.setPedestrianId(pedestrianId != Integer.MIN_VALUE ? pedestrianId : null);
+            event.setEventType(readString(in));
+            event.setEventDetails(readString(in));
+            rows.add(event);
+        }
+        return new IngestBatch(type, enqueuedAt, null, rows);
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        out.writeDouble(value != null ? value.doubleValue() : Double.NaN);
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        double value = in.readDouble();
+        return Double.isNaN(value) ? null : BigDecimal.valueOf(value);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("字符串长度超出记录: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,316 @@
+package com.simulation.demo.service.ingest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 写入队列的落盘日志 - 只追加的分段文件
+ *
+ * 每条记录为 [int 长度][IngestBatch 编码]，段文件按序号命名（segment-{seq}.log），
+ * 回放从序号最小的段开始，已回放的位置记录在 segment-{seq}.offset 中，重启后从断点继续。
+ * 需要插到队首的数据（内存中更早的批次）写入序号更小的新段。
+ * 无法解码的记录和长度非法之后的剩余部分移入 segment-{seq}.corrupt 隔离文件后跳过，不会反复重试阻塞回放。
+ * 非线程安全，由写入队列统一加锁访问。
+ */
+class SpillLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillLog.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String OFFSET_SUFFIX = ".offset";
+    private static final String CORRUPT_SUFFIX = ".corrupt";
+    private static final long INITIAL_SEQUENCE = 1_000_000_000L;
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+
+    // 序号 -> 段文件大小
+    private final TreeMap<Long, Long> segments = new TreeMap<>();
+
+    private long appendSequence = -1;
+    private DataOutputStream appender;
+
+    private long headSequence = -1;
+    private long headOffset;
+    private RandomAccessFile headReader;
+    private int peekedLength = -1;
+
+    private long pendingBytes;
+
+    // 移入隔离文件的记录数（含无法按记录切分的剩余部分）
+    private long quarantinedRecords;
+
+    SpillLog(Path directory, long maxSegmentBytes) throws IOException {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        if (Files.isDirectory(directory)) {
+            recover();
+        }
+    }
+
+    /**
+     * 是否还有未回放的记录
+     */
+    boolean hasPending() {
+        return pendingBytes > 0;
+    }
+
+    long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    long getQuarantinedRecords() {
+        return quarantinedRecords;
+    }
+
+    /**
+     * 追加到日志末尾
+     */
+    void append(IngestBatch batch) throws IOException {
+        if (appender == null || segments.get(appendSequence) >= maxSegmentBytes) {
+            openAppender(segments.isEmpty() ? INITIAL_SEQUENCE : segments.lastKey() + 1);
+        }
+        long written = writeRecord(appender, batch);
+        appender.flush();
+        segments.merge(appendSequence, written, Long::sum);
+        pendingBytes += written;
+    }
+
+    /**
+     * 插到日志最前面（按给定顺序先于现有记录回放）
+     */
+    void prepend(List<IngestBatch> batches) throws IOException {
+        if (batches.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(directory);
+        long sequence = segments.isEmpty() ? INITIAL_SEQUENCE : segments.firstKey() - 1;
+        long size = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(segmentFile(sequence).toFile())))) {
+            for (IngestBatch batch : batches) {
+                size += writeRecord(out, batch);
+            }
+        }
+        segments.put(sequence, size);
+        pendingBytes += size;
+        closeHead();
+    }
+
+    /**
+     * 读取下一条待回放记录（不移动回放位置）
+     */
+    IngestBatch peek() throws IOException {
+        while (!segments.isEmpty()) {
+            long sequence = segments.firstKey();
+            if (headReader == null || headSequence != sequence) {
+                openHead(sequence);
+            }
+            long size = segments.get(sequence);
+            if (headOffset + Integer.BYTES <= size) {
+                headReader.seek(headOffset);
+                int length = headReader.readInt();
+                // 长度按段文件大小校验，非法长度不分配缓冲区
+                if (length >= 0 && headOffset + Integer.BYTES + length <= size) {
+                    byte[] payload = new byte[length];
+                    headReader.readFully(payload);
+                    try {
+                        IngestBatch batch = IngestBatch.readFrom(new DataInputStream(new ByteArrayInputStream(payload)));
+                        peekedLength = length;
+                        return batch;
+                    } catch (IOException | RuntimeException e) {
+                        logger.error("落盘段 {} 偏移 {} 的记录无法解码，移入隔离文件: {}", sequence, headOffset, e.toString());
+                        quarantine(sequence, headOffset, headOffset + Integer.BYTES + length);
+                        moveHead(Integer.BYTES + length);
+                        continue;
+                    }
+                }
+            }
+            if (headOffset < size) {
+                // 记录长度非法，或进程异常退出时最后一条记录只写了一半，剩余部分无法再按记录切分
+                logger.warn("落盘段 {} 偏移 {} 之后的 {} 字节无法解析，移入隔离文件", sequence, headOffset, size - headOffset);
+                quarantine(sequence, headOffset, size);
+                pendingBytes -= size - headOffset;
+            }
+            removeHead();
+        }
+        return null;
+    }
+
+    /**
+     * 确认最近一次 peek 的记录已写入数据库
+     */
+    void advance() throws IOException {
+        if (peekedLength < 0) {
+            throw new IllegalStateException("没有已读取的落盘记录");
+        }
+        long recordBytes = Integer.BYTES + peekedLength;
+        peekedLength = -1;
+        moveHead(recordBytes);
+    }
+
+    void close() {
+        closeHead();
+        closeAppender();
+    }
+
+    private void moveHead(long recordBytes) throws IOException {
+        headOffset += recordBytes;
+        pendingBytes -= recordBytes;
+        if (headOffset >= segments.get(headSequence)) {
+            removeHead();
+        } else {
+            Files.writeString(offsetFile(headSequence), Long.toString(headOffset), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 把头部段 [from, to) 的字节追加到隔离文件，隔离失败时直接丢弃
+     */
+    private void quarantine(long sequence, long from, long to) {
+        quarantinedRecords++;
+        try (FileOutputStream out = new FileOutputStream(corruptFile(sequence).toFile(), true)) {
+            byte[] chunk = new byte[64 * 1024];
+            headReader.seek(from);
+            long remaining = to - from;
+            while (remaining > 0) {
+                int read = headReader.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                out.write(chunk, 0, read);
+                remaining -= read;
+            }
+        } catch (IOException e) {
+            logger.error("写入隔离文件失败，丢弃损坏数据 {} 字节: {}", to - from, e.getMessage());
+        }
+    }
+
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(sequence, Files.size(file));
+                } catch (NumberFormatException e) {
+                    logger.warn("忽略无法识别的落盘文件: {}", file);
+                }
+            }
+        }
+        for (Map.Entry<Long, Long> entry : segments.entrySet()) {
+            pendingBytes += entry.getValue() - readOffset(entry.getKey());
+        }
+        if (!segments.isEmpty()) {
+            logger.info("发现未回放的落盘数据: {} 个段, {} 字节", segments.size(), pendingBytes);
+        }
+    }
+
+    private long writeRecord(DataOutputStream out, IngestBatch batch) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        batch.writeTo(new DataOutputStream(buffer));
+        out.writeInt(buffer.size());
+        buffer.writeTo(out);
+        return Integer.BYTES + buffer.size();
+    }
+
+    private void openAppender(long sequence) throws IOException {
+        closeAppender();
+        Files.createDirectories(directory);
+        appender = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(segmentFile(sequence).toFile(), true), 64 * 1024));
+        appendSequence = sequence;
+        segments.putIfAbsent(sequence, 0L);
+    }
+
+    private void openHead(long sequence) throws IOException {
+        closeHead();
+        headReader = new RandomAccessFile(segmentFile(sequence).toFile(), "r");
+        headSequence = sequence;
+        headOffset = readOffset(sequence);
+    }
+
+    private void removeHead() throws IOException {
+        long sequence = segments.firstKey();
+        if (sequence == appendSequence) {
+            closeAppender();
+        }
+        if (sequence == headSequence) {
+            closeHead();
+        }
+        segments.remove(sequence);
+        Files.deleteIfExists(segmentFile(sequence));
+        Files.deleteIfExists(offsetFile(sequence));
+    }
+
+    private long readOffset(long sequence) throws IOException {
+        Path file = offsetFile(sequence);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(file, StandardCharsets.UTF_8).trim());
+        } catch (NumberFormatException e) {
+            logger.warn("回放位置文件损坏，从段首重新回放: {}", file);
+            return 0;
+        }
+    }
+
+    private void closeHead() {
+        if (headReader != null) {
+            try {
+                headReader.close();
+            } catch (IOException e) {
+                logger.warn("关闭落盘段失败: {}", e.getMessage());
+            }
+        }
+        headReader = null;
+        headSequence = -1;
+        peekedLength = -1;
+    }
+
+    private void closeAppender() {
+        if (appender != null) {
+            try {
+                appender.close();
+            } catch (IOException e) {
+                logger.warn("关闭落盘段失败: {}", e.getMessage());
+            }
+        }
+        appender = null;
+        appendSequence = -1;
+    }
+
+    private Path segmentFile(long sequence) {
+        return directory.resolve(SEGMENT_PREFIX + sequence + SEGMENT_SUFFIX);
+    }
+
+    private Path offsetFile(long sequence) {
+        return directory.resolve(SEGMENT_PREFIX + sequence + OFFSET_SUFFIX);
+    }
+
+    private Path corruptFile(long sequence) {
+        return directory.resolve(SEGMENT_PREFIX + sequence + CORRUPT_SUFFIX);
+    }
+}
@@ -0,0 +1,223 @@
+package com.simulation.demo.service.ingest;
+
+import com.simulation.demo.dto.TrajectorySample;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 轨迹降采样器（航位推算过滤）
+ *
+ * 对每个行人，用最近一个保留点及其速度线性外推当前位置：
+ * - 实际位置与外推位置的偏差不超过距离容差、且航向变化不超过角度容差时丢弃该采样
+ * - 发生转向/偏离时保留转折点（即上一个被丢弃的采样），停下与起步同样视为转折
+ * - 所在区域（area_name）变化时保留离开前的最后一个采样和进入后的第一个采样，区域进出时间不因降采样推迟
+ * - 第一个采样、以及运行结束或行人离开时的最后一个采样总是保留
+ *
+ * 保留下来的点之间做线性插值即可在容差范围内还原被丢弃的位置。
+ * 每个运行一个实例，非线程安全，由调用方按运行加锁。
+ */
+public class TrajectoryDownsampler {
+
+    private static final double EPSILON = 1e-9;
+
+    private final double distanceTolerance;
+    private final double headingToleranceRadians;
+    private final double stopSpeed;
+    private final double maxInterval;
+
+    private final Map<Integer, TrackState> tracks = new HashMap<>();
+
+    /** 上一次清扫离场行人时的仿真时间 */
+    private double lastSweepTime = Double.NEGATIVE_INFINITY;
+
+    public TrajectoryDownsampler(double distanceTolerance, double headingToleranceDegrees,
+                                 double stopSpeed, double maxInterval) {
+        this.distanceTolerance = distanceTolerance;
+        this.headingToleranceRadians = Math.toRadians(headingToleranceDegrees);
+        this.stopSpeed = stopSpeed;
+        this.maxInterval = maxInterval;
+    }
+
+    /**
+     * 过滤一批采样，返回需要写入的采样（保持输入中的相对顺序）
+     */
+    public List<TrajectorySample> filter(List<TrajectorySample> batch) {
+        List<TrajectorySample> kept = new ArrayList<>(Math.max(16, batch.size() / 4));
+        double batchMaxTime = Double.NEGATIVE_INFINITY;
+
+        for (TrajectorySample sample : batch) {
+            if (Double.isNaN(sample.simTime()) || !sample.hasPosition()) {
+                // 不完整的采样无法参与推算，原样保留
+                kept.add(sample);
+                continue;
+            }
+            batchMaxTime = Math.max(batchMaxTime, sample.simTime());
+            offer(sample, kept);
+        }
+
+        if (batchMaxTime - lastSweepTime > maxInterval) {
+            sweepDeparted(batchMaxTime, kept);
+            lastSweepTime = batchMaxTime;
+        }
+        return kept;
+    }
+
+    /**
+     * 运行结束：输出所有行人尚未保留的最后一个采样并清空状态
+     */
+    public List<TrajectorySample> finish() {
+        List<TrajectorySample> kept = new ArrayList<>();
+        for (TrackState track : tracks.values()) {
+            if (track.pending != null) {
+                kept.add(track.pending);
+            }
+        }
+        tracks.clear();
+        return kept;
+    }
+
+    /**
+     * 当前正在跟踪的行人数量
+     */
+    public int getTrackedCount() {
+        return tracks.size();
+    }
+
+    private void offer(TrajectorySample s, List<TrajectorySample> kept) {
+        TrackState track = tracks.get(s.pedestrianId());
+        if (track == null) {
+            // 首个采样总是保留
+            tracks.put(s.pedestrianId(), new TrackState(s));
+            kept.add(s);
+            return;
+        }
+
+        TrajectorySample anchor = track.anchor;
+        TrajectorySample last = track.pending != null ? track.pending : anchor;
+        if (s.simTime() - last.simTime() <= EPSILON) {
+            // 乱序或重复时间戳的采样不参与推算
+            kept.add(s);
+            return;
+        }
+
+        if (!track.hasVelocity) {
+            // 第二个采样：保留并确定初始速度
+            track.restart(s, anchor, s, null);
+            kept.add(s);
+            return;
+        }
+
+        if (!Objects.equals(s.areaName(), last.areaName())) {
+            if (track.pending != null) {
+                kept.add(track.pending);
+            }
+            kept.add(s);
+            track.restart(s, last, s, null);
+            return;
+        }
+
+        if (!deviates(track, s)) {
+            track.pending = s;
+            return;
+        }
+
+        if (track.pending != null) {
+            // 转折点是最后一个仍在容差内的采样；新轨迹段由转折点指向当前采样，当前采样暂不输出
+            TrajectorySample turn = track.pending;
+            kept.add(turn);
+            track.restart(turn, turn, s, s);
+        } else {
+            kept.add(s);
+            track.restart(s, anchor, s, null);
+        }
+    }
+
+    private boolean deviates(TrackState track, TrajectorySample s) {
+        TrajectorySample anchor = track.anchor;
+        double dt = s.simTime() - anchor.simTime();
+
+        if (dt > maxInterval) {
+            return true;
+        }
+
+        double predictedX = anchor.posX() + track.vx * dt;
+        double predictedY = anchor.posY() + track.vy * dt;
+        if (Math.hypot(s.posX() - predictedX, s.posY() - predictedY) > distanceTolerance) {
+            return true;
+        }
+
+        if (isMoving(anchor, track) != isMoving(s, null)) {
+            return true;
+        }
+
+        // 航向：比较推算方向与最近一段实际位移方向，位移过小时噪声太大不判断
+        TrajectorySample last = track.pending != null ? track.pending : anchor;
+        double dx = s.posX() - last.posX();
+        double dy = s.posY() - last.posY();
+        double stepLength = Math.hypot(dx, dy);
+        double velocityLength = Math.hypot(track.vx, track.vy);
+        if (stepLength > distanceTolerance * 0.5 && velocityLength > EPSILON) {
+            double cos = (dx * track.vx + dy * track.vy) / (stepLength * velocityLength);
+            double angle = Math.acos(Math.max(-1.0, Math.min(1.0, cos)));
+            return angle > headingToleranceRadians;
+        }
+        return false;
+    }
+
+    private boolean isMoving(TrajectorySample s, TrackState track) {
+        if (!Float.isNaN(s.speed())) {
+            return s.speed() > stopSpeed;
+        }
+        // 模型未给出速度时用锚点速度判断
+        return track != null && Math.hypot(track.vx, track.vy) > stopSpeed;
+    }
+
+    /**
+     * 长时间没有新采样的行人视为已离场，输出其最后一个采样
+     */
+    private void sweepDeparted(double now, List<TrajectorySample> kept) {
+        Iterator<TrackState> iterator = tracks.values().iterator();
+        while (iterator.hasNext()) {
+            TrackState track = iterator.next();
+            TrajectorySample last = track.pending != null ? track.pending : track.anchor;
+            if (now - last.simTime() > maxInterval) {
+                if (track.pending != null) {
+                    kept.add(track.pending);
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 单个行人的推算状态
+     */
+    private static class TrackState {
+        TrajectorySample anchor;
+        TrajectorySample pending;
+        double vx;
+        double vy;
+        boolean hasVelocity;
+
+        TrackState(TrajectorySample first) {
+            this.anchor = first;
+        }
+
+        /**
+         * 以 newAnchor 为新的推算起点，速度取 from -> to 的平均速度
+         */
+        void restart(TrajectorySample newAnchor, TrajectorySample from, TrajectorySample to, TrajectorySample newPending) {
+            double dt = to.simTime() - from.simTime();
+            this.vx = (to.posX() - from.posX()) / dt;
+            this.vy = (to.posY() - from.posY()) / dt;
+            this.hasVelocity = true;
+            this.anchor = newAnchor;
+            this.pending = newPending;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.simulation.demo.service.ingest;
+
+import com.simulation.demo.dto.TrajectorySample;
+
+import java.util.List;
+
+/**
+ * 轨迹入库监听 - 在降采样之前收到每批原始采样，用于运行中的增量统计
+ *
+ * 在入库请求线程中调用，实现需线程安全并尽快返回；抛出的异常只记录日志，不影响入库。
+ */
+public interface TrajectoryIngestListener {
+
+    /**
+     * @param samples 一批原始采样（runId 已统一为该运行），只读
+     */
+    void onSamples(Integer runId, List<TrajectorySample> samples);
+}
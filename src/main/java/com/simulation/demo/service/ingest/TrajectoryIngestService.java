@@ -0,0 +1,236 @@
+package com.simulation.demo.service.ingest;
+
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.EventsLog;
+import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.SimulationStateChangedEvent;
+import com.simulation.demo.repository.SimulationRunRepository;
+import com.simulation.demo.service.CoordinateConversionService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 轨迹入库服务 - pedestrian_data 写入前的统一入口
+ *
+ * 按运行记录上的降采样设置过滤采样，为保留的采样计算经纬度后交给写入队列异步批量写入；
+ * 运行结束时补写每个行人的最后一个采样。降采样之前的原始采样同时交给各 {@link TrajectoryIngestListener}。
+ */
+@Service
+public class TrajectoryIngestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrajectoryIngestService.class);
+
+    @Autowired
+    private WriteBehindQueue writeBehindQueue;
+
+    @Autowired
+    private SimulationRunRepository simulationRunRepository;
+
+    @Autowired
+    private CoordinateConversionService coordinateConversionService;
+
+    @Value("${simulation.ingest.downsample.enabled:true}")
+    private boolean downsampleEnabled;
+
+    @Value("${simulation.ingest.downsample.distance-tolerance:0.5}")
+    private double distanceTolerance;
+
+    @Value("${simulation.ingest.downsample.heading-tolerance:15}")
+    private double headingTolerance;
+
+    @Value("${simulation.ingest.downsample.stop-speed:0.05}")
+    private double stopSpeed;
+
+    @Value("${simulation.ingest.downsample.max-interval:30}")
+    private double maxInterval;
+
+    @Value("${simulation.ingest.write-behind.drain-timeout-ms:120000}")
+    private long drainTimeoutMs;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private List<TrajectoryIngestListener> ingestListeners = List.of();
+
+    // 每个运行的降采样器；Optional.empty() 表示该运行未开启降采样
+    private final Map<Integer, Optional<TrajectoryDownsampler>> downsamplers = new ConcurrentHashMap<>();
+
+    private final ExecutorService completionExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "IngestCompletion");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 把当前配置的降采样设置记录到运行记录上（创建运行时调用）
+     */
+    public void applyDownsampleSettings(SimulationRun simulationRun) {
+        simulationRun.setDownsampleEnabled(downsampleEnabled);
+        if (downsampleEnabled) {
+            simulationRun.setDownsampleDistanceTolerance(distanceTolerance);
+            simulationRun.setDownsampleHeadingTolerance(headingTolerance);
+            simulationRun.setDownsampleMaxInterval(maxInterval);
+        }
+    }
+
+    /**
+     * 写入一批行人采样
+     */
+    public IngestResult ingestPedestrianData(Integer runId, List<TrajectorySample> received) {
+        if (received == null || received.isEmpty()) {
+            return new IngestResult(0, 0);
+        }
+        List<TrajectorySample> batch = new ArrayList<>(received.size());
+        for (TrajectorySample sample : received) {
+            batch.add(sample.runId() == runId ? sample : sample.withRunId(runId));
+        }
+        notifyListeners(runId, batch);
+
+        List<TrajectorySample> kept = batch;
+        Optional<TrajectoryDownsampler> downsampler = downsamplers.computeIfAbsent(runId, this::createDownsampler);
+        if (downsampler.isPresent()) {
+            synchronized (downsampler.get()) {
+                kept = downsampler.get().filter(batch);
+            }
+        }
+
+        writeBehindQueue.submitSamples(coordinateConversionService.georeference(kept));
+        logger.debug("轨迹入库 run_id={}, 接收: {}, 写入: {}", runId, batch.size(), kept.size());
+        return new IngestResult(batch.size(), kept.size());
+    }
+
+    /**
+     * 写入一批事件日志（不做过滤，直接进入写入队列）
+     */
+    public int ingestEvents(Integer runId, List<EventsLog> events) {
+        if (events == null || events.isEmpty()) {
+            return 0;
+        }
+        for (EventsLog event : events) {
+            event.setRunId(runId);
+        }
+        writeBehindQueue.submitEvents(events);
+        return events.size();
+    }
+
+    /**
+     * 运行结束：补写降采样器中挂起的最后一个采样并释放状态
+     */
+    public int finishRun(Integer runId) {
+        Optional<TrajectoryDownsampler> downsampler = downsamplers.remove(runId);
+        if (downsampler == null || downsampler.isEmpty()) {
+            return 0;
+        }
+
+        List<TrajectorySample> remaining;
+        synchronized (downsampler.get()) {
+            remaining = downsampler.get().finish();
+        }
+        writeBehindQueue.submitSamples(coordinateConversionService.georeference(remaining));
+        logger.info("运行 {} 轨迹入库收尾，补写最后采样 {} 条", runId, remaining.size());
+        return remaining.size();
+    }
+
+    @EventListener
+    public void onSimulationStateChanged(SimulationStateChangedEvent event) {
+        if (!event.isTerminal()) {
+            return;
+        }
+        Integer runId = event.getRunId();
+        try {
+            finishRun(runId);
+        } catch (Exception e) {
+            logger.error("运行 {} 轨迹入库收尾失败: {}", runId, e.getMessage(), e);
+        }
+
+        // 等写入队列落库后通知索引/汇总等下游服务，不阻塞状态更新线程
+        completionExecutor.execute(() -> {
+            try {
+                if (!writeBehindQueue.awaitDrained(drainTimeoutMs)) {
+                    logger.warn("运行 {} 结束后 {} ms 内写入队列未清空，按现有数据继续收尾", runId, drainTimeoutMs);
+                }
+                eventPublisher.publishEvent(new SimulationDataCompletedEvent(runId));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("运行 {} 数据完成通知失败: {}", runId, e.getMessage(), e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        completionExecutor.shutdownNow();
+    }
+
+    private void notifyListeners(Integer runId, List<TrajectorySample> batch) {
+        List<TrajectorySample> samples = Collections.unmodifiableList(batch);
+        for (TrajectoryIngestListener listener : ingestListeners) {
+            try {
+                listener.onSamples(runId, samples);
+            } catch (Exception e) {
+                logger.error("运行 {} 轨迹入库监听 {} 处理失败: {}", runId, listener.getClass().getSimpleName(), e.getMessage(), e);
+            }
+        }
+    }
+
+    private Optional<TrajectoryDownsampler> createDownsampler(Integer runId) {
+        SimulationRun run = simulationRunRepository.findById(runId).orElse(null);
+        if (run == null || !Boolean.TRUE.equals(run.getDownsampleEnabled())) {
+            logger.info("运行 {} 未开启轨迹降采样，采样将全部写入", runId);
+            return Optional.empty();
+        }
+
+        TrajectoryDownsampler downsampler = new TrajectoryDownsampler(
+            valueOrDefault(run.getDownsampleDistanceTolerance(), distanceTolerance),
+            valueOrDefault(run.getDownsampleHeadingTolerance(), headingTolerance),
+            stopSpeed,
+            valueOrDefault(run.getDownsampleMaxInterval(), maxInterval));
+        logger.info("运行 {} 开启轨迹降采样: 距离容差={}, 航向容差={}°, 最大间隔={}s", runId,
+                    run.getDownsampleDistanceTolerance(), run.getDownsampleHeadingTolerance(),
+                    run.getDownsampleMaxInterval());
+        return Optional.of(downsampler);
+    }
+
+    private static double valueOrDefault(Double value, double defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * 入库结果
+     */
+    public static class IngestResult {
+        private final int received;
+        private final int written;
+
+        public IngestResult(int received, int written) {
+            this.received = received;
+            this.written = written;
+        }
+
+        public int getReceived() {
+            return received;
+        }
+
+        public int getWritten() {
+            return written;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.simulation.demo.service.ingest;
+
+import com.simulation.demo.dto.TailPage;
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.SimulationRunDeletedEvent;
+import com.simulation.demo.event.TrajectorySamplesWrittenEvent;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.cache.RunQueryCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 轨迹实时跟踪 - 按自增 id 游标返回进行中运行新写入的采样
+ *
+ * 客户端每次带上一批最后一行的 id，只取之后写入的行，不会重复传输。
+ * 没有新数据时长轮询请求和 SSE 连接都挂起等待，写入队列提交该运行的下一批采样（{@link TrajectorySamplesWrittenEvent}）
+ * 或运行数据全部写入后再次查询数据库。模型直接通过 JDBC 写入的运行没有写入通知，
+ * 有挂起请求的运行在一个轮询间隔内没有收到通知时，由后台每个间隔为该运行查询一次数据库。
+ */
+@Service
+public class TrajectoryTailService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrajectoryTailService.class);
+
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
+    @Autowired
+    private WriteBehindQueue writeBehindQueue;
+
+    @Autowired
+    private RunQueryCache runQueryCache;
+
+    @Value("${simulation.tail.max-waiters:1000}")
+    private int maxWaiters;
+
+    @Value("${simulation.tail.max-subscribers:100}")
+    private int maxSubscribers;
+
+    @Value("${simulation.tail.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
+
+    @Value("${simulation.tail.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    @Value("${simulation.tail.poll-ms:1000}")
+    private long pollMs;
+
+    // 以下四项由 this 保护：每个运行收到写入通知的次数和最近一次通知的时间、挂起的长轮询请求和 SSE 连接
+    private final Map<Integer, Long> versions = new HashMap<>();
+    private final Map<Integer, Long> lastWrittenAt = new HashMap<>();
+    private final Map<Integer, List<Waiter>> waiters = new HashMap<>();
+    private final Map<Integer, List<Subscriber>> subscribers = new HashMap<>();
+    private int waiterCount;
+    private int subscriberCount;
+
+    // 收到数据完成事件（或已删除）的运行，游标之后不会再有新数据
+    private final Set<Integer> completedRuns = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger readerThreads = new AtomicInteger();
+
+    private final ExecutorService reader = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "TrajectoryTail-" + readerThreads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "TrajectoryTailHeartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        // 定期发送 SSE 注释，避免代理关闭长时间没有数据的连接，同时清理已断开的连接
+        heartbeat.scheduleWithFixedDelay(this::sendHeartbeats, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        if (pollMs > 0) {
+            heartbeat.scheduleWithFixedDelay(this::pollIdleRuns, pollMs, pollMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        reader.shutdownNow();
+        List<Subscriber> open = new ArrayList<>();
+        synchronized (this) {
+            subscribers.values().forEach(open::addAll);
+        }
+        open.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    /**
+     * 读取游标之后写入的采样，不等待
+     *
+     * @param after 上一批最后一行的 id，0 表示从头开始
+     */
+    public TailPage read(Integer runId, long after, int limit) {
+        // 先判断是否已写完再查询，判断之后才写入的行不会被漏掉
+        boolean complete = isComplete(runId);
+        List<TrajectorySample> samples = trajectorySampleRepository.findByRunIdAfterId(runId, after, limit + 1);
+        boolean hasMore = samples.size() > limit;
+        if (hasMore) {
+            samples = new ArrayList<>(samples.subList(0, limit));
+        }
+        long nextCursor = samples.isEmpty() ? after : samples.get(samples.size() - 1).id();
+        return new TailPage(samples, nextCursor, hasMore, complete && !hasMore);
+    }
+
+    /**
+     * 长轮询：游标之后已有数据或运行已写完时立即返回，否则等到该运行写入下一批采样，
+     * timeoutMs 内仍没有新数据时返回空结果
+     *
+     * @throws IllegalStateException 挂起的请求数已达上限
+     */
+    public CompletableFuture<TailPage> poll(Integer runId, long after, int limit, long timeoutMs) {
+        long version = getVersion(runId);
+        TailPage page = read(runId, after, limit);
+        if (!page.content().isEmpty() || page.complete() || timeoutMs <= 0) {
+            return CompletableFuture.completedFuture(page);
+        }
+
+        Waiter waiter = new Waiter(runId, after, limit, new CompletableFuture<>());
+        synchronized (this) {
+            if (waiterCount >= maxWaiters) {
+                throw new IllegalStateException("等待新数据的请求数已达上限: " + maxWaiters);
+            }
+            waiters.computeIfAbsent(runId, id -> new ArrayList<>()).add(waiter);
+            waiterCount++;
+            if (getVersion(runId) != version) {
+                // 查询之后、挂起之前已有新的写入
+                wake(runId);
+            }
+        }
+        waiter.future.whenComplete((result, error) -> removeWaiter(waiter));
+        return waiter.future.completeOnTimeout(TailPage.empty(after), timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * SSE 订阅：先推送游标之后已写入的数据，之后每有新数据推送一个 samples 事件（事件 id 为游标，
+     * 断线重连时浏览器通过 Last-Event-ID 回传），运行写完后推送 complete 事件并关闭连接
+     *
+     * @throws IllegalStateException 连接数已达上限
+     */
+    public SseEmitter subscribe(Integer runId, long after, int limit) {
+        Subscriber subscriber = new Subscriber(runId, after, limit, new SseEmitter(sseTimeoutMs));
+        synchronized (this) {
+            if (subscriberCount >= maxSubscribers) {
+                throw new IllegalStateException("实时跟踪连接数已达上限: " + maxSubscribers);
+            }
+            subscribers.computeIfAbsent(runId, id -> new ArrayList<>()).add(subscriber);
+            subscriberCount++;
+        }
+        subscriber.emitter.onCompletion(() -> removeSubscriber(subscriber));
+        subscriber.emitter.onTimeout(subscriber.emitter::complete);
+        subscriber.emitter.onError(error -> removeSubscriber(subscriber));
+        subscriber.schedule();
+        return subscriber.emitter;
+    }
+
+    @EventListener
+    public void onTrajectorySamplesWritten(TrajectorySamplesWrittenEvent event) {
+        synchronized (this) {
+            versions.merge(event.getRunId(), 1L, Long::sum);
+            lastWrittenAt.put(event.getRunId(), System.currentTimeMillis());
+            wake(event.getRunId());
+        }
+    }
+
+    @EventListener
+    public void onSimulationDataCompleted(SimulationDataCompletedEvent event) {
+        completedRuns.add(event.getRunId());
+        onTrajectorySamplesWritten(new TrajectorySamplesWrittenEvent(event.getRunId()));
+    }
+
+    @EventListener
+    public void onSimulationRunDeleted(SimulationRunDeletedEvent event) {
+        // 删除后不会再有数据，挂起的请求返回空结果并标记为结束
+        completedRuns.add(event.getRunId());
+        synchronized (this) {
+            versions.remove(event.getRunId());
+            lastWrittenAt.remove(event.getRunId());
+            wake(event.getRunId());
+        }
+    }
+
+    /**
+     * 有挂起请求、但一个轮询间隔内没有收到写入通知的运行，每个运行查询一次游标之后是否已有数据，
+     * 或运行是否已写完；有则按写入通知处理。查询次数只与运行数有关，与挂起的请求数无关。
+     */
+    void pollIdleRuns() {
+        long now = System.currentTimeMillis();
+        Map<Integer, Long> cursors = new HashMap<>();
+        synchronized (this) {
+            waiters.forEach((runId, list) -> list.forEach(waiter -> cursors.merge(runId, waiter.after, Math::min)));
+            subscribers.forEach((runId, list) -> list.forEach(subscriber -> cursors.merge(runId, subscriber.cursor, Math::min)));
+            cursors.keySet().removeIf(runId -> now - lastWrittenAt.getOrDefault(runId, 0L) < pollMs);
+        }
+        for (Map.Entry<Integer, Long> entry : cursors.entrySet()) {
+            Integer runId = entry.getKey();
+            try {
+                if (isComplete(runId) || trajectorySampleRepository.existsByRunIdAfterId(runId, entry.getValue())) {
+                    synchronized (this) {
+                        versions.merge(runId, 1L, Long::sum);
+                        wake(runId);
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("运行 {} 实时跟踪轮询失败: {}", runId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 运行数据是否已全部写入：收到过数据完成事件，或运行已结束且写入队列为空
+     * （服务重启前结束的运行不会再收到数据完成事件）
+     */
+    private boolean isComplete(Integer runId) {
+        if (completedRuns.contains(runId)) {
+            return true;
+        }
+        try {
+            return runQueryCache.isFinished(runId) && writeBehindQueue.awaitDrained(0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private synchronized long getVersion(Integer runId) {
+        return versions.getOrDefault(runId, 0L);
+    }
+
+    /**
+     * 该运行挂起的请求重新查询，调用方持有 this
+     */
+    private void wake(Integer runId) {
+        List<Waiter> ready = waiters.remove(runId);
+        if (ready != null) {
+            waiterCount -= ready.size();
+            for (Waiter waiter : ready) {
+                reader.execute(() -> retry(waiter));
+            }
+        }
+        List<Subscriber> subscribed = subscribers.get(runId);
+        if (subscribed != null) {
+            subscribed.forEach(Subscriber::schedule);
+        }
+    }
+
+    private void retry(Waiter waiter) {
+        if (waiter.future.isDone()) {
+            return;
+        }
+        try {
+            long version = getVersion(waiter.runId);
+            TailPage page = read(waiter.runId, waiter.after, waiter.limit);
+            if (!page.content().isEmpty() || page.complete()) {
+                waiter.future.complete(page);
+                return;
+            }
+            synchronized (this) {
+                if (waiter.future.isDone()) {
+                    return;
+                }
+                waiters.computeIfAbsent(waiter.runId, id -> new ArrayList<>()).add(waiter);
+                waiterCount++;
+                if (getVersion(waiter.runId) != version) {
+                    wake(waiter.runId);
+                }
+            }
+        } catch (Exception e) {
+            waiter.future.completeExceptionally(e);
+        }
+    }
+
+    private synchronized void removeWaiter(Waiter waiter) {
+        List<Waiter> list = waiters.get(waiter.runId);
+        if (list != null && list.remove(waiter)) {
+            waiterCount--;
+            if (list.isEmpty()) {
+                waiters.remove(waiter.runId);
+            }
+        }
+    }
+
+    private synchronized void removeSubscriber(Subscriber subscriber) {
+        List<Subscriber> list = subscribers.get(subscriber.runId);
+        if (list != null && list.remove(subscriber)) {
+            subscriberCount--;
+            if (list.isEmpty()) {
+                subscribers.remove(subscriber.runId);
+            }
+        }
+    }
+
+    private void sendHeartbeats() {
+        List<Subscriber> open = new ArrayList<>();
+        synchronized (this) {
+            subscribers.values().forEach(open::addAll);
+        }
+        for (Subscriber subscriber : open) {
+            try {
+                subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+            } catch (Exception e) {
+                // 连接已断开或已结束
+                removeSubscriber(subscriber);
+            }
+        }
+    }
+
+    /**
+     * 挂起的长轮询请求
+     */
+    private record Waiter(Integer runId, long after, int limit, CompletableFuture<TailPage> future) {
+    }
+
+    /**
+     * 一个 SSE 连接，在读取线程上串行推送
+     */
+    private class Subscriber {
+        final Integer runId;
+        final int limit;
+        final SseEmitter emitter;
+        // 已排队等待推送，排队期间的写入通知合并为一次查询
+        final AtomicBoolean queued = new AtomicBoolean();
+        // 后台轮询不持有该连接的锁读取
+        volatile long cursor;
+        boolean closed;
+
+        Subscriber(Integer runId, long cursor, int limit, SseEmitter emitter) {
+            this.runId = runId;
+            this.cursor = cursor;
+            this.limit = limit;
+            this.emitter = emitter;
+        }
+
+        void schedule() {
+            if (queued.compareAndSet(false, true)) {
+                reader.execute(() -> {
+                    queued.set(false);
+                    push();
+                });
+            }
+        }
+
+        synchronized void push() {
+            if (closed) {
+                return;
+            }
+            try {
+                TailPage page;
+                do {
+                    page = read(runId, cursor, limit);
+                    if (!page.content().isEmpty()) {
+                        emitter.send(SseEmitter.event().name("samples").id(String.valueOf(page.nextCursor())).data(page));
+                        cursor = page.nextCursor();
+                    }
+                } while (page.hasMore());
+                if (page.complete()) {
+                    closed = true;
+                    emitter.send(SseEmitter.event().name("complete").id(String.valueOf(cursor)).data(page));
+                    emitter.complete();
+                }
+            } catch (IOException e) {
+                // 客户端已断开
+                closed = true;
+                emitter.completeWithError(e);
+            } catch (Exception e) {
+                closed = true;
+                logger.error("运行 {} 实时跟踪推送失败: {}", runId, e.getMessage(), e);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
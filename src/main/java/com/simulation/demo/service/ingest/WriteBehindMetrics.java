@@ -0,0 +1,171 @@
+package com.simulation.demo.service.ingest;
+
+/**
+ * 写入队列运行指标
+ */
+public class WriteBehindMetrics {
+
+    // 数据库当前是否可写
+    private boolean databaseAvailable;
+    // 最近一次写入失败原因
+    private String lastError;
+    // 最早一个未写入批次已等待的时间（毫秒）
+    private long lagMs;
+    private int bufferedBatches;
+    // 内存缓冲占用（估算）
+    private long bufferedBytes;
+    private long maxBufferedBytes;
+    // 落盘日志中待回放的字节数
+    private long spilledBytes;
+    private int spillSegments;
+    private long submittedRows;
+    private long writtenRows;
+    // 从落盘日志回放写入的行数
+    private long replayedRows;
+    private long spilledBatches;
+    private long failedWrites;
+    // 违反数据约束被丢弃的行数
+    private long rejectedRows;
+    // 落盘日志中无法解码、移入隔离文件的记录数
+    private long quarantinedRecords;
+    // 最近统计窗口的写入速率（行/秒）
+    private double writeRate;
+    // 最近统计窗口的回放速率（行/秒）
+    private double replayRate;
+
+    public boolean isDatabaseAvailable() {
+        return databaseAvailable;
+    }
+
+    public void setDatabaseAvailable(boolean databaseAvailable) {
+        this.databaseAvailable = databaseAvailable;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public long getLagMs() {
+        return lagMs;
+    }
+
+    public void setLagMs(long lagMs) {
+        this.lagMs = lagMs;
+    }
+
+    public int getBufferedBatches() {
+        return bufferedBatches;
+    }
+
+    public void setBufferedBatches(int bufferedBatches) {
+        this.bufferedBatches = bufferedBatches;
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    public void setBufferedBytes(long bufferedBytes) {
+        this.bufferedBytes = bufferedBytes;
+    }
+
+    public long getMaxBufferedBytes() {
+        return maxBufferedBytes;
+    }
+
+    public void setMaxBufferedBytes(long maxBufferedBytes) {
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    public void setSpilledBytes(long spilledBytes) {
+        this.spilledBytes = spilledBytes;
+    }
+
+    public int getSpillSegments() {
+        return spillSegments;
+    }
+
+    public void setSpillSegments(int spillSegments) {
+        this.spillSegments = spillSegments;
+    }
+
+    public long getSubmittedRows() {
+        return submittedRows;
+    }
+
+    public void setSubmittedRows(long submittedRows) {
+        this.submittedRows = submittedRows;
+    }
+
+    public long getWrittenRows() {
+        return writtenRows;
+    }
+
+    public void setWrittenRows(long writtenRows) {
+        this.writtenRows = writtenRows;
+    }
+
+    public long getReplayedRows() {
+        return replayedRows;
+    }
+
+    public void setReplayedRows(long replayedRows) {
+        this.replayedRows = replayedRows;
+    }
+
+    public long getSpilledBatches() {
+        return spilledBatches;
+    }
+
+    public void setSpilledBatches(long spilledBatches) {
+        this.spilledBatches = spilledBatches;
+    }
+
+    public long getFailedWrites() {
+        return failedWrites;
+    }
+
+    public void setFailedWrites(long failedWrites) {
+        this.failedWrites = failedWrites;
+    }
+
+    public long getRejectedRows() {
+        return rejectedRows;
+    }
+
+    public void setRejectedRows(long rejectedRows) {
+        this.rejectedRows = rejectedRows;
+    }
+
+    public long getQuarantinedRecords() {
+        return quarantinedRecords;
+    }
+
+    public void setQuarantinedRecords(long quarantinedRecords) {
+        this.quarantinedRecords = quarantinedRecords;
+    }
+
+    public double getWriteRate() {
+        return writeRate;
+    }
+
+    public void setWriteRate(double writeRate) {
+        this.writeRate = writeRate;
+    }
+
+    public double getReplayRate() {
+        return replayRate;
+    }
+
+    public void setReplayRate(double replayRate) {
+        this.replayRate = replayRate;
+    }
+}
@@ -0,0 +1,474 @@
+package com.simulation.demo.service.ingest;
+
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.EventsLog;
+import com.simulation.demo.event.TrajectorySamplesWrittenEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 轨迹/事件写入队列（write-behind）
+ *
+ * 调用方提交批次后立即返回，由后台线程按提交顺序批量写入数据库：
+ * - 内存缓冲超过上限，或数据库写入失败时，批次落盘到只追加的分段日志（见 SpillLog）
+ * - 落盘日志中有数据期间，新批次一律追加到日志末尾，保证写入顺序与提交顺序一致
+ * - 数据库恢复后先写完内存中更早的批次，再按顺序回放落盘日志
+ * 进程退出时内存中尚未写入的批次同样落盘，下次启动继续回放。
+ */
+@Service
+public class WriteBehindQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    private static final String INSERT_PEDESTRIAN_DATA =
+        "INSERT INTO pedestrian_data (run_id, sim_time, model_date, pedestrian_id, pos_x, pos_y, pos_z, speed, area_name, lat, lon) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_EVENTS_LOG =
+        "INSERT INTO events_log (run_id, sim_time, pedestrian_id, event_type, event_details) VALUES (?, ?, ?, ?, ?)";
+
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+
+    private static final long RATE_WINDOW_MS = 5_000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${simulation.ingest.write-behind.max-buffered-bytes:67108864}")
+    private long maxBufferedBytes;
+
+    @Value("${simulation.ingest.write-behind.spill-dir:data/ingest-spill}")
+    private String spillDir;
+
+    @Value("${simulation.ingest.write-behind.segment-bytes:67108864}")
+    private long segmentBytes;
+
+    @Value("${simulation.ingest.write-behind.retry-delay-ms:500}")
+    private long retryDelayMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+
+    private final Deque<IngestBatch> buffer = new ArrayDeque<>();
+    private long bufferedBytes;
+    private SpillLog spillLog;
+    private long spillHeadEnqueuedAt;
+
+    private TransactionTemplate transactionTemplate;
+    private Thread writerThread;
+    private volatile boolean running;
+    private volatile boolean databaseAvailable = true;
+    private volatile String lastError;
+
+    // 统计
+    private long submittedRows;
+    private long writtenRows;
+    private long replayedRows;
+    private long spilledBatches;
+    private long failedWrites;
+    private long rejectedRows;
+    private long windowStart = System.currentTimeMillis();
+    private long windowWrittenRows;
+    private long windowReplayedRows;
+    private double writeRate;
+    private double replayRate;
+
+    @PostConstruct
+    public void start() throws IOException {
+        spillLog = new SpillLog(Paths.get(spillDir), segmentBytes);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        writerThread = new Thread(this::writeLoop, "IngestWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("写入队列已启动，内存缓冲上限: {} 字节，落盘目录: {}", maxBufferedBytes, spillDir);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writerThread.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            // 写入线程仍在写当前批次，此时落盘会与其写入的结果重复，也不能关闭它正在读取的日志
+            logger.warn("写入线程未能在 10 秒内停止，内存中 {} 个批次未落盘", buffer.size());
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (!buffer.isEmpty()) {
+                spillBuffer();
+                logger.info("停止写入队列，未写入的批次已落盘");
+            }
+            spillLog.close();
+        } catch (IOException e) {
+            logger.error("停止写入队列时落盘失败，丢失 {} 个批次: {}", buffer.size(), e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void submitSamples(List<TrajectorySample> samples) {
+        if (samples != null && !samples.isEmpty()) {
+            submit(IngestBatch.ofSamples(samples));
+        }
+    }
+
+    public void submitEvents(List<EventsLog> events) {
+        if (events != null && !events.isEmpty()) {
+            submit(IngestBatch.ofEvents(events));
+        }
+    }
+
+    private void submit(IngestBatch batch) {
+        long bytes = batch.estimateBytes();
+        lock.lock();
+        try {
+            submittedRows += batch.size();
+            if (spillLog.hasPending() || bufferedBytes + bytes > maxBufferedBytes) {
+                try {
+                    spillLog.append(batch);
+                    spilledBatches++;
+                    notEmpty.signal();
+                    return;
+                } catch (IOException e) {
+                    // 磁盘不可用时只能继续占用内存，不丢数据
+                    logger.error("批次落盘失败，保留在内存中: {}", e.getMessage());
+                }
+            }
+            buffer.addLast(batch);
+            bufferedBytes += bytes;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待已提交的数据全部写入数据库
+     *
+     * @return 超时前是否写完
+     */
+    public boolean awaitDrained(long timeoutMs) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            while (!buffer.isEmpty() || spillLog.hasPending()) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = drained.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public WriteBehindMetrics getMetrics() {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            rollRateWindow(now);
+            long oldest = !buffer.isEmpty() ? buffer.peekFirst().getEnqueuedAt()
+                : spillLog.hasPending() && spillHeadEnqueuedAt > 0 ? spillHeadEnqueuedAt : now;
+
+            WriteBehindMetrics metrics = new WriteBehindMetrics();
+            metrics.setDatabaseAvailable(databaseAvailable);
+            metrics.setLastError(lastError);
+            metrics.setLagMs(now - oldest);
+            metrics.setBufferedBatches(buffer.size());
+            metrics.setBufferedBytes(bufferedBytes);
+            metrics.setMaxBufferedBytes(maxBufferedBytes);
+            metrics.setSpilledBytes(spillLog.getPendingBytes());
+            metrics.setSpillSegments(spillLog.getSegmentCount());
+            metrics.setSubmittedRows(submittedRows);
+            metrics.setWrittenRows(writtenRows);
+            metrics.setReplayedRows(replayedRows);
+            metrics.setSpilledBatches(spilledBatches);
+            metrics.setFailedWrites(failedWrites);
+            metrics.setRejectedRows(rejectedRows);
+            metrics.setQuarantinedRecords(spillLog.getQuarantinedRecords());
+            metrics.setWriteRate(writeRate);
+            metrics.setReplayRate(replayRate);
+            return metrics;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        long delay = retryDelayMs;
+        while (running) {
+            IngestBatch batch = null;
+            boolean fromSpill = false;
+            Exception readFailure = null;
+
+            lock.lock();
+            try {
+                batch = buffer.peekFirst();
+                if (batch == null && spillLog.hasPending()) {
+                    batch = spillLog.peek();
+                    fromSpill = batch != null;
+                    spillHeadEnqueuedAt = fromSpill ? batch.getEnqueuedAt() : 0;
+                }
+                if (batch == null) {
+                    drained.signalAll();
+                    notEmpty.await(1, TimeUnit.SECONDS);
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                readFailure = e;
+            } finally {
+                lock.unlock();
+            }
+            if (readFailure != null) {
+                // 在锁外等待，避免提交、指标和等待写完的调用方跟着阻塞
+                logger.error("读取落盘数据失败: {}", readFailure.getMessage(), readFailure);
+                sleep(delay);
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY_MS);
+                continue;
+            }
+
+            try {
+                write(batch);
+            } catch (DataIntegrityViolationException e) {
+                // 数据本身不合法，重试不会成功，丢弃该批次避免阻塞后续写入
+                logger.error("批次违反数据约束被丢弃，类型: {}, 行数: {}: {}", batch.getType(), batch.size(), e.getMessage());
+                onWriteRejected(batch, fromSpill);
+                continue;
+            } catch (Exception e) {
+                onWriteFailure(e);
+                sleep(delay);
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY_MS);
+                continue;
+            }
+
+            delay = retryDelayMs;
+            onWriteSuccess(batch, fromSpill);
+            publishWritten(batch);
+        }
+    }
+
+    /**
+     * 通知批次中各运行有新的采样落库
+     */
+    private void publishWritten(IngestBatch batch) {
+        if (batch.getType() != IngestBatch.Type.PEDESTRIAN_DATA) {
+            return;
+        }
+        Integer previous = null;
+        Set<Integer> runIds = new HashSet<>();
+        for (TrajectorySample sample : batch.getSamples()) {
+            // 一个批次通常只属于一个运行
+            if (previous == null || sample.runId() != previous) {
+                previous = sample.runId();
+                runIds.add(previous);
+            }
+        }
+        for (Integer runId : runIds) {
+            try {
+                eventPublisher.publishEvent(new TrajectorySamplesWrittenEvent(runId));
+            } catch (Exception e) {
+                logger.warn("运行 {} 采样写入通知失败: {}", runId, e.getMessage());
+            }
+        }
+    }
+
+    private void onWriteSuccess(IngestBatch batch, boolean fromSpill) {
+        lock.lock();
+        try {
+            if (fromSpill) {
+                spillLog.advance();
+                replayedRows += batch.size();
+                windowReplayedRows += batch.size();
+            } else {
+                buffer.removeFirst();
+                bufferedBytes -= batch.estimateBytes();
+            }
+            writtenRows += batch.size();
+            windowWrittenRows += batch.size();
+            rollRateWindow(System.currentTimeMillis());
+
+            if (!databaseAvailable) {
+                databaseAvailable = true;
+                logger.info("数据库写入恢复，待回放落盘数据: {} 字节", spillLog.getPendingBytes());
+            }
+        } catch (IOException e) {
+            // 回放位置未能记录，重启后该批次会被重复写入一次
+            logger.error("更新落盘回放位置失败: {}", e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onWriteRejected(IngestBatch batch, boolean fromSpill) {
+        lock.lock();
+        try {
+            if (fromSpill) {
+                spillLog.advance();
+            } else {
+                buffer.removeFirst();
+                bufferedBytes -= batch.estimateBytes();
+            }
+            rejectedRows += batch.size();
+        } catch (IOException e) {
+            logger.error("更新落盘回放位置失败: {}", e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onWriteFailure(Exception e) {
+        lock.lock();
+        try {
+            failedWrites++;
+            lastError = e.getMessage();
+            if (databaseAvailable) {
+                databaseAvailable = false;
+                logger.warn("数据库写入失败，写入队列转为落盘: {}", e.getMessage());
+            }
+            // 数据库不可用期间不在内存中积压，内存里更早的批次整体落到日志最前面
+            spillBuffer();
+        } catch (IOException ioe) {
+            logger.error("批次落盘失败，保留在内存中重试: {}", ioe.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void spillBuffer() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        spillLog.prepend(new ArrayList<>(buffer));
+        spilledBatches += buffer.size();
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    private void rollRateWindow(long now) {
+        long elapsed = now - windowStart;
+        if (elapsed >= RATE_WINDOW_MS) {
+            writeRate = windowWrittenRows * 1000.0 / elapsed;
+            replayRate = windowReplayedRows * 1000.0 / elapsed;
+            windowWrittenRows = 0;
+            windowReplayedRows = 0;
+            windowStart = now;
+        }
+    }
+
+    /**
+     * 一个批次在同一事务中写入：中途失败时整批回滚，重试或丢弃时不会留下已提交的部分行
+     */
+    private void write(IngestBatch batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (batch.getType() == IngestBatch.Type.PEDESTRIAN_DATA) {
+                jdbcTemplate.batchUpdate(INSERT_PEDESTRIAN_DATA, batch.getSamples(), batch.size(), this::bindSample);
+            } else {
+                jdbcTemplate.batchUpdate(INSERT_EVENTS_LOG, batch.getEvents(), batch.size(), this::bindEvent);
+            }
+        });
+    }
+
+    private void bindSample(PreparedStatement ps, TrajectorySample sample) throws SQLException {
+        ps.setInt(1, sample.runId());
+        setDouble(ps, 2, sample.simTime());
+        if (sample.modelDate() != null) {
+            ps.setTimestamp(3, Timestamp.valueOf(sample.modelDate()));
+        } else {
+            ps.setNull(3, Types.TIMESTAMP);
+        }
+        ps.setInt(4, sample.pedestrianId());
+        setDouble(ps, 5, sample.posX());
+        setDouble(ps, 6, sample.posY());
+        setDouble(ps, 7, sample.posZ());
+        setDouble(ps, 8, sample.speed());
+        ps.setString(9, sample.areaName());
+        setDouble(ps, 10, sample.lat());
+        setDouble(ps, 11, sample.lon());
+    }
+
+    private void bindEvent(PreparedStatement ps, EventsLog event) throws SQLException {
+        ps.setInt(1, event.getRunId());
+        setDecimal(ps, 2, event.getSimTime());
+        if (event.getPedestrianId() != null) {
+            ps.setInt(3, event.getPedestrianId());
+        } else {
+            ps.setNull(3, Types.INTEGER);
+        }
+        ps.setString(4, event.getEventType());
+        ps.setString(5, event.getEventDetails());
+    }
+
+    private static void setDecimal(PreparedStatement ps, int index, BigDecimal value) throws SQLException {
+        if (value != null) {
+            ps.setBigDecimal(index, value);
+        } else {
+            ps.setNull(index, Types.DECIMAL);
+        }
+    }
+
+    private static void setDouble(PreparedStatement ps, int index, double value) throws SQLException {
+        if (!Double.isNaN(value)) {
+            ps.setDouble(index, value);
+        } else {
+            ps.setNull(index, Types.DOUBLE);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
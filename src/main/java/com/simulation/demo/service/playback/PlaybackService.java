@@ -0,0 +1,249 @@
+package com.simulation.demo.service.playback;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.event.SimulationRunDeletedEvent;
+import com.simulation.demo.event.SimulationStateChangedEvent;
+import com.simulation.demo.repository.SimulationRunRepository;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.index.FrameIndex;
+import com.simulation.demo.service.index.FrameIndexService;
+import com.simulation.demo.service.index.LodPyramid;
+import com.simulation.demo.service.index.LodPyramidService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 轨迹回放服务 - 管理 WebSocket 回放会话
+ *
+ * 已结束且建立了帧索引的运行从内存索引读取，倍速较高时按每帧推进的仿真时间读取细节层级金字塔中对应的层级；
+ * 其余运行按时间窗口查询数据库。
+ */
+@Service
+public class PlaybackService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlaybackService.class);
+
+    public static final double MAX_SPEED = 64;
+    public static final int MAX_FPS = 60;
+
+    @Autowired
+    private FrameIndexService frameIndexService;
+
+    @Autowired
+    private LodPyramidService lodPyramidService;
+
+    @Autowired
+    private TrajectorySampleRepository trajectorySampleRepository;
+
+    @Autowired
+    private SimulationRunRepository simulationRunRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${simulation.playback.max-sessions:20}")
+    private int maxSessions;
+
+    @Value("${simulation.playback.chunk-seconds:10}")
+    private double chunkSeconds;
+
+    @Value("${simulation.playback.prefetch-seconds:20}")
+    private double prefetchSeconds;
+
+    @Value("${simulation.ingest.downsample.max-interval:30}")
+    private double maxSampleInterval;
+
+    @Value("${simulation.playback.send-time-limit-ms:5000}")
+    private int sendTimeLimitMs;
+
+    @Value("${simulation.playback.send-buffer-bytes:4194304}")
+    private int sendBufferBytes;
+
+    private final Map<String, PlaybackSession> sessions = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, daemonThreads("PlaybackTicker"));
+
+    private final ExecutorService loader = Executors.newFixedThreadPool(4, daemonThreads("PlaybackLoader"));
+
+    @PreDestroy
+    public void shutdown() {
+        sessions.values().forEach(PlaybackSession::close);
+        sessions.clear();
+        scheduler.shutdownNow();
+        loader.shutdownNow();
+    }
+
+    /**
+     * 为新连接开始回放
+     *
+     * @param startTime 起始仿真时间，为 null 时从第一帧开始
+     */
+    public void open(WebSocketSession webSocketSession, Integer runId, Double startTime, double speed, int fps, boolean paused) throws IOException {
+        if (sessions.size() >= maxSessions) {
+            logger.warn("回放会话数已达上限 {}，拒绝连接，运行ID: {}", maxSessions, runId);
+            webSocketSession.close(CloseStatus.SERVICE_OVERLOAD.withReason("回放会话数已达上限"));
+            return;
+        }
+        SimulationRun run = simulationRunRepository.findById(runId).orElse(null);
+        if (run == null) {
+            webSocketSession.close(CloseStatus.POLICY_VIOLATION.withReason("仿真运行不存在: " + runId));
+            return;
+        }
+
+        // 慢客户端超过发送时限或缓冲上限时断开，避免推送线程被阻塞
+        WebSocketSession session = new ConcurrentWebSocketSessionDecorator(webSocketSession, sendTimeLimitMs, sendBufferBytes);
+        // 降采样后同一行人两个保留点最多相隔 max-interval 秒，据此判断行人是否已离开
+        double maxInterval = run.getDownsampleMaxInterval() != null ? run.getDownsampleMaxInterval() : maxSampleInterval;
+        PlaybackSession playback = new PlaybackSession(session, runId,
+            new PlaybackSession.Settings(chunkSeconds, prefetchSeconds, maxInterval + 1), loader, scheduler, objectMapper);
+        sessions.put(webSocketSession.getId(), playback);
+
+        // 建立帧索引可能需要一段时间，放到预读线程上执行；在此之前收到的控制消息排队等待
+        loader.execute(() -> {
+            try {
+                playback.start(createSource(run), startTime != null ? startTime : Double.NaN, speed, fps, paused);
+            } catch (Exception e) {
+                logger.error("开始回放失败，运行ID: {}, 错误: {}", runId, e.getMessage(), e);
+                playback.terminate("开始回放失败: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 处理控制消息
+     */
+    public void control(String sessionId, String type, double value) {
+        PlaybackSession playback = sessions.get(sessionId);
+        if (playback != null) {
+            playback.submit(new PlaybackSession.Command(type, value));
+        }
+    }
+
+    public void sendError(String sessionId, String message) {
+        PlaybackSession playback = sessions.get(sessionId);
+        if (playback != null) {
+            playback.sendError(message);
+        }
+    }
+
+    public void close(String sessionId) {
+        PlaybackSession playback = sessions.remove(sessionId);
+        if (playback != null) {
+            playback.close();
+        }
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    @EventListener
+    public void onSimulationRunDeleted(SimulationRunDeletedEvent event) {
+        sessions.values().stream()
+            .filter(playback -> playback.getRunId() == event.getRunId())
+            .forEach(playback -> playback.terminate("仿真运行已删除: " + event.getRunId()));
+    }
+
+    private PlaybackSource createSource(SimulationRun run) {
+        Integer runId = run.getRunId();
+        FrameIndex index = frameIndexService.getIndex(runId);
+        if (index != null) {
+            return new IndexSource(index, lodPyramidService.getPyramid(runId, index), 0);
+        }
+
+        return new PlaybackSource() {
+            private volatile boolean complete = SimulationStateChangedEvent.isTerminal(run.getState());
+
+            @Override
+            public List<TrajectorySample> read(double afterTime, double untilTime) {
+                return trajectorySampleRepository.findByRunIdAndTimeWindow(runId, toSimTime(afterTime), toSimTime(untilTime));
+            }
+
+            @Override
+            public double[] getTimeSpan() {
+                if (!complete) {
+                    // 先取状态再取时间范围，运行结束时不会漏掉最后写入的数据
+                    complete = simulationRunRepository.findById(runId)
+                        .map(current -> SimulationStateChangedEvent.isTerminal(current.getState()))
+                        .orElse(true);
+                }
+                return trajectorySampleRepository.findTimeSpan(runId);
+            }
+
+            @Override
+            public boolean isComplete() {
+                return complete;
+            }
+        };
+    }
+
+    /**
+     * 从帧索引读取，pyramid 不为 null 时按每帧推进的仿真时间选择细节层级
+     */
+    private record IndexSource(FrameIndex index, LodPyramid pyramid, int level) implements PlaybackSource {
+
+        @Override
+        public List<TrajectorySample> read(double afterTime, double untilTime) {
+            return pyramid != null ? pyramid.read(index, level, afterTime, untilTime) : index.getFrames(afterTime, untilTime);
+        }
+
+        @Override
+        public double[] getTimeSpan() {
+            return index.getFrameCount() > 0 ? new double[] {index.getStartTime(), index.getEndTime()} : null;
+        }
+
+        @Override
+        public boolean isComplete() {
+            return true;
+        }
+
+        @Override
+        public PlaybackSource forFrameInterval(double secondsPerFrame) {
+            if (pyramid == null) {
+                return this;
+            }
+            int next = pyramid.levelForFrameInterval(index, secondsPerFrame);
+            return next == level ? this : new IndexSource(index, pyramid, next);
+        }
+
+        @Override
+        public double getExtraGap() {
+            return pyramid != null ? pyramid.getMaxGap(level) : 0;
+        }
+    }
+
+    private static BigDecimal toSimTime(double value) {
+        return BigDecimal.valueOf(value).setScale(3, RoundingMode.HALF_UP);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
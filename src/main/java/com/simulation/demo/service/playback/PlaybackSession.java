@@ -0,0 +1,495 @@
+package com.simulation.demo.service.playback;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.simulation.demo.dto.TrajectorySample;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个 WebSocket 连接上的回放会话
+ *
+ * 按帧率定时推送插值后的帧：每个行人取播放时刻前后最近的两个采样做线性插值，
+ * 入库降采样后的稀疏轨迹也能平滑还原。采样由后台按时间窗口预读到播放位置之后
+ * lookback + prefetch 秒，网络和数据库延迟不影响推送节奏；预读跟不上时进入 buffering 状态等待。
+ * 倍速较高、每帧跨越多个采样帧时，数据源可以改为读取细节层级金字塔中较低的层级，减少预读的数据量。
+ *
+ * 定时推送在调度线程上串行执行，所有播放状态只在 tick 中修改；控制消息先入队，下一次 tick 时处理。
+ */
+class PlaybackSession {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlaybackSession.class);
+
+    // 进行中的运行读到已有数据末尾后，再次查询新数据的间隔
+    private static final long LIVE_POLL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    enum State {
+        PLAYING, PAUSED, BUFFERING, ENDED;
+
+        String value() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * 控制消息
+     */
+    record Command(String type, double value) {
+    }
+
+    /**
+     * 预读参数（仿真秒）
+     *
+     * @param chunkSeconds    每次从数据源读取的时间窗口
+     * @param prefetchSeconds 在 lookbackSeconds 之外再预读多远（按播放倍速放大）
+     * @param lookbackSeconds 同一行人两个采样之间的最大间隔：定位时从该时长之前开始读取，
+     *                        播放位置之后也要读到该时长才能推送，超过后仍没有采样的行人视为已离开
+     */
+    record Settings(double chunkSeconds, double prefetchSeconds, double lookbackSeconds) {
+    }
+
+    /**
+     * 预读完成的时间窗口
+     */
+    private record Chunk(int generation, double until, List<TrajectorySample> samples, double[] timeSpan,
+                         boolean complete, Exception error) {
+    }
+
+    private final WebSocketSession session;
+    private final int runId;
+    private final Settings settings;
+    private final ExecutorService loader;
+    private final ScheduledExecutorService scheduler;
+    private final ObjectMapper objectMapper;
+
+    private final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+    private final Queue<Chunk> loaded = new ConcurrentLinkedQueue<>();
+
+    // 每个行人从播放位置前最近的采样开始的后续采样，按时间排序
+    private final Map<Integer, ArrayDeque<TrajectorySample>> tracks = new HashMap<>();
+
+    // 定位后递增，丢弃定位前发出的预读结果
+    private volatile int generation;
+    private volatile boolean closed;
+
+    // 打开回放时的数据源，source 为按当前倍速和帧率选择细节后的数据源
+    private PlaybackSource baseSource;
+    private PlaybackSource source;
+
+    private double playhead;
+    private double speed;
+    private int fps;
+    private boolean paused;
+    private State state;
+    private boolean frameDirty = true;
+    private boolean statusDirty = true;
+
+    private double[] timeSpan;
+    private boolean complete;
+    private double loadedUntil;
+    private boolean loading;
+    private long nextPollNanos;
+    private long lastTickNanos;
+    private ScheduledFuture<?> tickFuture;
+
+    PlaybackSession(WebSocketSession session, int runId, Settings settings,
+                    ExecutorService loader, ScheduledExecutorService scheduler, ObjectMapper objectMapper) {
+        this.session = session;
+        this.runId = runId;
+        this.settings = settings;
+        this.loader = loader;
+        this.scheduler = scheduler;
+        this.objectMapper = objectMapper;
+    }
+
+    int getRunId() {
+        return runId;
+    }
+
+    /**
+     * 开始回放；startTime 为 NaN 时从运行的第一帧开始。在预读线程上调用。
+     */
+    synchronized void start(PlaybackSource source, double startTime, double speed, int fps, boolean paused) {
+        if (closed) {
+            return;
+        }
+        this.baseSource = source;
+        this.source = source.forFrameInterval(speed / fps);
+        this.timeSpan = source.getTimeSpan();
+        this.complete = source.isComplete();
+        if (timeSpan == null && complete) {
+            terminate("运行没有轨迹数据: " + runId);
+            return;
+        }
+
+        this.speed = speed;
+        this.fps = fps;
+        this.paused = paused;
+        this.state = paused ? State.PAUSED : State.PLAYING;
+        seekTo(Double.isNaN(startTime) ? (timeSpan != null ? timeSpan[0] : 0) : startTime);
+        lastTickNanos = System.nanoTime();
+        schedule();
+        logger.info("开始回放，运行ID: {}, 起始时间: {}, 倍速: {}, 帧率: {}", runId, playhead, speed, fps);
+    }
+
+    void submit(Command command) {
+        commands.add(command);
+    }
+
+    synchronized void close() {
+        closed = true;
+        generation++;
+        if (tickFuture != null) {
+            tickFuture.cancel(false);
+        }
+        tracks.clear();
+        loaded.clear();
+    }
+
+    /**
+     * 发送错误消息后结束会话并断开连接
+     */
+    void terminate(String message) {
+        sendError(message);
+        close();
+        try {
+            session.close();
+        } catch (IOException ignored) {
+            // 连接已断开
+        }
+    }
+
+    private void schedule() {
+        if (tickFuture != null) {
+            tickFuture.cancel(false);
+        }
+        tickFuture = scheduler.scheduleAtFixedRate(this::tick, 0, Math.max(1, 1000 / fps), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void tick() {
+        if (closed) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            double elapsed = (now - lastTickNanos) / 1e9;
+            lastTickNanos = now;
+
+            processCommands();
+            applyLoadedChunks();
+            advance(elapsed);
+            requestChunk(now);
+
+            if (statusDirty) {
+                sendStatus();
+                statusDirty = false;
+            }
+            if (state != State.BUFFERING && (!paused || frameDirty) && isLoaded(playhead)) {
+                sendFrame();
+                frameDirty = false;
+            }
+        } catch (Exception e) {
+            // 调度任务抛出异常后不会再执行，这里结束会话
+            logger.error("回放推送失败，运行ID: {}, 错误: {}", runId, e.getMessage());
+            terminate("回放推送失败: " + e.getMessage());
+        }
+    }
+
+    private void processCommands() {
+        Command command;
+        while ((command = commands.poll()) != null) {
+            switch (command.type()) {
+                case "play" -> {
+                    if (state == State.ENDED) {
+                        seekTo(timeSpan != null ? timeSpan[0] : 0);
+                    }
+                    paused = false;
+                }
+                case "pause" -> {
+                    paused = true;
+                    state = State.PAUSED;
+                }
+                case "seek" -> seekTo(command.value());
+                case "speed" -> {
+                    speed = command.value();
+                    selectSource();
+                }
+                case "fps" -> {
+                    fps = (int) command.value();
+                    schedule();
+                    selectSource();
+                }
+                default -> sendError("未知的控制消息: " + command.type());
+            }
+            statusDirty = true;
+        }
+    }
+
+    private void seekTo(double time) {
+        if (timeSpan != null) {
+            time = Math.max(timeSpan[0], complete ? Math.min(time, timeSpan[1]) : time);
+        }
+        playhead = time;
+        reload();
+        if (state == State.ENDED) {
+            state = paused ? State.PAUSED : State.PLAYING;
+        }
+    }
+
+    /**
+     * 倍速或帧率变化后重新选择细节层级，层级改变时从播放位置重新读取
+     */
+    private void selectSource() {
+        PlaybackSource next = baseSource.forFrameInterval(speed / fps);
+        if (next != source) {
+            source = next;
+            reload();
+        }
+    }
+
+    /**
+     * 丢弃已读入的采样，从播放位置之前 lookback 秒重新读取
+     */
+    private void reload() {
+        generation++;
+        tracks.clear();
+        loaded.clear();
+        loading = false;
+        nextPollNanos = 0;
+        loadedUntil = playhead - lookbackSeconds();
+        frameDirty = true;
+    }
+
+    /**
+     * 同一行人两个采样之间的最大间隔，读取较低细节的层级时相应增大
+     */
+    private double lookbackSeconds() {
+        return settings.lookbackSeconds() + source.getExtraGap();
+    }
+
+    private void advance(double elapsed) {
+        State previous = state;
+        if (paused) {
+            state = state == State.ENDED ? State.ENDED : State.PAUSED;
+        } else {
+            double target = playhead + elapsed * speed;
+            if (complete && timeSpan != null && target >= timeSpan[1]) {
+                target = timeSpan[1];
+            }
+            if (isLoaded(target)) {
+                playhead = target;
+                if (complete && timeSpan != null && playhead >= timeSpan[1]) {
+                    // 播到结尾后停在最后一帧，发送 play 重新开始
+                    state = State.ENDED;
+                    paused = true;
+                    frameDirty = true;
+                } else {
+                    state = State.PLAYING;
+                }
+            } else {
+                state = State.BUFFERING;
+            }
+        }
+        if (state != previous) {
+            statusDirty = true;
+        }
+    }
+
+    /**
+     * 播放到 time 所需的数据是否已读入：要读到 time 之后 lookback 秒，才能确定每个行人的下一个采样
+     */
+    private boolean isLoaded(double time) {
+        return loadedUntil >= time + lookbackSeconds() || (complete && (timeSpan == null || loadedUntil >= timeSpan[1]));
+    }
+
+    private void requestChunk(long now) {
+        if (loading || now < nextPollNanos || (complete && timeSpan != null && loadedUntil >= timeSpan[1])) {
+            return;
+        }
+        double horizon = playhead + lookbackSeconds() + settings.prefetchSeconds() * Math.max(1, speed);
+        if (loadedUntil >= horizon) {
+            return;
+        }
+
+        loading = true;
+        int requestGeneration = generation;
+        double after = loadedUntil;
+        PlaybackSource current = source;
+        loader.execute(() -> {
+            if (closed || requestGeneration != generation) {
+                return;
+            }
+            try {
+                double[] span = current.getTimeSpan();
+                boolean done = current.isComplete();
+                double until = after + settings.chunkSeconds();
+                if (!done) {
+                    // 进行中的运行只读到当前已写入的最大时间，之后的数据还在写入
+                    until = span != null ? Math.min(until, span[1]) : after;
+                }
+                List<TrajectorySample> samples = until > after ? current.read(after, until) : List.of();
+                loaded.add(new Chunk(requestGeneration, Math.max(after, until), samples, span, done, null));
+            } catch (Exception e) {
+                loaded.add(new Chunk(requestGeneration, after, List.of(), null, false, e));
+            }
+        });
+    }
+
+    private void applyLoadedChunks() {
+        Chunk chunk;
+        while ((chunk = loaded.poll()) != null) {
+            if (chunk.generation() != generation) {
+                continue;
+            }
+            loading = false;
+            if (chunk.error() != null) {
+                logger.warn("回放预读失败，运行ID: {}, 错误: {}", runId, chunk.error().getMessage());
+                sendError("读取轨迹数据失败: " + chunk.error().getMessage());
+                nextPollNanos = System.nanoTime() + LIVE_POLL_NANOS;
+                continue;
+            }
+
+            for (TrajectorySample sample : chunk.samples()) {
+                tracks.computeIfAbsent(sample.pedestrianId(), id -> new ArrayDeque<>()).addLast(sample);
+            }
+            if (chunk.until() <= loadedUntil) {
+                nextPollNanos = System.nanoTime() + LIVE_POLL_NANOS;
+            }
+            loadedUntil = Math.max(loadedUntil, chunk.until());
+            if (chunk.timeSpan() != null && (timeSpan == null || chunk.timeSpan()[1] != timeSpan[1])) {
+                statusDirty = true;
+            }
+            if (chunk.complete() != complete) {
+                statusDirty = true;
+            }
+            timeSpan = chunk.timeSpan() != null ? chunk.timeSpan() : timeSpan;
+            complete = chunk.complete();
+        }
+    }
+
+    private void sendFrame() throws IOException {
+        double time = playhead;
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(writer)) {
+            gen.writeStartObject();
+            gen.writeStringField("type", "frame");
+            gen.writeNumberField("time", time);
+            gen.writeArrayFieldStart("pedestrians");
+
+            Iterator<ArrayDeque<TrajectorySample>> it = tracks.values().iterator();
+            while (it.hasNext()) {
+                ArrayDeque<TrajectorySample> track = it.next();
+                // 丢弃播放位置之前已用不到的采样，只保留最近的一个
+                TrajectorySample prev = track.pollFirst();
+                while (!track.isEmpty() && track.peekFirst().simTime() <= time) {
+                    prev = track.pollFirst();
+                }
+                track.addFirst(prev);
+                if (prev.simTime() > time) {
+                    continue;
+                }
+
+                Iterator<TrajectorySample> samples = track.iterator();
+                samples.next();
+                TrajectorySample next = samples.hasNext() ? samples.next() : null;
+                if (next == null && prev.simTime() < time) {
+                    // 数据已读到 time 之后 lookback 秒仍没有后续采样，行人已离开
+                    it.remove();
+                    continue;
+                }
+                writePedestrian(gen, prev, next, time);
+            }
+
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        session.sendMessage(new TextMessage(writer.toString()));
+    }
+
+    /**
+     * 写出一个行人：[pedestrianId, posX, posY, posZ, speed, lat, lon]
+     */
+    private static void writePedestrian(JsonGenerator gen, TrajectorySample prev, TrajectorySample next, double time) throws IOException {
+        double ratio = 0;
+        if (next != null && next.simTime() > prev.simTime()) {
+            ratio = (time - prev.simTime()) / (next.simTime() - prev.simTime());
+        }
+        TrajectorySample to = next != null ? next : prev;
+
+        gen.writeStartArray();
+        gen.writeNumber(prev.pedestrianId());
+        writeNumber(gen, lerp(prev.posX(), to.posX(), ratio));
+        writeNumber(gen, lerp(prev.posY(), to.posY(), ratio));
+        writeNumber(gen, lerp(prev.posZ(), to.posZ(), ratio));
+        writeNumber(gen, lerp(prev.speed(), to.speed(), ratio));
+        boolean latLon = prev.hasLatLon() && to.hasLatLon();
+        writeNumber(gen, latLon ? lerp(prev.lat(), to.lat(), ratio) : prev.lat());
+        writeNumber(gen, latLon ? lerp(prev.lon(), to.lon(), ratio) : prev.lon());
+        gen.writeEndArray();
+    }
+
+    private static double lerp(double from, double to, double ratio) {
+        if (Double.isNaN(to)) {
+            return from;
+        }
+        return from + (to - from) * ratio;
+    }
+
+    private static void writeNumber(JsonGenerator gen, double value) throws IOException {
+        if (Double.isNaN(value)) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(value);
+        }
+    }
+
+    private void sendStatus() throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(writer)) {
+            gen.writeStartObject();
+            gen.writeStringField("type", "status");
+            gen.writeStringField("state", state.value());
+            gen.writeNumberField("time", playhead);
+            gen.writeNumberField("speed", speed);
+            gen.writeNumberField("fps", fps);
+            if (timeSpan != null) {
+                gen.writeNumberField("startTime", timeSpan[0]);
+                gen.writeNumberField("endTime", timeSpan[1]);
+            }
+            gen.writeBooleanField("complete", complete);
+            gen.writeEndObject();
+        }
+        session.sendMessage(new TextMessage(writer.toString()));
+    }
+
+    void sendError(String message) {
+        try {
+            StringWriter writer = new StringWriter();
+            try (JsonGenerator gen = objectMapper.getFactory().createGenerator(writer)) {
+                gen.writeStartObject();
+                gen.writeStringField("type", "error");
+                gen.writeStringField("message", message);
+                gen.writeEndObject();
+            }
+            session.sendMessage(new TextMessage(writer.toString()));
+        } catch (IOException e) {
+            logger.debug("发送回放错误消息失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.simulation.demo.service.playback;
+
+import com.simulation.demo.dto.TrajectorySample;
+
+import java.util.List;
+
+/**
+ * 回放数据源 - 按时间窗口顺序读取一个运行的采样
+ */
+interface PlaybackSource {
+
+    /**
+     * 读取 (afterTime, untilTime] 区间内的采样，按 (sim_time, pedestrian_id) 排序
+     */
+    List<TrajectorySample> read(double afterTime, double untilTime);
+
+    /**
+     * 当前已知的最早和最晚仿真时间，没有数据时返回 null。进行中的运行每次调用都可能变大。
+     */
+    double[] getTimeSpan();
+
+    /**
+     * 数据是否已完整（运行已结束），完整时回放到结尾即停止，否则等待新数据
+     */
+    boolean isComplete();
+
+    /**
+     * 回放每帧推进 secondsPerFrame 仿真秒时使用的数据源：倍速较高时可以改为读取较低细节的层级，
+     * 细节不变时返回自身；默认始终读取完整数据
+     */
+    default PlaybackSource forFrameInterval(double secondsPerFrame) {
+        return this;
+    }
+
+    /**
+     * 同一行人相邻两个返回的采样之间因降低细节而增加的最大间隔（仿真秒）
+     */
+    default double getExtraGap() {
+        return 0;
+    }
+}
@@ -0,0 +1,173 @@
+package com.simulation.demo.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.simulation.demo.controller.SimulationController;
+import com.simulation.demo.dto.KeysetPage;
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.dto.TrajectorySampleSoa;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 二进制轨迹格式测试，Decoded 为客户端解码的参考实现
+ */
+public class TrajectorySoaHttpMessageConverterTest {
+
+    private final TrajectorySoaHttpMessageConverter converter = new TrajectorySoaHttpMessageConverter();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<TrajectorySample> samples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            samples.add(new TrajectorySample(i + 1, 7, i * 0.5, LocalDateTime.of(2025, 1, 1, 8, 0), i % 10,
+                i * 0.25, -i * 0.5, 0f, 1.2f, i % 3 == 0 ? null : (i % 3 == 1 ? "入口" : "站台"),
+                i % 2 == 0 ? 31.2 + i * 1e-6 : Double.NaN, 121.4));
+        }
+        SimulationController.ApiResponse response = new SimulationController.ApiResponse(true, "获取成功",
+            new KeysetPage<>(samples, 1000, "abc", null));
+
+        byte[] body = write(response);
+        Decoded decoded = Decoded.decode(body);
+
+        assertTrue(decoded.success);
+        assertFalse(decoded.truncated);
+        assertEquals("获取成功", decoded.message);
+        assertEquals("abc", decoded.nextCursor);
+        assertEquals(1000, decoded.rowCount);
+        for (int i = 0; i < samples.size(); i++) {
+            TrajectorySample expected = samples.get(i);
+            assertEquals(expected.id(), decoded.id[i]);
+            assertEquals(expected.simTime(), decoded.simTime[i]);
+            assertEquals(expected.pedestrianId(), decoded.pedestrianId[i]);
+            assertEquals((float) expected.posX(), decoded.posX[i]);
+            assertEquals((float) expected.posY(), decoded.posY[i]);
+            assertEquals(expected.speed(), decoded.speed[i]);
+            assertEquals(expected.lat(), decoded.lat[i]);
+            assertEquals(expected.areaName(), decoded.area(i));
+        }
+
+        byte[] json = new ObjectMapper().findAndRegisterModules().writeValueAsBytes(response);
+        assertTrue(body.length * 3 < json.length, "二进制 " + body.length + " 字节, JSON " + json.length + " 字节");
+    }
+
+    @Test
+    public void testSpatialResultAndError() throws Exception {
+        TrajectorySample sample = new TrajectorySample(1, 7, 0, null, 1, 1, 2, Float.NaN, Float.NaN, null,
+            Double.NaN, Double.NaN);
+        Decoded decoded = Decoded.decode(write(new SimulationController.ApiResponse(true, "获取成功",
+            Map.of("indexed", true, "truncated", true, "content", List.of(sample)))));
+        assertTrue(decoded.truncated);
+        assertEquals(1, decoded.rowCount);
+        assertNull(decoded.lat);
+        assertTrue(Float.isNaN(decoded.speed[0]));
+
+        decoded = Decoded.decode(write(new SimulationController.ApiResponse(false, "运行不存在", null)));
+        assertFalse(decoded.success);
+        assertEquals("运行不存在", decoded.message);
+        assertEquals(0, decoded.rowCount);
+
+        assertThrows(HttpMessageNotWritableException.class,
+            () -> write(new SimulationController.ApiResponse(true, "获取成功", Map.of("frameCount", 3))));
+    }
+
+    private byte[] write(SimulationController.ApiResponse response) throws Exception {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(response, TrajectorySoaHttpMessageConverter.MEDIA_TYPE, output);
+        assertEquals(TrajectorySoaHttpMessageConverter.MEDIA_TYPE, output.getHeaders().getContentType());
+        return output.getBodyAsBytes();
+    }
+
+    static class Decoded {
+        boolean success;
+        boolean truncated;
+        String message;
+        String nextCursor;
+        int rowCount;
+        String[] areaNames;
+        long[] id;
+        double[] simTime;
+        double[] lat;
+        double[] lon;
+        float[] posX;
+        float[] posY;
+        float[] posZ;
+        float[] speed;
+        int[] pedestrianId;
+        short[] area;
+
+        String area(int row) {
+            return area[row] < 0 ? null : areaNames[area[row]];
+        }
+
+        static Decoded decode(byte[] body) {
+            ByteBuffer buffer = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(TrajectorySampleSoa.MAGIC, buffer.getInt());
+            assertEquals(TrajectorySampleSoa.VERSION, buffer.getShort());
+            int flags = buffer.getShort();
+            Decoded decoded = new Decoded();
+            decoded.success = (flags & TrajectorySampleSoa.FLAG_SUCCESS) != 0;
+            decoded.truncated = (flags & TrajectorySampleSoa.FLAG_TRUNCATED) != 0;
+            int n = decoded.rowCount = buffer.getInt();
+            int messageBytes = Short.toUnsignedInt(buffer.getShort());
+            int cursorBytes = Short.toUnsignedInt(buffer.getShort());
+            decoded.message = string(buffer, messageBytes);
+            decoded.nextCursor = cursorBytes > 0 ? string(buffer, cursorBytes) : null;
+            decoded.areaNames = new String[buffer.getShort()];
+            for (int i = 0; i < decoded.areaNames.length; i++) {
+                decoded.areaNames[i] = string(buffer, Short.toUnsignedInt(buffer.getShort()));
+            }
+            buffer.position((buffer.position() + 7) & ~7);
+
+            decoded.id = new long[n];
+            buffer.asLongBuffer().get(decoded.id);
+            buffer.position(buffer.position() + n * 8);
+            decoded.simTime = doubles(buffer, n);
+            if ((flags & TrajectorySampleSoa.FLAG_LAT_LON) != 0) {
+                decoded.lat = doubles(buffer, n);
+                decoded.lon = doubles(buffer, n);
+            }
+            decoded.posX = floats(buffer, n);
+            decoded.posY = floats(buffer, n);
+            decoded.posZ = floats(buffer, n);
+            decoded.speed = floats(buffer, n);
+            decoded.pedestrianId = new int[n];
+            buffer.asIntBuffer().get(decoded.pedestrianId);
+            buffer.position(buffer.position() + n * 4);
+            decoded.area = new short[n];
+            buffer.asShortBuffer().get(decoded.area);
+            assertEquals(body.length, buffer.position() + n * 2);
+            return decoded;
+        }
+
+        private static String string(ByteBuffer buffer, int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static double[] doubles(ByteBuffer buffer, int n) {
+            double[] values = new double[n];
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + n * 8);
+            return values;
+        }
+
+        private static float[] floats(ByteBuffer buffer, int n) {
+            float[] values = new float[n];
+            buffer.asFloatBuffer().get(values);
+            buffer.position(buffer.position() + n * 4);
+            return values;
+        }
+    }
+}
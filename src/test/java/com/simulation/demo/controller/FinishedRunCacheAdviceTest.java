@@ -0,0 +1,126 @@
+package com.simulation.demo.controller;
+
+import com.simulation.demo.config.TrajectorySoaHttpMessageConverter;
+import com.simulation.demo.dto.RunDataVersion;
+import com.simulation.demo.service.SimulationDataService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 已结束运行查询结果缓存头测试
+ */
+public class FinishedRunCacheAdviceTest {
+
+    private final FinishedRunCacheAdvice advice = new FinishedRunCacheAdvice();
+
+    private final SimulationDataService simulationDataService = mock(SimulationDataService.class);
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(advice, "simulationDataService", simulationDataService);
+    }
+
+    @Test
+    public void testImmutableOnlyWhenDataComplete() {
+        when(simulationDataService.getFinishedRunVersion(7)).thenReturn(new RunDataVersion("7-FINISHED-10-10-2", true));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertTrue(advice.preHandle(request(7, null, null), response, null));
+        assertEquals("W/\"7-FINISHED-10-10-2\"", response.getHeader(HttpHeaders.ETAG));
+        assertEquals("public, max-age=31536000, immutable", response.getHeader(HttpHeaders.CACHE_CONTROL));
+
+        // 经纬度尚未补算完：仍带 ETag，但要求每次重新验证
+        when(simulationDataService.getFinishedRunVersion(8)).thenReturn(new RunDataVersion("8-FINISHED-10-4-0", false));
+        response = new MockHttpServletResponse();
+        assertTrue(advice.preHandle(request(8, null, null), response, null));
+        assertEquals("W/\"8-FINISHED-10-4-0\"", response.getHeader(HttpHeaders.ETAG));
+        assertEquals("no-cache", response.getHeader(HttpHeaders.CACHE_CONTROL));
+
+        // 运行未结束：不带缓存头
+        response = new MockHttpServletResponse();
+        assertTrue(advice.preHandle(request(9, null, null), response, null));
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+        assertNull(response.getHeader(HttpHeaders.CACHE_CONTROL));
+    }
+
+    @Test
+    public void testNotModified() {
+        when(simulationDataService.getFinishedRunVersion(8)).thenReturn(new RunDataVersion("8-FINISHED-10-4-0", false));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertFalse(advice.preHandle(request(8, "W/\"8-FINISHED-10-4-0\"", null), response, null));
+        assertEquals(304, response.getStatus());
+
+        // 补算经纬度后版本变化，旧 ETag 不再命中
+        when(simulationDataService.getFinishedRunVersion(8)).thenReturn(new RunDataVersion("8-FINISHED-10-10-0", true));
+        response = new MockHttpServletResponse();
+        assertTrue(advice.preHandle(request(8, "W/\"8-FINISHED-10-4-0\"", null), response, null));
+        assertEquals(200, response.getStatus());
+    }
+
+    @Test
+    public void testAcceptVariantEtag() {
+        when(simulationDataService.getFinishedRunVersion(7)).thenReturn(new RunDataVersion("7-FINISHED-10-10-2", true));
+        MockHttpServletResponse json = new MockHttpServletResponse();
+        advice.preHandle(request(7, null, MediaType.APPLICATION_JSON_VALUE), json, null);
+        MockHttpServletResponse binary = new MockHttpServletResponse();
+        advice.preHandle(request(7, null, TrajectorySoaHttpMessageConverter.MEDIA_TYPE_VALUE), binary, null);
+
+        assertEquals("W/\"7-FINISHED-10-10-2-soa\"", binary.getHeader(HttpHeaders.ETAG));
+        assertNotEquals(json.getHeader(HttpHeaders.ETAG), binary.getHeader(HttpHeaders.ETAG));
+        assertEquals(HttpHeaders.ACCEPT, binary.getHeader(HttpHeaders.VARY));
+
+        // JSON 表示的 ETag 不能用来验证二进制表示
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertTrue(advice.preHandle(request(7, json.getHeader(HttpHeaders.ETAG),
+            TrajectorySoaHttpMessageConverter.MEDIA_TYPE_VALUE), response, null));
+    }
+
+    @Test
+    public void testNoStoreOnFailure() throws Exception {
+        when(simulationDataService.getFinishedRunVersion(7)).thenReturn(new RunDataVersion("7-FINISHED-10-10-2", true));
+        MockHttpServletRequest request = request(7, null, null);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        advice.preHandle(request, response, null);
+
+        ServletServerHttpResponse failed = new ServletServerHttpResponse(response);
+        advice.beforeBodyWrite(new SimulationController.ApiResponse(false, "获取数据失败", null), null,
+            MediaType.APPLICATION_JSON, null, new ServletServerHttpRequest(request), failed);
+        failed.flush();
+        // 只能有 no-store 一个值，不能与 immutable 并存
+        assertEquals(List.of("no-store"), response.getHeaders(HttpHeaders.CACHE_CONTROL));
+
+        MockHttpServletResponse okResponse = new MockHttpServletResponse();
+        advice.preHandle(request, okResponse, null);
+        ServletServerHttpResponse succeeded = new ServletServerHttpResponse(okResponse);
+        advice.beforeBodyWrite(new SimulationController.ApiResponse(true, "获取成功", null), null,
+            MediaType.APPLICATION_JSON, null, new ServletServerHttpRequest(request), succeeded);
+        succeeded.flush();
+        assertEquals("public, max-age=31536000, immutable", okResponse.getHeader(HttpHeaders.CACHE_CONTROL));
+    }
+
+    private static MockHttpServletRequest request(int runId, String ifNoneMatch, String accept) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/data/runs/" + runId + "/summary");
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Map.of("runId", String.valueOf(runId)));
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        if (accept != null) {
+            request.addHeader(HttpHeaders.ACCEPT, accept);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,71 @@
+package com.simulation.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 轨迹流式导出测试
+ */
+public class TrajectoryExportServiceTest {
+
+    private final TrajectorySampleRepository repository = mock(TrajectorySampleRepository.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final TrajectoryExportService service = new TrajectoryExportService();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(service, "trajectorySampleRepository", repository);
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+    }
+
+    @Test
+    public void testExportComplete() throws Exception {
+        doAnswer(invocation -> {
+            TrajectorySampleRepository.SampleHandler handler = invocation.getArgument(2);
+            handler.handle(sample(1));
+            handler.handle(sample(2));
+            return null;
+        }).when(repository).streamByRunIdAndAreaName(eq(1), eq("入口"), any());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2, service.writeArea(1, "入口", out));
+        assertEquals(2, objectMapper.readTree(out.toByteArray()).get("data").size());
+    }
+
+    @Test
+    public void testFailureTruncatesResponse() {
+        doAnswer(invocation -> {
+            TrajectorySampleRepository.SampleHandler handler = invocation.getArgument(2);
+            handler.handle(sample(1));
+            throw new DataAccessResourceFailureException("连接中断");
+        }).when(repository).streamByRunIdAndAreaName(eq(1), eq("入口"), any());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThrows(DataAccessResourceFailureException.class, () -> service.writeArea(1, "入口", out));
+
+        // 已写出的部分不补全数组和对象，不能被解析成 success:true 的完整响应
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertTrue(body.startsWith("{\"success\":true"));
+        assertThrows(IOException.class, () -> objectMapper.readTree(body));
+    }
+
+    private static TrajectorySample sample(long id) {
+        return new TrajectorySample(id, 1, id, null, 1, 10.0, 20.0, 0f, 1.0f, "入口", Double.NaN, Double.NaN);
+    }
+}
@@ -0,0 +1,92 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.dto.AreaDwellStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 区域停留时间、区域间行程时间统计测试
+ */
+public class AreaDwellAnalyzerTest {
+
+    @Test
+    public void testDwellAndTravelIntervals() {
+        AreaDwellAnalyzer analyzer = new AreaDwellAnalyzer();
+        // 行人 1: 在 A 停留 0-20，区域外，在 B 停留 50-80，直接进入 C 停留 90-90，回到 C 之前离开过
+        analyzer.accept(1, 0, "A");
+        analyzer.accept(1, 20, "A");
+        analyzer.accept(1, 30, null);
+        analyzer.accept(1, 50, "B");
+        analyzer.accept(1, 80, "B");
+        analyzer.accept(1, 90, "C");
+        analyzer.accept(1, 100, null);
+        analyzer.accept(1, 95, "A");   // 乱序的采样跳过
+        analyzer.accept(1, 110, "C");
+        analyzer.finish(1);
+        // 行人 2: 在 A 停留 10-50，轨迹在区域内结束
+        analyzer.accept(2, 10, "A");
+        analyzer.accept(2, 50, "A");
+
+        List<AreaDwellStats> stats = analyzer.build();
+        assertEquals(List.of("DWELL:A:null", "DWELL:B:null", "DWELL:C:null",
+                             "TRAVEL:A:B", "TRAVEL:B:C", "TRAVEL:C:C"),
+                     stats.stream().map(s -> s.kind() + ":" + s.fromArea() + ":" + s.toArea()).toList());
+
+        AreaDwellStats dwellA = stats.get(0);
+        assertEquals(2, dwellA.count());
+        assertEquals(60.0, dwellA.totalSeconds());
+        assertEquals(40.0, dwellA.maxSeconds());
+        AreaDwellStats dwellC = stats.get(2);
+        assertEquals(2, dwellC.count());
+        assertEquals(0.0, dwellC.maxSeconds());
+        assertEquals(30.0, stats.get(3).totalSeconds());
+        assertEquals(10.0, stats.get(4).totalSeconds());
+        assertEquals(20.0, stats.get(5).totalSeconds());
+
+        SpeedSketch sketch = SpeedSketch.fromBytes(dwellA.sketch());
+        assertEquals(2, sketch.getCount());
+        assertEquals(40.0, sketch.quantile(1), 40 * SpeedSketch.RELATIVE_ACCURACY);
+    }
+
+    @Test
+    public void testMergePartitions() {
+        AreaDwellAnalyzer whole = new AreaDwellAnalyzer();
+        AreaDwellAnalyzer left = new AreaDwellAnalyzer();
+        AreaDwellAnalyzer right = new AreaDwellAnalyzer();
+        String[] areas = {"A", "B", null};
+        for (int ped = 0; ped < 100; ped++) {
+            AreaDwellAnalyzer part = ped < 50 ? left : right;
+            for (int t = 0; t < 30; t++) {
+                String area = areas[(ped + t / (1 + ped % 4)) % areas.length];
+                whole.accept(ped, t, area);
+                part.accept(ped, t, area);
+            }
+        }
+        left.merge(right);
+        List<AreaDwellStats> expected = whole.build();
+        List<AreaDwellStats> merged = left.build();
+        assertEquals(expected.size(), merged.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).count(), merged.get(i).count());
+            assertEquals(expected.get(i).totalSeconds(), merged.get(i).totalSeconds(), 1e-9);
+            assertArrayEquals(expected.get(i).sketch(), merged.get(i).sketch());
+        }
+    }
+
+    @Test
+    public void testSketchHistogramBoundaries() {
+        SpeedSketch sketch = new SpeedSketch();
+        for (double value : new double[] {0, 5, 10, 15, 29, 31, 100}) {
+            sketch.add(value);
+        }
+        assertEquals(1, sketch.countAtMost(0));
+        assertEquals(4, sketch.countAtMost(20));
+        assertEquals(5, sketch.countAtMost(30));
+        assertEquals(6, sketch.countAtMost(60));
+        assertEquals(7, sketch.countAtMost(Double.POSITIVE_INFINITY));
+        assertEquals(0, sketch.countAtMost(-1));
+    }
+}
@@ -0,0 +1,131 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.dto.AreaOccupancy;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 区域占用增量统计测试
+ */
+public class AreaOccupancyAccumulatorTest {
+
+    @Test
+    public void testCountsAndMaxPerBucket() {
+        AreaOccupancyAccumulator accumulator = new AreaOccupancyAccumulator(10);
+        // t=0: 行人 1、2 在 A；t=5: 行人 1、2、3 在 A（同一时刻分两批到达）；t=12: 行人 3 在 A，行人 1 在 B
+        accumulator.accept(1, 0, 1.0f, "A");
+        accumulator.accept(2, 0, 2.0f, "A");
+        accumulator.accept(4, 0, 1.0f, null);
+        accumulator.accept(1, 5, 1.0f, "A");
+        accumulator.accept(2, 5, Float.NaN, "A");
+        accumulator.accept(3, 5, 3.0f, "A");
+        accumulator.accept(3, 12, 2.0f, "A");
+        accumulator.accept(1, 12, 4.0f, "B");
+
+        assertEquals(1, accumulator.getLatestBucket());
+        List<AreaOccupancy> rows = sorted(accumulator.snapshot(null));
+        assertEquals(3, rows.size());
+
+        AreaOccupancy a0 = rows.get(0);
+        assertEquals("A", a0.areaName());
+        assertEquals(0, a0.timeBucket());
+        assertEquals(3, a0.pedestrianCount());
+        assertEquals(3, a0.maxCount());
+        assertEquals(5, a0.sampleCount());
+        assertEquals(7.0 / 4, a0.meanSpeed(), 1e-9);
+        assertEquals(4, SpeedSketch.fromBytes(a0.speedSketch()).getCount());
+
+        AreaOccupancy a1 = rows.get(1);
+        assertEquals(1, a1.timeBucket());
+        assertEquals(10.0, a1.startTime(), 1e-9);
+        assertEquals(1, a1.maxCount());   // 当前时刻尚未结束，也计入最大人数
+        assertEquals("B", rows.get(2).areaName());
+        assertEquals(1, accumulator.snapshot("B").size());
+    }
+
+    @Test
+    public void testDrain() {
+        AreaOccupancyAccumulator accumulator = new AreaOccupancyAccumulator(10);
+        for (int t = 0; t < 30; t++) {
+            for (int ped = 0; ped <= t % 10; ped++) {
+                accumulator.accept(ped, t, Float.NaN, "A");
+            }
+        }
+
+        List<AreaOccupancy> drained = sorted(accumulator.drainBefore(2));
+        assertEquals(2, drained.size());
+        assertEquals(10, drained.get(0).maxCount());
+        assertEquals(10, drained.get(1).pedestrianCount());
+        assertNull(drained.get(0).meanSpeed());
+        assertTrue(accumulator.drainBefore(2).isEmpty());
+        accumulator.accept(1, 5, 1.0f, "A");   // 所属时间桶已取出
+        assertEquals(1, accumulator.getLateSamples());
+
+        List<AreaOccupancy> rest = accumulator.drainAll();
+        assertEquals(1, rest.size());
+        assertEquals(2, rest.get(0).timeBucket());
+        assertEquals(10, rest.get(0).maxCount());
+        assertEquals(55, rest.get(0).sampleCount());
+        assertTrue(accumulator.snapshot(null).isEmpty());
+    }
+
+    @Test
+    public void testHeldSamplesMatchRawCounts() {
+        // 原始采样：每秒一帧，行人 p 在 [p, p + 20] 内出现，区域和速度不变；入库时每个行人只保留每 4 秒一个点和最后一个点
+        AreaOccupancyAccumulator raw = new AreaOccupancyAccumulator(10);
+        AreaOccupancyAccumulator stored = new AreaOccupancyAccumulator(10, 5, lastTimes());
+        for (int t = 0; t <= 40; t++) {
+            for (int ped = 0; ped < 20; ped++) {
+                if (t < ped || t > ped + 20) {
+                    continue;
+                }
+                String area = ped % 2 == 0 ? "A" : "B";
+                float speed = 1.0f + ped * 0.1f;
+                raw.accept(ped, t, speed, area);
+                if ((t - ped) % 4 == 0 || t == ped + 20) {
+                    stored.accept(ped, t, speed, area);
+                }
+            }
+        }
+
+        List<AreaOccupancy> expected = sorted(raw.drainAll());
+        List<AreaOccupancy> actual = sorted(stored.drainAll());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).maxCount(), actual.get(i).maxCount());
+            assertEquals(expected.get(i).pedestrianCount(), actual.get(i).pedestrianCount());
+            assertEquals(expected.get(i).sampleCount(), actual.get(i).sampleCount());
+            assertEquals(expected.get(i).meanSpeed(), actual.get(i).meanSpeed(), 1e-6);
+        }
+
+        // 不保持时只统计入库的采样，同一时刻的人数明显偏小
+        AreaOccupancyAccumulator plain = new AreaOccupancyAccumulator(10);
+        for (int t = 0; t <= 40; t++) {
+            for (int ped = 0; ped < 20; ped++) {
+                if (t >= ped && t <= ped + 20 && ((t - ped) % 4 == 0 || t == ped + 20)) {
+                    plain.accept(ped, t, 1.0f, ped % 2 == 0 ? "A" : "B");
+                }
+            }
+        }
+        assertTrue(sorted(plain.drainAll()).get(1).maxCount() < expected.get(1).maxCount());
+    }
+
+    private static Map<Integer, Double> lastTimes() {
+        Map<Integer, Double> lastTimes = new HashMap<>();
+        for (int ped = 0; ped < 20; ped++) {
+            lastTimes.put(ped, ped + 20.0);
+        }
+        return lastTimes;
+    }
+
+    private static List<AreaOccupancy> sorted(List<AreaOccupancy> rows) {
+        rows.sort(Comparator.comparing(AreaOccupancy::areaName).thenComparingLong(AreaOccupancy::timeBucket));
+        return rows;
+    }
+}
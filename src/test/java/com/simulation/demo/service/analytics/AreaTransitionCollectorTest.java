@@ -0,0 +1,100 @@
+package com.simulation.demo.service.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 区域序列与 OD 矩阵测试
+ */
+public class AreaTransitionCollectorTest {
+
+    @Test
+    public void testChainsAndMatrices() {
+        AreaTransitionCollector collector = new AreaTransitionCollector();
+        // 行人 1: A → (区域外) → A → B → C，区域外的采样不打断序列
+        collector.accept(1, 0, "A");
+        collector.accept(1, 10, null);
+        collector.accept(1, 20, "A");
+        collector.accept(1, 70, "B");
+        collector.accept(1, 130, "C");
+        collector.accept(1, 140, "C");
+        // 行人 2: 始终在 B，计入对角线
+        collector.accept(2, 5, "B");
+        collector.accept(2, 65, "B");
+        // 行人 3: 从未进入区域
+        collector.accept(3, 0, null);
+        // 行人 4: 区域外出发，60 秒后进入 A，再到 C；乱序的采样跳过
+        collector.accept(4, 30, null);
+        collector.accept(4, 60, "A");
+        collector.accept(4, 90, "C");
+        collector.accept(4, 80, "B");
+
+        AreaTrips trips = collector.build();
+        assertEquals(List.of("A", "B", "C"), trips.getAreas());
+        assertEquals(4, trips.getPedestrianCount());
+        assertEquals(3, trips.getTripCount());
+
+        List<AreaTrips.Window> whole = trips.odMatrix(null, null, null, 10);
+        assertEquals(1, whole.size());
+        assertEquals(3, whole.get(0).count());
+        assertEquals(0.0, whole.get(0).startTime());
+        assertEquals(60.0, whole.get(0).endTime());
+        assertArrayEquals(new int[][] {{0, 0, 2}, {0, 1, 0}, {0, 0, 0}}, whole.get(0).matrix());
+
+        // 按出发时间分到 60 秒的窗口
+        List<AreaTrips.Window> windows = trips.odMatrix(null, null, 60.0, 10);
+        assertEquals(2, windows.size());
+        assertEquals(0.0, windows.get(0).startTime());
+        assertEquals(2, windows.get(0).count());
+        assertEquals(60.0, windows.get(1).startTime());
+        assertEquals(120.0, windows.get(1).endTime());
+        assertArrayEquals(new int[][] {{0, 0, 1}, {0, 0, 0}, {0, 0, 0}}, windows.get(1).matrix());
+        assertEquals(1, trips.odMatrix(1.0, 60.0, 60.0, 10).get(0).count());
+
+        // 转移按进入时间计：A→B 在 70，B→C 在 130，A→C 在 90
+        List<AreaTrips.Window> transitions = trips.transitionMatrix(null, null, 60.0, 10);
+        assertEquals(2, transitions.size());
+        assertEquals(60.0, transitions.get(0).startTime());
+        assertArrayEquals(new int[][] {{0, 1, 1}, {0, 0, 0}, {0, 0, 0}}, transitions.get(0).matrix());
+        assertArrayEquals(new int[][] {{0, 0, 0}, {0, 0, 1}, {0, 0, 0}}, transitions.get(1).matrix());
+
+        assertThrows(IllegalArgumentException.class, () -> trips.odMatrix(null, null, 1.0, 1));
+    }
+
+    @Test
+    public void testMergePartitionsAndTopChains() {
+        AreaTransitionCollector whole = new AreaTransitionCollector();
+        AreaTransitionCollector left = new AreaTransitionCollector();
+        AreaTransitionCollector right = new AreaTransitionCollector();
+        String[] areas = {"A", "B", "C", null};
+        for (int ped = 0; ped < 100; ped++) {
+            AreaTransitionCollector part = ped < 50 ? left : right;
+            for (int t = 0; t < 10; t++) {
+                String area = areas[(ped * 7 + t * (ped % 3)) % areas.length];
+                whole.accept(ped, t, area);
+                part.accept(ped, t, area);
+            }
+            part.finish(ped);
+        }
+        left.merge(right);
+        AreaTrips merged = left.build();
+        AreaTrips expected = whole.build();
+
+        assertEquals(expected.getPedestrianCount(), merged.getPedestrianCount());
+        assertEquals(expected.getTripCount(), merged.getTripCount());
+        assertArrayEquals(expected.odMatrix(null, null, null, 1).get(0).matrix(),
+                          merged.odMatrix(null, null, null, 1).get(0).matrix());
+        assertArrayEquals(expected.transitionMatrix(null, null, null, 1).get(0).matrix(),
+                          merged.transitionMatrix(null, null, null, 1).get(0).matrix());
+
+        List<AreaTrips.Chain> chains = merged.topChains(null, null, 3);
+        assertEquals(3, chains.size());
+        for (int i = 1; i < chains.size(); i++) {
+            assertTrue(chains.get(i - 1).count() >= chains.get(i).count());
+        }
+        assertEquals(expected.topChains(null, null, 3).get(0).count(), chains.get(0).count());
+    }
+}
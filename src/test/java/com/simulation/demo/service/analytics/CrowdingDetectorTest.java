@@ -0,0 +1,133 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.dto.CrowdingEpisode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 拥挤检测、拥挤过程跟踪测试
+ */
+public class CrowdingDetectorTest {
+
+    @Test
+    public void testClosePairsMatchBruteForce() {
+        CrowdingDetector detector = new CrowdingDetector(1.0, 2.0, 10.0, CrowdingDetector.Level.E);
+        Random random = new Random(42);
+        int n = 500;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = random.nextDouble() * 40 - 20;
+            ys[i] = random.nextDouble() * 40 - 20;
+        }
+        xs[7] = Double.NaN;
+
+        long expected = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double dx = xs[i] - xs[j];
+                double dy = ys[i] - ys[j];
+                if (dx * dx + dy * dy < 1.0) {
+                    expected++;
+                }
+            }
+        }
+
+        CrowdingDetector.FrameStats stats = detector.analyze(0, xs, ys, n);
+        assertEquals(n - 1, stats.pedestrianCount());
+        assertEquals(expected, stats.closePairs());
+    }
+
+    @Test
+    public void testPixelCoordinatesScaledToMetres() {
+        // 每像素 0.25 米：像素坐标是米坐标的 4 倍，统计结果应与直接按米检测相同
+        CrowdingDetector metres = new CrowdingDetector(1.0, 2.0, 10.0, CrowdingDetector.Level.E);
+        CrowdingDetector pixels = new CrowdingDetector(1.0, 2.0, 10.0, CrowdingDetector.Level.E, 0.25);
+        double[] xs = {0.1, 0.5, 0.9, 1.3, 1.7, 0.3, 0.7, 1.1, 1.5, 30.1, 30.2};
+        double[] ys = {0.1, 0.5, 0.9, 1.3, 1.7, 1.5, 1.1, 0.7, 0.3, 30.1, 30.2};
+        double[] pxs = new double[xs.length];
+        double[] pys = new double[ys.length];
+        for (int i = 0; i < xs.length; i++) {
+            pxs[i] = xs[i] * 4;
+            pys[i] = ys[i] * 4;
+        }
+
+        CrowdingDetector.FrameStats expected = metres.analyze(5, xs, ys, xs.length);
+        CrowdingDetector.FrameStats actual = pixels.analyze(5, pxs, pys, pxs.length);
+        assertEquals(expected.closePairs(), actual.closePairs());
+        assertEquals(expected.peakDensity(), actual.peakDensity(), 1e-9);
+        assertEquals(1, actual.crowded().size());
+        // 网格中心换算回像素坐标
+        assertEquals(4.0, actual.crowded().get(0).x(), 1e-9);
+        assertEquals(4.0, actual.crowded().get(0).y(), 1e-9);
+        // 输入数组不被改写
+        assertEquals(0.4, pxs[0], 1e-9);
+
+        assertThrows(IllegalArgumentException.class, () -> new CrowdingDetector(1.0, 2.0, 10.0, CrowdingDetector.Level.E, 0));
+    }
+
+    @Test
+    public void testDensityLevelAndRegions() {
+        assertEquals(CrowdingDetector.Level.A, CrowdingDetector.Level.of(0));
+        assertEquals(CrowdingDetector.Level.D, CrowdingDetector.Level.of(1.0));
+        assertEquals(CrowdingDetector.Level.F, CrowdingDetector.Level.of(3.0));
+
+        CrowdingDetector detector = new CrowdingDetector(1.0, 2.0, 10.0, CrowdingDetector.Level.E);
+        // (0,0)-(2,2) 网格 9 人，密度 2.25 为 F；(30,30) 附近 2 人未达到触发等级
+        double[] xs = {0.1, 0.5, 0.9, 1.3, 1.7, 0.3, 0.7, 1.1, 1.5, 30.1, 30.2};
+        double[] ys = {0.1, 0.5, 0.9, 1.3, 1.7, 1.5, 1.1, 0.7, 0.3, 30.1, 30.2};
+        CrowdingDetector.FrameStats stats = detector.analyze(5, xs, ys, xs.length);
+        assertEquals(2.25, stats.peakDensity(), 1e-9);
+        assertEquals(CrowdingDetector.Level.F, stats.level());
+        assertEquals(1, stats.crowded().size());
+        CrowdingDetector.Region region = stats.crowded().get(0);
+        assertEquals(1.0, region.x(), 1e-9);
+        assertEquals(1.0, region.y(), 1e-9);
+        assertEquals(9, region.count());
+        assertTrue(region.closePairs() > 0);
+        assertThrows(IllegalArgumentException.class, () -> new CrowdingDetector(0, 2.0, 10.0, CrowdingDetector.Level.E));
+    }
+
+    @Test
+    public void testTrackerStartAndEnd() {
+        CrowdingTracker tracker = new CrowdingTracker(10);
+        CrowdingDetector.Region small = new CrowdingDetector.Region(1L, 1, 1, 9, 2.25, CrowdingDetector.Level.F, 3);
+        CrowdingDetector.Region large = new CrowdingDetector.Region(1L, 3, 1, 12, 3.0, CrowdingDetector.Level.F, 8);
+
+        List<CrowdingTracker.Event> events = tracker.accept(frame(0, List.of(small)));
+        assertEquals(1, events.size());
+        assertEquals(CrowdingEpisode.START, events.get(0).type());
+        assertEquals(0.0, events.get(0).episode().endTime());
+
+        assertTrue(tracker.accept(frame(4, List.of(large))).isEmpty());
+        assertTrue(tracker.accept(frame(3, List.of())).isEmpty());   // 乱序的帧跳过
+        assertTrue(tracker.accept(frame(10, List.of())).isEmpty());
+        assertEquals(1, tracker.getActiveCount());
+
+        events = tracker.accept(frame(14, List.of()));
+        assertEquals(1, events.size());
+        CrowdingTracker.Event end = events.get(0);
+        assertEquals(CrowdingEpisode.END, end.type());
+        assertEquals(4.0, end.simTime());
+        CrowdingEpisode episode = end.episode();
+        assertEquals(0.0, episode.startTime());
+        assertEquals(4.0, episode.endTime());
+        assertEquals(4.0, episode.peakTime());
+        assertEquals(12, episode.peakCount());
+        assertEquals(8, episode.maxClosePairs());
+        assertEquals(0, tracker.getActiveCount());
+
+        tracker.accept(frame(20, List.of(small)));
+        events = tracker.finish();
+        assertEquals(1, events.size());
+        assertEquals(20.0, events.get(0).simTime());
+    }
+
+    private static CrowdingDetector.FrameStats frame(double time, List<CrowdingDetector.Region> crowded) {
+        return new CrowdingDetector.FrameStats(time, 0, 0, 0, CrowdingDetector.Level.A, crowded);
+    }
+}
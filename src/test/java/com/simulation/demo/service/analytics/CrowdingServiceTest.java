@@ -0,0 +1,109 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.repository.SimulationRunRepository;
+import com.simulation.demo.service.index.FrameIndex;
+import com.simulation.demo.service.index.FrameIndexService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 降采样运行的逐帧拥挤统计测试
+ */
+public class CrowdingServiceTest {
+
+    private final FrameIndexService frameIndexService = mock(FrameIndexService.class);
+    private final SimulationRunRepository runRepository = mock(SimulationRunRepository.class);
+
+    private final CrowdingService service = new CrowdingService();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(service, "frameIndexService", frameIndexService);
+        ReflectionTestUtils.setField(service, "simulationRunRepository", runRepository);
+        ReflectionTestUtils.setField(service, "distance", 1.0);
+        ReflectionTestUtils.setField(service, "cellSize", 2.0);
+        ReflectionTestUtils.setField(service, "regionSize", 10.0);
+        ReflectionTestUtils.setField(service, "metresPerUnit", 1.0);
+        ReflectionTestUtils.setField(service, "triggerLevel", "E");
+        service.init();
+
+        // 行人 10 每帧都有采样；行人 11、12 只保留了 0 秒和 4 秒两个点；行人 13 两点间隔 6 秒
+        FrameIndex.Builder builder = FrameIndex.builder(1, 16);
+        long id = 1;
+        for (int t = 0; t <= 6; t++) {
+            if (t == 0) {
+                builder.add(sample(id++, t, 10, 0.0, 0.0));
+                builder.add(sample(id++, t, 11, 0.2, 0.0));
+                builder.add(sample(id++, t, 12, 20.0, 0.0));
+                builder.add(sample(id++, t, 13, 0.0, 0.4));
+            } else if (t == 4) {
+                builder.add(sample(id++, t, 10, 0.0, 0.0));
+                builder.add(sample(id++, t, 11, 0.2, 0.0));
+                builder.add(sample(id++, t, 12, 24.0, 0.0));
+            } else if (t == 6) {
+                builder.add(sample(id++, t, 10, 0.0, 0.0));
+                builder.add(sample(id++, t, 13, 0.0, 0.4));
+            } else {
+                builder.add(sample(id++, t, 10, 0.0, 0.0));
+            }
+        }
+        FrameIndex index = builder.build();
+        when(frameIndexService.getIndex(1)).thenReturn(index);
+        when(frameIndexService.getIndex(2)).thenReturn(index);
+        when(runRepository.findById(1)).thenReturn(Optional.of(run(true, 5.0)));
+        when(runRepository.findById(2)).thenReturn(Optional.of(run(false, null)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDownsampledFramesInterpolated() {
+        Map<String, Object> result = service.getFrameStats(1, 1.0, 3.0, 100);
+        List<CrowdingDetector.FrameStats> frames = (List<CrowdingDetector.FrameStats>) result.get("frames");
+        assertEquals(3, frames.size());
+        for (CrowdingDetector.FrameStats frame : frames) {
+            // 行人 11、12 按前后保留点插值补上，行人 13 间隔超过降采样最大间隔视为不在场
+            assertEquals(3, frame.pedestrianCount(), "time " + frame.time());
+            assertEquals(1, frame.closePairs());
+        }
+        assertEquals(1.0, frames.get(0).time());
+        assertEquals(3.0, frames.get(2).time());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStoredFramesWithoutDownsampling() {
+        Map<String, Object> result = service.getFrameStats(2, 1.0, 3.0, 100);
+        List<CrowdingDetector.FrameStats> frames = (List<CrowdingDetector.FrameStats>) result.get("frames");
+        assertEquals(3, frames.size());
+        frames.forEach(frame -> assertEquals(1, frame.pedestrianCount()));
+
+        // 端点帧本身有采样，插值与否结果相同
+        List<CrowdingDetector.FrameStats> all = (List<CrowdingDetector.FrameStats>) service.getFrameStats(1, null, null, 100).get("frames");
+        assertEquals(7, all.size());
+        assertEquals(4, all.get(0).pedestrianCount());
+        assertEquals(3, all.get(4).pedestrianCount());
+        assertEquals(2, all.get(6).pedestrianCount());
+    }
+
+    private static SimulationRun run(boolean downsampled, Double maxInterval) {
+        SimulationRun run = new SimulationRun();
+        run.setDownsampleEnabled(downsampled);
+        run.setDownsampleMaxInterval(maxInterval);
+        return run;
+    }
+
+    private static TrajectorySample sample(long id, double time, int pedestrianId, double x, double y) {
+        return new TrajectorySample(id, 1, time, null, pedestrianId, x, y, 0f, 1.0f, null, Double.NaN, Double.NaN);
+    }
+}
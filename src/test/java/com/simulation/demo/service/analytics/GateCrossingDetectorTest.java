@@ -0,0 +1,68 @@
+package com.simulation.demo.service.analytics;
+
+import com.simulation.demo.entity.FlowGate;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 计数线穿越检测测试
+ */
+public class GateCrossingDetectorTest {
+
+    @Test
+    public void testCrossingDirectionAndTime() {
+        // 竖直计数线 (10, 0) → (10, 10)，向 +x 移动是从左侧穿到右侧
+        GateCrossingDetector detector = new GateCrossingDetector(List.of(gate(1, 10, 0, 10, 10)));
+
+        detector.accept(1, 0, 5, 5);
+        detector.accept(1, 2, 15, 5);   // t=1 穿过，backward
+        detector.accept(1, 4, 5, 5);    // t=3 穿回，forward
+        detector.accept(2, 0, 5, 20);
+        detector.accept(2, 2, 15, 20);  // 在计数线延长线上穿过，不计
+        detector.accept(3, 0, 10, 2);
+        detector.accept(3, 1, 10, 8);   // 沿计数线移动，不计
+        detector.accept(3, 2, Double.NaN, 8);
+        detector.accept(4, 0, 12, 5);
+        detector.accept(4, 61, 8, 5);   // t=30.5 穿过，forward
+
+        GateCrossings crossings = detector.getCrossings(0);
+        assertEquals(2, crossings.getForwardCount());
+        assertEquals(1, crossings.getBackwardCount());
+        assertEquals(30.5, crossings.getLastTime(), 1e-9);
+        assertArrayEquals(new int[] {1, 0, 0, 0}, crossings.histogram(false, 10, 4));
+        assertArrayEquals(new int[] {1, 0, 0, 1}, crossings.histogram(true, 10, 4));
+    }
+
+    @Test
+    public void testMergePartitions() {
+        List<FlowGate> gates = List.of(gate(1, 0, 0, 0, 10), gate(2, -5, 5, 5, 5));
+        GateCrossingDetector whole = new GateCrossingDetector(gates);
+        GateCrossingDetector left = new GateCrossingDetector(gates);
+        GateCrossingDetector right = new GateCrossingDetector(gates);
+        for (int ped = 0; ped < 100; ped++) {
+            GateCrossingDetector part = ped < 50 ? left : right;
+            for (int t = 0; t < 20; t++) {
+                double x = Math.sin(t + ped) * 4;
+                double y = Math.cos(t * 0.7 + ped) * 6 + 4;
+                whole.accept(ped, t, x, y);
+                part.accept(ped, t, x, y);
+            }
+            part.forget(ped);
+        }
+        left.merge(right);
+        for (int gate = 0; gate < gates.size(); gate++) {
+            assertEquals(whole.getCrossings(gate).getForwardCount(), left.getCrossings(gate).getForwardCount());
+            assertEquals(whole.getCrossings(gate).getBackwardCount(), left.getCrossings(gate).getBackwardCount());
+            assertArrayEquals(whole.getCrossings(gate).histogram(true, 5, 4), left.getCrossings(gate).histogram(true, 5, 4));
+        }
+    }
+
+    private static FlowGate gate(int id, double x1, double y1, double x2, double y2) {
+        FlowGate gate = new FlowGate("gate-" + id, x1, y1, x2, y2);
+        gate.setGateId(id);
+        return gate;
+    }
+}
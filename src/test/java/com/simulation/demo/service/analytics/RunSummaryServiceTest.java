@@ -0,0 +1,212 @@
+package com.simulation.demo.service.analytics;
+
+import com.anylogic.engine.Experiment;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.simulation.demo.dto.AreaOccupancy;
+import com.simulation.demo.entity.SimulationRun;
+import com.simulation.demo.entity.SimulationRunSummary;
+import com.simulation.demo.event.SimulationEventsChangedEvent;
+import com.simulation.demo.repository.EventsLogRepository;
+import com.simulation.demo.repository.PedestrianDataRepository;
+import com.simulation.demo.repository.SimulationRunRepository;
+import com.simulation.demo.repository.SimulationRunSummaryRepository;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.SimulationDataService;
+import com.simulation.demo.service.cache.RunQueryCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * 运行汇总统计测试
+ */
+public class RunSummaryServiceTest {
+
+    private final SimulationRunSummaryRepository summaryRepository = mock(SimulationRunSummaryRepository.class);
+    private final SimulationRunRepository runRepository = mock(SimulationRunRepository.class);
+    private final TrajectorySampleRepository sampleRepository = mock(TrajectorySampleRepository.class);
+    private final EventsLogRepository eventsLogRepository = mock(EventsLogRepository.class);
+    private final PedestrianDataRepository pedestrianDataRepository = mock(PedestrianDataRepository.class);
+    private final AreaOccupancyService areaOccupancyService = mock(AreaOccupancyService.class);
+
+    private final RunSummaryService service = new RunSummaryService();
+    private final SimulationDataService dataService = new SimulationDataService();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    public void setUp() {
+        RunQueryCache runQueryCache = new RunQueryCache();
+        ReflectionTestUtils.setField(runQueryCache, "simulationRunRepository", runRepository);
+        ReflectionTestUtils.setField(runQueryCache, "enabled", true);
+        ReflectionTestUtils.setField(runQueryCache, "maxBytes", 1L << 20);
+        ReflectionTestUtils.setField(runQueryCache, "liveMaxBytes", 1L << 20);
+        ReflectionTestUtils.setField(runQueryCache, "liveTtlMillis", 60_000L);
+        runQueryCache.init();
+
+        ReflectionTestUtils.setField(service, "simulationRunSummaryRepository", summaryRepository);
+        ReflectionTestUtils.setField(service, "simulationRunRepository", runRepository);
+        ReflectionTestUtils.setField(service, "trajectorySampleRepository", sampleRepository);
+        ReflectionTestUtils.setField(service, "eventsLogRepository", eventsLogRepository);
+        ReflectionTestUtils.setField(service, "areaOccupancyService", areaOccupancyService);
+        ReflectionTestUtils.setField(service, "runQueryCache", runQueryCache);
+
+        ReflectionTestUtils.setField(dataService, "eventsLogRepository", eventsLogRepository);
+        ReflectionTestUtils.setField(dataService, "pedestrianDataRepository", pedestrianDataRepository);
+        ReflectionTestUtils.setField(dataService, "runSummaryService", service);
+        ReflectionTestUtils.setField(dataService, "runQueryCache", runQueryCache);
+
+        when(summaryRepository.findById(any())).thenReturn(Optional.empty());
+        when(summaryRepository.save(any(SimulationRunSummary.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(runRepository.findById(any())).thenReturn(Optional.empty());
+    }
+
+    @Test
+    public void testComputeSummary() throws Exception {
+        run(1, Experiment.State.FINISHED);
+        when(sampleRepository.summarize(1)).thenReturn(stored(1));
+        when(eventsLogRepository.countEventTypesByRunId(1)).thenReturn(eventTypes());
+        when(areaOccupancyService.getOccupancy(1, null)).thenReturn(List.of(
+            AreaOccupancy.of("入口", 0, 10.0, 4, 3, 1.2, 8, null),
+            AreaOccupancy.of("入口", 1, 10.0, 6, 5, 1.1, 12, null),
+            AreaOccupancy.of("入口", 2, 10.0, 7, 5, 1.0, 14, null),
+            AreaOccupancy.of("出口", 0, 10.0, 2, 2, 0.9, 4, null)));
+
+        SimulationRunSummary summary = service.getSummary(1);
+
+        assertEquals(42L, summary.getPedestrianCount());
+        assertEquals(5L, summary.getEventCount());
+        // 按事件类型排序保存
+        assertEquals("[[\"CROWDING_START\",2],[\"EXIT\",3]]", summary.getEventTypeCounts());
+
+        List<Map<String, Object>> peaks = objectMapper.readValue(summary.getAreaPeaks(), new TypeReference<>() {
+        });
+        assertEquals(2, peaks.size());
+        assertEquals("入口", peaks.get(0).get("areaName"));
+        // 峰值相同时保留最早的时间桶，单桶最多行人数取所有时间桶的最大值
+        assertEquals(5, peaks.get(0).get("peakCount"));
+        assertEquals(10.0, peaks.get(0).get("peakTime"));
+        assertEquals(7, peaks.get(0).get("maxPedestrians"));
+        assertEquals("出口", peaks.get(1).get("areaName"));
+        assertEquals(2, peaks.get(1).get("peakCount"));
+        verify(summaryRepository).save(summary);
+    }
+
+    @Test
+    public void testExistingSummaryNotRecomputed() {
+        run(2, Experiment.State.FINISHED);
+        SimulationRunSummary existing = stored(2);
+        existing.setEventTypeCounts("[]");
+        when(summaryRepository.findById(2)).thenReturn(Optional.of(existing));
+
+        assertSame(existing, service.getSummary(2));
+        verify(sampleRepository, never()).summarize(any());
+        verify(summaryRepository, never()).save(any());
+    }
+
+    @Test
+    public void testSummaryUnavailable() {
+        assertNull(service.getSummary(3));
+
+        run(4, Experiment.State.RUNNING);
+        assertThrows(IllegalStateException.class, () -> service.getSummary(4));
+        // 运行未结束时不读取已保存的汇总
+        assertNull(service.findSummary(4));
+        verify(summaryRepository, never()).findById(4);
+    }
+
+    @Test
+    public void testEventTypeStatisticsRoundTrip() throws Exception {
+        run(5, Experiment.State.FINISHED);
+        when(eventsLogRepository.countEventTypesByRunId(5)).thenReturn(eventTypes());
+        when(pedestrianDataRepository.countDistinctPedestriansByRunId(5)).thenReturn(42L);
+
+        // 尚未汇总：回退到 events_log / pedestrian_data 查询
+        List<Object[]> fallback = dataService.getEventTypeStatistics(5);
+        assertEquals(42L, dataService.countPedestriansByRunId(5));
+        verify(eventsLogRepository).countEventTypesByRunId(5);
+
+        when(sampleRepository.summarize(5)).thenReturn(stored(5));
+        SimulationRunSummary summary = service.getSummary(5);
+        when(summaryRepository.findById(5)).thenReturn(Optional.of(summary));
+
+        // 汇总存在时直接读取，接口输出的 JSON 与回退查询一致
+        List<Object[]> fromSummary = dataService.getEventTypeStatistics(5);
+        assertEquals(sorted(fallback).size(), fromSummary.size());
+        assertEquals(objectMapper.writeValueAsString(sorted(fallback)), objectMapper.writeValueAsString(fromSummary));
+        assertEquals(42L, dataService.countPedestriansByRunId(5));
+        verify(eventsLogRepository, times(2)).countEventTypesByRunId(5);
+        verify(pedestrianDataRepository, times(1)).countDistinctPedestriansByRunId(5);
+    }
+
+    @Test
+    public void testEventsChangedRefreshesSummary() {
+        run(7, Experiment.State.FINISHED);
+        when(sampleRepository.summarize(7)).thenReturn(stored(7));
+        when(eventsLogRepository.countEventTypesByRunId(7)).thenReturn(List.<Object[]>of(new Object[]{"EXIT", 3L}));
+        SimulationRunSummary summary = service.getSummary(7);
+        when(summaryRepository.findById(7)).thenReturn(Optional.of(summary));
+        assertEquals(1, dataService.getEventTypeStatistics(7).size());
+
+        // 运行结束后重新检测写入拥挤事件：汇总只更新事件统计，查询缓存随之清除
+        when(eventsLogRepository.countEventTypesByRunId(7)).thenReturn(eventTypes());
+        SimulationEventsChangedEvent event = new SimulationEventsChangedEvent(7);
+        service.onSimulationEventsChanged(event);
+        ((RunQueryCache) ReflectionTestUtils.getField(service, "runQueryCache")).onSimulationEventsChanged(event);
+
+        assertEquals(5L, summary.getEventCount());
+        List<Object[]> statistics = dataService.getEventTypeStatistics(7);
+        assertEquals(2, statistics.size());
+        assertEquals("CROWDING_START", statistics.get(0)[0]);
+        verify(sampleRepository, times(1)).summarize(7);
+        verify(summaryRepository, times(2)).save(summary);
+
+        // 尚未汇总的运行不处理，之后计算汇总时再统计
+        service.onSimulationEventsChanged(new SimulationEventsChangedEvent(8));
+        verify(summaryRepository, never()).save(argThat(saved -> saved.getRunId() == 8));
+    }
+
+    @Test
+    public void testMalformedEventTypeCounts() {
+        SimulationRunSummary summary = stored(6);
+        summary.setEventTypeCounts("{");
+        assertThrows(IllegalStateException.class, () -> service.getEventTypeStatistics(summary));
+    }
+
+    private void run(int runId, Experiment.State state) {
+        SimulationRun run = new SimulationRun();
+        run.setState(state);
+        when(runRepository.findById(runId)).thenReturn(Optional.of(run));
+    }
+
+    private static SimulationRunSummary stored(int runId) {
+        SimulationRunSummary summary = new SimulationRunSummary();
+        summary.setRunId(runId);
+        summary.setPedestrianCount(42L);
+        summary.setSampleCount(1000L);
+        return summary;
+    }
+
+    private static List<Object[]> eventTypes() {
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{"EXIT", 3L});
+        rows.add(new Object[]{"CROWDING_START", 2L});
+        return rows;
+    }
+
+    private static List<Object[]> sorted(List<Object[]> rows) {
+        List<Object[]> copy = new ArrayList<>(rows);
+        copy.sort((a, b) -> a[0].toString().compareTo(b[0].toString()));
+        return copy;
+    }
+}
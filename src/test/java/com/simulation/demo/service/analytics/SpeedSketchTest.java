@@ -0,0 +1,58 @@
+package com.simulation.demo.service.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 速度分位数草图测试
+ */
+public class SpeedSketchTest {
+
+    @Test
+    public void testRelativeAccuracy() {
+        Random random = new Random(42);
+        double[] values = new double[20000];
+        SpeedSketch sketch = new SpeedSketch();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.max(0.05, 1.2 + random.nextGaussian() * 0.4);
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, sketch.getCount());
+        for (double q : new double[] {0, 0.05, 0.5, 0.95, 1}) {
+            double exact = values[(int) Math.floor(q * (values.length - 1))];
+            assertEquals(exact, sketch.quantile(q), exact * SpeedSketch.RELATIVE_ACCURACY * 1.0001, "q=" + q);
+        }
+    }
+
+    @Test
+    public void testMergeAndSerialization() {
+        SpeedSketch whole = new SpeedSketch();
+        SpeedSketch first = new SpeedSketch();
+        SpeedSketch second = new SpeedSketch();
+        for (int i = 0; i < 1000; i++) {
+            double value = i % 97 == 0 ? 0 : 0.002 * i + (i % 7);
+            whole.add(value);
+            (i < 400 ? first : second).add(value);
+        }
+        first.add(Double.NaN);
+
+        SpeedSketch merged = SpeedSketch.fromBytes(first.toBytes());
+        merged.merge(SpeedSketch.fromBytes(second.toBytes()));
+        assertEquals(whole.getCount(), merged.getCount());
+        for (double q = 0; q <= 1; q += 0.01) {
+            assertEquals(whole.quantile(q), merged.quantile(q), 0, "q=" + q);
+        }
+        assertEquals(0, merged.quantile(0));
+        assertTrue(whole.toBytes().length < 400);
+
+        assertTrue(Double.isNaN(new SpeedSketch().quantile(0.5)));
+        assertEquals(0, SpeedSketch.fromBytes(new SpeedSketch().toBytes()).getCount());
+        assertThrows(IllegalArgumentException.class, () -> SpeedSketch.fromBytes(new byte[] {1, (byte) 0x80}));
+    }
+}
@@ -0,0 +1,70 @@
+package com.simulation.demo.service.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按权重限制容量的 LRU 缓存测试
+ */
+public class WeightedLruCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsedByWeight() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>("test", 10, String::length);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        // 访问 a 后 b 成为最久未使用
+        assertEquals("aaaa", cache.get("a"));
+        cache.put("c", "cccc");
+
+        assertNull(cache.get("b"));
+        assertEquals("aaaa", cache.get("a"));
+        assertEquals("cccc", cache.get("c"));
+
+        // 超过上限的单个条目不缓存，也不挤掉已有条目
+        cache.put("d", "dddddddddddd");
+        assertNull(cache.get("d"));
+        assertEquals("aaaa", cache.get("a"));
+
+        CacheStats stats = cache.getStats();
+        assertEquals(2, stats.entries());
+        assertEquals(8, stats.weight());
+        assertEquals(1, stats.evictions());
+        assertEquals(4, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(4.0 / 6, stats.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testExpiresAfterTtl() throws InterruptedException {
+        WeightedLruCache<Integer, String> cache = new WeightedLruCache<>("test", 100, 50, String::length);
+        cache.put(1, "x");
+        assertEquals("x", cache.get(1));
+        Thread.sleep(80);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getStats().weight());
+    }
+
+    @Test
+    public void testPutIfAbsentKeepsFirstValue() {
+        WeightedLruCache<Integer, String> cache = new WeightedLruCache<>("test", 100, String::length);
+        assertEquals("first", cache.putIfAbsent(1, "first"));
+        assertEquals("first", cache.putIfAbsent(1, "second"));
+        assertEquals("first", cache.get(1));
+        cache.remove(1);
+        assertEquals("second", cache.putIfAbsent(1, "second"));
+    }
+
+    @Test
+    public void testRemoveIf() {
+        WeightedLruCache<Integer, String> cache = new WeightedLruCache<>("test", 100, String::length);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "v" + i);
+        }
+        assertEquals(5, cache.removeIf(key -> key % 2 == 0));
+        assertEquals(5, cache.getStats().entries());
+        assertNull(cache.get(2));
+        assertEquals("v3", cache.get(3));
+    }
+}
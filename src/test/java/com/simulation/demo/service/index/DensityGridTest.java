@@ -0,0 +1,116 @@
+package com.simulation.demo.service.index;
+
+import com.simulation.demo.dto.TrajectorySample;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 密度热力图测试 - 与逐行统计的结果比较
+ */
+public class DensityGridTest {
+
+    @Test
+    public void testCountsMatchDistinctPedestrians() {
+        Random random = new Random(7);
+        FrameIndex.Builder builder = FrameIndex.builder(1, 0);
+        for (int frame = 0; frame < 300; frame++) {
+            for (int ped = 1; ped <= 500; ped++) {
+                // 行人陆续进出场，部分采样没有坐标
+                if (frame < ped % 50 || (ped % 11 == 0 && frame % 7 == 0)) {
+                    continue;
+                }
+                double x = ped % 13 == 0 && frame % 5 == 0 ? Double.NaN : random.nextDouble() * 40;
+                builder.add(new TrajectorySample(0, 1, frame, null, ped, x, random.nextDouble() * 20,
+                    0f, 1f, null, Double.NaN, Double.NaN));
+            }
+        }
+        FrameIndex index = builder.build();
+        DensityGrid grid = DensityGrid.build(index, 4, 60, 0, 256, 1_000_000);
+        assertEquals(5, grid.getBucketCount());
+        assertEquals(10, grid.getColumns());
+        assertEquals(5, grid.getRows());
+
+        // 逐行统计每个 (桶, 网格) 出现过的行人
+        @SuppressWarnings("unchecked")
+        Set<Integer>[][] expected = new Set[grid.getBucketCount()][grid.getColumns() * grid.getRows()];
+        for (int frame = 0; frame < index.getFrameCount(); frame++) {
+            for (TrajectorySample sample : index.getFrame(frame)) {
+                if (!sample.hasPosition()) {
+                    continue;
+                }
+                int bucket = grid.bucketOf(sample.simTime());
+                int cell = grid.cellOf(sample.posX(), sample.posY());
+                if (expected[bucket][cell] == null) {
+                    expected[bucket][cell] = new HashSet<>();
+                }
+                expected[bucket][cell].add(sample.pedestrianId());
+            }
+        }
+        int max = 0;
+        for (int bucket = 0; bucket < grid.getBucketCount(); bucket++) {
+            for (int cell = 0; cell < expected[bucket].length; cell++) {
+                int count = expected[bucket][cell] != null ? expected[bucket][cell].size() : 0;
+                assertEquals(count, grid.getCounts()[bucket][cell], "bucket " + bucket + ", cell " + cell);
+                max = Math.max(max, count);
+            }
+        }
+        assertEquals(max, grid.getMaxCount());
+    }
+
+    @Test
+    public void testDownsampledSegmentsInterpolated() {
+        // 行人 1 只保留了 0 秒和 10 秒两个点，匀速从 (0, 0) 走到 (20, 0)；行人 2 每秒一个采样，停在原点
+        FrameIndex.Builder builder = FrameIndex.builder(1, 0);
+        for (int t = 0; t <= 10; t++) {
+            if (t == 0 || t == 10) {
+                builder.add(new TrajectorySample(0, 1, t, null, 1, 2.0 * t, 0, 0f, 2f, null, Double.NaN, Double.NaN));
+            }
+            builder.add(new TrajectorySample(0, 1, t, null, 2, 0, 0, 0f, 0f, null, Double.NaN, Double.NaN));
+        }
+        FrameIndex index = builder.build();
+
+        DensityGrid grid = DensityGrid.build(index, 4, 2, 10, 256, 1_000_000);
+        assertEquals(6, grid.getBucketCount());
+        assertEquals(6, grid.getColumns());
+        // 第 b 个时间桶（2b ~ 2b+2 秒）行人 1 走过 x 在 [4b, 4b+4) 的网格
+        assertEquals(2, grid.getCounts()[0][0]);
+        for (int bucket = 1; bucket < grid.getBucketCount(); bucket++) {
+            assertEquals(1, grid.getCounts()[bucket][0], "bucket " + bucket);
+            assertEquals(1, grid.getCounts()[bucket][bucket], "bucket " + bucket);
+            assertEquals(2, sum(grid.getCounts()[bucket]), "bucket " + bucket);
+        }
+
+        // 间隔超过降采样最大间隔时不插值，只统计保留点
+        DensityGrid sparse = DensityGrid.build(index, 4, 2, 5, 256, 1_000_000);
+        assertEquals(0, sparse.getCounts()[2][2]);
+        assertEquals(1, sparse.getCounts()[5][5]);
+    }
+
+    @Test
+    public void testEmptyIndexAndSizeLimit() {
+        DensityGrid empty = DensityGrid.build(FrameIndex.builder(1, 0).build(), 5, 60, 0, 256, 100);
+        assertEquals(0, empty.getBucketCount());
+
+        FrameIndex.Builder builder = FrameIndex.builder(1, 0);
+        for (TrajectorySample sample : List.of(
+                new TrajectorySample(0, 1, 0, null, 1, 0, 0, 0f, 1f, null, Double.NaN, Double.NaN),
+                new TrajectorySample(0, 1, 3600, null, 1, 100, 100, 0f, 1f, null, Double.NaN, Double.NaN))) {
+            builder.add(sample);
+        }
+        assertThrows(IllegalArgumentException.class, () -> DensityGrid.build(builder.build(), 1, 1, 0, 256, 100_000));
+    }
+
+    private static int sum(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,99 @@
+package com.simulation.demo.service.index;
+
+import com.simulation.demo.dto.TrajectorySample;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 帧索引测试
+ */
+public class FrameIndexTest {
+
+    @Test
+    public void testExactAndNearestLookup() {
+        // 预估行数故意偏小，验证扩容
+        FrameIndex.Builder builder = FrameIndex.builder(1, 2);
+        for (int frame = 0; frame < 100; frame++) {
+            for (int ped = 1; ped <= 3; ped++) {
+                builder.add(sample(frame * 0.5, ped, ped == 2 ? "入口" : null));
+            }
+        }
+        FrameIndex index = builder.build();
+
+        assertEquals(100, index.getFrameCount());
+        assertEquals(300, index.getRowCount());
+        assertEquals(0.0, index.getStartTime());
+        assertEquals(49.5, index.getEndTime());
+
+        int frame = index.findFrame(12.5, false);
+        assertEquals(25, frame);
+        List<TrajectorySample> samples = index.getFrame(frame);
+        assertEquals(3, samples.size());
+        assertEquals(2, samples.get(1).pedestrianId());
+        assertEquals(12.5 + 2, samples.get(1).posX());
+        assertEquals("入口", samples.get(1).areaName());
+        assertNull(samples.get(0).areaName());
+
+        assertEquals(-1, index.findFrame(12.7, false));
+        assertEquals(25, index.findFrame(12.7, true));
+        assertEquals(26, index.findFrame(12.8, true));
+        assertEquals(0, index.findFrame(-5, true));
+        assertEquals(99, index.findFrame(1000, true));
+        assertEquals(25, index.floorFrame(12.9));
+    }
+
+    @Test
+    public void testEmptyIndex() {
+        FrameIndex index = FrameIndex.builder(1, 0).build();
+        assertEquals(0, index.getFrameCount());
+        assertEquals(-1, index.findFrame(1.0, true));
+    }
+
+    @Test
+    public void testPedestrianTrajectory() {
+        FrameIndex.Builder builder = FrameIndex.builder(1, 16);
+        for (int frame = 0; frame < 10; frame++) {
+            // 行人 9 只在偶数帧出现，行人 -3 只在前 3 帧出现
+            if (frame < 3) {
+                builder.add(sample(frame, -3, null));
+            }
+            builder.add(sample(frame, 5, null));
+            if (frame % 2 == 0) {
+                builder.add(sample(frame, 9, null));
+            }
+        }
+        FrameIndex index = builder.build();
+
+        assertEquals(3, index.getPedestrianCount());
+        List<TrajectorySample> trajectory = index.getTrajectory(9);
+        assertEquals(5, trajectory.size());
+        for (int i = 0; i < trajectory.size(); i++) {
+            assertEquals(9, trajectory.get(i).pedestrianId());
+            assertEquals(i * 2.0, trajectory.get(i).simTime());
+            assertEquals(i * 2.0 + 9, trajectory.get(i).posX());
+        }
+        assertEquals(3, index.getTrajectory(-3).size());
+        assertEquals(10, index.getTrajectory(5).size());
+        assertTrue(index.getTrajectory(7).isEmpty());
+    }
+
+    @Test
+    public void testNearestTimeWithoutIndex() {
+        List<BigDecimal> times = List.of(new BigDecimal("1.0"), new BigDecimal("2.0"), new BigDecimal("4.0"));
+        assertEquals(new BigDecimal("1.0"), FrameIndexService.nearestTime(times, new BigDecimal("0")));
+        assertEquals(new BigDecimal("2.0"), FrameIndexService.nearestTime(times, new BigDecimal("2")));
+        assertEquals(new BigDecimal("2.0"), FrameIndexService.nearestTime(times, new BigDecimal("3.0")));   // 距离相等取较早的
+        assertEquals(new BigDecimal("4.0"), FrameIndexService.nearestTime(times, new BigDecimal("3.5")));
+        assertEquals(new BigDecimal("4.0"), FrameIndexService.nearestTime(times, new BigDecimal("9")));
+        assertNull(FrameIndexService.nearestTime(List.of(), BigDecimal.ONE));
+    }
+
+    private static TrajectorySample sample(double t, int pedestrianId, String area) {
+        return new TrajectorySample(pedestrianId, 1, t, null, pedestrianId, t + pedestrianId, t * 2,
+            0f, 1.2f, area, 31.2, 121.4);
+    }
+}
@@ -0,0 +1,140 @@
+package com.simulation.demo.service.index;
+
+import com.simulation.demo.dto.TrajectorySample;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 细节层级金字塔测试
+ */
+public class LodPyramidTest {
+
+    @Test
+    public void testLevelsKeepEveryPedestrian() {
+        // 64 帧，每帧 1 秒：行人 1 每帧都有采样，行人 2 只在奇数帧有采样（降采样后的稀疏轨迹），行人 3 只出现在第 10-20 帧
+        FrameIndex.Builder builder = FrameIndex.builder(1, 0);
+        long id = 1;
+        for (int frame = 0; frame < 64; frame++) {
+            builder.add(sample(id++, frame, 1, frame, 0));
+            if (frame % 2 == 1) {
+                builder.add(sample(id++, frame, 2, frame, 10));
+            }
+            if (frame >= 10 && frame <= 20) {
+                builder.add(sample(id++, frame, 3, 0, frame));
+            }
+        }
+        FrameIndex index = builder.build();
+        LodPyramid pyramid = LodPyramid.build(index, 8, 3, 2);
+
+        assertEquals(6, pyramid.getLevelCount());
+        assertFalse(pyramid.isClustered(2));
+        assertTrue(pyramid.isClustered(3));
+        assertEquals(4.0, pyramid.getCellSize(4));
+
+        // 第 2 层每 4 帧一组，每个行人每组一个采样，轨迹的最后一个采样替换同组的第一个采样
+        List<TrajectorySample> level2 = pyramid.read(index, 2, -1, 63);
+        assertEquals(List.of(0.0, 4.0, 8.0, 12.0, 16.0, 20.0, 24.0, 28.0, 32.0, 36.0, 40.0, 44.0, 48.0, 52.0, 56.0, 63.0),
+            times(level2, 1));
+        assertEquals(16, times(level2, 2).size());
+        assertEquals(63.0, times(level2, 2).get(15));
+        assertEquals(List.of(10.0, 12.0, 16.0, 20.0), times(level2, 3));
+        assertEquals(7.0, pyramid.getMaxGap(2));
+        assertEquals(0, pyramid.getMaxGap(0));
+
+        // 按 (sim_time, pedestrian_id) 排序，窗口为 (after, until]
+        List<TrajectorySample> window = pyramid.read(index, 2, 4, 16);
+        assertEquals(List.of(8.0, 12.0, 16.0), times(window, 1));
+        for (int i = 1; i < window.size(); i++) {
+            assertTrue(window.get(i - 1).simTime() <= window.get(i).simTime());
+        }
+        assertEquals(index.getFrames(4, 16), pyramid.read(index, 0, 4, 16));
+    }
+
+    @Test
+    public void testClustersMatchKeptSamples() {
+        Random random = new Random(7);
+        FrameIndex.Builder builder = FrameIndex.builder(1, 0);
+        long id = 1;
+        for (int frame = 0; frame < 200; frame++) {
+            for (int ped = 1; ped <= 30; ped++) {
+                if (random.nextInt(4) == 0) {
+                    continue;
+                }
+                builder.add(sample(id++, frame * 0.5, ped, random.nextDouble() * 40, random.nextDouble() * 20));
+            }
+        }
+        FrameIndex index = builder.build();
+        LodPyramid pyramid = LodPyramid.build(index, 5, 3, 2);
+
+        for (int level = 3; level < pyramid.getLevelCount(); level++) {
+            List<LodPyramid.Frame> points = pyramid.getFrames(index, level, 0, 100, false,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, 1000);
+            List<LodPyramid.Frame> clusters = pyramid.getFrames(index, level, 0, 100, true,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, 1000);
+            assertEquals(pyramid.countFrames(index, level, 0, 100), clusters.size());
+            assertEquals(points.size(), clusters.size());
+            double cellSize = pyramid.getCellSize(level);
+            for (int i = 0; i < clusters.size(); i++) {
+                LodPyramid.Frame cluster = clusters.get(i);
+                assertEquals(index.getFrameTime(i << level), cluster.time());
+                assertNull(cluster.pedestrianIds());
+                assertEquals(points.get(i).pedestrianIds().length, IntStream.of(cluster.counts()).sum());
+                // 质心落在所属网格内，网格互不重复
+                for (int c = 0; c < cluster.counts().length; c++) {
+                    assertTrue(cluster.x()[c] >= 0 && cluster.x()[c] <= 40 + cellSize);
+                }
+                assertTrue(cluster.counts().length <= Math.ceil(40 / cellSize + 1) * Math.ceil(20 / cellSize + 1));
+            }
+        }
+
+        // 视口过滤
+        List<LodPyramid.Frame> inView = pyramid.getFrames(index, 0, 10, 10, false, 0, 0, 10, 10, 10);
+        assertEquals(1, inView.size());
+        for (int i = 0; i < inView.get(0).x().length; i++) {
+            assertTrue(inView.get(0).x()[i] <= 10 && inView.get(0).y()[i] <= 10);
+        }
+    }
+
+    @Test
+    public void testLevelSelection() {
+        FrameIndex.Builder builder = FrameIndex.builder(1, 0);
+        for (int frame = 0; frame < 1024; frame++) {
+            builder.add(sample(frame + 1, frame * 0.1, 1, frame, 0));
+        }
+        FrameIndex index = builder.build();
+        LodPyramid pyramid = LodPyramid.build(index, 6, 3, 2);
+        assertEquals(7, pyramid.getLevelCount());
+
+        // 整个运行 1024 帧、最多 100 帧：第 4 层 64 帧
+        assertEquals(4, pyramid.levelForTimeSpan(index, 0, 102.3, 100));
+        assertEquals(64, pyramid.countFrames(index, 4, 0, 102.3));
+        assertEquals(0, pyramid.levelForTimeSpan(index, 10, 15, 100));
+        // 超过最高层时返回最高层
+        assertEquals(6, pyramid.levelForTimeSpan(index, 0, 102.3, 2));
+
+        // 帧间隔 0.1 秒：每帧推进 0.05 秒读完整数据，推进 1 秒读第 3 层（每 8 帧一组）
+        assertEquals(0, pyramid.levelForFrameInterval(index, 0.05));
+        assertEquals(3, pyramid.levelForFrameInterval(index, 1));
+        assertEquals(6, pyramid.levelForFrameInterval(index, 100));
+    }
+
+    private static TrajectorySample sample(long id, double simTime, int pedestrianId, double x, double y) {
+        return new TrajectorySample(id, 1, simTime, null, pedestrianId, x, y, 0f, 1f, null, Double.NaN, Double.NaN);
+    }
+
+    private static List<Double> times(List<TrajectorySample> samples, int pedestrianId) {
+        List<Double> times = new ArrayList<>();
+        for (TrajectorySample sample : samples) {
+            if (sample.pedestrianId() == pedestrianId) {
+                times.add(sample.simTime());
+            }
+        }
+        return times;
+    }
+}
@@ -0,0 +1,79 @@
+package com.simulation.demo.service.index;
+
+import com.simulation.demo.dto.TrajectorySample;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 时空网格索引测试 - 与逐行扫描的结果比较
+ */
+public class SpatialGridTest {
+
+    @Test
+    public void testQueriesMatchFullScan() {
+        Random random = new Random(42);
+        FrameIndex.Builder builder = FrameIndex.builder(1, 0);
+        List<TrajectorySample> all = new ArrayList<>();
+        for (int frame = 0; frame < 400; frame++) {
+            for (int ped = 1; ped <= 20; ped++) {
+                // 少量采样没有坐标，不应出现在结果中
+                double x = ped == 7 && frame % 10 == 0 ? Double.NaN : random.nextDouble() * 200 - 50;
+                TrajectorySample sample = new TrajectorySample(all.size() + 1, 1, frame * 0.5, null, ped,
+                    x, random.nextDouble() * 80, 0f, 1f, null, Double.NaN, Double.NaN);
+                builder.add(sample);
+                all.add(sample);
+            }
+        }
+        FrameIndex index = builder.build();
+        // 网格边长 3、每个方向最多 16 格：场地 200 宽时边长会被放大
+        SpatialGrid grid = SpatialGrid.build(index, 3, 30, 16);
+        assertTrue(grid.getCellSize() > 3);
+        assertEquals(7, grid.getBucketCount());
+
+        for (int i = 0; i < 50; i++) {
+            double x1 = random.nextDouble() * 200 - 60;
+            double y1 = random.nextDouble() * 90 - 5;
+            double x2 = x1 + random.nextDouble() * 60;
+            double y2 = y1 + random.nextDouble() * 30;
+            double from = random.nextDouble() * 200;
+            double to = from + random.nextDouble() * 60;
+
+            int[] rows = grid.query(index, x1, y1, x2, y2, from, to, null);
+            List<Long> expected = new ArrayList<>();
+            for (TrajectorySample s : all) {
+                if (s.posX() >= x1 && s.posX() <= x2 && s.posY() >= y1 && s.posY() <= y2
+                        && s.simTime() >= from && s.simTime() <= to) {
+                    expected.add(s.id());
+                }
+            }
+            List<Long> actual = new ArrayList<>();
+            for (int row : rows) {
+                actual.add(index.getSample(row).id());
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testRadiusFilter() {
+        FrameIndex.Builder builder = FrameIndex.builder(1, 4);
+        builder.add(new TrajectorySample(1, 1, 0, null, 1, 0, 0, 0f, 1f, null, Double.NaN, Double.NaN));
+        builder.add(new TrajectorySample(2, 1, 0, null, 2, 3, 3, 0f, 1f, null, Double.NaN, Double.NaN));
+        builder.add(new TrajectorySample(3, 1, 1, null, 1, 4, 0, 0f, 1f, null, Double.NaN, Double.NaN));
+        builder.add(new TrajectorySample(4, 1, 1, null, 2, 10, 10, 0f, 1f, null, Double.NaN, Double.NaN));
+        FrameIndex index = builder.build();
+        SpatialGrid grid = SpatialGrid.build(index, 1, 60, 256);
+
+        // 以原点为圆心、半径 4：(3,3) 在外接正方形内但不在圆内
+        int[] rows = grid.query(index, -4, -4, 4, 4, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+            (x, y) -> x * x + y * y <= 16);
+        assertArrayEquals(new int[] {0, 2}, rows);
+        assertEquals(3, index.getSample(2).id());
+        assertEquals(1.0, index.getSample(2).simTime());
+    }
+}
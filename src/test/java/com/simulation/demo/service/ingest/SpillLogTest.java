@@ -0,0 +1,150 @@
+package com.simulation.demo.service.ingest;
+
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.entity.EventsLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 写入队列落盘日志测试
+ */
+public class SpillLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testReplayOrderWithPrepend() throws Exception {
+        SpillLog log = new SpillLog(directory, 1024);
+        log.append(batch(2));
+        log.append(batch(3));
+        log.prepend(List.of(batch(0), batch(1)));
+
+        for (int expected = 0; expected <= 3; expected++) {
+            IngestBatch batch = log.peek();
+            assertNotNull(batch);
+            assertEquals(expected, batch.getSamples().get(0).pedestrianId());
+            log.advance();
+        }
+        assertNull(log.peek());
+        assertFalse(log.hasPending());
+        log.close();
+    }
+
+    @Test
+    public void testResumeAfterRestart() throws Exception {
+        SpillLog log = new SpillLog(directory, 1024 * 1024);
+        for (int i = 0; i < 5; i++) {
+            log.append(batch(i));
+        }
+        log.peek();
+        log.advance();
+        log.peek();
+        log.advance();
+        log.close();
+
+        SpillLog reopened = new SpillLog(directory, 1024 * 1024);
+        assertTrue(reopened.hasPending());
+        for (int expected = 2; expected < 5; expected++) {
+            assertEquals(expected, reopened.peek().getSamples().get(0).pedestrianId());
+            reopened.advance();
+        }
+        assertFalse(reopened.hasPending());
+        reopened.close();
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count(), "回放完的段文件应被删除");
+        }
+    }
+
+    @Test
+    public void testEventsRoundTrip() throws Exception {
+        EventsLog event = new EventsLog(7, "进入区域");
+        event.setSimTime(new BigDecimal("12.5"));
+        event.setEventDetails("{\"area\":\"入口\"}");
+
+        SpillLog log = new SpillLog(directory, 1024);
+        log.append(IngestBatch.ofEvents(List.of(event)));
+        EventsLog replayed = log.peek().getEvents().get(0);
+
+        assertEquals(7, replayed.getRunId());
+        assertEquals(12.5, replayed.getSimTime().doubleValue());
+        assertNull(replayed.getPedestrianId());
+        assertEquals("进入区域", replayed.getEventType());
+        assertEquals(event.getEventDetails(), replayed.getEventDetails());
+        log.close();
+    }
+
+    @Test
+    public void testUndecodableRecordIsQuarantined() throws Exception {
+        SpillLog log = new SpillLog(directory, 1024 * 1024);
+        log.append(batch(0));
+        log.close();
+        Path segment;
+        try (var files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(segment.toFile(), true))) {
+            // 长度完整但内容无法解码（未知的批次类型）
+            out.writeInt(3);
+            out.write(new byte[] {9, 9, 9});
+            IngestBatch valid = batch(1);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            valid.writeTo(new DataOutputStream(buffer));
+            out.writeInt(buffer.size());
+            buffer.writeTo(out);
+        }
+
+        SpillLog reopened = new SpillLog(directory, 1024 * 1024);
+        assertEquals(0, reopened.peek().getSamples().get(0).pedestrianId());
+        reopened.advance();
+        assertEquals(1, reopened.peek().getSamples().get(0).pedestrianId());
+        reopened.advance();
+        assertNull(reopened.peek());
+        assertFalse(reopened.hasPending());
+        assertEquals(1, reopened.getQuarantinedRecords());
+        assertTrue(Files.exists(Path.of(segment.toString().replace(".log", ".corrupt"))));
+        reopened.close();
+    }
+
+    @Test
+    public void testNegativeLengthDoesNotStopReplay() throws Exception {
+        SpillLog log = new SpillLog(directory, 1024 * 1024);
+        log.append(batch(0));
+        log.close();
+        Path segment;
+        try (var files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(segment.toFile(), true))) {
+            out.writeInt(-5);
+            out.write(new byte[16]);
+        }
+
+        SpillLog reopened = new SpillLog(directory, 1024 * 1024);
+        // 后面还有新追加的段，损坏段的剩余部分隔离后继续回放
+        reopened.append(batch(1));
+        assertEquals(0, reopened.peek().getSamples().get(0).pedestrianId());
+        reopened.advance();
+        assertEquals(1, reopened.peek().getSamples().get(0).pedestrianId());
+        reopened.advance();
+        assertNull(reopened.peek());
+        assertFalse(reopened.hasPending());
+        assertEquals(1, reopened.getQuarantinedRecords());
+        reopened.close();
+    }
+
+    private static IngestBatch batch(int pedestrianId) {
+        return IngestBatch.ofSamples(List.of(new TrajectorySample(0L, 1, pedestrianId, null, pedestrianId,
+            1.0, 10.0, Float.NaN, 1.2f, "入口", Double.NaN, Double.NaN)));
+    }
+}
@@ -0,0 +1,165 @@
+package com.simulation.demo.service.ingest;
+
+import com.simulation.demo.dto.TrajectorySample;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 轨迹降采样器测试
+ */
+public class TrajectoryDownsamplerTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrajectoryDownsamplerTest.class);
+
+    private static final double TOLERANCE = 0.5;
+
+    @Test
+    public void testStraightLineKeepsOnlyEndpoints() {
+        TrajectoryDownsampler downsampler = new TrajectoryDownsampler(TOLERANCE, 15, 0.05, 1000);
+
+        List<TrajectorySample> batch = new ArrayList<>();
+        for (int i = 0; i <= 100; i++) {
+            batch.add(sample(1, i, i * 1.2, 5.0, 1.2));
+        }
+        List<TrajectorySample> kept = new ArrayList<>(downsampler.filter(batch));
+        kept.addAll(downsampler.finish());
+
+        logger.info("直线轨迹: 输入 {} 条, 保留 {} 条", batch.size(), kept.size());
+        assertEquals(3, kept.size());
+        assertEquals(0.0, kept.get(0).simTime());
+        assertEquals(100.0, kept.get(kept.size() - 1).simTime());
+        assertReconstructable(batch, kept);
+    }
+
+    @Test
+    public void testTurnIsKept() {
+        TrajectoryDownsampler downsampler = new TrajectoryDownsampler(TOLERANCE, 15, 0.05, 1000);
+
+        // 先沿 x 轴走 20 秒，再沿 y 轴走 20 秒
+        List<TrajectorySample> batch = new ArrayList<>();
+        for (int i = 0; i <= 20; i++) {
+            batch.add(sample(7, i, i, 0, 1.0));
+        }
+        for (int i = 1; i <= 20; i++) {
+            batch.add(sample(7, 20 + i, 20, i, 1.0));
+        }
+        List<TrajectorySample> kept = new ArrayList<>(downsampler.filter(batch));
+        kept.addAll(downsampler.finish());
+
+        logger.info("转弯轨迹: 输入 {} 条, 保留 {} 条", batch.size(), kept.size());
+        assertTrue(kept.stream().anyMatch(d -> d.simTime() == 20.0), "转折点必须保留");
+        assertTrue(kept.size() < 8);
+        assertReconstructable(batch, kept);
+    }
+
+    @Test
+    public void testStandingPedestrianAndMaxInterval() {
+        TrajectoryDownsampler downsampler = new TrajectoryDownsampler(TOLERANCE, 15, 0.05, 30);
+
+        List<TrajectorySample> batch = new ArrayList<>();
+        for (int i = 0; i <= 120; i++) {
+            batch.add(sample(3, i, 10, 10, 0.0));
+        }
+        List<TrajectorySample> kept = new ArrayList<>(downsampler.filter(batch));
+        kept.addAll(downsampler.finish());
+
+        logger.info("静止行人: 输入 {} 条, 保留 {} 条", batch.size(), kept.size());
+        // 首点、确定速度的第二个点、每 30 秒至少一个点、末点
+        assertTrue(kept.size() <= 8);
+        for (int i = 1; i < kept.size(); i++) {
+            double gap = kept.get(i).simTime() - kept.get(i - 1).simTime();
+            assertTrue(gap <= 31.0, "保留点间隔不应超过最大间隔");
+        }
+    }
+
+    @Test
+    public void testPedestriansAreIndependentAcrossBatches() {
+        TrajectoryDownsampler downsampler = new TrajectoryDownsampler(TOLERANCE, 15, 0.05, 1000);
+
+        List<TrajectorySample> all = new ArrayList<>();
+        List<TrajectorySample> kept = new ArrayList<>();
+        for (int t = 0; t <= 50; t++) {
+            List<TrajectorySample> frame = List.of(sample(1, t, t, 0, 1.0), sample(2, t, 0, 2.0 * t, 2.0));
+            all.addAll(frame);
+            kept.addAll(downsampler.filter(frame));
+        }
+        kept.addAll(downsampler.finish());
+
+        assertEquals(6, kept.size());
+        assertEquals(0, downsampler.getTrackedCount());
+        assertReconstructable(all, kept);
+    }
+
+    @Test
+    public void testAreaChangeIsKept() {
+        TrajectoryDownsampler downsampler = new TrajectoryDownsampler(TOLERANCE, 15, 0.05, 30);
+
+        // 沿直线匀速穿过区域 A（10-14 秒），直线上的采样本应全部丢弃
+        List<TrajectorySample> batch = new ArrayList<>();
+        for (int i = 0; i <= 25; i++) {
+            String area = i >= 10 && i <= 14 ? "A" : null;
+            batch.add(sample(5, i, i * 1.2, 0, 1.2, area));
+        }
+        List<TrajectorySample> kept = new ArrayList<>(downsampler.filter(batch));
+        kept.addAll(downsampler.finish());
+
+        logger.info("穿过区域: 输入 {} 条, 保留 {} 条", batch.size(), kept.size());
+        List<Double> times = kept.stream().map(TrajectorySample::simTime).toList();
+        // 进入前最后一个、进入后第一个、离开前最后一个、离开后第一个
+        assertTrue(times.containsAll(List.of(9.0, 10.0, 14.0, 15.0)), "区域进出的采样必须保留: " + times);
+        assertTrue(kept.stream().anyMatch(k -> "A".equals(k.areaName())));
+        assertTrue(kept.size() <= 8);
+        assertReconstructable(batch, kept);
+    }
+
+    /**
+     * 用相邻保留点线性插值还原每个原始采样，偏差必须在容差内
+     */
+    private void assertReconstructable(List<TrajectorySample> original, List<TrajectorySample> kept) {
+        for (TrajectorySample data : original) {
+            TrajectorySample before = null;
+            TrajectorySample after = null;
+            double t = data.simTime();
+            for (TrajectorySample k : kept) {
+                if (k.pedestrianId() != data.pedestrianId()) {
+                    continue;
+                }
+                double kt = k.simTime();
+                if (kt <= t && (before == null || kt > before.simTime())) {
+                    before = k;
+                }
+                if (kt >= t && (after == null || kt < after.simTime())) {
+                    after = k;
+                }
+            }
+            assertNotNull(before);
+            assertNotNull(after);
+
+            double t0 = before.simTime();
+            double t1 = after.simTime();
+            double ratio = t1 > t0 ? (t - t0) / (t1 - t0) : 0;
+            double x = lerp(before.posX(), after.posX(), ratio);
+            double y = lerp(before.posY(), after.posY(), ratio);
+            double error = Math.hypot(x - data.posX(), y - data.posY());
+            assertTrue(error <= TOLERANCE + 1e-6, "插值偏差过大: t=" + t + ", error=" + error);
+        }
+    }
+
+    private static double lerp(double a, double b, double ratio) {
+        return a + (b - a) * ratio;
+    }
+
+    private static TrajectorySample sample(int pedestrianId, double t, double x, double y, double speed) {
+        return sample(pedestrianId, t, x, y, speed, null);
+    }
+
+    private static TrajectorySample sample(int pedestrianId, double t, double x, double y, double speed, String area) {
+        return new TrajectorySample(0L, 1, t, null, pedestrianId, x, y, Float.NaN, (float) speed, area, Double.NaN, Double.NaN);
+    }
+}
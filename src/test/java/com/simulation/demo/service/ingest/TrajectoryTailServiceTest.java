@@ -0,0 +1,172 @@
+package com.simulation.demo.service.ingest;
+
+import com.simulation.demo.dto.TailPage;
+import com.simulation.demo.dto.TrajectorySample;
+import com.simulation.demo.event.SimulationDataCompletedEvent;
+import com.simulation.demo.event.TrajectorySamplesWrittenEvent;
+import com.simulation.demo.repository.TrajectorySampleRepository;
+import com.simulation.demo.service.cache.RunQueryCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 轨迹实时跟踪等待与唤醒测试
+ */
+public class TrajectoryTailServiceTest {
+
+    private final TrajectorySampleRepository repository = mock(TrajectorySampleRepository.class);
+    private final WriteBehindQueue writeBehindQueue = mock(WriteBehindQueue.class);
+    private final RunQueryCache runQueryCache = mock(RunQueryCache.class);
+
+    private final TrajectoryTailService service = new TrajectoryTailService();
+
+    // 模拟 pedestrian_data 中运行 1 已写入的行
+    private final List<TrajectorySample> rows = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(service, "trajectorySampleRepository", repository);
+        ReflectionTestUtils.setField(service, "writeBehindQueue", writeBehindQueue);
+        ReflectionTestUtils.setField(service, "runQueryCache", runQueryCache);
+        ReflectionTestUtils.setField(service, "maxWaiters", 10);
+        ReflectionTestUtils.setField(service, "maxSubscribers", 10);
+        ReflectionTestUtils.setField(service, "pollMs", 1000L);
+
+        when(repository.findByRunIdAfterId(eq(1), anyLong(), anyInt())).thenAnswer(invocation -> {
+            long after = invocation.getArgument(1);
+            int limit = invocation.getArgument(2);
+            synchronized (rows) {
+                return rows.stream().filter(row -> row.id() > after).limit(limit).toList();
+            }
+        });
+        when(repository.existsByRunIdAfterId(eq(1), anyLong())).thenAnswer(invocation -> {
+            long after = invocation.getArgument(1);
+            synchronized (rows) {
+                return rows.stream().anyMatch(row -> row.id() > after);
+            }
+        });
+    }
+
+    @AfterEach
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    public void testWakeOnWrite() throws Exception {
+        CompletableFuture<TailPage> future = service.poll(1, 0, 10, 10_000);
+        assertFalse(future.isDone());
+
+        write(5);
+        service.onTrajectorySamplesWritten(new TrajectorySamplesWrittenEvent(1));
+
+        TailPage page = future.get(5, TimeUnit.SECONDS);
+        assertEquals(1, page.content().size());
+        assertEquals(5, page.nextCursor());
+        assertFalse(page.complete());
+        assertEquals(0, waiterCount());
+    }
+
+    @Test
+    public void testReRegisterWithoutNewRows() throws Exception {
+        CompletableFuture<TailPage> future = service.poll(1, 0, 10, 10_000);
+
+        // 其他批次的写入通知（游标之后没有新行）：重新查询后继续挂起
+        service.onTrajectorySamplesWritten(new TrajectorySamplesWrittenEvent(1));
+        verify(repository, timeout(5000).times(2)).findByRunIdAfterId(1, 0L, 11);
+        assertFalse(future.isDone());
+
+        // 重新挂起前后到达的写入都不会丢失
+        write(7);
+        service.onTrajectorySamplesWritten(new TrajectorySamplesWrittenEvent(1));
+        TailPage page = future.get(5, TimeUnit.SECONDS);
+        assertEquals(7, page.nextCursor());
+        assertEquals(0, waiterCount());
+    }
+
+    @Test
+    public void testCompleteWakesWaiters() throws Exception {
+        CompletableFuture<TailPage> future = service.poll(1, 3, 10, 10_000);
+
+        service.onSimulationDataCompleted(new SimulationDataCompletedEvent(1));
+
+        TailPage page = future.get(5, TimeUnit.SECONDS);
+        assertTrue(page.content().isEmpty());
+        assertTrue(page.complete());
+        assertEquals(3, page.nextCursor());
+
+        // 写完后的请求不再挂起
+        assertTrue(service.poll(1, 3, 10, 10_000).isDone());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        TailPage page = service.poll(1, 4, 10, 50).get(5, TimeUnit.SECONDS);
+        assertTrue(page.content().isEmpty());
+        assertFalse(page.complete());
+        assertEquals(4, page.nextCursor());
+        // 超时后由 completeOnTimeout 的线程移出等待列表
+        awaitWaiterCount(0);
+    }
+
+    @Test
+    public void testPollRunsWithoutWriteEvents() throws Exception {
+        CompletableFuture<TailPage> future = service.poll(1, 0, 10, 10_000);
+
+        // 模型直接写库，没有写入通知
+        service.pollIdleRuns();
+        assertFalse(future.isDone());
+        write(9);
+        service.pollIdleRuns();
+
+        TailPage page = future.get(5, TimeUnit.SECONDS);
+        assertEquals(9, page.nextCursor());
+    }
+
+    @Test
+    public void testPollSkipsRecentlyNotifiedRuns() throws Exception {
+        CompletableFuture<TailPage> future = service.poll(1, 0, 10, 10_000);
+        service.onTrajectorySamplesWritten(new TrajectorySamplesWrittenEvent(1));
+        awaitWaiterCount(1);
+
+        // 一个轮询间隔内收到过通知，由通知负责唤醒
+        service.pollIdleRuns();
+        verify(repository, never()).existsByRunIdAfterId(anyInt(), anyLong());
+
+        // 运行已结束、写入队列为空：轮询发现后按写完处理
+        ReflectionTestUtils.setField(service, "pollMs", 0L);
+        when(runQueryCache.isFinished(1)).thenReturn(true);
+        when(writeBehindQueue.awaitDrained(0)).thenReturn(true);
+        service.pollIdleRuns();
+        assertTrue(future.get(5, TimeUnit.SECONDS).complete());
+    }
+
+    private void write(long id) {
+        synchronized (rows) {
+            rows.add(new TrajectorySample(id, 1, id, null, 1, 10.0, 20.0, 0f, 1.0f, null, Double.NaN, Double.NaN));
+        }
+    }
+
+    private void awaitWaiterCount(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (waiterCount() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, waiterCount());
+    }
+
+    private int waiterCount() {
+        return (Integer) ReflectionTestUtils.getField(service, "waiterCount");
+    }
+}
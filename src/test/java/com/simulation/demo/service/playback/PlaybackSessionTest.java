@@ -0,0 +1,135 @@
+package com.simulation.demo.service.playback;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.simulation.demo.dto.TrajectorySample;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 回放会话测试 - 插值和定位
+ */
+public class PlaybackSessionTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final BlockingQueue<JsonNode> messages = new LinkedBlockingQueue<>();
+
+    @AfterEach
+    public void tearDown() {
+        loader.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testInterpolatesBetweenSparseSamples() throws Exception {
+        // 行人 1 只在 0 秒和 20 秒各有一个采样（降采样后），行人 2 在 4 秒离开
+        List<TrajectorySample> samples = new ArrayList<>();
+        samples.add(sample(0, 1, 0, 0));
+        samples.add(sample(0, 2, 100, 100));
+        samples.add(sample(4, 2, 104, 100));
+        samples.add(sample(20, 1, 20, 40));
+        samples.add(sample(60, 3, 0, 0));
+
+        PlaybackSession session = newSession();
+        session.start(source(samples), 5, 1, 50, true);
+
+        JsonNode frame = nextFrame();
+        assertEquals(5.0, frame.get("time").asDouble());
+        JsonNode pedestrians = frame.get("pedestrians");
+        assertEquals(1, pedestrians.size());
+        assertEquals(1, pedestrians.get(0).get(0).asInt());
+        assertEquals(5.0, pedestrians.get(0).get(1).asDouble(), 1e-9);
+        assertEquals(10.0, pedestrians.get(0).get(2).asDouble(), 1e-9);
+        assertTrue(pedestrians.get(0).get(5).isNull());
+
+        // 向前定位后重新读取，行人 2 在 2 秒时仍在场
+        session.submit(new PlaybackSession.Command("seek", 2));
+        frame = nextFrame();
+        assertEquals(2.0, frame.get("time").asDouble());
+        assertEquals(2, frame.get("pedestrians").size());
+        session.close();
+    }
+
+    @Test
+    public void testEndsAtLastFrame() throws Exception {
+        List<TrajectorySample> samples = List.of(sample(0, 1, 0, 0), sample(0.5, 1, 1, 0));
+
+        PlaybackSession session = newSession();
+        session.start(source(samples), 0, 64, 50, false);
+
+        JsonNode status;
+        do {
+            status = next("status");
+        } while (!"ended".equals(status.get("state").asText()));
+        assertEquals(0.5, status.get("time").asDouble());
+        session.close();
+    }
+
+    private PlaybackSession newSession() throws Exception {
+        WebSocketSession webSocketSession = mock(WebSocketSession.class);
+        doAnswer(invocation -> {
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            messages.add(objectMapper.readTree(((TextMessage) message).getPayload()));
+            return null;
+        }).when(webSocketSession).sendMessage(any());
+        return new PlaybackSession(webSocketSession, 1, new PlaybackSession.Settings(10, 40, 31),
+            loader, scheduler, objectMapper);
+    }
+
+    private JsonNode nextFrame() throws InterruptedException {
+        return next("frame");
+    }
+
+    private JsonNode next(String type) throws InterruptedException {
+        while (true) {
+            JsonNode message = messages.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message, "等待 " + type + " 消息超时");
+            assertNotEquals("error", message.get("type").asText(), message.toString());
+            if (type.equals(message.get("type").asText())) {
+                return message;
+            }
+        }
+    }
+
+    private static PlaybackSource source(List<TrajectorySample> samples) {
+        return new PlaybackSource() {
+            @Override
+            public List<TrajectorySample> read(double afterTime, double untilTime) {
+                return samples.stream().filter(s -> s.simTime() > afterTime && s.simTime() <= untilTime).toList();
+            }
+
+            @Override
+            public double[] getTimeSpan() {
+                return new double[] {samples.get(0).simTime(), samples.get(samples.size() - 1).simTime()};
+            }
+
+            @Override
+            public boolean isComplete() {
+                return true;
+            }
+        };
+    }
+
+    private static TrajectorySample sample(double simTime, int pedestrianId, double x, double y) {
+        return new TrajectorySample(0, 1, simTime, null, pedestrianId, x, y, 0f, 1f, null, Double.NaN, Double.NaN);
+    }
+}